@@ -82,6 +82,11 @@ protected void addMessage(Object channel, byte[] message) {
     outQueue.add(compress(message));
   }
 
+  @Override
+  public int getPendingMessageCount() {
+    return outQueue.size();
+  }
+
   protected byte[] nextMessage() {
     try {
       // Bit paranoid, but don't wait forever for a message - that can perpetually block the thread.
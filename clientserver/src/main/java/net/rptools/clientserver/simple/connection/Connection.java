@@ -47,4 +47,13 @@ default void sendMessage(byte[] message) {
   void removeActivityListener(ActivityListener listener);
 
   String getError();
+
+  /**
+   * Returns the number of messages that have been queued but not yet written to the connection.
+   *
+   * @return the number of pending outgoing messages.
+   */
+  default int getPendingMessageCount() {
+    return 0;
+  }
 }
@@ -97,6 +97,21 @@ public void sendMessage(String id, Object channel, byte[] message) {
     }
   }
 
+  /**
+   * Returns the number of messages queued for all clients that have not yet been sent.
+   *
+   * @return the number of pending outgoing messages.
+   */
+  public int getPendingMessageCount() {
+    synchronized (clients) {
+      int count = 0;
+      for (Connection conn : clients.values()) {
+        count += conn.getPendingMessageCount();
+      }
+      return count;
+    }
+  }
+
   /** Looks for any clients that have disconnected, and removes them. */
   public Collection<Connection> reapClients() {
     log.debug("About to reap clients");
@@ -134,9 +134,10 @@ private byte[] digestData(InputStream is) throws IOException {
     MessageDigest digest = md5Digest.get();
     digest.reset();
 
-    int b;
-    while (((b = is.read()) >= 0)) {
-      digest.update((byte) b);
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) >= 0) {
+      digest.update(buffer, 0, read);
     }
     return digest.digest();
   }
@@ -22,6 +22,7 @@
 import java.awt.image.ImageObserver;
 import java.awt.image.PixelGrabber;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -447,6 +448,41 @@ public static BufferedImage scaleBufferedImage(
     return resampleOp.filter(image, null);
   }
 
+  /**
+   * Creates the levels of a mip pyramid for an image. Each level is half the size of the one
+   * before it, filtered from it with bilinear interpolation, and has the same color model as the
+   * image. Levels are created while both sides of the next level would be at least {@code minSize}
+   * pixels.
+   *
+   * @param image the full size image, which is not part of the result.
+   * @param minSize the smallest size of a side of a level.
+   * @return the levels, the largest first; empty if the image is too small for any levels.
+   */
+  public static BufferedImage[] createMipLevels(BufferedImage image, int minSize) {
+    var levels = new ArrayList<BufferedImage>();
+    ColorModel colorModel = image.getColorModel();
+    BufferedImage level = image;
+    while (level.getWidth() / 2 >= minSize && level.getHeight() / 2 >= minSize) {
+      int width = level.getWidth() / 2;
+      int height = level.getHeight() / 2;
+      BufferedImage next =
+          new BufferedImage(
+              colorModel,
+              colorModel.createCompatibleWritableRaster(width, height),
+              colorModel.isAlphaPremultiplied(),
+              null);
+      Graphics2D g = next.createGraphics();
+      g.setComposite(AlphaComposite.Src);
+      g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(level, 0, 0, width, height, null);
+      g.dispose();
+      levels.add(next);
+      level = next;
+    }
+    return levels.toArray(new BufferedImage[0]);
+  }
+
   public static ImageIcon scaleImageIcon(ImageIcon icon, int w, int h) {
     int nw = icon.getIconWidth();
     int nh = icon.getIconHeight();
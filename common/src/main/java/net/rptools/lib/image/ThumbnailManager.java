@@ -20,6 +20,9 @@
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import javax.imageio.ImageIO;
 import net.rptools.lib.AwtUtil;
 import net.rptools.lib.MD5Key;
@@ -29,6 +32,23 @@
 
 public class ThumbnailManager {
   private static final Logger log = LogManager.getLogger(ThumbnailManager.class);
+
+  /** Image files smaller than this are used as they are rather than creating a thumbnail. */
+  private static final long SMALL_IMAGE_LENGTH = 102400;
+
+  /** Reads the full size image of a file that isn't an image file itself, such as a token. */
+  @FunctionalInterface
+  public interface ImageSource {
+    /**
+     * Reads the image.
+     *
+     * @param file the file to read the image from.
+     * @return the image, or {@code null} if the file has none.
+     * @throws IOException if the file can't be read.
+     */
+    Image read(File file) throws IOException;
+  }
+
   private final File thumbnailLocation;
   private final Dimension thumbnailSize;
 
@@ -55,21 +75,66 @@ public Image getThumbnail(File file, RenderQuality renderQuality) throws IOExcep
     return createThumbnail(file, renderQuality);
   }
 
-  private Image createThumbnail(File file, RenderQuality renderQuality) throws IOException {
-    // Gather info
-    File thumbnailFile = getThumbnailFile(file);
-    if (thumbnailFile.exists()) {
-      return ImageUtil.getImage(thumbnailFile);
+  /**
+   * Returns the thumbnail of a file that isn't an image file, such as a token. Its thumbnail is
+   * always cached, however small, as reading the image from the file is expensive.
+   *
+   * @param file the file.
+   * @param renderQuality the quality to scale the image with.
+   * @param source reads the full size image from the file.
+   * @return the thumbnail, or {@code null} if the file has no image.
+   * @throws IOException if the file can't be read.
+   */
+  public Image getThumbnail(File file, RenderQuality renderQuality, ImageSource source)
+      throws IOException {
+    BufferedImage thumbnail = getCachedThumbnail(file);
+    if (thumbnail != null) {
+      return thumbnail;
+    }
+    Image image = source.read(file);
+    if (image == null) {
+      return null;
+    }
+    Dimension imgSize = new Dimension(image.getWidth(null), image.getHeight(null));
+    AwtUtil.constrainTo(imgSize, thumbnailSize.width, thumbnailSize.height);
+    return writeThumbnail(file, image, imgSize, renderQuality);
+  }
+
+  /**
+   * Returns whether a thumbnail is created for an image file, or whether the image is small
+   * enough to be used as it is. This allows callers that already know the size of the image to
+   * skip decoding it.
+   *
+   * @param file the image file.
+   * @param imageSize the size of the image.
+   * @return {@code true} if a thumbnail is created and cached for the image.
+   */
+  public boolean isThumbnailNeeded(File file, Dimension imageSize) {
+    // Jamz: New size 100k (was 30k) and put in check so we're not creating thumbnails LARGER than
+    // the original...
+    return file.length() >= SMALL_IMAGE_LENGTH
+        && (imageSize.width > thumbnailSize.width || imageSize.height > thumbnailSize.height);
+  }
+
+  /**
+   * Removes the cached thumbnail of a file, such as a file that no longer exists.
+   *
+   * @param file the file.
+   */
+  public void removeThumbnail(File file) {
+    try {
+      Files.deleteIfExists(getThumbnailFile(file).toPath());
+    } catch (IOException e) {
+      log.debug("Unable to remove thumbnail of {}", file, e);
     }
+  }
 
+  private Image createThumbnail(File file, RenderQuality renderQuality) throws IOException {
     Image image = ImageUtil.getImage(file);
     Dimension imgSize = new Dimension(image.getWidth(null), image.getHeight(null));
 
     // Test if we Should we bother making a thumbnail ?
-    // Jamz: New size 100k (was 30k) and put in check so we're not creating thumbnails LARGER than
-    // the original...
-    if (file.length() < 102400
-        || (imgSize.width <= thumbnailSize.width && imgSize.height <= thumbnailSize.height)) {
+    if (!isThumbnailNeeded(file, imgSize)) {
       return image;
     }
     // Transform the image
@@ -77,16 +142,30 @@ private Image createThumbnail(File file, RenderQuality renderQuality) throws IOE
         imgSize,
         Math.min(image.getWidth(null), thumbnailSize.width),
         Math.min(image.getHeight(null), thumbnailSize.height));
+    return writeThumbnail(file, image, imgSize, renderQuality);
+  }
+
+  private BufferedImage writeThumbnail(
+      File file, Image image, Dimension size, RenderQuality renderQuality) throws IOException {
     BufferedImage thumbnailImage =
-        new BufferedImage(imgSize.width, imgSize.height, ImageUtil.pickBestTransparency(image));
+        new BufferedImage(size.width, size.height, ImageUtil.pickBestTransparency(image));
 
     Graphics2D g = thumbnailImage.createGraphics();
     renderQuality.setShrinkRenderingHints(g);
-    g.drawImage(image, 0, 0, imgSize.width, imgSize.height, null);
+    g.drawImage(image, 0, 0, size.width, size.height, null);
     g.dispose();
 
-    // Use png to preserve transparency
-    FileUtils.writeByteArrayToFile(thumbnailFile, ImageUtil.imageToBytes(thumbnailImage, "png"));
+    // Use png to preserve transparency. Written to a temporary file first, as thumbnails may be
+    // created and read on several threads at once.
+    Path target = getThumbnailFile(file).toPath();
+    Files.createDirectories(target.getParent());
+    Path temp = Files.createTempFile(target.getParent(), "thumb", ".tmp");
+    try {
+      Files.write(temp, ImageUtil.imageToBytes(thumbnailImage, "png"));
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
 
     return thumbnailImage;
   }
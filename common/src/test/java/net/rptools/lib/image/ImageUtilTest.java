@@ -64,4 +64,18 @@ void testReadTiffAsBufferedImage() throws IOException {
     assertEquals(583, img.getWidth(null));
     assertEquals(738, img.getHeight(null));
   }
+
+  @Test
+  void testCreateMipLevels() {
+    BufferedImage image = new BufferedImage(100, 40, BufferedImage.TYPE_INT_ARGB);
+    BufferedImage[] levels = ImageUtil.createMipLevels(image, 10);
+    assertEquals(2, levels.length);
+    assertEquals(50, levels[0].getWidth());
+    assertEquals(20, levels[0].getHeight());
+    assertEquals(25, levels[1].getWidth());
+    assertEquals(10, levels[1].getHeight());
+    assertEquals(image.getColorModel(), levels[1].getColorModel());
+
+    assertEquals(0, ImageUtil.createMipLevels(image, 30).length);
+  }
 }
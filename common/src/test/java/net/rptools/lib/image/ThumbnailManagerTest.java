@@ -0,0 +1,102 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.image;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ThumbnailManagerTest {
+  @TempDir File tempDir;
+
+  /** Writes an image that compresses badly, so that its file is large enough for a thumbnail. */
+  private static void writeNoise(File file, int width, int height) throws Exception {
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var random = new Random(1);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+    ImageIO.write(image, "png", file);
+  }
+
+  private static int countThumbnails(File dir) {
+    File[] files = dir.listFiles();
+    return files == null ? 0 : files.length;
+  }
+
+  @Test
+  void testLargeImagesAreCachedAndRemoved() throws Exception {
+    File thumbDir = new File(tempDir, "thumbs");
+    File imageFile = new File(tempDir, "large.png");
+    writeNoise(imageFile, 400, 200);
+
+    var manager = new ThumbnailManager(thumbDir, new Dimension(50, 50));
+    assertTrue(manager.isThumbnailNeeded(imageFile, new Dimension(400, 200)));
+    Image thumbnail = manager.getThumbnail(imageFile, RenderQuality.LOW_SCALING);
+    assertEquals(50, thumbnail.getWidth(null));
+    assertEquals(25, thumbnail.getHeight(null));
+    assertEquals(1, countThumbnails(thumbDir));
+
+    manager.removeThumbnail(imageFile);
+    assertEquals(0, countThumbnails(thumbDir));
+  }
+
+  @Test
+  void testSmallImagesAreNotCached() throws Exception {
+    File thumbDir = new File(tempDir, "thumbs");
+    File imageFile = new File(tempDir, "small.png");
+    ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+
+    var manager = new ThumbnailManager(thumbDir, new Dimension(50, 50));
+    assertFalse(manager.isThumbnailNeeded(imageFile, new Dimension(200, 100)));
+    Image image = manager.getThumbnail(imageFile, RenderQuality.LOW_SCALING);
+    assertEquals(200, image.getWidth(null));
+    assertEquals(0, countThumbnails(thumbDir));
+  }
+
+  @Test
+  void testSourceThumbnailsAreAlwaysCached() throws Exception {
+    File thumbDir = new File(tempDir, "thumbs");
+    File tokenFile = new File(tempDir, "token.rptok");
+    assertTrue(tokenFile.createNewFile());
+
+    var manager = new ThumbnailManager(thumbDir, new Dimension(50, 50));
+    int[] reads = {0};
+    ThumbnailManager.ImageSource source =
+        file -> {
+          reads[0]++;
+          return new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+        };
+    Image thumbnail = manager.getThumbnail(tokenFile, RenderQuality.LOW_SCALING, source);
+    assertEquals(50, thumbnail.getWidth(null));
+    assertEquals(25, thumbnail.getHeight(null));
+
+    // Make sure the token file is not newer than its thumbnail
+    assertTrue(tokenFile.setLastModified(0));
+    thumbnail = manager.getThumbnail(tokenFile, RenderQuality.LOW_SCALING, source);
+    assertEquals(50, thumbnail.getWidth(null));
+    assertEquals(1, reads[0]);
+    assertEquals(1, countThumbnails(thumbDir));
+  }
+}
@@ -15,6 +15,7 @@
 package net.rptools.lib;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +38,10 @@ public static <Ex extends Exception> void using(String name, TimedSection<Ex> ca
     var stack = timerStack.get();
 
     var timer = new CodeTimer(name);
-    timer.setEnabled(AppState.isCollectProfilingData());
+    timer.setEnabled(
+        AppState.isCollectProfilingData()
+            || CodeTimerStatistics.getInstance().isEnabled()
+            || CodeTimerTrace.getInstance().isRecording());
 
     stack.addLast(timer);
     try {
@@ -50,8 +54,11 @@ public static <Ex extends Exception> void using(String name, TimedSection<Ex> ca
       assert lastTimer == timer : "Timer stack is corrupted";
 
       if (timer.isEnabled()) {
-        String results = timer.toString();
-        MapTool.getProfilingNoteFrame().addText(results);
+        timer.recordStatistics("<root>");
+        if (AppState.isCollectProfilingData()) {
+          String results = timer.toString();
+          MapTool.getProfilingNoteFrame().addText(results);
+        }
       }
       timer.clear();
     }
@@ -117,7 +124,35 @@ public void stop(String id, Object... parameters) {
     if (timer == null) {
       throw new IllegalArgumentException("Could not find timer id: " + id);
     }
-    timer.stop();
+    long start = timer.start;
+    long end = timer.stop();
+
+    var trace = CodeTimerTrace.getInstance();
+    if (trace.isRecording()) {
+      trace.add(name, id.equals("<root>") ? name : id, start, end);
+    }
+  }
+
+  /**
+   * Reports the time spent in each section to the {@link CodeTimerStatistics}, if they are being
+   * collected.
+   *
+   * @param totalId the id of the section that covers everything the timer measured.
+   */
+  public void recordStatistics(String totalId) {
+    var statistics = CodeTimerStatistics.getInstance();
+    Timer total = timeMap.get(totalId);
+    if (!statistics.isEnabled() || total == null) {
+      return;
+    }
+    var sections = new HashMap<String, Long>();
+    timeMap.forEach(
+        (id, timer) -> {
+          if (!id.equals(totalId)) {
+            sections.put(id, timer.getElapsed());
+          }
+        });
+    statistics.record(name, total.getElapsed(), sections);
   }
 
   public void clear() {
@@ -176,9 +211,11 @@ public void start() {
       start = getTime();
     }
 
-    public void stop() {
-      elapsed += (getTime() - start);
+    public long stop() {
+      long end = getTime();
+      elapsed += (end - start);
       start = -1;
+      return end;
     }
 
     public long getElapsed() {
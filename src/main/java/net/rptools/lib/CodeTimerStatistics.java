@@ -0,0 +1,197 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps running statistics for the timers run through {@link CodeTimer#using}, so that they can be
+ * shown while the application is running rather than logged after the fact.
+ *
+ * <p>For each timer name, the total time of the most recent runs is kept for percentiles, and each
+ * section keeps an exponential moving average of its time per run. Nothing is collected unless the
+ * statistics are enabled.
+ *
+ * <p>All methods are thread safe.
+ */
+public final class CodeTimerStatistics {
+  /** The number of runs of each timer that the percentiles are calculated over. */
+  private static final int HISTORY = 240;
+
+  private static final CodeTimerStatistics INSTANCE = new CodeTimerStatistics(HISTORY);
+
+  /**
+   * Percentiles of the total time of the recent runs of a timer, in milliseconds.
+   *
+   * @param count the number of runs the percentiles are calculated over.
+   * @param p50 the median time.
+   * @param p95 the 95th percentile.
+   * @param p99 the 99th percentile.
+   * @param max the longest time.
+   */
+  public record Percentiles(int count, double p50, double p95, double p99, double max) {}
+
+  /**
+   * The average time spent in a section of a timer.
+   *
+   * @param name the id of the section.
+   * @param averageMillis the moving average of the time per run, in milliseconds.
+   */
+  public record Section(String name, double averageMillis) {}
+
+  /** The recent runs of one timer. */
+  private static final class Series {
+    private final long[] totals;
+    private final Map<String, Double> averages = new HashMap<>();
+    private int next;
+    private int count;
+
+    private Series(int history) {
+      totals = new long[history];
+    }
+  }
+
+  private final int history;
+  private final double smoothing;
+  private final Map<String, Series> seriesByTimer = new ConcurrentHashMap<>();
+  private volatile boolean enabled;
+
+  /**
+   * Creates a new set of statistics.
+   *
+   * @param history the number of runs of each timer to calculate percentiles over.
+   */
+  CodeTimerStatistics(int history) {
+    if (history <= 0) {
+      throw new IllegalArgumentException("History must be positive: " + history);
+    }
+    this.history = history;
+    this.smoothing = 2.0 / (history + 1);
+  }
+
+  /**
+   * @return the statistics that {@link CodeTimer} reports to.
+   */
+  public static CodeTimerStatistics getInstance() {
+    return INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables collection. Disabling collection discards what has been collected.
+   *
+   * @param enabled whether to collect statistics.
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      seriesByTimer.clear();
+    }
+  }
+
+  /**
+   * Records one run of a timer.
+   *
+   * @param timerName the name of the timer.
+   * @param totalNanos the total time of the run.
+   * @param sectionNanos the time spent in each section during the run.
+   */
+  public void record(String timerName, long totalNanos, Map<String, Long> sectionNanos) {
+    if (!enabled) {
+      return;
+    }
+    Series series = seriesByTimer.computeIfAbsent(timerName, name -> new Series(history));
+    synchronized (series) {
+      series.totals[series.next] = totalNanos;
+      series.next = (series.next + 1) % history;
+      series.count = Math.min(series.count + 1, history);
+
+      // Sections that did not run this time decay towards zero.
+      series.averages.replaceAll((section, average) -> average * (1 - smoothing));
+      for (var entry : sectionNanos.entrySet()) {
+        double millis = entry.getValue() / 1_000_000.0;
+        series.averages.merge(entry.getKey(), smoothing * millis, Double::sum);
+      }
+    }
+  }
+
+  /**
+   * Returns the percentiles of the recent runs of a timer.
+   *
+   * @param timerName the name of the timer.
+   * @return the percentiles, or {@code null} if the timer has not run since collection was enabled.
+   */
+  public @Nullable Percentiles getPercentiles(String timerName) {
+    Series series = seriesByTimer.get(timerName);
+    if (series == null) {
+      return null;
+    }
+    long[] totals;
+    synchronized (series) {
+      totals = Arrays.copyOf(series.totals, series.count);
+    }
+    if (totals.length == 0) {
+      return null;
+    }
+    Arrays.sort(totals);
+    return new Percentiles(
+        totals.length,
+        percentile(totals, 0.50),
+        percentile(totals, 0.95),
+        percentile(totals, 0.99),
+        totals[totals.length - 1] / 1_000_000.0);
+  }
+
+  /**
+   * Returns the sections of a timer that take the most time on average.
+   *
+   * @param timerName the name of the timer.
+   * @param limit the maximum number of sections to return.
+   * @return the sections, slowest first.
+   */
+  public List<Section> getSlowestSections(String timerName, int limit) {
+    Series series = seriesByTimer.get(timerName);
+    if (series == null) {
+      return List.of();
+    }
+    List<Section> sections = new ArrayList<>();
+    synchronized (series) {
+      series.averages.forEach((name, average) -> sections.add(new Section(name, average)));
+    }
+    sections.sort(Comparator.comparingDouble(Section::averageMillis).reversed());
+    return sections.subList(0, Math.min(limit, sections.size()));
+  }
+
+  /** Discards everything that has been collected. */
+  public void clear() {
+    seriesByTimer.clear();
+  }
+
+  /** Nearest-rank percentile of sorted nanosecond values, in milliseconds. */
+  private static double percentile(long[] sorted, double fraction) {
+    int rank = (int) Math.ceil(fraction * sorted.length);
+    return sorted[Math.max(rank - 1, 0)] / 1_000_000.0;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records every section timed by a {@link CodeTimer} while a recording is in progress, so that the
+ * sections can be laid out on a timeline. Recordings can be written in the Chrome trace event
+ * format, which can be opened in {@code chrome://tracing} or Perfetto.
+ *
+ * <p>All methods are thread safe.
+ */
+public final class CodeTimerTrace {
+  /** The most events kept in one recording; later events are dropped. */
+  private static final int MAX_EVENTS = 1_000_000;
+
+  private static final CodeTimerTrace INSTANCE = new CodeTimerTrace(MAX_EVENTS);
+
+  /**
+   * A completed section.
+   *
+   * @param timerName the name of the timer the section belongs to.
+   * @param section the id of the section.
+   * @param threadId the id of the thread that ran the section.
+   * @param threadName the name of the thread that ran the section.
+   * @param startNanos when the section started, relative to the start of the recording.
+   * @param durationNanos how long the section took.
+   */
+  public record Event(
+      String timerName,
+      String section,
+      long threadId,
+      String threadName,
+      long startNanos,
+      long durationNanos) {}
+
+  /**
+   * The events of a finished recording.
+   *
+   * @param events the events, in the order their sections finished.
+   * @param dropped the number of events that did not fit in the recording.
+   */
+  public record Recording(List<Event> events, int dropped) {
+    /**
+     * Writes the recording as a Chrome trace event file. Each section becomes a complete ({@code
+     * "X"}) event on the thread that ran it, with the timer name as its category.
+     *
+     * @param out the writer to write the JSON to.
+     * @throws IOException if the recording could not be written.
+     */
+    public void writeChromeTrace(Writer out) throws IOException {
+      Map<Long, String> threads = new LinkedHashMap<>();
+      for (Event event : events) {
+        threads.putIfAbsent(event.threadId(), event.threadName());
+      }
+
+      JsonWriter json = new JsonWriter(out);
+      json.beginObject();
+      json.name("displayTimeUnit").value("ms");
+      json.name("traceEvents").beginArray();
+      for (var thread : threads.entrySet()) {
+        json.beginObject();
+        json.name("name").value("thread_name");
+        json.name("ph").value("M");
+        json.name("pid").value(1);
+        json.name("tid").value(thread.getKey());
+        json.name("args").beginObject().name("name").value(thread.getValue()).endObject();
+        json.endObject();
+      }
+      for (Event event : events) {
+        json.beginObject();
+        json.name("name").value(event.section());
+        json.name("cat").value(event.timerName());
+        json.name("ph").value("X");
+        json.name("pid").value(1);
+        json.name("tid").value(event.threadId());
+        json.name("ts").value(event.startNanos() / 1000.0);
+        json.name("dur").value(event.durationNanos() / 1000.0);
+        json.endObject();
+      }
+      json.endArray();
+      json.endObject();
+      json.flush();
+    }
+  }
+
+  private final int maxEvents;
+  private final List<Event> events = new ArrayList<>();
+  private volatile boolean recording;
+  private long originNanos;
+  private int dropped;
+
+  /**
+   * Creates a new trace.
+   *
+   * @param maxEvents the most events to keep in one recording.
+   */
+  CodeTimerTrace(int maxEvents) {
+    this.maxEvents = maxEvents;
+  }
+
+  /**
+   * @return the trace that {@link CodeTimer} reports to.
+   */
+  public static CodeTimerTrace getInstance() {
+    return INSTANCE;
+  }
+
+  public boolean isRecording() {
+    return recording;
+  }
+
+  /** Starts a new recording, discarding any events from an earlier one. */
+  public synchronized void start() {
+    events.clear();
+    dropped = 0;
+    originNanos = System.nanoTime();
+    recording = true;
+  }
+
+  /**
+   * Stops recording.
+   *
+   * @return the events recorded since {@link #start()}.
+   */
+  public synchronized Recording stop() {
+    recording = false;
+    var recording = new Recording(List.copyOf(events), dropped);
+    events.clear();
+    return recording;
+  }
+
+  /**
+   * Adds a completed section to the recording, if one is in progress.
+   *
+   * @param timerName the name of the timer the section belongs to.
+   * @param section the id of the section.
+   * @param startNanos the {@link System#nanoTime()} at which the section started.
+   * @param endNanos the {@link System#nanoTime()} at which the section ended.
+   */
+  synchronized void add(String timerName, String section, long startNanos, long endNanos) {
+    if (!recording || startNanos < originNanos) {
+      return;
+    }
+    if (events.size() >= maxEvents) {
+      dropped++;
+      return;
+    }
+    Thread thread = Thread.currentThread();
+    events.add(
+        new Event(
+            timerName,
+            section,
+            thread.threadId(),
+            thread.getName(),
+            startNanos - originNanos,
+            endNanos - startNanos));
+  }
+}
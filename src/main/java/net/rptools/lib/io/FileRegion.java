@@ -0,0 +1,164 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A contiguous range of bytes in a file. The file is only opened while the region is being read,
+ * so a region can be held for a long time without keeping a file handle open.
+ *
+ * <p>The file is expected not to change while the region is in use, which holds for the content
+ * addressed files of the asset cache.
+ *
+ * @param path the file holding the data.
+ * @param offset the offset of the first byte of the region.
+ * @param length the number of bytes in the region.
+ */
+public record FileRegion(Path path, long offset, long length) {
+
+  /**
+   * Creates a region covering the whole of a file.
+   *
+   * @param path the file.
+   * @return the region.
+   * @throws IOException if the size of the file can not be read.
+   */
+  public static FileRegion of(Path path) throws IOException {
+    return new FileRegion(path, 0, Files.size(path));
+  }
+
+  /**
+   * Reads part of the region into a buffer, with a positioned read of the file. Bytes are read
+   * until the buffer is full or the end of the region is reached.
+   *
+   * @param position the offset within the region of the first byte to read.
+   * @param dst the buffer to read into, from its position up to its limit.
+   * @return the number of bytes read.
+   * @throws IOException if the file can not be read.
+   */
+  public int read(long position, ByteBuffer dst) throws IOException {
+    if (position < 0 || position > length) {
+      throw new IndexOutOfBoundsException(position + " outside of " + length);
+    }
+    int wanted = (int) Math.min(dst.remaining(), length - position);
+    ByteBuffer target = dst.slice().limit(wanted);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (target.hasRemaining()) {
+        if (channel.read(target, offset + position + target.position()) < 0) {
+          throw new IOException("Unexpected end of " + path);
+        }
+      }
+    }
+    dst.position(dst.position() + wanted);
+    return wanted;
+  }
+
+  /**
+   * Copies the region into a new array.
+   *
+   * @return the bytes of the region.
+   * @throws IOException if the file can not be read.
+   */
+  public byte[] readAllBytes() throws IOException {
+    byte[] bytes = new byte[Math.toIntExact(length)];
+    read(0, ByteBuffer.wrap(bytes));
+    return bytes;
+  }
+
+  /**
+   * Opens a stream over the region. The stream reads through a file channel rather than a mapping
+   * so the file is released as soon as the stream is closed.
+   *
+   * @return the stream, which must be closed by the caller.
+   * @throws IOException if the file can not be opened.
+   */
+  public InputStream openStream() throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      channel.position(offset);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    InputStream in = Channels.newInputStream(channel);
+    return new InputStream() {
+      private long remaining = length;
+
+      @Override
+      public int read() throws IOException {
+        if (remaining <= 0) {
+          return -1;
+        }
+        int b = in.read();
+        if (b >= 0) {
+          remaining--;
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+          return -1;
+        }
+        int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read > 0) {
+          remaining -= read;
+        }
+        return read;
+      }
+
+      @Override
+      public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+      }
+
+      @Override
+      public void close() throws IOException {
+        in.close();
+      }
+    };
+  }
+
+  /**
+   * Writes the region to a stream.
+   *
+   * @param out the stream to write to.
+   * @throws IOException if the file can not be read or the stream can not be written.
+   */
+  public void transferTo(OutputStream out) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long position = offset;
+      long end = offset + length;
+      var target = Channels.newChannel(out);
+      while (position < end) {
+        long written = channel.transferTo(position, end - position, target);
+        if (written <= 0) {
+          throw new IOException("Unexpected end of " + path);
+        }
+        position += written;
+      }
+    }
+  }
+}
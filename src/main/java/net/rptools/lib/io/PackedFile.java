@@ -33,6 +33,7 @@
 import javax.xml.parsers.ParserConfigurationException;
 import net.rptools.lib.CodeTimer;
 import net.rptools.lib.FileUtil;
+import net.rptools.lib.MD5Key;
 import net.rptools.lib.ModelVersionManager;
 import net.rptools.maptool.model.Asset;
 import net.rptools.maptool.model.AssetManager;
@@ -90,8 +91,8 @@
  */
 public class PackedFile implements AutoCloseable {
 
-  private static final String PROPERTY_FILE = "properties.xml";
-  private static final String CONTENT_FILE = "content.xml";
+  public static final String PROPERTY_FILE = "properties.xml";
+  public static final String CONTENT_FILE = "content.xml";
 
   private static final Logger log = LogManager.getLogger(PackedFile.class);
 
@@ -643,8 +644,9 @@ public Asset getAsset(String path) throws IOException {
         }
 
         if (embeddedImage == null) {
-          byte[] image = getFileAsInputStream(path + "." + extension).readAllBytes();
-          return Asset.createImageAsset(name, image);
+          try (InputStream in = getFileAsInputStream(path + "." + extension)) {
+            return AssetManager.createCachedAsset(new MD5Key(id), name, Asset.Type.IMAGE, in);
+          }
         } else {
           var asset = Asset.createImageAsset(name, embeddedImage);
           AssetManager.putAsset(asset);
@@ -0,0 +1,358 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import com.thoughtworks.xstream.XStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import net.rptools.lib.FileUtil;
+import net.rptools.maptool.util.PersistenceUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Write-only, streaming counterpart of {@link PackedFile}.
+ *
+ * <p>Where {@link PackedFile} explodes every entry into a temporary directory and only builds the
+ * zip when {@link PackedFile#save()} is called, this class writes each entry straight into a zip
+ * file next to the destination as it is added. Objects are serialized by XStream directly into the
+ * zip stream, so no entry is ever held in memory as a whole. The resulting file has the same layout
+ * as one written by {@link PackedFile} and can be read back with it.
+ *
+ * <p>Entries are written in the order they are added. The properties file is written when {@link
+ * #commit()} is called, after which the finished file is moved over the destination, atomically if
+ * the file system supports it, or copied over it where it can not be replaced by a move (for
+ * example when a synchronised folder has it locked). If the writer is closed without being
+ * committed the partial file is deleted and the destination is left untouched.
+ *
+ * <p>Instances are not thread safe; callers that prepare entries on several threads must hand them
+ * to the writer from one thread at a time.
+ */
+public class PackedFileWriter implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(PackedFileWriter.class);
+
+  /** How many times copying over a locked destination is attempted before giving up. */
+  private static final int COPY_ATTEMPTS = 5;
+
+  /** How long to wait between attempts to copy over a locked destination. */
+  private static final long COPY_RETRY_DELAY_MS = 200;
+
+  private final XStream xstream = PersistenceUtil.getConfiguredXStream();
+
+  private final File file; // Destination file
+  private final File partFile; // File being written, in the same directory as the destination
+
+  private final Map<String, Object> propertyMap = new HashMap<>();
+  private final Set<String> writtenPaths = new HashSet<>();
+
+  private ZipOutputStream zout;
+  private boolean committed;
+
+  /**
+   * Creates a new writer that will replace {@code file} once committed.
+   *
+   * @param file the destination file.
+   * @throws IOException if the temporary file can not be created.
+   */
+  public PackedFileWriter(File file) throws IOException {
+    this.file = file.getAbsoluteFile();
+    File dir = this.file.getParentFile();
+    if (dir != null && !dir.exists()) {
+      dir.mkdirs();
+    }
+    partFile = new File(dir, "." + this.file.getName() + ".part");
+    Files.deleteIfExists(partFile.toPath());
+    zout = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16));
+    zout.setLevel(Deflater.BEST_COMPRESSION);
+  }
+
+  /**
+   * Useful for configuring the xstream for object serialization
+   *
+   * @return the configured {@link XStream}
+   */
+  public XStream getXStream() {
+    return xstream;
+  }
+
+  /**
+   * Stores a new key/value pair into the property map. Existing keys are overwritten.
+   *
+   * @param key the key for the value
+   * @param value any POJO; will be serialized into XML when the writer is committed
+   * @return the previous value for the given key
+   */
+  public Object setProperty(String key, Object value) {
+    return propertyMap.put(key, value);
+  }
+
+  /**
+   * Serializes the given object as the main content of the packed file. See {@link
+   * PackedFile#getContent()}.
+   *
+   * @param content the content to be stored
+   * @throws IOException If an I/O error occurs
+   */
+  public void setContent(Object content) throws IOException {
+    putObject(PackedFile.CONTENT_FILE, content);
+  }
+
+  /**
+   * Serializes the object to XML and streams it into a new compressed entry.
+   *
+   * @param path location within the ZIP file
+   * @param obj the object to be written
+   * @throws IOException If an I/O error occurs
+   */
+  public void putObject(String path, Object obj) throws IOException {
+    startEntry(new ZipEntry(path));
+    Writer w = new BufferedWriter(new OutputStreamWriter(unclosable(zout), StandardCharsets.UTF_8));
+    xstream.toXML(obj, w);
+    w.write(System.lineSeparator()); // Not necessary but editing the file looks nicer. ;-)
+    w.flush();
+    zout.closeEntry();
+  }
+
+  /**
+   * Writes binary data into a new compressed entry.
+   *
+   * @param path location within the ZIP file
+   * @param data the binary data to be written
+   * @throws IOException If an I/O error occurs
+   */
+  public void putFile(String path, byte[] data) throws IOException {
+    startEntry(new ZipEntry(path));
+    zout.write(data);
+    zout.closeEntry();
+  }
+
+  /**
+   * Writes binary data into a new compressed entry.
+   *
+   * @param path location within the ZIP file
+   * @param is the binary data to be written
+   * @throws IOException If an I/O error occurs
+   */
+  public void putFile(String path, InputStream is) throws IOException {
+    startEntry(new ZipEntry(path));
+    IOUtils.copy(is, zout);
+    zout.closeEntry();
+  }
+
+  /**
+   * Opens a new compressed entry and returns a stream to write its data to. The entry is finished
+   * when the stream is closed, which must happen before any other entry is added.
+   *
+   * @param path location within the ZIP file
+   * @return Stream that can be used to write the data.
+   * @throws IOException If an I/O error occurs
+   */
+  public OutputStream getOutputStream(String path) throws IOException {
+    startEntry(new ZipEntry(path));
+    return new BufferedOutputStream(
+        new FilterOutputStream(zout) {
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+          }
+
+          @Override
+          public void close() throws IOException {
+            flush();
+            zout.closeEntry();
+          }
+        },
+        1 << 16);
+  }
+
+  /**
+   * Writes binary data into a new entry without compressing it. This is meant for data that is
+   * already compressed (most image and audio formats), where deflating again only costs time. The
+   * checksum must have been calculated by the caller, which allows it to be done on another thread.
+   *
+   * @param path location within the ZIP file
+   * @param data the binary data to be written
+   * @param crc the CRC-32 of {@code data}
+   * @throws IOException If an I/O error occurs
+   * @see #crc(byte[])
+   */
+  public void putStoredFile(String path, byte[] data, long crc) throws IOException {
+    ZipEntry entry = new ZipEntry(path);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(data.length);
+    entry.setCompressedSize(data.length);
+    entry.setCrc(crc);
+    startEntry(entry);
+    zout.write(data);
+    zout.closeEntry();
+  }
+
+  /**
+   * Returns whether an entry has already been written to the given path.
+   *
+   * @param path location within the ZIP file
+   * @return {@code true} if the path has been written.
+   */
+  public boolean hasFile(String path) {
+    return writtenPaths.contains(path);
+  }
+
+  /**
+   * Writes the properties, finishes the zip file and moves it over the destination file.
+   *
+   * @throws IOException If an I/O error occurs
+   */
+  public void commit() throws IOException {
+    if (!propertyMap.isEmpty()) {
+      putObject(PackedFile.PROPERTY_FILE, propertyMap);
+    }
+    zout.close();
+    zout = null;
+
+    try {
+      Files.move(
+          partFile.toPath(),
+          file.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // Some file systems refuse atomic moves, and synchronised folders (Google Drive, Dropbox)
+      // have a tendency to lock the destination and refuse the rename altogether.
+      log.debug("Could not move {} over {}, falling back to a copy", partFile, file, e);
+      copyOverDestination();
+    }
+    committed = true;
+  }
+
+  /**
+   * Copies the finished file over the destination, retrying a few times in case the destination is
+   * briefly locked. The previous destination is backed up first and restored if every attempt
+   * fails, so a failed copy never leaves a half written campaign behind.
+   *
+   * @throws IOException If the file could not be copied.
+   */
+  private void copyOverDestination() throws IOException {
+    File bakFile = null;
+    if (file.exists()) {
+      bakFile = File.createTempFile(file.getName(), ".bak");
+      FileUtil.copyFile(file, bakFile);
+    }
+
+    IOException failure = null;
+    for (int attempt = 0; attempt < COPY_ATTEMPTS; attempt++) {
+      try {
+        FileUtil.copyFile(partFile, file);
+        failure = null;
+        break;
+      } catch (IOException e) {
+        failure = e;
+        log.debug("Copy of {} over {} failed, attempt {}", partFile, file, attempt + 1, e);
+        try {
+          Thread.sleep(COPY_RETRY_DELAY_MS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+
+    if (failure != null) {
+      if (bakFile != null) {
+        try {
+          FileUtil.copyFile(bakFile, file);
+          bakFile.delete();
+        } catch (IOException e) {
+          log.error("Could not restore {}, the previous version is in {}", file, bakFile, e);
+        }
+      }
+      throw failure;
+    }
+    Files.deleteIfExists(partFile.toPath());
+    if (bakFile != null) {
+      bakFile.delete();
+    }
+  }
+
+  /**
+   * Closes the writer. If {@link #commit()} has not been called the partially written file is
+   * discarded.
+   */
+  @Override
+  public void close() {
+    IOUtils.closeQuietly(zout);
+    zout = null;
+    if (!committed && partFile.exists()) {
+      partFile.delete();
+    }
+  }
+
+  /**
+   * Calculates the CRC-32 of the data, for use with {@link #putStoredFile(String, byte[], long)}.
+   *
+   * @param data the data to calculate the checksum of.
+   * @return the checksum.
+   */
+  public static long crc(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return crc.getValue();
+  }
+
+  private void startEntry(ZipEntry entry) throws IOException {
+    if (zout == null) {
+      throw new IOException("PackedFileWriter for " + file + " is closed");
+    }
+    if (!writtenPaths.add(entry.getName())) {
+      throw new IOException("Duplicate entry '" + entry.getName() + "' in " + file);
+    }
+    zout.putNextEntry(entry);
+  }
+
+  /** Protects the zip stream from being closed by writers wrapped around a single entry. */
+  private static OutputStream unclosable(OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+}
@@ -24,6 +24,8 @@
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -39,6 +41,7 @@
 import javax.crypto.NoSuchPaddingException;
 import javax.swing.*;
 import javax.swing.text.BadLocationException;
+import net.rptools.lib.CodeTimerTrace;
 import net.rptools.lib.FileUtil;
 import net.rptools.lib.MD5Key;
 import net.rptools.lib.OsDetection;
@@ -61,6 +64,7 @@
 import net.rptools.maptool.client.ui.connecttoserverdialog.ConnectToServerDialogPreferences;
 import net.rptools.maptool.client.ui.exportdialog.ExportDialog;
 import net.rptools.maptool.client.ui.htmlframe.HTMLOverlayManager;
+import net.rptools.maptool.client.ui.macroprofiler.MacroProfilerDialog;
 import net.rptools.maptool.client.ui.mappropertiesdialog.MapPropertiesDialog;
 import net.rptools.maptool.client.ui.players.PlayerDatabaseDialog;
 import net.rptools.maptool.client.ui.preferencesdialog.PreferencesDialog;
@@ -286,7 +290,7 @@ protected void executeAction() {
                 // Save it
                 ZipEntry entry = new ZipEntry("assets/" + asset.getMD5Key().toString());
                 out.putNextEntry(entry);
-                out.write(asset.getData());
+                asset.writeData(out);
               }
             }
 
@@ -1186,6 +1190,70 @@ protected void executeAction() {
         }
       };
 
+  public static final Action TOGGLE_SHOW_PERFORMANCE_OVERLAY =
+      new TranslatedClientAction("action.showPerformanceOverlay") {
+
+        @Override
+        public boolean isSelected() {
+          return AppState.isShowPerformanceOverlay();
+        }
+
+        @Override
+        protected void executeAction() {
+          AppState.setShowPerformanceOverlay(!AppState.isShowPerformanceOverlay());
+          MapTool.getFrame().refresh();
+        }
+      };
+
+  public static final Action TOGGLE_RECORD_RENDER_TRACE =
+      new TranslatedClientAction("action.recordRenderTrace") {
+
+        @Override
+        public boolean isSelected() {
+          return CodeTimerTrace.getInstance().isRecording();
+        }
+
+        @Override
+        protected void executeAction() {
+          var trace = CodeTimerTrace.getInstance();
+          if (!trace.isRecording()) {
+            trace.start();
+            return;
+          }
+          var recording = trace.stop();
+
+          JFileChooser chooser = MapTool.getFrame().getSaveFileChooser();
+          chooser.setDialogTitle(I18N.getText("msg.title.saveRenderTrace"));
+          chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+          if (chooser.showSaveDialog(MapTool.getFrame()) != JFileChooser.APPROVE_OPTION) {
+            return;
+          }
+          File saveFile = chooser.getSelectedFile();
+          if (!saveFile.getName().contains(".")) {
+            saveFile = new File(saveFile.getAbsolutePath() + ".json");
+          }
+          if (saveFile.exists() && !MapTool.confirm("msg.confirm.fileExists")) {
+            return;
+          }
+
+          try (Writer writer = Files.newBufferedWriter(saveFile.toPath(), StandardCharsets.UTF_8)) {
+            recording.writeChromeTrace(writer);
+          } catch (IOException ioe) {
+            MapTool.showError(I18N.getString("msg.error.failedSavingRenderTrace"), ioe);
+          }
+        }
+      };
+
+  public static final Action SHOW_MACRO_PROFILER =
+      new TranslatedClientAction("action.macroProfiler") {
+
+        @Override
+        protected void executeAction() {
+          new MacroProfilerDialog().setVisible(true);
+        }
+      };
+
   public static final Action TOGGLE_LOG_CONSOLE =
       new TranslatedClientAction("action.openLogConsole") {
 
@@ -2267,6 +2335,28 @@ public static void loadCampaign(final File campaignFile) {
     new CampaignLoader(campaignFile).execute();
   }
 
+  /**
+   * Recovers a campaign by loading the campaign file an autosave journal is based on and replaying
+   * the journal on top of it.
+   *
+   * @param journalFile the autosave journal.
+   */
+  public static void recoverCampaign(final File journalFile) {
+    if (AppState.testBackgroundTaskLock()) {
+      MapTool.showError("msg.error.failedLoadCampaignLock");
+      return;
+    }
+
+    File baseFile;
+    try {
+      baseFile = CampaignJournal.getBaseFile(journalFile).file();
+    } catch (IOException e) {
+      MapTool.showError("msg.error.failedLoadCampaign", e);
+      return;
+    }
+    new CampaignLoader(baseFile, journalFile).execute();
+  }
+
   /**
    * Loader class that encapsulates UI interaction for status, error reporting, and the async
    * loading
@@ -2274,10 +2364,16 @@ public static void loadCampaign(final File campaignFile) {
   private static class CampaignLoader extends SwingWorker<PersistedCampaign, String> {
 
     private File campaignFile;
+    private File journalFile; // Autosave journal to replay, if recovering
     private int maxWaitForLock = 30;
 
     public CampaignLoader(File campaignFile) {
+      this(campaignFile, null);
+    }
+
+    private CampaignLoader(File campaignFile, File journalFile) {
       this.campaignFile = campaignFile;
+      this.journalFile = journalFile;
     }
 
     /**
@@ -2301,6 +2397,9 @@ protected PersistedCampaign doInBackground() throws Exception {
           MapTool.getBackupManager().backup(campaignFile);
         }
         // Load
+        if (journalFile != null) {
+          return CampaignJournal.replay(journalFile);
+        }
         return PersistenceUtil.loadCampaign(campaignFile);
       } finally {
         AppState.releaseBackgroundTaskLock();
@@ -2338,6 +2437,9 @@ protected void done() {
           current.getZoneScale().reset();
         }
         MapTool.getAutoSaveManager().tidy();
+        if (journalFile == null) {
+          MapTool.getAutoSaveManager().campaignLoaded(campaignFile, campaign.campaign);
+        }
 
         // UI related stuff
         MapTool.getFrame().getCommandPanel().clearAllIdentities();
@@ -2412,10 +2514,12 @@ private static class CampaignSaver extends SwingWorker<Object, String> {
     private File file;
     private Runnable onSuccess;
     private int maxWaitForLock = 30;
+    private final AutoSaveManager.SaveMark saveMark;
 
     public CampaignSaver(File file, Runnable onSuccess) {
       this.file = file;
       this.onSuccess = onSuccess;
+      this.saveMark = MapTool.getAutoSaveManager().markSave(MapTool.getCampaign());
     }
 
     @Override
@@ -2428,6 +2532,8 @@ protected Object doInBackground() throws Exception {
       try {
         long start = System.currentTimeMillis();
         PersistenceUtil.saveCampaign(MapTool.getCampaign(), file);
+        // The save holds everything the autosave journal did, so it can start over
+        MapTool.getAutoSaveManager().campaignSaved(file, saveMark);
 
         publish(I18N.getString("msg.info.campaignSaved"));
 
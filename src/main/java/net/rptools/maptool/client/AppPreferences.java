@@ -61,6 +61,46 @@ public static PreferenceStore getAppPreferenceStore() {
               .setLabel("Preferences.label.autosave")
               .setTooltip("Preferences.label.autosave.tooltip");
 
+  /**
+   * The format campaigns are saved in. XStream campaigns can be opened by older versions of
+   * MapTool, so they remain the default; binary campaigns are faster to save and load but can only
+   * be read by versions that know the format, and must be opted into.
+   */
+  public static final Preference<CampaignFileFormat> campaignFileFormat =
+      store
+          .defineEnum(CampaignFileFormat.class, "campaignFileFormat", CampaignFileFormat.XSTREAM)
+          .setLabel("Preferences.label.campaignFileFormat")
+          .setTooltip("Preferences.label.campaignFileFormat.tooltip");
+
+  /** Whether maps of binary campaigns are only read from the campaign file when first used. */
+  public static final Preference<Boolean> loadMapsOnDemand =
+      store
+          .defineBoolean("loadMapsOnDemand", true)
+          .setLabel("Preferences.label.loadMapsOnDemand")
+          .setTooltip("Preferences.label.loadMapsOnDemand.tooltip");
+
+  /**
+   * How many minutes a map that isn't being displayed may go unused before it is unloaded from
+   * memory. Zero keeps all maps loaded.
+   */
+  public static final Preference.Numeric<Integer> unloadIdleMapsMinutes =
+      (Preference.Numeric<Integer>)
+          store
+              .defineInteger("unloadIdleMapsMinutes", 30)
+              .setLabel("Preferences.label.unloadIdleMaps")
+              .setTooltip("Preferences.label.unloadIdleMaps.tooltip");
+
+  /**
+   * How many megabytes decoded images may use before the least recently used ones are evicted.
+   * Zero uses a quarter of the maximum heap size.
+   */
+  public static final Preference.Numeric<Integer> imageCacheSizeMB =
+      (Preference.Numeric<Integer>)
+          store
+              .defineInteger("imageCacheSizeMB", 0)
+              .setLabel("Preferences.label.performance.imageCache")
+              .setTooltip("Preferences.label.performance.imageCache.tooltip");
+
   public static final Preference.Numeric<Integer> chatAutoSaveTimeInMinutes =
       (Preference.Numeric<Integer>)
           store
@@ -738,6 +778,17 @@ public static PreferenceStore getAppPreferenceStore() {
           "Preferences.label.macros.permissions.tooltip",
           false);
 
+  /**
+   * Whether trusted macros are evaluated on a background thread instead of the Swing thread, see
+   * {@link MacroExecutor}.
+   */
+  public static final Preference<Boolean> runTrustedMacrosInBackground =
+      store.defineBoolean(
+          "runTrustedMacrosInBackground",
+          "Preferences.label.macros.background",
+          "Preferences.label.macros.background.tooltip",
+          false);
+
   public static final Preference<Boolean> loadMruCampaignAtStart =
       store.defineBoolean(
           "loadMRUCampaignAtStart",
@@ -876,6 +927,25 @@ public String toString() {
     }
   }
 
+  /** The formats campaign files can be written in. Both can always be read. */
+  public enum CampaignFileFormat {
+    /** XStream XML, as written by all earlier versions of MapTool. */
+    XSTREAM("campaignFileFormat.xstream"),
+    /** Length-delimited protobuf entries, see {@code ProtobufCampaignFormat}. */
+    PROTOBUF("campaignFileFormat.protobuf");
+
+    private final String displayName;
+
+    CampaignFileFormat(String key) {
+      displayName = I18N.getString(key);
+    }
+
+    @Override
+    public String toString() {
+      return displayName;
+    }
+  }
+
   static {
     if (PRINT_KEYS_MISSING_I18N_ON_STARTUP) {
       store.getDefinedPreferences().stream()
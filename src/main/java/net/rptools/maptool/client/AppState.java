@@ -19,6 +19,7 @@
 import java.io.File;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import net.rptools.lib.CodeTimerStatistics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -43,6 +44,7 @@ public class AppState {
   private static boolean zoomLocked = false;
 
   private static boolean collectProfilingData = false;
+  private static boolean showPerformanceOverlay = false;
   private static boolean isLoggingToConsole = false;
   private static boolean isLockedForBackgroundTask = false;
   private static boolean enableFullScreenUI = true;
@@ -71,6 +73,21 @@ public static void setCollectProfilingData(boolean flag) {
     collectProfilingData = flag;
   }
 
+  public static boolean isShowPerformanceOverlay() {
+    return showPerformanceOverlay;
+  }
+
+  /**
+   * Shows or hides the performance overlay. The {@link CodeTimerStatistics} it reports are only
+   * collected while it is shown.
+   *
+   * @param flag whether to show the overlay.
+   */
+  public static void setShowPerformanceOverlay(boolean flag) {
+    showPerformanceOverlay = flag;
+    CodeTimerStatistics.getInstance().setEnabled(flag);
+  }
+
   public static boolean isLoggingToConsole() {
     return isLoggingToConsole;
   }
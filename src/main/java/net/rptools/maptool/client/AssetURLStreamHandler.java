@@ -57,7 +57,7 @@ public InputStream getInputStream() throws IOException {
         if (Arrays.stream(url.getQuery().split("&"))
             .anyMatch(q -> q.equalsIgnoreCase("raw=true"))) {
           var asset = AssetManager.getAssetAndWait(new MD5Key(url.getHost()));
-          return new ByteArrayInputStream(asset.getData());
+          return asset.getDataAsInputStream();
         }
       }
 
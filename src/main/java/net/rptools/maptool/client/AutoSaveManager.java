@@ -14,22 +14,64 @@
  */
 package net.rptools.maptool.client;
 
+import com.google.common.eventbus.Subscribe;
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.*;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.events.MapToolEventBus;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.zones.BoardChanged;
+import net.rptools.maptool.model.zones.DrawableAdded;
+import net.rptools.maptool.model.zones.DrawableChanged;
+import net.rptools.maptool.model.zones.DrawableRemoved;
+import net.rptools.maptool.model.zones.FogChanged;
+import net.rptools.maptool.model.zones.GridChanged;
+import net.rptools.maptool.model.zones.InitiativeListChanged;
+import net.rptools.maptool.model.zones.LabelAdded;
+import net.rptools.maptool.model.zones.LabelChanged;
+import net.rptools.maptool.model.zones.LabelRemoved;
+import net.rptools.maptool.model.zones.MaskTopologyChanged;
+import net.rptools.maptool.model.zones.TokenEdited;
+import net.rptools.maptool.model.zones.TokensAdded;
+import net.rptools.maptool.model.zones.TokensChanged;
+import net.rptools.maptool.model.zones.TokensRemoved;
+import net.rptools.maptool.model.zones.WallTopologyChanged;
+import net.rptools.maptool.model.zones.ZoneAdded;
+import net.rptools.maptool.model.zones.ZoneLightingChanged;
+import net.rptools.maptool.util.CampaignJournal;
 import net.rptools.maptool.util.PersistenceUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
+ * Attempts to recover campaigns when the application crashes.
+ *
+ * <p>Changes to zones and tokens are tracked through the zone events. Once the campaign has been
+ * saved in full - by the user, or by the first autosave of a campaign that has no file yet - each
+ * autosave only appends the zones and tokens that changed since the previous one to a {@link
+ * CampaignJournal}. The next full save compacts the journal into the campaign file. Recovery loads
+ * the file the journal is based on and replays the journal on top of it.
+ *
  * @author tylere
- *     <p>Attempts to recover campaigns when the application crashes.
  */
 public class AutoSaveManager {
 
   private static final Logger log = LogManager.getLogger(AutoSaveManager.class);
 
+  /** Journals larger than this are replaced by a full autosave. */
+  private static final long MAX_JOURNAL_SIZE = 64L * 1024 * 1024;
+
   private Timer autoSaveTimer;
   private long lastAutoSave = -1;
 
@@ -38,6 +80,37 @@ public class AutoSaveManager {
           AppUtil.getAppHome("autosave"), // $NON-NLS-1$
           "AutoSave" + AppConstants.CAMPAIGN_FILE_EXTENSION);
 
+  /** The journal of the changes made since the campaign was last saved in full. */
+  public static final File JOURNAL_FILE =
+      new File(AppUtil.getAppHome("autosave"), "AutoSave.journal"); // $NON-NLS-1$
+
+  /**
+   * The state of the change tracking when a full save of a campaign starts.
+   *
+   * @param campaign the campaign being saved.
+   * @param generation the last change included in the save.
+   * @param assetIds the assets included in the save.
+   */
+  public record SaveMark(Campaign campaign, long generation, Set<MD5Key> assetIds) {}
+
+  /** The campaign the journal applies to; {@code null} if the next autosave must be full. */
+  private Campaign baseCampaign;
+
+  /** The file {@link #baseCampaign} was last saved in full to, as it was after the save. */
+  private CampaignJournal.BaseFile baseFile;
+
+  /** Incremented for each change, so changes made while a save is running can be told apart. */
+  private long generation;
+
+  /** The zones that must be journaled in full, with the generation of their last change. */
+  private final Map<GUID, Long> dirtyZones = new HashMap<>();
+
+  /** The tokens that were added, changed or removed, per zone. */
+  private final Map<GUID, Map<GUID, Long>> dirtyTokens = new HashMap<>();
+
+  /** The assets that are in the base file or the journal. */
+  private final Set<MD5Key> savedAssets = new HashSet<>();
+
   /**
    * Queries the auto-save increment from {@link AppPreferences} and starts a new timer.
    *
@@ -46,6 +119,7 @@ public class AutoSaveManager {
    */
   public void start() {
     if (autoSaveTimer == null) {
+      new MapToolEventBus().getMainEventBus().register(this);
       autoSaveTimer = new Timer(1000, (Object) -> execute());
       autoSaveTimer.setRepeats(false);
       log.debug("Logging level of 'DEBUG' sets timeout to seconds"); // $NON-NLS-1$
@@ -91,31 +165,233 @@ private boolean executeAndContinue() {
 
     MapTool.getFrame().setStatusMessage(I18N.getString("AutoSaveManager.status.autoSaving"));
 
-    long startCopy = System.currentTimeMillis();
     // This occurs on the event dispatch thread, so it's ok to mess with the models.  (XXX Is this
     // true?  What about
     // updates coming in on the network?)
-    // We need to clone the campaign so that we can save in the background, but
-    // not have concurrency issues with the original model.
-    //
-    // NOTE: This is a cheesy way to clone the campaign, but it makes it so that I
-    // don't have to keep all the various models' clone methods updated on each change.
-    final Campaign campaign = new Campaign(MapTool.getCampaign());
-    log.info(
-        "Time to copy Campaign object (ms): "
-            + (System.currentTimeMillis() - startCopy)); // $NON-NLS-1$
-
-    new SaveWorker(campaign).execute();
+    Campaign current = MapTool.getCampaign();
+    if (!canJournal(current)) {
+      long startCopy = System.currentTimeMillis();
+      // We need to clone the campaign so that we can save in the background, but
+      // not have concurrency issues with the original model.
+      //
+      // NOTE: This is a cheesy way to clone the campaign, but it makes it so that I
+      // don't have to keep all the various models' clone methods updated on each change.
+      final SaveMark mark = markSave(current);
+      final Campaign campaign = new Campaign(current);
+      log.info(
+          "Time to copy Campaign object (ms): "
+              + (System.currentTimeMillis() - startCopy)); // $NON-NLS-1$
+
+      new SaveWorker(campaign, mark).execute();
+    } else {
+      long startSnapshot = System.currentTimeMillis();
+      CampaignJournal.Batch batch = createBatch(current);
+      log.info(
+          "Time to collect autosave changes (ms): "
+              + (System.currentTimeMillis() - startSnapshot)); // $NON-NLS-1$
+
+      new JournalWorker(batch, baseFile).execute();
+    }
 
     return false;
   }
 
+  /** Whether the changes to the campaign can be appended to the journal. */
+  private synchronized boolean canJournal(Campaign campaign) {
+    return baseCampaign == campaign
+        && baseFile != null
+        && baseFile.isUnchanged()
+        && JOURNAL_FILE.length() < MAX_JOURNAL_SIZE;
+  }
+
+  /**
+   * Records the state of the change tracking before a full save of the campaign starts. Must be
+   * called on the event dispatch thread.
+   *
+   * @param campaign the campaign that is about to be saved.
+   * @return the mark to pass to {@link #campaignSaved(File, SaveMark)} once the save succeeds.
+   */
+  public synchronized SaveMark markSave(Campaign campaign) {
+    return new SaveMark(campaign, generation, campaign.getAllAssetIds());
+  }
+
+  /**
+   * Called when a full save has succeeded. The journal is discarded, as the file now holds all of
+   * the changes made before the save started; later changes go into a new journal based on the
+   * file.
+   *
+   * @param file the file the campaign was saved to.
+   * @param mark the mark taken before the save started.
+   */
+  public synchronized void campaignSaved(File file, SaveMark mark) {
+    JOURNAL_FILE.delete();
+    if (!AUTOSAVE_FILE.equals(file)) {
+      AUTOSAVE_FILE.delete();
+    }
+    baseCampaign = mark.campaign();
+    baseFile = CampaignJournal.BaseFile.of(file);
+    dirtyZones.values().removeIf(g -> g <= mark.generation());
+    dirtyTokens.values().forEach(tokens -> tokens.values().removeIf(g -> g <= mark.generation()));
+    dirtyTokens.values().removeIf(Map::isEmpty);
+    savedAssets.clear();
+    savedAssets.addAll(mark.assetIds());
+  }
+
+  /**
+   * Called when a campaign has been loaded from a file, which becomes the base of the journal.
+   * Must be called on the event dispatch thread, after the campaign has been installed.
+   *
+   * @param file the campaign file.
+   * @param campaign the loaded campaign.
+   */
+  public synchronized void campaignLoaded(File file, Campaign campaign) {
+    campaignSaved(file, markSave(campaign));
+  }
+
+  private synchronized CampaignJournal.Batch createBatch(Campaign campaign) {
+    var batch = new CampaignJournal.Batch(campaign);
+    for (GUID zoneId : dirtyZones.keySet()) {
+      Zone zone = campaign.getZone(zoneId);
+      if (zone != null) {
+        batch.addZone(zone);
+      }
+    }
+    for (var entry : dirtyTokens.entrySet()) {
+      Zone zone = campaign.getZone(entry.getKey());
+      if (zone != null) {
+        batch.addTokens(zone, entry.getValue().keySet());
+      }
+    }
+    Set<MD5Key> newAssets = campaign.getAllAssetIds();
+    newAssets.removeAll(savedAssets);
+    batch.addAssets(newAssets);
+    savedAssets.addAll(newAssets);
+
+    dirtyZones.clear();
+    dirtyTokens.clear();
+    return batch;
+  }
+
+  /** Forces the next autosave to be a full one, after a batch could not be journaled. */
+  private synchronized void journalFailed() {
+    baseCampaign = null;
+  }
+
+  private synchronized void zoneChanged(Zone zone) {
+    if (zone != null) {
+      dirtyZones.put(zone.getId(), ++generation);
+    }
+  }
+
+  private synchronized void tokensChanged(Zone zone, Collection<Token> tokens) {
+    var zoneTokens = dirtyTokens.computeIfAbsent(zone.getId(), id -> new HashMap<>());
+    for (Token token : tokens) {
+      zoneTokens.put(token.getId(), ++generation);
+    }
+  }
+
+  @Subscribe
+  private void onTokensAdded(TokensAdded event) {
+    tokensChanged(event.zone(), event.tokens());
+  }
+
+  @Subscribe
+  private void onTokensChanged(TokensChanged event) {
+    tokensChanged(event.zone(), event.tokens());
+  }
+
+  @Subscribe
+  private void onTokensRemoved(TokensRemoved event) {
+    tokensChanged(event.zone(), event.tokens());
+  }
+
+  @Subscribe
+  private void onTokenEdited(TokenEdited event) {
+    tokensChanged(event.zone(), List.of(event.token()));
+  }
+
+  @Subscribe
+  private void onZoneAdded(ZoneAdded event) {
+    zoneChanged(event.zone());
+    // Zones are journaled without their tokens. Maps that are not loaded are in the base file.
+    if (event.zone().isContentLoaded()) {
+      tokensChanged(event.zone(), event.zone().getAllTokens());
+    }
+  }
+
+  @Subscribe
+  private void onDrawableAdded(DrawableAdded event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onDrawableChanged(DrawableChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onDrawableRemoved(DrawableRemoved event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onLabelAdded(LabelAdded event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onLabelChanged(LabelChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onLabelRemoved(LabelRemoved event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onFogChanged(FogChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onGridChanged(GridChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onBoardChanged(BoardChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onMaskTopologyChanged(MaskTopologyChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onWallTopologyChanged(WallTopologyChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onZoneLightingChanged(ZoneLightingChanged event) {
+    zoneChanged(event.zone());
+  }
+
+  @Subscribe
+  private void onInitiativeListChanged(InitiativeListChanged event) {
+    zoneChanged(event.initiativeList().getZone());
+  }
+
   private class SaveWorker extends SwingWorker<String, String> {
 
     private Campaign campaign;
+    private SaveMark mark;
 
-    private SaveWorker(Campaign campaign) {
+    private SaveWorker(Campaign campaign, SaveMark mark) {
       this.campaign = campaign;
+      this.mark = mark;
     }
 
     @Override
@@ -127,6 +403,53 @@ protected String doInBackground() throws Exception {
         long startSave = System.currentTimeMillis();
         log.info("Starting autosave..."); // $NON-NLS-1$
         PersistenceUtil.saveCampaign(campaign, AUTOSAVE_FILE);
+        campaignSaved(AUTOSAVE_FILE, mark);
+        String msg =
+            I18N.getText(
+                "AutoSaveManager.status.autoSaveComplete", System.currentTimeMillis() - startSave);
+        log.info(msg);
+        return msg;
+
+      } finally {
+        AppState.releaseBackgroundTaskLock();
+      }
+    }
+
+    @Override
+    protected void done() {
+
+      try {
+        MapTool.getFrame().setStatusMessage(get());
+      } catch (Throwable t) {
+        log.debug("Throwable during autosave: " + t.getCause());
+        if (t.getCause() instanceof AppState.FailedToAcquireLockException)
+          MapTool.getFrame().setStatusMessage(I18N.getText("AutoSaveManager.status.lockFailed"));
+        else MapTool.showError("AutoSaveManager.failed", t.getCause());
+      }
+
+      next(true);
+    }
+  }
+
+  private class JournalWorker extends SwingWorker<String, String> {
+
+    private final CampaignJournal.Batch batch;
+    private final CampaignJournal.BaseFile baseFile;
+
+    private JournalWorker(CampaignJournal.Batch batch, CampaignJournal.BaseFile baseFile) {
+      this.batch = batch;
+      this.baseFile = baseFile;
+    }
+
+    @Override
+    protected String doInBackground() throws Exception {
+
+      AppState.acquireBackgroundTaskLock(0);
+
+      try {
+        long startSave = System.currentTimeMillis();
+        log.info("Appending autosave journal..."); // $NON-NLS-1$
+        CampaignJournal.append(JOURNAL_FILE, baseFile, batch);
         String msg =
             I18N.getText(
                 "AutoSaveManager.status.autoSaveComplete", System.currentTimeMillis() - startSave);
@@ -144,6 +467,8 @@ protected void done() {
       try {
         MapTool.getFrame().setStatusMessage(get());
       } catch (Throwable t) {
+        // The changes in the batch are lost to the journal, so start over with a full save
+        journalFailed();
         log.debug("Throwable during autosave: " + t.getCause());
         if (t.getCause() instanceof AppState.FailedToAcquireLockException)
           MapTool.getFrame().setStatusMessage(I18N.getText("AutoSaveManager.status.lockFailed"));
@@ -155,10 +480,15 @@ protected void done() {
   }
 
   /** Removes any autosaved files */
-  public void purge() {
+  public synchronized void purge() {
     if (AUTOSAVE_FILE.exists()) {
       AUTOSAVE_FILE.delete();
     }
+    if (JOURNAL_FILE.exists()) {
+      JOURNAL_FILE.delete();
+    }
+    baseCampaign = null;
+    baseFile = null;
   }
 
   /** Removes the campaignFile if it's from Autosave, forcing to save as new */
@@ -169,8 +499,34 @@ public void tidy() {
     purge();
   }
 
+  /**
+   * Whether the journal can still be replayed, which is not the case if the campaign file it is
+   * based on has been changed or replaced since. The full autosave is offered instead.
+   */
+  private boolean isJournalRecoverable() {
+    try {
+      var base = CampaignJournal.getBaseFile(JOURNAL_FILE);
+      if (base.isUnchanged()) {
+        return true;
+      }
+      log.warn("Ignoring autosave journal as {} has changed since it was written", base.file());
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable autosave journal", e);
+    }
+    return false;
+  }
+
   /** Check to see if autosave recovery is necessary. */
   public boolean check() {
+    if (JOURNAL_FILE.exists() && isJournalRecoverable()) {
+      boolean okay;
+      okay = MapTool.confirm("msg.confirm.recoverAutosave", JOURNAL_FILE.lastModified());
+      if (okay) {
+        AppActions.recoverCampaign(JOURNAL_FILE);
+        return true;
+      }
+      return false;
+    }
     if (AUTOSAVE_FILE.exists()) {
       boolean okay;
       okay = MapTool.confirm("msg.confirm.recoverAutosave", AUTOSAVE_FILE.lastModified());
@@ -52,6 +52,7 @@
 import net.rptools.maptool.model.Pointer;
 import net.rptools.maptool.model.TextMessage;
 import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.TokenUpdateEvents;
 import net.rptools.maptool.model.Zone;
 import net.rptools.maptool.model.Zone.VisionType;
 import net.rptools.maptool.model.ZonePoint;
@@ -155,6 +156,7 @@ public void handleMessage(String id, byte[] message) {
         case REMOVE_DATA_NAMESPACE_MSG -> handle(msg.getRemoveDataNamespaceMsg());
         case REMOVE_DATA_MSG -> handle(msg.getRemoveDataMsg());
         case UPDATE_TOKEN_PROPERTY_MSG -> handle(msg.getUpdateTokenPropertyMsg());
+        case UPDATE_TOKEN_PROPERTIES_MSG -> handle(msg.getUpdateTokenPropertiesMsg());
         case UPDATE_DRAWING_MSG -> handle(msg.getUpdateDrawingMsg());
         case UNDO_DRAW_MSG -> handle(msg.getUndoDrawMsg());
         case SET_ZONE_VISIBILITY_MSG -> handle(msg.getSetZoneVisibilityMsg());
@@ -275,6 +277,8 @@ private void handle(UpdateCampaignMsg msg) {
           ZoneRenderer zr = frame.getCurrentZoneRenderer();
           if (zr != null) {
             zr.getZoneView().flush();
+            // Token states and bars are drawn on retained layers too.
+            zr.invalidateLayerCache();
             zr.repaint();
           }
           AssetManager.updateRepositoryList();
@@ -417,6 +421,23 @@ private void handle(UpdateTokenPropertyMsg msg) {
         });
   }
 
+  private void handle(UpdateTokenPropertiesMsg msg) {
+    EventQueue.invokeLater(
+        () -> {
+          var zoneGUID = GUID.valueOf(msg.getZoneGuid());
+          var zone = client.getCampaign().getZone(zoneGUID);
+          var events = new TokenUpdateEvents(zone);
+          for (var update : msg.getUpdatesList()) {
+            var token = zone.getToken(GUID.valueOf(update.getTokenGuid()));
+            if (token != null) {
+              Token.Update property = Token.Update.valueOf(update.getProperty().name());
+              token.updateProperty(property, update.getValuesList(), events);
+            }
+          }
+          events.fire();
+        });
+  }
+
   private void handle(RemoveDataMsg msg) {
     String removeDType = msg.getType();
     String removeDNamespace = msg.getNamespace();
@@ -0,0 +1,299 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import net.rptools.maptool.model.EvaluatedPropertyScope;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.ParameterException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs trusted macros on a background thread so that long running frameworks don't freeze the user
+ * interface.
+ *
+ * <p>Macros are evaluated one after another on a single worker thread that has its own {@link
+ * MapToolLineParser}, which {@link MapTool#getParser()} returns while on that thread. Anything
+ * that reads or changes tokens, zones or the campaign, shows a dialog or writes to chat is handed
+ * back to the Swing thread with {@link #callOnEdt(EdtTask)}, which waits for it to finish. Those
+ * steps are therefore applied one at a time and in the order the macro performs them, each of
+ * them seeing the model as left by the previous ones, while the Swing thread is free to paint and
+ * handle input in between.
+ *
+ * <p>While such a step runs on the Swing thread, {@link MapTool#getParser()} returns the parser of
+ * the worker there too, so that macros evaluated by the step, such as the callbacks of {@code
+ * input()}, see the same variables and macro context as the macro that called it, and token
+ * properties it evaluates are remembered in the worker's {@link EvaluatedPropertyScope}.
+ *
+ * <p>Running in the background is opt in with {@link AppPreferences#runTrustedMacrosInBackground},
+ * as macros that rely on the Swing thread to finish before anything else happens, for example
+ * ones that select tokens and then read the selection of the current map, may behave differently.
+ */
+public final class MacroExecutor {
+  private static final Logger log = LogManager.getLogger(MacroExecutor.class);
+
+  private static final MacroExecutor INSTANCE = new MacroExecutor();
+
+  /**
+   * A step of a background macro that must run on the Swing thread.
+   *
+   * @param <T> the type of the result.
+   */
+  @FunctionalInterface
+  public interface EdtTask<T> {
+    /**
+     * Runs the step.
+     *
+     * @return the result of the step.
+     * @throws ParserException if the step fails.
+     */
+    T call() throws ParserException;
+  }
+
+  /** The parser used for macros run by the current thread, if not the one of {@link MapTool}. */
+  private final ThreadLocal<MapToolLineParser> parserOverride = new ThreadLocal<>();
+
+  private final ExecutorService worker =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "MacroExecutor");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** The worker thread, set whenever it starts a macro. */
+  private volatile Thread workerThread;
+
+  /** The parser of the worker thread, only used on that thread or on its behalf. */
+  private MapToolLineParser workerParser;
+
+  private MacroExecutor() {}
+
+  /**
+   * Returns the macro executor.
+   *
+   * @return the macro executor.
+   */
+  public static MacroExecutor getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns whether a macro run from the Swing thread with the given context should be run in the
+   * background. Macros run by a step of a background macro are run straight away, as part of that
+   * macro.
+   *
+   * @param context the context of the macro, may be null for chat input.
+   * @return true if the macro should be submitted with {@link #submit(Runnable)}.
+   */
+  public boolean runsInBackground(MapToolMacroContext context) {
+    return context != null
+        && context.isTrusted()
+        && AppPreferences.runTrustedMacrosInBackground.get()
+        && SwingUtilities.isEventDispatchThread()
+        && parserOverride.get() == null;
+  }
+
+  /**
+   * Queues a macro to be run on the worker thread after the macros that were submitted before it.
+   * Errors that escape the macro are logged, so that they don't end the worker thread.
+   *
+   * @param macro the macro to run.
+   */
+  public void submit(Runnable macro) {
+    worker.execute(
+        () -> {
+          // Set for every macro, in case the executor had to replace its thread.
+          workerThread = Thread.currentThread();
+          if (workerParser == null) {
+            workerParser = new MapToolLineParser();
+          }
+          parserOverride.set(workerParser);
+          try {
+            macro.run();
+          } catch (RuntimeException e) {
+            log.error("Error running macro in the background", e);
+          } catch (Throwable t) {
+            // Errors such as a stack overflow may leave the parser part way through a macro.
+            log.error("Error running macro in the background", t);
+            workerParser = null;
+          } finally {
+            parserOverride.remove();
+          }
+        });
+  }
+
+  /**
+   * Returns whether the current thread is the worker thread.
+   *
+   * @return true if called from a macro that is running in the background.
+   */
+  public boolean isWorkerThread() {
+    return Thread.currentThread() == workerThread;
+  }
+
+  /**
+   * Returns the parser that macros run by the current thread use.
+   *
+   * @param defaultParser the parser used outside background macros.
+   * @return the parser of the worker on the worker thread, or on the Swing thread while it runs a
+   *     step for the worker, otherwise {@code defaultParser}.
+   */
+  public MapToolLineParser getParser(MapToolLineParser defaultParser) {
+    MapToolLineParser parser = parserOverride.get();
+    return parser != null ? parser : defaultParser;
+  }
+
+  /**
+   * Runs a step on the Swing thread when called from the worker thread and waits for its result.
+   * On any other thread the step is run directly, so code can call this without knowing where it
+   * is running.
+   *
+   * @param task the step to run.
+   * @param <T> the type of the result.
+   * @return the result of the step.
+   * @throws ParserException if the step throws it.
+   */
+  public <T> T callOnEdt(EdtTask<T> task) throws ParserException {
+    if (!isWorkerThread()) {
+      return task.call();
+    }
+
+    MapToolLineParser parser = parserOverride.get();
+    EvaluatedPropertyScope propertyScope = EvaluatedPropertyScope.getCurrent();
+    var result = new AtomicReference<T>();
+    var failure = new AtomicReference<Throwable>();
+    try {
+      SwingUtilities.invokeAndWait(
+          () -> {
+            MapToolLineParser previous = parserOverride.get();
+            parserOverride.set(parser);
+            EvaluatedPropertyScope previousScope = EvaluatedPropertyScope.setCurrent(propertyScope);
+            try {
+              result.set(task.call());
+            } catch (Throwable t) {
+              failure.set(t);
+            } finally {
+              if (previous != null) {
+                parserOverride.set(previous);
+              } else {
+                parserOverride.remove();
+              }
+              EvaluatedPropertyScope.setCurrent(previousScope);
+            }
+          });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ParserException(e);
+    } catch (InvocationTargetException e) {
+      throw new ParserException(e.getCause());
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof ParserException e) {
+      throw e;
+    } else if (t instanceof RuntimeException e) {
+      throw e;
+    } else if (t instanceof Error e) {
+      throw e;
+    } else if (t != null) {
+      throw new ParserException(t);
+    }
+    return result.get();
+  }
+
+  /**
+   * Runs a step that can't fail with a {@link ParserException} on the Swing thread when called
+   * from the worker thread, see {@link #callOnEdt(EdtTask)}.
+   *
+   * @param task the step to run.
+   */
+  public void runOnEdt(Runnable task) {
+    try {
+      callOnEdt(
+          () -> {
+            task.run();
+            return null;
+          });
+    } catch (ParserException e) {
+      // Only thrown if the worker was interrupted while waiting.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Wraps a function so that it is evaluated on the Swing thread when called from the worker.
+   *
+   * @param function the function, may be null.
+   * @return the function to evaluate.
+   */
+  public Function onEdt(Function function) {
+    if (function == null || !isWorkerThread()) {
+      return function;
+    }
+    return new EdtFunction(function);
+  }
+
+  /** Evaluates a function that uses the model or the user interface on the Swing thread. */
+  private final class EdtFunction implements Function {
+    private final Function delegate;
+
+    private EdtFunction(Function delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public Object evaluate(
+        Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+        throws ParserException {
+      return callOnEdt(() -> delegate.evaluate(parser, resolver, functionName, parameters));
+    }
+
+    @Override
+    public void checkParameters(String functionName, List<Object> parameters)
+        throws ParameterException {
+      delegate.checkParameters(functionName, parameters);
+    }
+
+    @Override
+    public String[] getAliases() {
+      return delegate.getAliases();
+    }
+
+    @Override
+    public int getMinimumParameterCount() {
+      return delegate.getMinimumParameterCount();
+    }
+
+    @Override
+    public int getMaximumParameterCount() {
+      return delegate.getMaximumParameterCount();
+    }
+
+    @Override
+    public boolean isDeterministic() {
+      return delegate.isDeterministic();
+    }
+  }
+}
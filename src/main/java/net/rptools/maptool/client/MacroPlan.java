@@ -0,0 +1,363 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The compiled form of a line of macro text: where its inline rolls are, their roll options and
+ * how their bodies split into branches. All of this depends only on the text, so plans are cached
+ * by the text and shared by every run of the macro; changing the command of a macro just produces
+ * a new plan. Option parameters and branch conditions depend on variables, so {@link
+ * MapToolLineParser} still evaluates them on every run.
+ */
+final class MacroPlan {
+
+  private static final Cache<String, MacroPlan> PLAN_CACHE =
+      CacheBuilder.newBuilder().softValues().build();
+
+  /** Matches any text not containing a ";" (skipping over strings). */
+  private static final String NO_CODE_REGEX = "((?:[^\";]|\"[^\"]*\"|'[^']*')*)";
+
+  /**
+   * Matches text inside braces "{...}", skipping over strings (one level of {} nesting allowed).
+   */
+  private static final String CODE_REGEX =
+      "\\{((?:[^{}\"]|\"[^\"]*\"|'[^']*'|\\{(?:[^}\"]|\"[^\"]*\"|'[^']*')*})*)}";
+
+  /** Matches 'default', 'case 123:', 'case "123":', 'case "abc":', but not 'case abc:'. */
+  private static final String CASE_REGEX =
+      "(?:case\\s*\"?((?<!\")(?:\\+|-)?[\\d]+(?!\")|(?<=\")[^\"]*(?=\"))\"?|(default))\\s*:\\s*";
+
+  private static final String SEP_REGEX = ";";
+
+  /** The last clause doesn't have to end with a separator. */
+  private static final String LAST_SEP_REGEX = ";?";
+
+  private enum ScanState {
+    SEARCHING_FOR_ROLL,
+    SEARCHING_FOR_QUOTE,
+    SEARCHING_FOR_CLOSE_BRACKET,
+    SKIP_NEXT_CHAR
+  }
+
+  /** The ways the body of a roll can be split, with the pattern that checks the body for each. */
+  private enum BranchForm {
+    BODY(bodyRegex(NO_CODE_REGEX)),
+    CODE_BODY(bodyRegex(CODE_REGEX)),
+    IF(ifRegex(NO_CODE_REGEX)),
+    CODE_IF(ifRegex(CODE_REGEX)),
+    SWITCH(switchRegex(NO_CODE_REGEX)),
+    CODE_SWITCH(switchRegex(CODE_REGEX));
+
+    private final Pattern testPattern;
+
+    BranchForm(String testRegex) {
+      testPattern = Pattern.compile(testRegex);
+    }
+
+    private static String bodyRegex(String branchRegex) {
+      // There's only one branch, so our regex is very simple
+      return String.format("^\\s*%s\\s*$", branchRegex);
+    }
+
+    private static String ifRegex(String branchRegex) {
+      return String.format(
+          "^\\s*%s\\s*(?:%s\\s*%s\\s*%s)?\\s*$",
+          branchRegex, SEP_REGEX, branchRegex, LAST_SEP_REGEX);
+    }
+
+    private static String switchRegex(String branchRegex) {
+      String caseBranchRegex = CASE_REGEX + branchRegex;
+      return String.format(
+          "^(?:\\s*%s\\s*%s\\s*)*\\s*%s\\s*%s\\s*$",
+          caseBranchRegex, SEP_REGEX, caseBranchRegex, LAST_SEP_REGEX);
+    }
+  }
+
+  private static final Pattern SWITCH_SCAN_PATTERN =
+      Pattern.compile(String.format("\\s*%s\\s*(?:%s)?", CASE_REGEX + NO_CODE_REGEX, SEP_REGEX));
+
+  private static final Pattern CODE_SWITCH_SCAN_PATTERN =
+      Pattern.compile(String.format("\\s*%s\\s*(?:%s)?", CASE_REGEX + CODE_REGEX, SEP_REGEX));
+
+  /**
+   * The two branches of an IF roll.
+   *
+   * @param whenTrue the trimmed branch used when the condition is true.
+   * @param whenFalse the trimmed branch used when the condition is false, or {@code null} if there
+   *     is none.
+   */
+  record IfBranches(String whenTrue, String whenFalse) {}
+
+  /**
+   * A branch of a SWITCH roll, in the order they appear in the roll.
+   *
+   * @param label the case label, or {@code null} for the default branch.
+   * @param body the trimmed body of the branch.
+   */
+  record SwitchCase(String label, String body) {
+    boolean isDefault() {
+      return label == null;
+    }
+  }
+
+  /** An inline roll, either {@code [options: body]} or {@code {body}}, within the line. */
+  static final class InlineRoll {
+    private final int start;
+    private final int end;
+    private final String match;
+    private final String opt;
+    private final String roll;
+    private volatile List<OptionInfo> options;
+    private final ConcurrentMap<BranchForm, Optional<Object>> branches = new ConcurrentHashMap<>();
+
+    private InlineRoll(int start, int end, String match, int optEnd) {
+      this.start = start;
+      this.end = end;
+      this.match = match;
+      if (optEnd > 0) {
+        opt = match.substring(1, optEnd - start);
+        roll = match.substring(optEnd + 1 - start, end - start);
+      } else {
+        opt = "";
+        roll = match.substring(1, end - start);
+      }
+    }
+
+    int getStart() {
+      return start;
+    }
+
+    int getEnd() {
+      return end;
+    }
+
+    String getMatch() {
+      return match;
+    }
+
+    String getOpt() {
+      return opt;
+    }
+
+    String getRoll() {
+      return roll;
+    }
+
+    /**
+     * Returns the parsed roll options.
+     *
+     * @return the options of the roll, in the order they were given.
+     * @throws OptionInfo.RollOptionException if the options can't be parsed.
+     */
+    List<OptionInfo> getOptions() throws OptionInfo.RollOptionException {
+      List<OptionInfo> list = options;
+      if (list == null) {
+        list = OptionInfo.getRollOptionList(opt);
+        options = list;
+      }
+      return list;
+    }
+
+    /**
+     * Returns the body of a roll that doesn't branch.
+     *
+     * @param codeBlock whether the body is a code block in braces.
+     * @return the body, or {@code null} if it is malformed.
+     */
+    String getBody(boolean codeBlock) {
+      return (String)
+          getBranches(
+              codeBlock ? BranchForm.CODE_BODY : BranchForm.BODY,
+              matcher -> matcher.group(1));
+    }
+
+    /**
+     * Returns the branches of an IF roll.
+     *
+     * @param codeBlock whether the branches are code blocks in braces.
+     * @return the branches, or {@code null} if the body is malformed.
+     */
+    IfBranches getIfBranches(boolean codeBlock) {
+      return (IfBranches)
+          getBranches(
+              codeBlock ? BranchForm.CODE_IF : BranchForm.IF,
+              matcher ->
+                  new IfBranches(
+                      StringUtils.trim(matcher.group(1)), StringUtils.trim(matcher.group(2))));
+    }
+
+    /**
+     * Returns the cases of a SWITCH roll.
+     *
+     * @param codeBlock whether the branches are code blocks in braces.
+     * @return the cases in the order they appear, or {@code null} if the body is malformed.
+     */
+    @SuppressWarnings("unchecked")
+    List<SwitchCase> getSwitchCases(boolean codeBlock) {
+      return (List<SwitchCase>)
+          getBranches(
+              codeBlock ? BranchForm.CODE_SWITCH : BranchForm.SWITCH,
+              matcher -> scanSwitchCases(codeBlock));
+    }
+
+    private Object getBranches(BranchForm form, Function<Matcher, Object> split) {
+      return branches
+          .computeIfAbsent(
+              form,
+              f -> {
+                Matcher testMatcher = f.testPattern.matcher(roll);
+                // verifies that roll body is well-formed
+                return testMatcher.find()
+                    ? Optional.ofNullable(split.apply(testMatcher))
+                    : Optional.empty();
+              })
+          .orElse(null);
+    }
+
+    private List<SwitchCase> scanSwitchCases(boolean codeBlock) {
+      Pattern scanPattern = codeBlock ? CODE_SWITCH_SCAN_PATTERN : SWITCH_SCAN_PATTERN;
+      Matcher scanMatcher = scanPattern.matcher(roll);
+      List<SwitchCase> cases = new ArrayList<>();
+      while (scanMatcher.find()) {
+        String caseLabel = scanMatcher.group(1); // "case (xxx):"
+        String def = scanMatcher.group(2); // "(default):"
+        String branch = scanMatcher.group(3);
+        if (def != null || caseLabel != null) {
+          cases.add(new SwitchCase(def != null ? null : caseLabel, branch.trim()));
+        }
+      }
+      return List.copyOf(cases);
+    }
+  }
+
+  private final List<InlineRoll> rolls;
+
+  private MacroPlan(List<InlineRoll> rolls) {
+    this.rolls = rolls;
+  }
+
+  /**
+   * Returns the plan for a line of macro text, compiling it if it isn't already cached.
+   *
+   * @param line the trimmed line of macro text.
+   * @return the plan for the line.
+   */
+  static MacroPlan of(String line) {
+    MacroPlan plan = PLAN_CACHE.getIfPresent(line);
+    if (plan == null) {
+      plan = new MacroPlan(locateInlineRolls(line));
+      PLAN_CACHE.put(line, plan);
+    }
+    return plan;
+  }
+
+  /** Discards all of the cached plans. */
+  static void clearCache() {
+    PLAN_CACHE.invalidateAll();
+  }
+
+  /**
+   * Returns the inline rolls in the line.
+   *
+   * @return the inline rolls, in the order they appear.
+   */
+  List<InlineRoll> getRolls() {
+    return rolls;
+  }
+
+  /**
+   * Locate the inline rolls within the input line.
+   *
+   * @param line The line to search for the rolls in.
+   * @return A list of the rolls.
+   */
+  private static List<InlineRoll> locateInlineRolls(String line) {
+    List<InlineRoll> matches = new ArrayList<>();
+    ScanState scanState = ScanState.SEARCHING_FOR_ROLL;
+    int startMatch = 0;
+    int bracketLevel = 0;
+    char quoteChar = ' ';
+    char bracketChar = ' ';
+    ScanState savedState = null;
+    int optEnd = -1;
+
+    for (int i = 0, strMax = line.length(); i < strMax; i++) {
+      char c = line.charAt(i);
+      switch (scanState) {
+        case SEARCHING_FOR_ROLL:
+          if (c == '{' || c == '[') {
+            startMatch = i;
+            scanState = ScanState.SEARCHING_FOR_CLOSE_BRACKET;
+            bracketChar = c;
+            bracketLevel++;
+            optEnd = -1;
+          }
+          break;
+
+        case SEARCHING_FOR_CLOSE_BRACKET:
+          if (c == bracketChar) {
+            bracketLevel++;
+          } else if (bracketChar == '[' && c == ']') {
+            bracketLevel--;
+            if (bracketLevel == 0) {
+              matches.add(new InlineRoll(startMatch, i, line.substring(startMatch, i + 1), optEnd));
+              scanState = ScanState.SEARCHING_FOR_ROLL;
+            }
+          } else if (bracketChar == '{' && c == '}') {
+            bracketLevel--;
+            if (bracketLevel == 0) {
+              matches.add(new InlineRoll(startMatch, i, line.substring(startMatch, i + 1), optEnd));
+              scanState = ScanState.SEARCHING_FOR_ROLL;
+            }
+          } else if (c == '"' || c == '\'') {
+            quoteChar = c;
+            scanState = ScanState.SEARCHING_FOR_QUOTE;
+          } else if (c == '\\') {
+            savedState = scanState;
+            scanState = ScanState.SKIP_NEXT_CHAR;
+          } else if (bracketChar == '[' && optEnd == -1 && c == ':') {
+            optEnd = i;
+          }
+          break;
+
+        case SEARCHING_FOR_QUOTE:
+          if (c == quoteChar) {
+            scanState = ScanState.SEARCHING_FOR_CLOSE_BRACKET;
+          } else if (c == '\\') {
+            savedState = scanState;
+            scanState = ScanState.SKIP_NEXT_CHAR;
+          }
+          break;
+
+        case SKIP_NEXT_CHAR:
+          scanState = savedState;
+          break;
+      }
+    }
+    return List.copyOf(matches);
+  }
+}
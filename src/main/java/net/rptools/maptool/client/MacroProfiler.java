@@ -0,0 +1,439 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import net.rptools.maptool.client.macro.MacroLocation;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.ParameterException;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Records how often macros, expressions and functions are called and how long they take, so that
+ * the slow parts of a macro framework can be found. Nothing is recorded unless profiling has been
+ * {@link #start() started}, and while it is stopped {@link #enter(Kind, String)} returns {@code
+ * null} without doing any work.
+ *
+ * <p>Each thread keeps its own stack of {@link Frame}s. When a frame is exited its time is added
+ * both to the flat statistics for its name, which are shown as a table, and to the call tree,
+ * which is shown as a flame graph. Inclusive times of recursive calls are only counted for the
+ * outermost call, so they never exceed the time actually spent.
+ *
+ * <p>Allocations are measured with the per thread allocation counter of the JVM where it is
+ * available, and are an estimate: they include anything allocated by the thread, such as garbage
+ * from code that happens to run in the same frame.
+ */
+public final class MacroProfiler {
+  /** The longest name recorded; longer names, such as long expressions, are abbreviated. */
+  private static final int MAX_NAME_LENGTH = 80;
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+  private static final MacroProfiler INSTANCE = new MacroProfiler();
+
+  /** The kinds of code that are profiled. */
+  public enum Kind {
+    /** A macro run from a button, an event or another macro. */
+    MACRO,
+    /** An inline roll or other expression evaluated by the parser. */
+    EXPRESSION,
+    /** A built-in or JavaScript function. */
+    FUNCTION,
+    /** A function defined with {@code defineFunction()}. */
+    USER_FUNCTION
+  }
+
+  /**
+   * The totals for one name.
+   *
+   * @param kind the kind of code.
+   * @param name the macro location, expression or function name.
+   * @param calls the number of calls.
+   * @param inclusiveNanos the time spent in the calls, including everything they called.
+   * @param exclusiveNanos the time spent in the calls themselves.
+   * @param allocatedBytes the estimated bytes allocated in the calls, including everything they
+   *     called.
+   */
+  public record Entry(
+      Kind kind,
+      String name,
+      long calls,
+      long inclusiveNanos,
+      long exclusiveNanos,
+      long allocatedBytes) {}
+
+  /**
+   * A node of the call tree.
+   *
+   * @param kind the kind of code, or {@code null} for the root.
+   * @param name the name, or an empty string for the root.
+   * @param calls the number of calls along this path.
+   * @param inclusiveNanos the time spent in the calls along this path.
+   * @param exclusiveNanos the time spent in the calls along this path, excluding the children.
+   * @param children the nodes called from this one, most expensive first.
+   */
+  public record Node(
+      Kind kind,
+      String name,
+      long calls,
+      long inclusiveNanos,
+      long exclusiveNanos,
+      List<Node> children) {
+
+    /**
+     * @return the label of the node in a flame graph.
+     */
+    public String getLabel() {
+      return kind == null ? "all" : kind.name().toLowerCase() + ":" + name;
+    }
+  }
+
+  /**
+   * The results recorded so far.
+   *
+   * @param entries the totals for each name, most exclusive time first.
+   * @param root the root of the call tree; its time is the sum of its children.
+   */
+  public record Snapshot(List<Entry> entries, Node root) {
+    /**
+     * Writes the totals as comma separated values, with a header line.
+     *
+     * @param out the writer to write to.
+     * @throws IOException if the values could not be written.
+     */
+    public void writeCsv(Writer out) throws IOException {
+      out.write("kind,name,calls,inclusive_ms,exclusive_ms,allocated_bytes\n");
+      for (Entry entry : entries) {
+        out.write(entry.kind().name().toLowerCase());
+        out.write(',');
+        out.write('"' + entry.name().replace("\"", "\"\"") + '"');
+        out.write(
+            String.format(
+                ",%d,%.3f,%.3f,%d\n",
+                entry.calls(),
+                entry.inclusiveNanos() / 1e6,
+                entry.exclusiveNanos() / 1e6,
+                entry.allocatedBytes()));
+      }
+      out.flush();
+    }
+
+    /**
+     * Writes the call tree in the folded stack format, one line per path with its exclusive time in
+     * microseconds. The format is read by {@code flamegraph.pl}, speedscope and most other flame
+     * graph tools.
+     *
+     * @param out the writer to write to.
+     * @throws IOException if the stacks could not be written.
+     */
+    public void writeFoldedStacks(Writer out) throws IOException {
+      for (Node child : root.children()) {
+        writeFoldedStacks(out, child, "");
+      }
+      out.flush();
+    }
+
+    private static void writeFoldedStacks(Writer out, Node node, String prefix)
+        throws IOException {
+      String stack = prefix + node.getLabel().replace(';', ',');
+      long micros = node.exclusiveNanos() / 1000;
+      if (micros > 0) {
+        out.write(stack + " " + micros + "\n");
+      }
+      for (Node child : node.children()) {
+        writeFoldedStacks(out, child, stack + ";");
+      }
+    }
+  }
+
+  /** A call in progress, returned by {@link #enter(Kind, String)}. */
+  public static final class Frame {
+    private final Key key;
+    private final TreeNode node;
+    private final long startNanos;
+    private final long startAllocated;
+    private long childNanos;
+
+    private Frame(Key key, TreeNode node) {
+      this.key = key;
+      this.node = node;
+      this.startAllocated = allocatedBytes();
+      this.startNanos = System.nanoTime();
+    }
+  }
+
+  private record Key(Kind kind, String name) {}
+
+  private static final class Totals {
+    private long calls;
+    private long inclusiveNanos;
+    private long exclusiveNanos;
+    private long allocatedBytes;
+  }
+
+  private static final class TreeNode {
+    private final Key key;
+    private final Map<Key, TreeNode> children = new LinkedHashMap<>();
+    private long calls;
+    private long inclusiveNanos;
+    private long exclusiveNanos;
+
+    private TreeNode(Key key) {
+      this.key = key;
+    }
+
+    private Node toNode() {
+      List<Node> nodes = new ArrayList<>(children.size());
+      for (TreeNode child : children.values()) {
+        nodes.add(child.toNode());
+      }
+      nodes.sort(Comparator.comparingLong(Node::inclusiveNanos).reversed());
+      if (key == null) {
+        long total = nodes.stream().mapToLong(Node::inclusiveNanos).sum();
+        return new Node(null, "", 0, total, 0, List.copyOf(nodes));
+      }
+      return new Node(
+          key.kind(), key.name(), calls, inclusiveNanos, exclusiveNanos, List.copyOf(nodes));
+    }
+  }
+
+  private final ThreadLocal<Deque<Frame>> stacks = ThreadLocal.withInitial(ArrayDeque::new);
+  private final Map<Key, Totals> totals = new HashMap<>();
+  private TreeNode root = new TreeNode(null);
+  private volatile boolean enabled;
+
+  MacroProfiler() {}
+
+  /**
+   * @return the profiler that the macro parser reports to.
+   */
+  public static MacroProfiler getInstance() {
+    return INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Starts recording, adding to any results recorded earlier. */
+  public void start() {
+    enabled = true;
+  }
+
+  /** Stops recording. The results are kept until {@link #reset()} is called. */
+  public void stop() {
+    enabled = false;
+  }
+
+  /** Discards the results recorded so far. */
+  public synchronized void reset() {
+    totals.clear();
+    root = new TreeNode(null);
+  }
+
+  /**
+   * Enters a macro.
+   *
+   * @param location the location of the macro.
+   * @return the frame to pass to {@link #exit(Frame)}, or {@code null} if profiling is stopped.
+   */
+  public Frame enterMacro(MacroLocation location) {
+    if (!enabled || location == null) {
+      return null;
+    }
+    String name = location.getName();
+    if (StringUtils.isNotEmpty(location.getLocation())) {
+      name += "@" + location.getLocation();
+    }
+    return enter(Kind.MACRO, name);
+  }
+
+  /**
+   * Enters a call. Names are recorded with runs of whitespace collapsed, and long names are
+   * abbreviated.
+   *
+   * @param kind the kind of code being called.
+   * @param name the name to record the call under.
+   * @return the frame to pass to {@link #exit(Frame)}, or {@code null} if profiling is stopped.
+   */
+  public Frame enter(Kind kind, String name) {
+    if (!enabled) {
+      return null;
+    }
+    String normalized = WHITESPACE.matcher(name.strip()).replaceAll(" ");
+    var key = new Key(kind, StringUtils.abbreviate(normalized, MAX_NAME_LENGTH));
+    Deque<Frame> stack = stacks.get();
+    Frame parent = stack.peek();
+    TreeNode node;
+    synchronized (this) {
+      TreeNode parentNode = parent == null ? root : parent.node;
+      node = parentNode.children.computeIfAbsent(key, TreeNode::new);
+    }
+    var frame = new Frame(key, node);
+    stack.push(frame);
+    return frame;
+  }
+
+  /**
+   * Exits a call and records its time. This must be called from a {@code finally} block on the
+   * thread that entered the frame.
+   *
+   * @param frame the frame returned by {@link #enter(Kind, String)}; {@code null} is ignored.
+   */
+  public void exit(Frame frame) {
+    if (frame == null) {
+      return;
+    }
+    long elapsed = System.nanoTime() - frame.startNanos;
+    long allocated = allocatedBytes() - frame.startAllocated;
+
+    Deque<Frame> stack = stacks.get();
+    while (!stack.isEmpty() && stack.pop() != frame) {
+      // Discard frames that were never exited.
+    }
+    Frame parent = stack.peek();
+    if (parent != null) {
+      parent.childNanos += elapsed;
+    }
+    boolean recursive = false;
+    for (Frame outer : stack) {
+      if (outer.key.equals(frame.key)) {
+        recursive = true;
+        break;
+      }
+    }
+
+    long exclusive = Math.max(0, elapsed - frame.childNanos);
+    synchronized (this) {
+      Totals total = totals.computeIfAbsent(frame.key, k -> new Totals());
+      total.calls++;
+      total.exclusiveNanos += exclusive;
+      if (!recursive) {
+        total.inclusiveNanos += elapsed;
+        total.allocatedBytes += allocated;
+      }
+      frame.node.calls++;
+      frame.node.inclusiveNanos += elapsed;
+      frame.node.exclusiveNanos += exclusive;
+    }
+  }
+
+  /**
+   * Returns a function that records each call of {@code function} under the name it is called by.
+   * Used by the expression parser, which only wraps functions while profiling is enabled.
+   *
+   * @param function the function to profile.
+   * @return the profiling function.
+   */
+  public Function profile(Function function) {
+    return new ProfiledFunction(function);
+  }
+
+  /**
+   * @return the results recorded so far.
+   */
+  public synchronized Snapshot getSnapshot() {
+    List<Entry> entries = new ArrayList<>(totals.size());
+    for (var total : totals.entrySet()) {
+      Totals t = total.getValue();
+      entries.add(
+          new Entry(
+              total.getKey().kind(),
+              total.getKey().name(),
+              t.calls,
+              t.inclusiveNanos,
+              t.exclusiveNanos,
+              t.allocatedBytes));
+    }
+    entries.sort(Comparator.comparingLong(Entry::exclusiveNanos).reversed());
+    return new Snapshot(List.copyOf(entries), root.toNode());
+  }
+
+  private static long allocatedBytes() {
+    return THREAD_BEAN == null ? 0 : THREAD_BEAN.getCurrentThreadAllocatedBytes();
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadBean() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported()) {
+      bean.setThreadAllocatedMemoryEnabled(true);
+      return bean;
+    }
+    return null;
+  }
+
+  /** Records calls to a function, and otherwise behaves exactly like it. */
+  private final class ProfiledFunction implements Function {
+    private final Function function;
+
+    private ProfiledFunction(Function function) {
+      this.function = function;
+    }
+
+    @Override
+    public Object evaluate(
+        Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+        throws ParserException {
+      Frame frame = enter(Kind.FUNCTION, functionName);
+      try {
+        return function.evaluate(parser, resolver, functionName, parameters);
+      } finally {
+        exit(frame);
+      }
+    }
+
+    @Override
+    public void checkParameters(String functionName, List<Object> parameters)
+        throws ParameterException {
+      function.checkParameters(functionName, parameters);
+    }
+
+    @Override
+    public String[] getAliases() {
+      return function.getAliases();
+    }
+
+    @Override
+    public int getMinimumParameterCount() {
+      return function.getMinimumParameterCount();
+    }
+
+    @Override
+    public int getMaximumParameterCount() {
+      return function.getMaximumParameterCount();
+    }
+
+    @Override
+    public boolean isDeterministic() {
+      return function.isDeterministic();
+    }
+  }
+}
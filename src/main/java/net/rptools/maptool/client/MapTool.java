@@ -67,6 +67,7 @@
 import net.rptools.maptool.client.events.ChatMessageAdded;
 import net.rptools.maptool.client.events.ServerDisconnected;
 import net.rptools.maptool.client.functions.UserDefinedMacroFunctions;
+import net.rptools.maptool.client.script.javascript.JSScriptEngine;
 import net.rptools.maptool.client.swing.MapToolEventQueue;
 import net.rptools.maptool.client.swing.NoteFrame;
 import net.rptools.maptool.client.swing.SplashScreen;
@@ -75,6 +76,8 @@
 import net.rptools.maptool.client.ui.ConnectionStatusPanel;
 import net.rptools.maptool.client.ui.MapToolFrame;
 import net.rptools.maptool.client.ui.OSXAdapter;
+import net.rptools.maptool.client.ui.assetpanel.AssetFileIndex;
+import net.rptools.maptool.client.ui.assetpanel.AssetSearchIndex;
 import net.rptools.maptool.client.ui.connecttoserverdialog.ConnectToServerDialogPreferences;
 import net.rptools.maptool.client.ui.logger.LogConsoleFrame;
 import net.rptools.maptool.client.ui.sheet.stats.StatSheetListener;
@@ -151,6 +154,8 @@ public class MapTool {
       new Dimension(AppPreferences.thumbnailSize.get(), AppPreferences.thumbnailSize.get());
 
   private static ThumbnailManager thumbnailManager;
+  private static AssetFileIndex assetFileIndex;
+  private static AssetSearchIndex assetSearchIndex;
   private static String version = "DEVELOPMENT";
   private static String vendor = "RPTools!"; // Default, will get from JAR Manifest during normal
   // runtime
@@ -168,6 +173,7 @@ public class MapTool {
   private static BackupManager backupManager;
   private static AssetTransferManager assetTransferManager;
   private static AutoSaveManager autoSaveManager;
+  private static ZoneUnloadManager zoneUnloadManager;
   private static TaskBarFlasher taskbarFlasher;
   private static MapToolLineParser parser = new MapToolLineParser();
   private static String lastWhisperer;
@@ -621,6 +627,13 @@ public static AutoSaveManager getAutoSaveManager() {
     return autoSaveManager;
   }
 
+  public static ZoneUnloadManager getZoneUnloadManager() {
+    if (zoneUnloadManager == null) {
+      zoneUnloadManager = new ZoneUnloadManager();
+    }
+    return zoneUnloadManager;
+  }
+
   /**
    * This was added to make it easier to set a breakpoint and locate when the frame was initialized.
    *
@@ -913,7 +926,7 @@ public static Campaign getCampaign() {
   }
 
   public static MapToolLineParser getParser() {
-    return parser;
+    return MacroExecutor.getInstance().getParser(parser);
   }
 
   public static void setCampaign(Campaign campaign, @Nullable GUID defaultZoneId) {
@@ -966,8 +979,11 @@ public static void setCampaign(Campaign campaign, @Nullable GUID defaultZoneId)
         currRenderer = renderer;
       }
       new MapToolEventBus().getMainEventBus().post(new ZoneAdded(zone));
-      // Now we have fire off adding the tokens in the zone
-      new MapToolEventBus().getMainEventBus().post(new TokensAdded(zone, zone.getAllTokens()));
+      // Now we have fire off adding the tokens in the zone. Zones that are loaded on demand fire
+      // ZoneContentLoaded instead once their tokens have been read; they never hold Lib:tokens.
+      if (zone.isContentLoaded()) {
+        new MapToolEventBus().getMainEventBus().post(new TokensAdded(zone, zone.getAllTokens()));
+      }
     }
 
     clientFrame.setCurrentZoneRenderer(currRenderer);
@@ -1080,6 +1096,25 @@ public static ThumbnailManager getThumbnailManager() {
     return thumbnailManager;
   }
 
+  public static synchronized AssetFileIndex getAssetFileIndex() {
+    if (assetFileIndex == null) {
+      int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+      assetFileIndex =
+          new AssetFileIndex(
+              new File(AppUtil.getAppHome("imageThumbs"), "index"), getThumbnailManager(), threads);
+    }
+
+    return assetFileIndex;
+  }
+
+  public static synchronized AssetSearchIndex getAssetSearchIndex() {
+    if (assetSearchIndex == null) {
+      assetSearchIndex = new AssetSearchIndex(AppUtil.getAppHome("assetSearchIndex"));
+    }
+
+    return assetSearchIndex;
+  }
+
   /**
    * Shutdown the current server.
    *
@@ -1359,6 +1394,9 @@ else if (AppPreferences.loadMruCampaignAtStart.get()) {
 
     // fire up autosaves
     getAutoSaveManager().start();
+    getZoneUnloadManager().start();
+    // Have a JavaScript context ready for the first js.eval.
+    JSScriptEngine.getJSScriptEngine().warmUp();
 
     // Jamz: After preferences are loaded, Asset Tree and ImagePanel are out of sync,
     // so after frame is all done loading we sync them back up.
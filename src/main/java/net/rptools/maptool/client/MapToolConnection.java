@@ -109,6 +109,13 @@ public void close() {
     connection.close();
   }
 
+  /**
+   * @return the number of messages waiting to be sent to the server.
+   */
+  public int getPendingMessageCount() {
+    return connection.getPendingMessageCount();
+  }
+
   public void sendMessage(Message msg) {
     log.debug("{} sent {}", player.getName(), msg.getMessageTypeCase());
     connection.sendMessage(msg.toByteArray());
@@ -17,6 +17,7 @@
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -105,6 +106,7 @@ public class MapToolExpressionParser extends ExpressionParser {
               LastRolledFunction.getInstance(),
               Base64Functions.getInstance(),
               TokenTerrainModifierFunctions.getInstance(),
+              TokenUpdateBatchFunction.getInstance(),
               TestFunctions.getInstance(),
               TextLabelFunctions.getInstance(),
               TokenSpeechNameFunction.getInstance(),
@@ -117,6 +119,33 @@ public class MapToolExpressionParser extends ExpressionParser {
               new CallFunction())
           .collect(Collectors.toList());
 
+  /**
+   * MapTool functions that only use their arguments and the variables of the macro, which are
+   * evaluated on the worker thread of the {@link MacroExecutor} for background macros. The other
+   * MapTool functions are evaluated on the Swing thread.
+   */
+  private static final Set<Function> workerSafeFunctions =
+      Set.of(
+          AbortFunction.getInstance(),
+          AssertFunction.getInstance(),
+          Base64Functions.getInstance(),
+          EvalMacroFunctions.getInstance(),
+          JSONMacroFunctions.getInstance(),
+          LastRolledFunction.getInstance(),
+          LogFunctions.getInstance(),
+          MacroArgsFunctions.getInstance(),
+          MathFunctions.getInstance(),
+          ReturnFunction.getInstance(),
+          StringFunctions.getInstance(),
+          StrListFunctions.getInstance(),
+          StrPropFunctions.getInstance());
+
+  /** MapTool functions that are evaluated on the Swing thread for background macros. */
+  private static final Set<Function> edtFunctions =
+      mapToolParserFunctions.stream()
+          .filter(f -> !workerSafeFunctions.contains(f))
+          .collect(Collectors.toSet());
+
   public MapToolExpressionParser(
       BiFunction<VariableResolver, String, Object> variableLookup,
       BiFunction<VariableResolver, String, Object> propertyLookup,
@@ -167,7 +196,7 @@ public Function getFunction(String functionName) {
       // check javascript UDFs first.
       if (functionName.startsWith("js.") || functionName.startsWith("ujs.")) {
         if (JSMacro.isFunctionDefined(functionName)) {
-          return JSMacro.getInstance();
+          return profiled(MacroExecutor.getInstance().onEdt(JSMacro.getInstance()));
         }
       }
 
@@ -176,7 +205,26 @@ public Function getFunction(String functionName) {
       if (userFunctions.isFunctionDefined(functionName)) return userFunctions;
 
       // let parser do its thing
-      return super.getFunction(functionName);
+      Function function = super.getFunction(functionName);
+      if (function != null && edtFunctions.contains(function)) {
+        function = MacroExecutor.getInstance().onEdt(function);
+      }
+      return profiled(function);
+    }
+
+    /**
+     * Wraps a function so its calls are recorded while the {@link MacroProfiler} is enabled. User
+     * defined functions are not wrapped, as they record their own calls.
+     *
+     * @param function the function, may be null.
+     * @return the function to evaluate.
+     */
+    private static Function profiled(Function function) {
+      MacroProfiler profiler = MacroProfiler.getInstance();
+      if (function != null && profiler.isEnabled()) {
+        return profiler.profile(function);
+      }
+      return function;
     }
   }
 }
@@ -19,8 +19,6 @@
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import net.rptools.dicelib.expression.Result;
 import net.rptools.maptool.client.functions.*;
 import net.rptools.maptool.client.functions.exceptions.*;
@@ -31,12 +29,13 @@
 import net.rptools.maptool.client.ui.htmlframe.HTMLFrameFactory;
 import net.rptools.maptool.client.ui.htmlframe.HTMLFrameFactory.FrameType;
 import net.rptools.maptool.client.ui.macrobuttons.buttons.MacroButtonPrefs;
-import net.rptools.maptool.client.ui.zone.renderer.ZoneRenderer;
 import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.model.EvaluatedPropertyScope;
 import net.rptools.maptool.model.MacroButtonProperties;
 import net.rptools.maptool.model.Token;
 import net.rptools.maptool.model.Zone;
 import net.rptools.maptool.model.library.LibraryManager;
+import net.rptools.maptool.model.library.token.LibraryTokenIndex;
 import net.rptools.maptool.util.ExpressionParserFactory;
 import net.rptools.parser.ParserException;
 import net.rptools.parser.function.Function;
@@ -103,6 +102,12 @@ public class MapToolLineParser {
    */
   private List<Integer> newRolls = new LinkedList<>();
 
+  /** The number of dice rolled by this parser, see {@link #getRollCount()}. */
+  private long rollCount;
+
+  /** The names of the user defined functions being evaluated, see {@link #getUserFunctionStack}. */
+  private final Deque<String> userFunctionStack = new ArrayDeque<>();
+
   /** Factory class for createing macro locations. */
   private static final MacroLocationFactory macroLocationFactory =
       MacroLocationFactory.getInstance();
@@ -144,13 +149,6 @@ private enum OutputLoc { // Mutually exclusive output location
     FRAME5
   }
 
-  private enum ScanState {
-    SEARCHING_FOR_ROLL,
-    SEARCHING_FOR_QUOTE,
-    SEARCHING_FOR_CLOSE_BRACKET,
-    SKIP_NEXT_CHAR
-  }
-
   public Map<String, String> listAllMacroFunctions() {
     Map<String, String> functionList = new HashMap<String, String>();
 
@@ -168,62 +166,6 @@ public Map<String, String> listAllMacroFunctions() {
     return functionList;
   }
 
-  // Class to hold the inline rolls and where they start and end.
-  private static class InlineRollMatch {
-    final int start;
-    final int end;
-    final String match;
-    final int optEnd;
-
-    @SuppressWarnings("unused")
-    InlineRollMatch(int start, int end, String match) {
-      this.start = start;
-      this.end = end;
-      this.match = match;
-      this.optEnd = -1;
-    }
-
-    InlineRollMatch(int start, int end, String match, int optEnd) {
-      this.start = start;
-      this.end = end;
-      this.match = match;
-      this.optEnd = optEnd;
-    }
-
-    public int getStart() {
-      return start;
-    }
-
-    public int getEnd() {
-      return end;
-    }
-
-    public String getMatch() {
-      return match;
-    }
-
-    @SuppressWarnings("unused")
-    public int getOptEnd() {
-      return optEnd;
-    }
-
-    public String getOpt() {
-      if (optEnd > 0) {
-        return match.substring(1, optEnd - start);
-      } else {
-        return "";
-      }
-    }
-
-    public String getRoll() {
-      if (optEnd > 0) {
-        return match.substring(optEnd + 1 - start, end - start);
-      } else {
-        return match.substring(1, end - start);
-      }
-    }
-  }
-
   public String parseLine(String line) throws ParserException {
     return parseLine(null, line);
   }
@@ -261,7 +203,13 @@ public String parseLine(
       return "";
     }
     Stack<Token> contextTokenStack = new Stack<Token>();
+    boolean topLevel = contextStackEmpty();
     context = enterContext(context);
+    // Token properties read during the run are only evaluated once, see getEvaluatedProperty().
+    EvaluatedPropertyScope propertyScope = EvaluatedPropertyScope.open();
+    // Called macros are profiled by runMacro(), so only profile macros run from outside the parser.
+    MacroProfiler.Frame profilerFrame =
+        topLevel ? MacroProfiler.getInstance().enterMacro(context.getSource()) : null;
     MapToolVariableResolver resolver = null;
     boolean resolverInitialized = false;
     String opts = null;
@@ -272,9 +220,9 @@ public String parseLine(
       resolverInitialized = resolver.initialize();
       StringBuilder builder = new StringBuilder();
       int start = 0;
-      List<InlineRollMatch> matches = this.locateInlineRolls(line);
+      MacroPlan plan = MacroPlan.of(line);
 
-      for (InlineRollMatch match : matches) {
+      for (MacroPlan.InlineRoll match : plan.getRolls()) {
         builder.append(line, start, match.getStart()); // add everything before the roll
 
         start = match.getEnd() + 1;
@@ -311,7 +259,7 @@ public String parseLine(
             // Turn the opts string into a list of OptionInfo objects.
             List<OptionInfo> optionList = null;
             try {
-              optionList = OptionInfo.getRollOptionList(opts);
+              optionList = match.getOptions();
             } catch (OptionInfo.RollOptionException roe) {
               throw doError(roe.msg, opts, roll);
             }
@@ -578,12 +526,16 @@ public String parseLine(
                   if (!isMacroTrusted()) {
                     throw new ParserException(I18N.getText("macro.function.roll.noPerm"));
                   }
+                  String tokenIdentifier =
+                      option.getParsedParam(0, resolver, tokenInContext, this).toString();
                   Token newToken =
-                      MapTool.getFrame()
-                          .getCurrentZoneRenderer()
-                          .getZone()
-                          .resolveToken(
-                              option.getParsedParam(0, resolver, tokenInContext, this).toString());
+                      MacroExecutor.getInstance()
+                          .callOnEdt(
+                              () ->
+                                  MapTool.getFrame()
+                                      .getCurrentZoneRenderer()
+                                      .getZone()
+                                      .resolveToken(tokenIdentifier));
                   if (newToken != null) {
                     contextTokenStack.push(resolver.getTokenInContext());
                     resolver.setTokenIncontext(newToken);
@@ -718,27 +670,10 @@ public String parseLine(
               }
             }
 
-            // Set up regexes for scanning through the branches.
-            // branchRegex then defines one matcher group for the parseable content of the
-            // branch.
+            // The branches of the body only depend on its text, so they are split once and kept
+            // in the plan.
             String rollBranch = roll;
-            String branchRegex, branchSepRegex, branchLastSepRegex;
-            if (codeType != CodeType.CODEBLOCK) {
-              // matches any text not containing a ";" (skipping over strings)
-              String noCodeRegex = "((?:[^\";]|\"[^\"]*\"|'[^']*')*)";
-              branchRegex = noCodeRegex;
-              branchSepRegex = ";";
-              branchLastSepRegex = ";?"; // The last clause doesn't have to end with a separator
-            } else {
-              // matches text inside braces "{...}", skipping over strings (one level of {}
-              // nesting
-              // allowed)
-              String codeRegex =
-                  "\\{((?:[^{}\"]|\"[^\"]*\"|'[^']*'|\\{(?:[^}\"]|\"[^\"]*\"|'[^']*')*})*)}";
-              branchRegex = codeRegex;
-              branchSepRegex = ";";
-              branchLastSepRegex = ";?"; // The last clause doesn't have to end with a separator
-            }
+            boolean codeBlock = codeType == CodeType.CODEBLOCK;
 
             // Extract the branch to use
             switch (branchType) {
@@ -748,12 +683,8 @@ public String parseLine(
                */
               case NO_BRANCH:
                 {
-                  // There's only one branch, so our regex is very simple
-                  String testRegex = String.format("^\\s*%s\\s*$", branchRegex);
-                  Matcher testMatcher = Pattern.compile(testRegex).matcher(roll);
-                  if (testMatcher.find()) {
-                    rollBranch = testMatcher.group(1);
-                  } else {
+                  rollBranch = match.getBody(codeBlock);
+                  if (rollBranch == null) {
                     throw doError("lineParser.errorBodyRoll", opts, roll);
                   }
                   break;
@@ -771,65 +702,37 @@ public String parseLine(
                         opts,
                         roll);
                   }
-                  int whichBranch = (branchConditionValue != 0) ? 0 : 1;
-                  String testRegex =
-                      String.format(
-                          "^\\s*%s\\s*(?:%s\\s*%s\\s*%s)?\\s*$",
-                          branchRegex, branchSepRegex, branchRegex, branchLastSepRegex);
-                  Matcher testMatcher = Pattern.compile(testRegex).matcher(roll);
-                  if (testMatcher.find()) { // verifies that roll body is well-formed
-                    rollBranch = testMatcher.group(1 + whichBranch);
-                    if (rollBranch == null) {
-                      // Produces no output. If codeblock, empty string to fix #1876.
-                      rollBranch = codeType == CodeType.CODEBLOCK ? "" : "''";
-                    }
-                    rollBranch = rollBranch.trim();
-                  } else {
+                  MacroPlan.IfBranches branches = match.getIfBranches(codeBlock);
+                  if (branches == null) {
                     throw doError("lineParser.ifError", opts, roll);
                   }
+                  rollBranch =
+                      (branchConditionValue != 0) ? branches.whenTrue() : branches.whenFalse();
+                  if (rollBranch == null) {
+                    // Produces no output. If codeblock, empty string to fix #1876.
+                    rollBranch = codeBlock ? "" : "''";
+                  }
                   break;
                 }
               case SWITCH:
                 {
-                  // We augment the branch regex to detect the "case xxx:" or "default:" prefixes,
-                  // and search for a match. An error is thrown if no case match is found.
-
-                  // Regex matches 'default', 'case 123:', 'case "123":', 'case "abc":', but not
-                  // 'case abc:'
-                  branchRegex =
-                      "(?:case\\s*\"?((?<!\")(?:\\+|-)?[\\d]+(?!\")|(?<=\")[^\"]*(?=\"))\"?|(default))\\s*:\\s*"
-                          + branchRegex;
+                  // The first "case xxx:" whose label matches the condition, or "default:", is
+                  // used. An error is thrown if no case match is found.
+                  List<MacroPlan.SwitchCase> cases = match.getSwitchCases(codeBlock);
+                  if (cases == null) {
+                    throw doError("lineParser.switchError", opts, roll);
+                  }
                   String caseTarget = branchConditionParsed.toString();
-                  String testRegex =
-                      String.format(
-                          "^(?:\\s*%s\\s*%s\\s*)*\\s*%s\\s*%s\\s*$",
-                          branchRegex, branchSepRegex, branchRegex, branchLastSepRegex);
-                  Matcher testMatcher = Pattern.compile(testRegex).matcher(roll);
-                  if (testMatcher.find()) { // verifies that roll body is well-formed
-                    String scanRegex =
-                        String.format("\\s*%s\\s*(?:%s)?", branchRegex, branchSepRegex);
-                    Matcher scanMatcher = Pattern.compile(scanRegex).matcher(roll);
-                    boolean foundMatch = false;
-                    while (!foundMatch && scanMatcher.find()) {
-                      String caseLabel = scanMatcher.group(1); // "case (xxx):"
-                      String def = scanMatcher.group(2); // "(default):"
-                      String branch = scanMatcher.group(3);
-                      if (def != null) {
-                        rollBranch = branch.trim();
-                        foundMatch = true;
-                        ;
-                      }
-                      if (caseLabel != null && caseLabel.matches(caseTarget)) {
-                        rollBranch = branch.trim();
-                        foundMatch = true;
-                      }
-                    }
-                    if (!foundMatch) {
-                      throw doError(
-                          I18N.getText("lineParser.switchNoMatch", caseTarget), opts, roll);
+                  boolean foundMatch = false;
+                  for (MacroPlan.SwitchCase switchCase : cases) {
+                    if (switchCase.isDefault() || switchCase.label().matches(caseTarget)) {
+                      rollBranch = switchCase.body();
+                      foundMatch = true;
+                      break;
                     }
-                  } else {
-                    throw doError("lineParser.switchError", opts, roll);
+                  }
+                  if (!foundMatch) {
+                    throw doError(I18N.getText("lineParser.switchNoMatch", caseTarget), opts, roll);
                   }
 
                   break;
@@ -941,7 +844,8 @@ public String parseLine(
                   if (!catchAssert) {
                     throw assertEx;
                   }
-                  MapTool.addLocalMessage(assertEx.getMessage());
+                  MacroExecutor.getInstance()
+                      .runOnEdt(() -> MapTool.addLocalMessage(assertEx.getMessage()));
                   output_text = "";
                 } catch (ParserException e) {
                   e.addMacro(callName);
@@ -972,21 +876,21 @@ public String parseLine(
               if (HTMLFrameFactory.isInternalOnly(frameName)) {
                 throw new ParserException(I18N.getText("msg.error.frame.reservedName", frameName));
               }
-              HTMLFrameFactory.show(frameName, FrameType.FRAME, false, frameOpts, htmlContent);
+              showFrame(frameName, FrameType.FRAME, false, frameOpts, htmlContent);
               break;
             case DIALOG:
               // Macros can not interact with internal frames/dialogs/overlays
               if (HTMLFrameFactory.isInternalOnly(frameName)) {
                 throw new ParserException(I18N.getText("msg.error.frame.reservedName", frameName));
               }
-              HTMLFrameFactory.show(frameName, FrameType.DIALOG, false, frameOpts, htmlContent);
+              showFrame(frameName, FrameType.DIALOG, false, frameOpts, htmlContent);
               break;
             case OVERLAY:
               // Macros can not interact with internal frames/dialogs/overlays
               if (HTMLFrameFactory.isInternalOnly(frameName)) {
                 throw new ParserException(I18N.getText("msg.error.frame.reservedName", frameName));
               }
-              HTMLFrameFactory.show(frameName, FrameType.OVERLAY, true, frameOpts, htmlContent);
+              showFrame(frameName, FrameType.OVERLAY, true, frameOpts, htmlContent);
               break;
             case CHAT:
               builder.append(expressionBuilder);
@@ -996,15 +900,14 @@ public String parseLine(
               if (HTMLFrameFactory.isInternalOnly(frameName)) {
                 throw new ParserException(I18N.getText("msg.error.frame.reservedName", frameName));
               }
-              HTMLFrameFactory.show(frameName, FrameType.FRAME, true, frameOpts, htmlContent);
+              showFrame(frameName, FrameType.FRAME, true, frameOpts, htmlContent);
               break;
             case DIALOG5:
               // Macros can not interact with internal frames/dialogs/overlays
               if (HTMLFrameFactory.isInternalOnly(frameName)) {
                 throw new ParserException(I18N.getText("msg.error.frame.reservedName", frameName));
               }
-              HTMLFrameFactory.show(
-                  frameName, HTMLFrameFactory.FrameType.DIALOG, true, frameOpts, htmlContent);
+              showFrame(frameName, FrameType.DIALOG, true, frameOpts, htmlContent);
               break;
           }
 
@@ -1038,18 +941,51 @@ public String parseLine(
       throw doError(
           "lineParser.errorBodyRoll", opts == null ? "" : opts, roll == null ? line : roll);
     } finally {
+      MacroProfiler.getInstance().exit(profilerFrame);
+      propertyScope.close();
       exitContext();
-      if (resolverInitialized) {
-        // This is the top level call, time to clean up
-        resolver.flush();
-      }
-      if (MapTool.getFrame() != null) {
-        // Repaint in case macros changed anything.
-        MapTool.getFrame().refresh();
-      }
+      // This is the top level call if the resolver was initialized, time to clean up
+      MapToolVariableResolver topLevelResolver = resolverInitialized ? resolver : null;
+      MacroExecutor.getInstance()
+          .runOnEdt(
+              () -> {
+                if (topLevelResolver != null) {
+                  topLevelResolver.flush();
+                }
+                if (MapTool.getFrame() != null) {
+                  // Repaint in case macros changed anything.
+                  MapTool.getFrame().refresh();
+                }
+              });
     }
   }
 
+  /**
+   * Shows the output of a roll in a frame, dialog or overlay. This is done on the Swing thread, as
+   * the roll may be part of a macro that runs in the background.
+   *
+   * @param frameName the name of the frame.
+   * @param frameType the type of the frame.
+   * @param isHTML5 whether the frame uses HTML5.
+   * @param frameOpts the options of the frame.
+   * @param htmlContent the content to show.
+   * @throws ParserException if the options of the frame are invalid.
+   */
+  private static void showFrame(
+      String frameName,
+      FrameType frameType,
+      boolean isHTML5,
+      String frameOpts,
+      HTMLContent htmlContent)
+      throws ParserException {
+    MacroExecutor.getInstance()
+        .callOnEdt(
+            () -> {
+              HTMLFrameFactory.show(frameName, frameType, isHTML5, frameOpts, htmlContent);
+              return null;
+            });
+  }
+
   public Result parseExpression(String expression, boolean makeDeterministic)
       throws ParserException {
     return parseExpression(null, expression, makeDeterministic);
@@ -1072,6 +1008,8 @@ public Result parseExpression(
       macroRecurseDepth = 0;
       throw new ParserException(I18N.getText("lineParser.maxRecursion"));
     }
+    MacroProfiler.Frame profilerFrame =
+        MacroProfiler.getInstance().enter(MacroProfiler.Kind.EXPRESSION, expression);
     try {
       parserRecurseDepth++;
       if (log.isDebugEnabled()) {
@@ -1080,6 +1018,7 @@ public Result parseExpression(
       }
       List<Integer> origRolled = List.copyOf(rolled);
       Result res = expressionParser.evaluate(expression, resolver, makeDeterministic);
+      rollCount += res.getRolled().size();
       // if rolled has changed, we've been in a context that has updated it already
       if (origRolled.equals(rolled)) {
         rolled.addAll(res.getRolled());
@@ -1105,7 +1044,7 @@ public Result parseExpression(
       if (!catchAssert) {
         throw e;
       }
-      MapTool.addLocalMessage(e.getMessage());
+      MacroExecutor.getInstance().runOnEdt(() -> MapTool.addLocalMessage(e.getMessage()));
 
       // return an empty result to not collide with tooltips
       // when catching an assert`
@@ -1125,6 +1064,7 @@ public Result parseExpression(
           I18N.getText("lineParser.errorExecutingExpression", e.toString(), expression));
     } finally {
       parserRecurseDepth--;
+      MacroProfiler.getInstance().exit(profilerFrame);
     }
   }
 
@@ -1206,7 +1146,6 @@ public String runMacro(
       boolean createNewVariableContext)
       throws ParserException {
 
-    MapToolMacroContext macroContext;
     MacroLocation currentContext = null;
 
     if (!contextStackEmpty()) {
@@ -1220,8 +1159,123 @@ public String runMacro(
       return "";
     }
 
-    // Where we will store the macro body text once we fetch it.
+    // The body and context are looked up on the Swing thread, as they may come from a token.
+    MacroText macroText =
+        MacroExecutor.getInstance().callOnEdt(() -> findMacro(mloc, tokenInContext));
+    String macroBody = macroText.body();
+    MapToolMacroContext macroContext = macroText.context();
+
+    // Error if macro not found
+    if (macroBody == null) {
+      throw new ParserException(I18N.getText("lineParser.unknownMacro", mloc.getName()));
+    }
+    MapToolVariableResolver macroResolver;
+    if (createNewVariableContext) {
+      macroResolver = new MapToolVariableResolver(tokenInContext);
+    } else {
+      macroResolver = resolver;
+    }
+
+    JsonElement json = null;
+    if (ARGS_PASSED_AS_VARIABLE_INDICATOR.equals(args)) {
+      // If the args are the indicator then we need to get the args from the resolver to avoid
+      // unwanted conversions
+      Object argObj = resolver.getVariable(ARGS_PASSED_AS_VARIABLE_NAME);
+      macroResolver.setVariable("macro.args", argObj);
+      if (argObj instanceof JsonArray) {
+        json = (JsonArray) argObj;
+      }
+    } else {
+      macroResolver.setVariable("macro.args", args);
+    }
+
+    if (json == null) {
+      json = JSONMacroFunctions.getInstance().asJsonElement(args);
+    }
+
+    if (json.isJsonArray()) {
+      JsonArray jarr = json.getAsJsonArray();
+      macroResolver.setVariable("macro.args.num", BigDecimal.valueOf(jarr.size()));
+      for (int i = 0; i < jarr.size(); i++) {
+        macroResolver.setVariable("macro.args." + i, asMacroArg(jarr.get(i)));
+      }
+    } else {
+      macroResolver.setVariable("macro.args.num", BigDecimal.ZERO);
+    }
+    macroResolver.setVariable("macro.return", "");
+
+    // Call the macro
+    macroRecurseDepth++;
+    if (macroRecurseDepth > maxRecursionDepth) {
+      parserRecurseDepth = 0;
+      macroRecurseDepth = 0;
+      throw new ParserException(I18N.getText("lineParser.maxRecursion"));
+    }
+    MacroProfiler.Frame profilerFrame = MacroProfiler.getInstance().enterMacro(mloc);
+    try {
+      String macroOutput = null;
+
+      try {
+        macroOutput = runMacroBlock(macroResolver, tokenInContext, macroBody, macroContext);
+        // Copy the return value of the macro into our current variable scope.
+        resolver.setVariable("macro.return", macroResolver.getVariable("macro.return"));
+      } catch (ReturnFunctionException returnEx) {
+        Object result = returnEx.getResult();
+        if (result != null) {
+          resolver.setVariable("macro.return", result);
+          macroOutput = result.toString();
+        }
+      }
+      if (macroOutput != null) {
+        // Note! Its important that trim is not used to replace the following two lines.
+        // If you use String.trim() you may inadvertnatly remove the special characters
+        // used to mark rolls.
+        macroOutput = macroOutput.replaceAll("^\\s+", "");
+        macroOutput = macroOutput.replaceAll("\\s+$", "");
+      }
+      return macroOutput;
+    } finally {
+      macroRecurseDepth--;
+      MacroProfiler.getInstance().exit(profilerFrame);
+    }
+  }
+
+  /**
+   * Returns the JsonElement as a valid macro argument.
+   *
+   * @param jsonElement The JsonElement to convert.
+   * @return The converted JsonElement.
+   */
+  private Object asMacroArg(JsonElement jsonElement) {
+    if (jsonElement == null) {
+      return "";
+    } else if (jsonElement.isJsonNull()) {
+      return "";
+    } else {
+      return JSONMacroFunctions.getInstance().asScriptType(jsonElement);
+    }
+  }
+
+  /**
+   * The text of a macro and the context to run it in.
+   *
+   * @param body the text of the macro, null if it was not found.
+   * @param context the context to run the macro in.
+   */
+  private record MacroText(String body, MapToolMacroContext context) {}
+
+  /**
+   * Finds the text of a macro.
+   *
+   * @param mloc the location of the macro.
+   * @param tokenInContext the token in context, used for macros on tokens.
+   * @return the text and context of the macro.
+   * @throws ParserException if the location is invalid or, for most locations, if there is no such
+   *     macro.
+   */
+  private MacroText findMacro(MacroLocation mloc, Token tokenInContext) throws ParserException {
     String macroBody = null;
+    MapToolMacroContext macroContext;
 
     if (mloc.getName().isEmpty()
         || mloc.getSource() == MacroLocation.MacroSource.chat
@@ -1328,93 +1382,7 @@ public String runMacro(
       }
     }
 
-    // Error if macro not found
-    if (macroBody == null) {
-      throw new ParserException(I18N.getText("lineParser.unknownMacro", mloc.getName()));
-    }
-    MapToolVariableResolver macroResolver;
-    if (createNewVariableContext) {
-      macroResolver = new MapToolVariableResolver(tokenInContext);
-    } else {
-      macroResolver = resolver;
-    }
-
-    JsonElement json = null;
-    if (ARGS_PASSED_AS_VARIABLE_INDICATOR.equals(args)) {
-      // If the args are the indicator then we need to get the args from the resolver to avoid
-      // unwanted conversions
-      Object argObj = resolver.getVariable(ARGS_PASSED_AS_VARIABLE_NAME);
-      macroResolver.setVariable("macro.args", argObj);
-      if (argObj instanceof JsonArray) {
-        json = (JsonArray) argObj;
-      }
-    } else {
-      macroResolver.setVariable("macro.args", args);
-    }
-
-    if (json == null) {
-      json = JSONMacroFunctions.getInstance().asJsonElement(args);
-    }
-
-    if (json.isJsonArray()) {
-      JsonArray jarr = json.getAsJsonArray();
-      macroResolver.setVariable("macro.args.num", BigDecimal.valueOf(jarr.size()));
-      for (int i = 0; i < jarr.size(); i++) {
-        macroResolver.setVariable("macro.args." + i, asMacroArg(jarr.get(i)));
-      }
-    } else {
-      macroResolver.setVariable("macro.args.num", BigDecimal.ZERO);
-    }
-    macroResolver.setVariable("macro.return", "");
-
-    // Call the macro
-    macroRecurseDepth++;
-    if (macroRecurseDepth > maxRecursionDepth) {
-      parserRecurseDepth = 0;
-      macroRecurseDepth = 0;
-      throw new ParserException(I18N.getText("lineParser.maxRecursion"));
-    }
-    try {
-      String macroOutput = null;
-
-      try {
-        macroOutput = runMacroBlock(macroResolver, tokenInContext, macroBody, macroContext);
-        // Copy the return value of the macro into our current variable scope.
-        resolver.setVariable("macro.return", macroResolver.getVariable("macro.return"));
-      } catch (ReturnFunctionException returnEx) {
-        Object result = returnEx.getResult();
-        if (result != null) {
-          resolver.setVariable("macro.return", result);
-          macroOutput = result.toString();
-        }
-      }
-      if (macroOutput != null) {
-        // Note! Its important that trim is not used to replace the following two lines.
-        // If you use String.trim() you may inadvertnatly remove the special characters
-        // used to mark rolls.
-        macroOutput = macroOutput.replaceAll("^\\s+", "");
-        macroOutput = macroOutput.replaceAll("\\s+$", "");
-      }
-      return macroOutput;
-    } finally {
-      macroRecurseDepth--;
-    }
-  }
-
-  /**
-   * Returns the JsonElement as a valid macro argument.
-   *
-   * @param jsonElement The JsonElement to convert.
-   * @return The converted JsonElement.
-   */
-  private Object asMacroArg(JsonElement jsonElement) {
-    if (jsonElement == null) {
-      return "";
-    } else if (jsonElement.isJsonNull()) {
-      return "";
-    } else {
-      return JSONMacroFunctions.getInstance().asScriptType(jsonElement);
-    }
+    return new MacroText(macroBody, macroContext);
   }
 
   /**
@@ -1467,36 +1435,8 @@ String runMacroBlock(
    *     the caller doesn't have access to the token.
    */
   public Token getTokenMacroLib(String location) throws ParserException {
-    if (location == null) {
-      return null;
-    }
-    if (!location.matches("(?i)^lib:.*")) {
-      throw new ParserException(I18N.getText("lineParser.notALibToken"));
-    }
-    final String libTokenName = location;
-    Token libToken = null;
-    if (libTokenName.length() > 0) {
-      List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
-      for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
-
-        for (Token token : tokenList) {
-          // If we are not the GM and the token is not visible to players then we don't
-          // let them get functions from it.
-          if (!MapTool.getPlayer().isGM() && !token.isVisible()) {
-            throw new ParserException(I18N.getText("lineParser.libUnableToExec", libTokenName));
-          }
-          if (libToken != null) {
-            throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", libTokenName));
-          }
-
-          libToken = token;
-        }
-      }
-      return libToken;
-    }
-    return null;
+    var entry = getTokenMacroLibEntry(location);
+    return entry == null ? null : entry.token();
   }
 
   /**
@@ -1508,37 +1448,29 @@ public Token getTokenMacroLib(String location) throws ParserException {
    *     the caller doesn't have access to the token.
    */
   public Zone getTokenMacroLibZone(String location) throws ParserException {
+    var entry = getTokenMacroLibEntry(location);
+    return entry == null ? null : entry.zone();
+  }
+
+  private LibraryTokenIndex.Entry getTokenMacroLibEntry(String location) throws ParserException {
     if (location == null) {
       return null;
     }
-    if (!location.matches("(?i)^lib:.*")) {
+    if (!LibraryTokenIndex.isLibTokenName(location)) {
       throw new ParserException(I18N.getText("lineParser.notALibToken"));
     }
-    final String libTokenName = location;
-    Zone libTokenZone = null;
-    if (libTokenName.length() > 0) {
-      List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
-      for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
-
-        for (Token token : tokenList) {
-          // If we are not the GM and the token is not visible to players then we don't
-          // let them get functions from it.
-          if (!MapTool.getPlayer().isGM() && !token.isVisible()) {
-            throw new ParserException(I18N.getText("lineParser.libUnableToExec", libTokenName));
-          }
-
-          if (libTokenZone != null) {
-            throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", libTokenName));
-          }
-
-          libTokenZone = zr.getZone();
-        }
+    var entries = LibraryTokenIndex.getInstance().getTokens(location);
+    for (var entry : entries) {
+      // If we are not the GM and the token is not visible to players then we don't
+      // let them get functions from it.
+      if (!MapTool.getPlayer().isGM() && !entry.token().isVisible()) {
+        throw new ParserException(I18N.getText("lineParser.libUnableToExec", location));
       }
-      return libTokenZone;
     }
-    return null;
+    if (entries.size() > 1) {
+      throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", location));
+    }
+    return entries.isEmpty() ? null : entries.getFirst();
   }
 
   /**
@@ -1713,80 +1645,6 @@ public boolean isMacroTrusted() {
     return !contextStack.isEmpty() && contextStack.peek().isTrusted();
   }
 
-  /**
-   * Locate the inline rolls within the input line.
-   *
-   * @param line The line to search for the rolls in.
-   * @return A list of the rolls.
-   */
-  private List<InlineRollMatch> locateInlineRolls(String line) {
-    List<InlineRollMatch> matches = new ArrayList<InlineRollMatch>();
-    ScanState scanState = ScanState.SEARCHING_FOR_ROLL;
-    int startMatch = 0;
-    int bracketLevel = 0;
-    char quoteChar = ' ';
-    char bracketChar = ' ';
-    ScanState savedState = null;
-    int optEnd = -1;
-
-    for (int i = 0, strMax = line.length(); i < strMax; i++) {
-      char c = line.charAt(i);
-      switch (scanState) {
-        case SEARCHING_FOR_ROLL:
-          if (c == '{' || c == '[') {
-            startMatch = i;
-            scanState = ScanState.SEARCHING_FOR_CLOSE_BRACKET;
-            bracketChar = c;
-            bracketLevel++;
-            optEnd = -1;
-          }
-          break;
-
-        case SEARCHING_FOR_CLOSE_BRACKET:
-          if (c == bracketChar) {
-            bracketLevel++;
-          } else if (bracketChar == '[' && c == ']') {
-            bracketLevel--;
-            if (bracketLevel == 0) {
-              matches.add(
-                  new InlineRollMatch(startMatch, i, line.substring(startMatch, i + 1), optEnd));
-              scanState = ScanState.SEARCHING_FOR_ROLL;
-            }
-          } else if (bracketChar == '{' && c == '}') {
-            bracketLevel--;
-            if (bracketLevel == 0) {
-              matches.add(
-                  new InlineRollMatch(startMatch, i, line.substring(startMatch, i + 1), optEnd));
-              scanState = ScanState.SEARCHING_FOR_ROLL;
-            }
-          } else if (c == '"' || c == '\'') {
-            quoteChar = c;
-            scanState = ScanState.SEARCHING_FOR_QUOTE;
-          } else if (c == '\\') {
-            savedState = scanState;
-            scanState = ScanState.SKIP_NEXT_CHAR;
-          } else if (bracketChar == '[' && optEnd == -1 && c == ':') {
-            optEnd = i;
-          }
-          break;
-
-        case SEARCHING_FOR_QUOTE:
-          if (c == quoteChar) {
-            scanState = ScanState.SEARCHING_FOR_CLOSE_BRACKET;
-          } else if (c == '\\') {
-            savedState = scanState;
-            scanState = ScanState.SKIP_NEXT_CHAR;
-          }
-          break;
-
-        case SKIP_NEXT_CHAR:
-          scanState = savedState;
-          break;
-      }
-    }
-    return matches;
-  }
-
   /**
    * Gets if the whole of the macro path up to this point has been running in a trusted context.
    *
@@ -1889,6 +1747,26 @@ public List<Integer> getNewRolls() {
     return rolls;
   }
 
+  /**
+   * Returns the number of dice this parser has rolled since it was created. Comparing the count
+   * before and after evaluating something tells whether the result depended on chance.
+   *
+   * @return the number of dice rolled.
+   */
+  public long getRollCount() {
+    return rollCount;
+  }
+
+  /**
+   * Returns the names of the user defined functions this parser is evaluating, innermost first.
+   * They are kept by the parser, as macros that run in the background have a parser of their own.
+   *
+   * @return the stack of function names.
+   */
+  public Deque<String> getUserFunctionStack() {
+    return userFunctionStack;
+  }
+
   /** Resets all the lists of rolls that have occurred. */
   public void clearRolls() {
     newRolls.clear();
@@ -97,6 +97,18 @@ public class MapToolVariableResolver implements VariableResolver {
 
   private Token tokenInContext;
 
+  /**
+   * The lower case names of the properties of the token in context, which hide variables of the
+   * same name. Only used by {@link #isLocalVariable}.
+   */
+  private Set<String> tokenPropertyNames;
+
+  /** The campaign, property type and property types version tokenPropertyNames was read for. */
+  private Campaign tokenPropertyNamesCampaign;
+
+  private String tokenPropertyNamesType;
+  private int tokenPropertyNamesVersion;
+
   private boolean autoPrompt;
 
   public MapToolVariableResolver(Token tokenInContext) {
@@ -137,6 +149,16 @@ public boolean initialize() {
     return false;
   }
 
+  /**
+   * Returns whether this resolver has been initialized, which means that its delayed actions are
+   * performed when the macro that initialized it ends.
+   *
+   * @return true if the resolver has been initialized.
+   */
+  public boolean isInitialized() {
+    return delayedActionList != null;
+  }
+
   /**
    * Add an action to be performed after the full expression has been evaluated.
    *
@@ -148,10 +170,25 @@ public void addDelayedAction(Runnable runnable) {
     }
   }
 
-  /** Perform any delayed actions. This should called by the command framework only. */
+  /**
+   * Perform any delayed actions. This should called by the command framework only. An action that
+   * fails doesn't keep the others, such as ending a token update batch, from being performed.
+   */
   public void flush() {
+    RuntimeException failure = null;
     for (Runnable r : delayedActionList) {
-      r.run();
+      try {
+        r.run();
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
     }
   }
 
@@ -193,8 +230,76 @@ public Object getVariable(String name) throws ParserException {
     return getVariable(name, VariableModifiers.None);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>When called from a macro that runs in the background, only variables of this resolver are
+   * read on the calling thread. Token properties, initiative and prompts are read on the Swing
+   * thread, see {@link MacroExecutor}.
+   */
   @Override
   public Object getVariable(String name, VariableModifiers mods) throws ParserException {
+    MacroExecutor executor = MacroExecutor.getInstance();
+    if (executor.isWorkerThread() && !isLocalVariable(name, mods)) {
+      return executor.callOnEdt(() -> resolveVariable(name, mods));
+    }
+    return resolveVariable(name, mods);
+  }
+
+  /**
+   * Returns whether reading a variable only uses the variables of this resolver. With a token in
+   * context this is the case for variables that don't share their name with one of its
+   * properties, states or bars, which are looked up once per property type rather than on every
+   * read.
+   *
+   * @param name the name of the variable.
+   * @param mods the modifiers of the variable.
+   * @return true if the variable can be read without using the token, campaign or user interface.
+   * @throws ParserException if the worker is interrupted while looking up the property names.
+   */
+  private boolean isLocalVariable(String name, VariableModifiers mods) throws ParserException {
+    if (mods == VariableModifiers.Prompt
+        || name.equals(INITIATIVE_CURRENT)
+        || name.equals(INITIATIVE_ROUND)
+        || variables.get(name) == null) {
+      return false;
+    }
+    Token token = tokenInContext;
+    if (token == null) {
+      return true;
+    }
+    if (name.startsWith(MarkDownFunctions.MARKDOWN_PREFIX)
+        || name.startsWith(STATE_PREFIX)
+        || name.startsWith(BAR_PREFIX)
+        || name.startsWith("token.")) {
+      return false;
+    }
+
+    Campaign campaign = MapTool.getCampaign();
+    String type = token.getPropertyType();
+    int version = EvaluatedPropertyScope.getPropertyTypesVersion();
+    if (tokenPropertyNames == null
+        || campaign != tokenPropertyNamesCampaign
+        || !Objects.equals(type, tokenPropertyNamesType)
+        || version != tokenPropertyNamesVersion) {
+      tokenPropertyNames =
+          MacroExecutor.getInstance()
+              .callOnEdt(
+                  () -> {
+                    Set<String> names = new HashSet<>();
+                    for (TokenProperty tp : campaign.getTokenPropertyList(type)) {
+                      names.add(tp.getName().toLowerCase());
+                    }
+                    return names;
+                  });
+      tokenPropertyNamesCampaign = campaign;
+      tokenPropertyNamesType = type;
+      tokenPropertyNamesVersion = version;
+    }
+    return !tokenPropertyNames.contains(name.toLowerCase());
+  }
+
+  private Object resolveVariable(String name, VariableModifiers mods) throws ParserException {
 
     boolean evaluate = false; // Should we try to evaluate the value.
 
@@ -347,9 +452,45 @@ protected void updateTokenProperty(Token token, String varname, String value) {
         .updateTokenProperty(tokenInContext, Token.Update.setProperty, varname, value);
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>When called from a macro that runs in the background, only variables of this resolver are
+   * set on the calling thread. Token properties, states and initiative are changed on the Swing
+   * thread, in the order they are set by the macro, see {@link MacroExecutor}.
+   */
   @Override
   public void setVariable(String varname, VariableModifiers modifiers, Object value)
       throws ParserException {
+    MacroExecutor executor = MacroExecutor.getInstance();
+    if (executor.isWorkerThread() && !isLocalAssignment(varname)) {
+      executor.callOnEdt(
+          () -> {
+            assignVariable(varname, value);
+            return null;
+          });
+    } else {
+      assignVariable(varname, value);
+    }
+  }
+
+  /**
+   * Returns whether setting a variable only changes the variables of this resolver.
+   *
+   * @param varname the name of the variable.
+   * @return true if the variable can be set without changing the token or campaign.
+   */
+  private boolean isLocalAssignment(String varname) {
+    return tokenInContext == null
+        && !varname.startsWith(STATE_PREFIX)
+        && !varname.startsWith(BAR_PREFIX)
+        && !varname.startsWith("token.")
+        && !varname.endsWith(TOKEN_VISIBLE)
+        && !varname.equals(INITIATIVE_CURRENT)
+        && !varname.equals(INITIATIVE_ROUND);
+  }
+
+  private void assignVariable(String varname, Object value) throws ParserException {
 
     if (CONSTANTS.containsKey(varname.toLowerCase())
         && variables.containsKey(varname)) { // allow to be set first time
@@ -357,7 +498,12 @@ public void setVariable(String varname, VariableModifiers modifiers, Object valu
     }
 
     if (tokenInContext != null && validTokenProperty(varname, tokenInContext)) {
-      updateTokenProperty(tokenInContext, varname, value.toString());
+      // Json values keep their text, so reading the property back doesn't parse it again.
+      String text =
+          value instanceof JsonElement json
+              ? JSONMacroFunctions.getInstance().asJsonText(json)
+              : value.toString();
+      updateTokenProperty(tokenInContext, varname, text);
     }
 
     // Check to see if it is a token state.
@@ -18,6 +18,7 @@
 import com.google.protobuf.StringValue;
 import java.awt.geom.Area;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -59,6 +60,18 @@ public class ServerCommandClientImpl implements ServerCommand {
   private final MapToolClient client;
   private final TimedEventQueue movementUpdateQueue = new TimedEventQueue(100);
 
+  /** The number of open token update batches, see {@link #beginTokenUpdates()}. */
+  private int tokenUpdateBatches;
+
+  /** The zone of the token updates that are held back. */
+  private GUID pendingTokenUpdateZone;
+
+  /** The token updates that are held back while a batch is open, in the order they were made. */
+  private final List<TokenPropertyUpdateDto> pendingTokenUpdates = new ArrayList<>();
+
+  /** The events of the token updates applied locally while a batch is open, fired when it ends. */
+  private TokenUpdateEvents pendingTokenEvents;
+
   public ServerCommandClientImpl(MapToolClient client) {
     this.client = client;
   }
@@ -234,6 +247,9 @@ public void removeTokens(GUID zoneGUID, List<GUID> tokenGUIDs) {
    */
   public void updateTokenProperty(
       GUID zoneGUID, GUID tokenGUID, Token.Update update, List<TokenPropertyValueDto> parameters) {
+    if (holdBackTokenUpdate(zoneGUID, tokenGUID, update, parameters)) {
+      return;
+    }
     var msg =
         UpdateTokenPropertyMsg.newBuilder()
             .setTokenGuid(tokenGUID.toString())
@@ -257,7 +273,13 @@ public void updateTokenProperty(
     GUID zoneGUID = zone.getId();
 
     var parameterList = Arrays.stream(parameters).toList();
-    token.updateProperty(zone, update, parameterList); // update locally right away
+    // update locally right away, but fire the events of a batch when it ends
+    TokenUpdateEvents events = getBatchTokenEvents(zone);
+    if (events == null) {
+      token.updateProperty(zone, update, parameterList);
+    } else {
+      token.updateProperty(update, parameterList, events);
+    }
     updateTokenProperty(zoneGUID, tokenGUID, update, parameterList);
   }
 
@@ -554,7 +576,101 @@ public void clearExposedArea(GUID zoneGUID, boolean globalOnly) {
     makeServerCall(Message.newBuilder().setClearExposedAreaMsg(msg).build());
   }
 
+  @Override
+  public synchronized void beginTokenUpdates() {
+    tokenUpdateBatches++;
+  }
+
+  @Override
+  public void endTokenUpdates() {
+    TokenUpdateEvents events;
+    synchronized (this) {
+      if (tokenUpdateBatches == 0 || --tokenUpdateBatches > 0) {
+        return;
+      }
+      events = pendingTokenEvents;
+      pendingTokenEvents = null;
+    }
+    try {
+      sendPendingTokenUpdates();
+    } finally {
+      if (events != null) {
+        events.fire();
+      }
+    }
+  }
+
+  /**
+   * Returns the events to collect a local token update in, if a batch is open. The events of
+   * updates in another zone are fired first, as the events only hold one zone.
+   *
+   * @param zone the zone of the updated token
+   * @return the events of the batch, or null if no batch is open.
+   */
+  @Nullable
+  private synchronized TokenUpdateEvents getBatchTokenEvents(Zone zone) {
+    if (tokenUpdateBatches == 0) {
+      return null;
+    }
+    if (pendingTokenEvents == null || pendingTokenEvents.getZone() != zone) {
+      TokenUpdateEvents previous = pendingTokenEvents;
+      pendingTokenEvents = new TokenUpdateEvents(zone);
+      if (previous != null) {
+        previous.fire();
+      }
+    }
+    return pendingTokenEvents;
+  }
+
+  /**
+   * Holds back a token update if a batch is open.
+   *
+   * @param zoneGUID the GUID of the zone the token is on
+   * @param tokenGUID the GUID of the token
+   * @param update the type of token update
+   * @param parameters the parameters of the update
+   * @return true if the update was held back, false if it should be sent now.
+   */
+  private synchronized boolean holdBackTokenUpdate(
+      GUID zoneGUID, GUID tokenGUID, Token.Update update, List<TokenPropertyValueDto> parameters) {
+    if (tokenUpdateBatches == 0) {
+      return false;
+    }
+    if (!zoneGUID.equals(pendingTokenUpdateZone)) {
+      // A message holds the updates of one zone.
+      sendPendingTokenUpdates();
+      pendingTokenUpdateZone = zoneGUID;
+    }
+    pendingTokenUpdates.add(
+        TokenPropertyUpdateDto.newBuilder()
+            .setTokenGuid(tokenGUID.toString())
+            .setProperty(TokenUpdateDto.valueOf(update.name()))
+            .addAllValues(parameters)
+            .build());
+    return true;
+  }
+
+  /** Sends the token updates that have been held back, as a single message. */
+  private synchronized void sendPendingTokenUpdates() {
+    if (pendingTokenUpdates.isEmpty()) {
+      return;
+    }
+    var msg =
+        UpdateTokenPropertiesMsg.newBuilder()
+            .setZoneGuid(pendingTokenUpdateZone.toString())
+            .addAllUpdates(pendingTokenUpdates);
+    pendingTokenUpdates.clear();
+    pendingTokenUpdateZone = null;
+    sendToServer(Message.newBuilder().setUpdateTokenPropertiesMsg(msg).build());
+  }
+
   private void makeServerCall(Message msg) {
+    // Keep the server's view of the changes in order.
+    sendPendingTokenUpdates();
+    sendToServer(msg);
+  }
+
+  private void sendToServer(Message msg) {
     log.debug(
         "{} making server call {}; state is {}",
         client.getPlayer().getName(),
@@ -0,0 +1,125 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.*;
+import net.rptools.maptool.client.events.ZoneActivated;
+import net.rptools.maptool.client.ui.zone.renderer.ZoneRenderer;
+import net.rptools.maptool.events.MapToolEventBus;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.util.ZoneContentStore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Unloads the content of maps that have not been used for a while, so that large campaigns only
+ * keep the maps that are actually being played in memory. A map counts as used when it is
+ * activated or its content is read; the map being displayed is never unloaded, and neither are maps
+ * holding library tokens, as those must stay registered with the library manager.
+ *
+ * <p>Only the client running the server (hosted or personal) unloads maps; other clients only hold
+ * the maps the server sent them. The content is converted on the event dispatch thread, handed to
+ * a {@link ZoneContentStore} to be written on a background thread, and read back the next time
+ * anything needs it. See {@link AppPreferences#unloadIdleMapsMinutes}.
+ */
+public class ZoneUnloadManager {
+
+  private static final Logger log = LogManager.getLogger(ZoneUnloadManager.class);
+
+  /** How often to look for maps to unload. */
+  private static final int CHECK_INTERVAL_MILLIS = 60 * 1000;
+
+  private Timer unloadTimer;
+  private ZoneContentStore store;
+
+  /** Writes the content of unloaded maps to the store, one map at a time. */
+  private final ExecutorService storeExecutor =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setNameFormat("zone-unload-%d").setDaemon(true).build());
+
+  /** When each map was last activated, or first seen by this manager. */
+  private final Map<GUID, Long> lastUsed = new ConcurrentHashMap<>();
+
+  /** Starts checking for idle maps. */
+  public void start() {
+    if (unloadTimer == null) {
+      new MapToolEventBus().getMainEventBus().register(this);
+      unloadTimer = new Timer(CHECK_INTERVAL_MILLIS, e -> unloadIdleZones());
+      unloadTimer.start();
+    }
+  }
+
+  @Subscribe
+  private void onZoneActivated(ZoneActivated event) {
+    Zone zone = event.zone();
+    lastUsed.put(zone.getId(), System.currentTimeMillis());
+    zone.ensureContentLoaded();
+  }
+
+  private void unloadIdleZones() {
+    long idleMillis = AppPreferences.unloadIdleMapsMinutes.get() * 60L * 1000L;
+    if (idleMillis <= 0) {
+      return;
+    }
+
+    // Clients only hold what the server sent them
+    if (!MapTool.isHostingServer() && !MapTool.isPersonalServer()) {
+      return;
+    }
+
+    // Don't pull maps out from under a save in progress
+    if (AppState.testBackgroundTaskLock()) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    ZoneRenderer current = MapTool.getFrame().getCurrentZoneRenderer();
+    for (Zone zone : MapTool.getCampaign().getZones()) {
+      if (!zone.isContentLoaded() || (current != null && current.getZone() == zone)) {
+        continue;
+      }
+      long used = Math.max(lastUsed.computeIfAbsent(zone.getId(), id -> now), zone.getLoadTime());
+      if (now - used < idleMillis) {
+        continue;
+      }
+      if (zone.getAllTokens().stream().anyMatch(Token::isLibToken)) {
+        continue;
+      }
+
+      if (store == null) {
+        try {
+          store = ZoneContentStore.create();
+        } catch (IOException e) {
+          log.warn("Unable to create the store for unloaded maps", e);
+          return;
+        }
+      }
+      // The content is converted here so nothing can change it while it is written, and is served
+      // from memory by the returned source until the write has finished.
+      zone.unloadContent(store.storeLater(zone.getId(), zone.toDto(), storeExecutor));
+      lastUsed.remove(zone.getId());
+      log.debug("Unloaded idle map {}", zone.getName());
+    }
+  }
+}
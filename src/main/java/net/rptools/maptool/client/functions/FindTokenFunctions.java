@@ -20,6 +20,7 @@
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.List;
@@ -259,6 +260,23 @@ public boolean matchToken(Token t) {
     }
   }
 
+  /** Filter for tokens among, or not among, a collection of tokens. */
+  private static class TokenSetFilter implements Zone.Filter {
+    private final Set<GUID> ids = new HashSet<>();
+    private final boolean match;
+
+    public TokenSetFilter(Collection<Token> tokens, boolean match) {
+      for (Token token : tokens) {
+        ids.add(token.getId());
+      }
+      this.match = match;
+    }
+
+    public boolean matchToken(Token t) {
+      return match == ids.contains(t.getId());
+    }
+  }
+
   private static class PropertyTypeFilter implements Zone.Filter {
     private final JsonArray types;
 
@@ -407,8 +425,7 @@ private static Object getTokenList(
       throws ParserException {
     JsonObject jobj = JsonParser.parseString(jsonString).getAsJsonObject();
 
-    // First get a list of all our tokens. By default this is limited to the TOKEN and GM layers.
-    List<Token> allTokens = null;
+    // First get the layers to search. By default this is limited to the TOKEN and GM layers.
     JsonArray layers = null;
     if (!jobj.has("layer")) {
       layers = new JsonArray();
@@ -444,14 +461,20 @@ private static Object getTokenList(
       }
     }
     Zone zone = zoneRenderer.getZone();
-    allTokens = zone.getTokensFiltered(new LayerFilter(layers));
-    List<Token> tokenList = new ArrayList<Token>(allTokens.size());
-    tokenList.addAll(allTokens);
+    ZoneTokenIndex index = zone.getTokenIndex();
+
+    // Every condition adds a filter. Conditions that the token index can answer also add the tokens
+    // that could match them, so only the smallest of those candidate lists needs to be filtered.
+    List<Zone.Filter> filters = new ArrayList<>();
+    List<List<Token>> candidates = new ArrayList<>();
+    LayerFilter layerFilter = new LayerFilter(layers);
+    filters.add(layerFilter);
+    candidates.add(index.getTokensOnLayers(layerFilter.filterLayers));
     JsonObject range = null;
     JsonObject area = null;
 
     boolean match;
-    // Now loop through conditions and filter out tokens that don't match conditions
+    // Now loop through conditions and collect the filters for them
     for (Object key : jobj.keySet()) {
       String searchType = key.toString();
       if ("setStates".equalsIgnoreCase(searchType) || "unsetStates".equalsIgnoreCase(searchType)) {
@@ -465,9 +488,10 @@ private static Object getTokenList(
         match = "setStates".equalsIgnoreCase(searchType);
         // Looking for tokens that either match or don't match the states
         for (JsonElement item : states) {
-          tokenList =
-              getTokenList(
-                  resolver, FindType.STATE, item.getAsString(), match, tokenList, zoneRenderer);
+          filters.add(new StateFilter(item.getAsString(), match));
+          if (match) {
+            candidates.add(index.getTokensWithState(item.getAsString()));
+          }
         }
       } else if ("range".equalsIgnoreCase(searchType)) {
         // We will do this as one of the last steps as it's one of the most expensive so we want to
@@ -487,7 +511,15 @@ private static Object getTokenList(
           types = new JsonArray();
           types.add(json.getAsString());
         }
-        tokenList = getTokensFiltered(new PropertyTypeFilter(types), tokenList);
+        filters.add(new PropertyTypeFilter(types));
+        // Only strings can match a property type
+        List<String> typeNames = new ArrayList<>();
+        for (JsonElement type : types) {
+          if (type.isJsonPrimitive() && type.getAsJsonPrimitive().isString()) {
+            typeNames.add(type.getAsString());
+          }
+        }
+        candidates.add(index.getTokensWithPropertyTypes(typeNames));
       } else if ("light".equalsIgnoreCase(searchType)) {
         String type, name;
         JsonElement json = jobj.get(searchType);
@@ -521,7 +553,7 @@ private static Object getTokenList(
                 I18N.getText("macro.function.json.onlyObject", value, "light"));
           }
         }
-        tokenList = getTokensFiltered(new LightFilter(type, name, match), tokenList);
+        filters.add(new LightFilter(type, name, match));
       } else if ("owned".equalsIgnoreCase(searchType)) {
         JsonElement json = jobj.get(searchType);
         if (json.isJsonArray()) {
@@ -530,40 +562,64 @@ private static Object getTokenList(
           for (JsonElement ele : json.getAsJsonArray()) {
             setOwners.add(ele.getAsString());
           }
-          tokenList = getTokensFiltered(new OwnedFilter(ownership, setOwners), tokenList);
+          filters.add(new OwnedFilter(ownership, setOwners));
+          candidates.add(index.getTokensOwnedBy(setOwners));
         } else if (json.isJsonObject()) {
           throw new ParserException(
               I18N.getText("macro.function.json.onlyArray", json.toString(), "owned"));
         } else {
           Ownership ownership = getOwnership(json.getAsString());
-          tokenList = getTokensFiltered(new OwnedFilter(ownership), tokenList);
+          OwnedFilter ownedFilter = new OwnedFilter(ownership);
+          filters.add(ownedFilter);
+          if (ownership == Ownership.SELF) {
+            candidates.add(index.getTokensOwnedBy(Set.of(ownedFilter.playerName)));
+          } else if (ownership == Ownership.BYALL) {
+            candidates.add(index.getTokensOwnedByAll());
+          }
         }
       } else {
         match = booleanCheck(jobj, searchType);
         if ("npc".equalsIgnoreCase(searchType)) {
-          tokenList = getTokenList(resolver, FindType.NPC, "", match, tokenList, zoneRenderer);
+          filters.add(new NPCFilter(match));
+          if (match) {
+            candidates.add(index.getTokensOfType(Token.Type.NPC));
+          }
         } else if ("pc".equalsIgnoreCase(searchType)) {
-          tokenList = getTokenList(resolver, FindType.PC, "", match, tokenList, zoneRenderer);
+          filters.add(new PCFilter(match));
+          if (match) {
+            candidates.add(index.getTokensOfType(Token.Type.PC));
+          }
         } else if ("selected".equalsIgnoreCase(searchType)) {
-          tokenList = getTokenList(resolver, FindType.SELECTED, "", match, tokenList, zoneRenderer);
+          addTokenSetFilter(
+              zoneRenderer.getSelectedTokensList(), match, zone, index, filters, candidates);
         } else if ("visible".equalsIgnoreCase(searchType)) {
-          tokenList = getTokenList(resolver, FindType.VISIBLE, "", match, tokenList, zoneRenderer);
+          addTokenSetFilter(
+              zoneRenderer.getVisibleTokens(), match, zone, index, filters, candidates);
         } else if ("current".equalsIgnoreCase(searchType)) {
-          tokenList = getTokenList(resolver, FindType.CURRENT, "", match, tokenList, zoneRenderer);
+          Token token = resolver.getTokenInContext();
+          addTokenSetFilter(
+              token == null ? List.of() : List.of(token), match, zone, index, filters, candidates);
         } else if ("impersonated".equalsIgnoreCase(searchType)) {
-          tokenList =
-              getTokenList(resolver, FindType.IMPERSONATED, "", match, tokenList, zoneRenderer);
+          Token token;
+          GUID guid = MapTool.getFrame().getCommandPanel().getIdentityGUID();
+          if (guid != null) token = zone.getToken(guid);
+          else token = zone.resolveToken(MapTool.getFrame().getCommandPanel().getIdentity());
+          addTokenSetFilter(
+              token == null ? List.of() : List.of(token), match, zone, index, filters, candidates);
         }
       }
     }
 
-    // Loop through and compare ranges if we have them
+    // Find the source token of the range, as the tokens near it can be found with the index
+    Token rangeToken = null;
+    int from = Integer.MIN_VALUE;
+    int upto = Integer.MAX_VALUE;
+    boolean useDistancePerCell = true;
+    String rangeMetric = null;
     if (range != null) {
-      TokenLocationFunctions instance = TokenLocationFunctions.getInstance();
-      Token token;
       if (range.has("token")) {
-        token = findToken(range.get("token").getAsString(), mapName);
-        if (token == null) {
+        rangeToken = findToken(range.get("token").getAsString(), mapName);
+        if (rangeToken == null) {
           throw new ParserException(
               I18N.getText(
                   "macro.function.general.unknownToken",
@@ -572,39 +628,59 @@ private static Object getTokenList(
         }
       } else {
         GUID guid = MapTool.getFrame().getCommandPanel().getIdentityGUID();
-        if (guid != null) token = zone.getToken(guid);
-        else token = findToken(MapTool.getFrame().getCommandPanel().getIdentity(), mapName);
-        if (token == null) {
+        if (guid != null) rangeToken = zone.getToken(guid);
+        else rangeToken = findToken(MapTool.getFrame().getCommandPanel().getIdentity(), mapName);
+        if (rangeToken == null) {
           throw new ParserException(
               I18N.getText("macro.function.general.noImpersonated", "getTokens"));
         }
       }
-      int from = Integer.MIN_VALUE;
-      int upto = Integer.MAX_VALUE;
-
       if (range.has("from")) {
         from = range.get("from").getAsInt();
       }
       if (range.has("upto")) {
         upto = range.get("upto").getAsInt();
       }
-      boolean useDistancePerCell = true;
       if (range.has("distancePerCell")) {
         useDistancePerCell = booleanCheck(range, "distancePerCell");
       }
-
-      String metric = null;
       if (range.has("metric")) {
-        metric = range.get("metric").getAsString();
+        rangeMetric = range.get("metric").getAsString();
       }
-      List<Token> inrange = new LinkedList<Token>();
+      if (upto != Integer.MAX_VALUE) {
+        List<Token> near = getTokensNear(zone, index, rangeToken, upto, useDistancePerCell);
+        if (near != null) {
+          candidates.add(near);
+        }
+      }
+    }
+
+    // Start from the most selective candidates and check every condition in a single pass
+    List<Token> smallest = candidates.get(0);
+    for (List<Token> candidate : candidates) {
+      if (candidate.size() < smallest.size()) {
+        smallest = candidate;
+      }
+    }
+    List<Token> tokenList = new ArrayList<>(smallest.size());
+    for (Token token : smallest) {
+      if (matchesAll(filters, token)) {
+        tokenList.add(token);
+      }
+    }
+
+    // Loop through and compare ranges if we have them
+    if (range != null) {
+      TokenLocationFunctions instance = TokenLocationFunctions.getInstance();
+      List<Token> inrange = new ArrayList<>(tokenList.size());
       for (Token targetToken : tokenList) {
-        double distance = instance.getDistance(token, targetToken, useDistancePerCell, metric);
-        if (distance <= upto && distance >= from && token != targetToken) {
+        double distance =
+            instance.getDistance(rangeToken, targetToken, useDistancePerCell, rangeMetric);
+        if (distance <= upto && distance >= from && rangeToken != targetToken) {
           inrange.add(targetToken);
         }
       }
-      tokenList.retainAll(inrange);
+      tokenList = inrange;
     }
 
     // Loop through and compare the area if we have it
@@ -683,6 +759,80 @@ private static Object getTokenList(
     }
   }
 
+  /**
+   * Adds the filter for a condition on whether tokens are among given tokens, such as the selected
+   * tokens. When looking for matches, the given tokens are also the candidates.
+   *
+   * @param tokens the tokens of the condition
+   * @param match true: only include those tokens, false: exclude them
+   * @param zone the zone being searched
+   * @param index the token index of the zone
+   * @param filters the filters to add the filter to
+   * @param candidates the candidate lists to add the candidates to
+   */
+  private static void addTokenSetFilter(
+      Collection<Token> tokens,
+      boolean match,
+      Zone zone,
+      ZoneTokenIndex index,
+      List<Zone.Filter> filters,
+      List<List<Token>> candidates) {
+    filters.add(new TokenSetFilter(tokens, match));
+    if (match) {
+      List<Token> zoneTokens = new ArrayList<>(tokens.size());
+      for (Token token : tokens) {
+        Token zoneToken = zone.getToken(token.getId());
+        if (zoneToken != null) {
+          zoneTokens.add(zoneToken);
+        }
+      }
+      candidates.add(index.inZOrder(zoneTokens));
+    }
+  }
+
+  /**
+   * Finds the tokens that could be in range of a token, so that distances only need to be worked
+   * out for those. Whatever the metric, a token in range has cells that are at most that many
+   * cells away from the cells of the source token in either direction.
+   *
+   * @param zone the zone of the tokens
+   * @param index the token index of the zone
+   * @param source the token the range is from
+   * @param upto the range
+   * @param units is the range in map units rather than cells?
+   * @return the tokens near enough, or null if the range can't be converted to cells
+   */
+  private static List<Token> getTokensNear(
+      Zone zone, ZoneTokenIndex index, Token source, int upto, boolean units) {
+    double cells = Math.max(upto, 0);
+    if (units) {
+      if (zone.getUnitsPerCell() == 0) {
+        return null;
+      }
+      cells /= zone.getUnitsPerCell();
+    }
+    Grid grid = zone.getGrid();
+    double cellSize = Math.max(grid.getSize(), Math.max(grid.getCellWidth(), grid.getCellHeight()));
+    // Allow a couple of extra cells for the rounding of positions to cells
+    double padding = (cells + 2) * cellSize;
+    Rectangle bounds = index.getBounds(source);
+    return index.getTokensNear(
+        new Rectangle2D.Double(
+            bounds.x - padding,
+            bounds.y - padding,
+            bounds.width + 2 * padding,
+            bounds.height + 2 * padding));
+  }
+
+  private static boolean matchesAll(List<Zone.Filter> filters, Token token) {
+    for (Zone.Filter filter : filters) {
+      if (!filter.matchToken(token)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static boolean booleanCheck(JsonObject jobj, String searchType) {
     JsonElement jel = jobj.get(searchType);
     if (jel.isJsonPrimitive()) {
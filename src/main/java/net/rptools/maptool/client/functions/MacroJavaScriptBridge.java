@@ -158,8 +158,12 @@ public Object childEvaluate(
 
     callingArgsStack.push(scriptArgs);
     try {
-      return JavaScriptToMTScriptType(
-          JSScriptEngine.getJSScriptEngine().evalScript(contextName, script));
+      JSScriptEngine engine = JSScriptEngine.getJSScriptEngine();
+      if (contextName == null) {
+        return engine.evalAnonymous(
+            script, MapTool.getParser().isMacroTrusted(), this::JavaScriptToMTScriptType);
+      }
+      return JavaScriptToMTScriptType(engine.evalScript(contextName, script));
     } catch (PolyglotException e) {
       Throwable je = e.asHostException();
       ParserException pe = (ParserException) je;
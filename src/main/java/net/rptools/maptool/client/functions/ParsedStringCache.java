@@ -0,0 +1,107 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parsed forms of property strings and string lists, shared by {@link StrPropFunctions} and
+ * {@link StrListFunctions}. Frameworks keep whole character sheets in one of these strings and read
+ * it many times in a macro, so each string is only split the first time it is seen with a
+ * delimiter. The least recently used entries are dropped when the cache is full.
+ *
+ * <p>Entries are looked up by the hash of the string, which {@link String} keeps once computed, and
+ * then compared by identity before contents, so reading the same variable again is cheap. The
+ * cached values are shared and must never be modified.
+ */
+final class ParsedStringCache {
+  /** Enough for the sheets of the tokens a macro works on, and the strings built from them. */
+  private static final int MAXIMUM_SIZE = 256;
+
+  private record Key(String text, String delim) {}
+
+  /**
+   * A parsed property string.
+   *
+   * @param keys the keys, in their original order and case.
+   * @param normalizedKeys the keys converted to upper case.
+   * @param values the values by upper case key.
+   */
+  record StrProp(List<String> keys, List<String> normalizedKeys, Map<String, String> values) {
+    StrProp {
+      keys = List.copyOf(keys);
+      normalizedKeys = List.copyOf(normalizedKeys);
+      values = Map.copyOf(values);
+    }
+  }
+
+  private static final Cache<Key, StrProp> strProps =
+      CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+  /** The start and end of each item of a string list, in pairs. */
+  private static final Cache<Key, int[]> strLists =
+      CacheBuilder.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+  private ParsedStringCache() {}
+
+  /**
+   * @param props the property string.
+   * @param delim the delimiter it was parsed with.
+   * @return the parsed property string, or {@code null} if it is not cached.
+   */
+  static StrProp getStrProp(String props, String delim) {
+    return strProps.getIfPresent(new Key(props, delim));
+  }
+
+  /**
+   * Caches a parsed property string.
+   *
+   * @param props the property string.
+   * @param delim the delimiter it was parsed with.
+   * @param parsed the result of parsing {@code props} with {@code delim}.
+   */
+  static void putStrProp(String props, String delim, StrProp parsed) {
+    strProps.put(new Key(props, delim), parsed);
+  }
+
+  /**
+   * @param list the list string.
+   * @param delim the delimiter it was parsed with.
+   * @return the start and end of each item in pairs, or {@code null} if it is not cached.
+   */
+  static int[] getStrList(String list, String delim) {
+    return strLists.getIfPresent(new Key(list, delim));
+  }
+
+  /**
+   * Caches the item bounds of a parsed list string.
+   *
+   * @param list the list string.
+   * @param delim the delimiter it was parsed with.
+   * @param bounds the start and end of each item in pairs.
+   */
+  static void putStrList(String list, String delim, int[] bounds) {
+    strLists.put(new Key(list, delim), bounds);
+  }
+
+  /** Discards all cached entries. */
+  static void clear() {
+    strProps.invalidateAll();
+    strLists.invalidateAll();
+  }
+}
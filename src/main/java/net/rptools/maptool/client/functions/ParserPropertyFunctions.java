@@ -21,6 +21,8 @@
 import net.rptools.maptool.client.MapToolLineParser;
 import net.rptools.maptool.client.MapToolMacroContext;
 import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.model.EvaluatedPropertyScope;
+import net.rptools.maptool.util.FunctionUtil;
 import net.rptools.parser.Parser;
 import net.rptools.parser.ParserException;
 import net.rptools.parser.VariableResolver;
@@ -50,7 +52,9 @@ public ParserPropertyFunctions() {
         "getMaxLoopIterations",
         "setMaxLoopIterations",
         "getRecursionDepth",
-        "getMacroContext");
+        "getMacroContext",
+        "getPropertyMemoization",
+        "setPropertyMemoization");
   }
 
   @Override
@@ -59,6 +63,15 @@ public Object childEvaluate(
       throws ParserException {
     MapToolLineParser mtlParser = MapTool.getParser();
 
+    // Only affects the current macro run, so macros do not need to be trusted to change it.
+    if (functionName.equalsIgnoreCase("getPropertyMemoization")) {
+      return FunctionUtil.getDecimalForBoolean(EvaluatedPropertyScope.isEnabled());
+    } else if (functionName.equalsIgnoreCase("setPropertyMemoization")) {
+      FunctionUtil.checkNumberParam(functionName, args, 1, 1);
+      EvaluatedPropertyScope.setEnabled(FunctionUtil.paramAsBoolean(functionName, args, 0, false));
+      return FunctionUtil.getDecimalForBoolean(EvaluatedPropertyScope.isEnabled());
+    }
+
     int argVal = 0;
 
     if (functionName.startsWith("set")) {
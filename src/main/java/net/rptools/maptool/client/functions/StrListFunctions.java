@@ -16,6 +16,7 @@
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -103,6 +104,26 @@ public static int parse(String listStr, String delim, ListVisitor visitor) {
 
     if (StringUtils.isBlank(listStr)) return 0; // null strings have zero entries
 
+    int[] bounds = ParsedStringCache.getStrList(listStr, delim);
+    if (bounds == null) {
+      bounds = findItems(listStr, delim);
+      ParsedStringCache.putStrList(listStr, delim, bounds);
+    }
+    int count = bounds.length / 2;
+    for (int index = 0; index < count; index++) {
+      if (!visitor.visit(index, bounds[2 * index], bounds[2 * index + 1])) return index + 1;
+    }
+    return count;
+  }
+
+  /**
+   * Finds the items of a list.
+   *
+   * @param listStr has the form "item1, item2, ..."
+   * @param delim is the list delimiter to use.
+   * @return the start and end of each item, in pairs.
+   */
+  private static int[] findItems(String listStr, String delim) {
     Pattern pattern;
     if (delim.isEmpty()) {
       pattern = PATTERN_FOR_EMPTY_SEPARATOR;
@@ -119,6 +140,7 @@ public static int parse(String listStr, String delim, ListVisitor visitor) {
 
     Matcher matcher = pattern.matcher(listStr);
     boolean lastItem = false;
+    int[] bounds = new int[16];
     int index = 0;
     while (matcher.find()) {
       if (!lastItem) {
@@ -132,10 +154,15 @@ public static int parse(String listStr, String delim, ListVisitor visitor) {
           // This flag will prevent that.
           lastItem = true;
         }
-        if (!visitor.visit(index++, from, to)) break;
+        if (2 * index + 2 > bounds.length) {
+          bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * index] = from;
+        bounds[2 * index + 1] = to;
+        index++;
       }
     }
-    return index;
+    return Arrays.copyOf(bounds, 2 * index);
   }
 
   /**
@@ -414,10 +441,38 @@ public Object listAppend(List<Object> parameters, String listStr, String lastPar
     String delim = parameters.size() == maxParams ? lastParam : ",";
     String target = parameters.get(1).toString().trim();
 
-    if (!StringUtils.isEmpty(listStr)) return listStr + delim + " " + target;
+    if (!StringUtils.isEmpty(listStr)) {
+      String newList = listStr + delim + " " + target;
+      cacheAppendedItem(listStr, delim, newList, target);
+      return newList;
+    }
     return target;
   }
 
+  /**
+   * Caches the items of a list that an item was appended to, if the items of the original list are
+   * cached, so that reading the new list doesn't parse it again. This is only done for delimiters
+   * of a single character that isn't whitespace, where the new item can't change how the rest of
+   * the list is split.
+   *
+   * @param listStr the original list.
+   * @param delim the list delimiter.
+   * @param newList the new list.
+   * @param item the item that was appended, without surrounding whitespace.
+   */
+  private static void cacheAppendedItem(String listStr, String delim, String newList, String item) {
+    if (delim.length() != 1 || Character.isWhitespace(delim.charAt(0)) || item.contains(delim)) {
+      return;
+    }
+    int[] bounds = ParsedStringCache.getStrList(listStr, delim);
+    if (bounds != null) {
+      int[] newBounds = Arrays.copyOf(bounds, bounds.length + 2);
+      newBounds[bounds.length] = newList.length() - item.length();
+      newBounds[bounds.length + 1] = newList.length();
+      ParsedStringCache.putStrList(newList, delim, newBounds);
+    }
+  }
+
   /**
    * MapTool call: <code>listInsert(list, index, target [,delim])</code>
    *
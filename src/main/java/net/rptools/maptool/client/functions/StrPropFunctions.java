@@ -21,6 +21,7 @@
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import net.rptools.maptool.client.functions.ParsedStringCache.StrProp;
 import net.rptools.maptool.language.I18N;
 import net.rptools.parser.Parser;
 import net.rptools.parser.ParserException;
@@ -42,6 +43,11 @@ public class StrPropFunctions extends AbstractFunction {
   private static final String keyValuePatt = "\\s*([\\w .]+)\\s*=\\s*(.*)";
   private static final Pattern keyValueParser = Pattern.compile(keyValuePatt);
 
+  /** Keys and values of new property strings that are known to parse back unchanged. */
+  private static final Pattern cacheableKeyParser = Pattern.compile("[\\w .]+");
+
+  private static final Pattern cacheableValueParser = Pattern.compile(".*");
+
   public StrPropFunctions() {
     super(
         1,
@@ -84,6 +90,38 @@ public static void parse(
       List<String> oldKeys,
       List<String> oldKeysNormalized,
       String delim) {
+    StrProp parsed = parse(props, delim);
+    map.putAll(parsed.values());
+    oldKeys.addAll(parsed.keys());
+    oldKeysNormalized.addAll(parsed.normalizedKeys());
+  }
+
+  /**
+   * Parses a property string, or returns the result of parsing it before.
+   *
+   * @param props has the form "key1=val1 ; key2=val2 ; ..."
+   * @param delim is the setting delimiter to use
+   * @return the parsed settings, which must not be modified.
+   */
+  static StrProp parse(String props, String delim) {
+    StrProp parsed = ParsedStringCache.getStrProp(props, delim);
+    if (parsed == null) {
+      Map<String, String> map = new HashMap<>();
+      List<String> keys = new ArrayList<>();
+      List<String> normalizedKeys = new ArrayList<>();
+      parseSettings(props, map, keys, normalizedKeys, delim);
+      parsed = new StrProp(keys, normalizedKeys, map);
+      ParsedStringCache.putStrProp(props, delim, parsed);
+    }
+    return parsed;
+  }
+
+  private static void parseSettings(
+      String props,
+      Map<String, String> map,
+      List<String> oldKeys,
+      List<String> oldKeysNormalized,
+      String delim) {
     String delimPatt;
     if (delim.equals("")) {
       delimPatt = ";";
@@ -123,6 +161,43 @@ public static void parse(
     }
   }
 
+  /**
+   * Caches the settings that a new property string was built from, so that reading it next doesn't
+   * parse it again. Strings that would not parse back to the same settings, such as those with a
+   * delimiter or line break in a value, are left to be parsed.
+   *
+   * @param props the property string that was built.
+   * @param delim the setting delimiter.
+   * @param keys the keys, in the order they were written.
+   * @param values the values by upper case key. Values of keys not in {@code keys} are ignored.
+   */
+  private static void cacheSettings(
+      String props, String delim, List<String> keys, Map<String, String> values) {
+    // Whitespace and '=' in the delimiter run into the spaces and '=' that are written around it,
+    // and an empty delimiter is parsed as ';'.
+    if (delim.isEmpty() || delim.contains("=") || delim.chars().anyMatch(Character::isWhitespace)) {
+      return;
+    }
+    Map<String, String> settings = new HashMap<>();
+    List<String> normalizedKeys = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      String normalizedKey = key.toUpperCase();
+      String value = values.get(normalizedKey);
+      if (value == null
+          || !cacheableKeyParser.matcher(key).matches()
+          || !key.equals(key.trim())
+          || key.contains(delim)
+          || !cacheableValueParser.matcher(value).matches()
+          || !value.equals(value.trim())
+          || value.contains(delim)) {
+        return;
+      }
+      settings.put(normalizedKey, value);
+      normalizedKeys.add(normalizedKey);
+    }
+    ParsedStringCache.putStrProp(props, delim, new StrProp(keys, normalizedKeys, settings));
+  }
+
   /**
    * Prepares a {@code String} for use in regex operations.
    *
@@ -149,32 +224,24 @@ public Object childEvaluate(
     String props = parameters.get(0).toString(); // contains property settings
     String lastParam = parameters.get(parameters.size() - 1).toString();
 
-    // Extract the keys and values already in the props string.
-    // Save the old keys so we can rebuild the props string in the same order.
-    HashMap<String, String> map = new HashMap<String, String>();
-    ArrayList<String> oldKeys = new ArrayList<String>();
-    ArrayList<String> oldKeysNormalized = new ArrayList<String>();
-
     if ("getStrProp".equalsIgnoreCase(functionName))
-      retval = getStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = getStrProp(parameters, lastParam, props);
     else if ("setStrProp".equalsIgnoreCase(functionName))
-      retval = setStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = setStrProp(parameters, lastParam, props);
     else if ("deleteStrProp".equalsIgnoreCase(functionName))
-      retval = deleteStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = deleteStrProp(parameters, lastParam, props);
     else if ("varsFromStrProp".equalsIgnoreCase(functionName))
-      retval =
-          varsFromStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized, resolver);
+      retval = varsFromStrProp(parameters, lastParam, props, resolver);
     else if ("strPropFromVars".equalsIgnoreCase(functionName))
-      retval =
-          strPropFromVars(parameters, lastParam, props, map, oldKeys, oldKeysNormalized, resolver);
+      retval = strPropFromVars(parameters, lastParam, props, resolver);
     else if ("countStrProp".equalsIgnoreCase(functionName))
-      retval = countStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = countStrProp(parameters, lastParam, props);
     else if ("indexKeyStrProp".equalsIgnoreCase(functionName))
-      retval = indexKeyStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = indexKeyStrProp(parameters, lastParam, props);
     else if ("indexValueStrProp".equalsIgnoreCase(functionName))
-      retval = indexValueStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = indexValueStrProp(parameters, lastParam, props);
     else if ("formatStrProp".equalsIgnoreCase(functionName))
-      retval = formatStrProp(parameters, lastParam, props, map, oldKeys, oldKeysNormalized);
+      retval = formatStrProp(parameters, lastParam, props);
 
     return retval;
   }
@@ -185,20 +252,11 @@ else if ("formatStrProp".equalsIgnoreCase(functionName))
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The matching value for <code>key</code>, or <code>""</code> if not found. The value is
    *     converted to a number if possible.
    * @throws ParserException when an error occurs.
    */
-  public Object getStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object getStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -216,10 +274,10 @@ public Object getStrProp(
       retval = parameters.get(2); // this third parameter is returned if the key is not found
     }
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     userKey = parameters.get(1).toString(); // the key being passed in
-    String value = map.get(userKey.toUpperCase());
+    String value = parsed.values().get(userKey.toUpperCase());
     if (value != null) {
       Integer intval = strToInt(value);
       retval = (intval == null) ? value : new BigDecimal(intval);
@@ -234,19 +292,10 @@ public Object getStrProp(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The new property string.
    * @throws ParserException when an error occurs.
    */
-  public Object setStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object setStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -261,27 +310,30 @@ public Object setStrProp(
         parameters,
         new Class[] {String.class, String.class, null, null, String.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     userKey = parameters.get(1).toString(); // the key being passed in
     userValue = parameters.get(2).toString();
+    Map<String, String> map = new HashMap<>(parsed.values());
+    List<String> oldKeys = new ArrayList<>(parsed.keys());
     map.put(userKey.toUpperCase(), userValue);
     // Reconstruct the property string, in the same order as the original.
     // If the key already existed, preserve the case of the original key string.
     StringBuilder sb = new StringBuilder();
-    if (!oldKeysNormalized.contains(userKey.toUpperCase())) {
+    if (!parsed.normalizedKeys().contains(userKey.toUpperCase())) {
       oldKeys.add(userKey);
     }
     int size = oldKeys.size();
-    delim = " " + delim + " ";
+    String separator = " " + delim + " ";
     for (String k : oldKeys) {
       String v = map.get(k.toUpperCase());
       sb.append(k);
       sb.append("=");
       sb.append(v);
-      if (--size != 0) sb.append(delim);
+      if (--size != 0) sb.append(separator);
     }
     retval = sb.toString();
+    cacheSettings(sb.toString(), delim, oldKeys, map);
     return retval;
   }
 
@@ -292,19 +344,10 @@ public Object setStrProp(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The new property string. (If <code>key</code> is not found, no changes are made.)
    * @throws ParserException when an error occurs.
    */
-  public Object deleteStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object deleteStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -319,22 +362,25 @@ public Object deleteStrProp(
         parameters,
         new Class[] {String.class, String.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     userKey = parameters.get(1).toString(); // the key being passed in
     // reconstruct the property string, without the specified key
     StringBuilder sb = new StringBuilder();
-    int size = oldKeys.size();
-    delim = " " + delim + " ";
-    for (String k : oldKeys) {
+    List<String> keptKeys = new ArrayList<>();
+    int size = parsed.keys().size();
+    String separator = " " + delim + " ";
+    for (String k : parsed.keys()) {
       if (k.compareToIgnoreCase(userKey) == 0) continue;
-      String v = map.get(k.toUpperCase());
+      String v = parsed.values().get(k.toUpperCase());
       sb.append(k);
       sb.append("=");
       sb.append(v);
-      if (--size != 0) sb.append(delim);
+      if (--size != 0) sb.append(separator);
+      keptKeys.add(k);
     }
     retval = sb.toString();
+    cacheSettings(sb.toString(), delim, keptKeys, parsed.values());
     return retval;
   }
 
@@ -367,21 +413,12 @@ public Object deleteStrProp(
    * @param parameters list of parameters from the macro call
    * @param lastParam last parameter passed from the macro call (convenience variable)
    * @param props the StrProp string to parse
-   * @param map where the normalized {@code <key,value>} pairs are stored (return value)
-   * @param oldKeys list of the original keys from {@code props}
-   * @param oldKeysNormalized list of the original keys (converted to uppercase) from {@code props}
    * @return The number of assignments made (keys with spaces in their names are ignored and don't
    *     appear in the count)
    * @throws ParserException when an error occurs.
    */
   public Object varsFromStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized,
-      VariableResolver resolver)
+      List<Object> parameters, String lastParam, String props, VariableResolver resolver)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -422,14 +459,14 @@ public Object varsFromStrProp(
         }
       }
     }
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
     int count = 0;
-    for (String k : oldKeys) {
+    for (String k : parsed.keys()) {
       // As of 1.3b90, parse() supports spaces in the key string. We can't create variables
       // with spaces in their names though (well, we could, but the script could never access them)
       // so filter out names with spaces.
       if (!k.contains(" ")) {
-        String v = map.get(k.toUpperCase());
+        String v = parsed.values().get(k.toUpperCase());
         if (v != null) {
           count++;
           switch (option) {
@@ -457,20 +494,11 @@ public Object varsFromStrProp(
    * @param lastParam the last parameter
    * @param props Either "SUFFIXED" or "UNSUFFIXED", indicating how to decorate the variable names
    *     when fetching values.
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return A property string containing the settings of all the variables.
    * @throws ParserException when an error occurs.
    */
   public Object strPropFromVars(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized,
-      VariableResolver resolver)
+      List<Object> parameters, String lastParam, String props, VariableResolver resolver)
       throws ParserException {
     Object retval = null;
     String delim = ";";
@@ -520,19 +548,10 @@ public Object strPropFromVars(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The number of property entries in the string.
    * @throws ParserException when an error occurs.
    */
-  public Object countStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object countStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -542,9 +561,9 @@ public Object countStrProp(
     checkVaryingParameters(
         "countStrProp()", minParams, maxParams, parameters, new Class[] {String.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
-    retval = new BigDecimal(oldKeys.size());
+    retval = new BigDecimal(parsed.keys().size());
     return retval;
   }
 
@@ -555,19 +574,10 @@ public Object countStrProp(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The key for the setting at position <code>index</code>
    * @throws ParserException when an error occurs.
    */
-  public Object indexKeyStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object indexKeyStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = "";
     String delim = ";";
@@ -581,13 +591,13 @@ public Object indexKeyStrProp(
         parameters,
         new Class[] {String.class, BigDecimal.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     int index = ((BigDecimal) parameters.get(1)).intValue();
-    if (index < 0 || index >= oldKeys.size()) {
+    if (index < 0 || index >= parsed.keys().size()) {
       retval = "";
     } else {
-      retval = oldKeys.get(index);
+      retval = parsed.keys().get(index);
     }
     return retval;
   }
@@ -599,20 +609,11 @@ public Object indexKeyStrProp(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return The value (converted to a number if possible) for the setting at position <code>index
    *     </code>
    * @throws ParserException when an error occurs.
    */
-  public Object indexValueStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object indexValueStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     String value = "";
     Object retval = null;
@@ -627,13 +628,13 @@ public Object indexValueStrProp(
         parameters,
         new Class[] {String.class, BigDecimal.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     int index = ((BigDecimal) parameters.get(1)).intValue();
-    if (index < 0 || index >= oldKeys.size()) {
+    if (index < 0 || index >= parsed.keys().size()) {
       value = "";
     } else {
-      value = map.get(oldKeys.get(index).toUpperCase());
+      value = parsed.values().get(parsed.keys().get(index).toUpperCase());
     }
 
     if (value != null) {
@@ -655,19 +656,10 @@ public Object indexValueStrProp(
    * @param parameters the function parameters
    * @param lastParam the last parameter
    * @param props has the form "key1=val1 ; key2=val2 ; ..."
-   * @param map is populated with the settings. The keys are normalized to upper case.
-   * @param oldKeys holds the un-normalized keys, in their original order.
-   * @param oldKeysNormalized an empty array that will contain the normalized keys.
    * @return A string containing the formatted property string.
    * @throws ParserException when an error occurs.
    */
-  public Object formatStrProp(
-      List<Object> parameters,
-      String lastParam,
-      String props,
-      Map<String, String> map,
-      List<String> oldKeys,
-      List<String> oldKeysNormalized)
+  public Object formatStrProp(List<Object> parameters, String lastParam, String props)
       throws ParserException {
     Object retval = null;
     String delim = ";";
@@ -681,7 +673,7 @@ public Object formatStrProp(
         parameters,
         new Class[] {String.class, String.class, String.class, String.class, String.class});
     if (parameters.size() == maxParams) delim = lastParam;
-    parse(props, map, oldKeys, oldKeysNormalized, delim);
+    StrProp parsed = parse(props, delim);
 
     String listFormat = parameters.get(1).toString();
     String entryFormat = parameters.get(2).toString();
@@ -689,7 +681,7 @@ public Object formatStrProp(
 
     StringBuilder sb = new StringBuilder();
     boolean firstEntry = true;
-    for (String key : oldKeys) {
+    for (String key : parsed.keys()) {
       if (firstEntry) {
         firstEntry = false;
       } else {
@@ -697,7 +689,7 @@ public Object formatStrProp(
       }
       String entry = entryFormat;
       entry = entry.replaceAll("\\%key", key);
-      String value = map.get(key.toUpperCase());
+      String value = parsed.values().get(key.toUpperCase());
       value = fullyQuoteString(value);
       entry = entry.replaceAll("\\%value", value);
       sb.append(entry);
@@ -0,0 +1,60 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import java.util.List;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.MapToolVariableResolver;
+import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.server.ServerCommand;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.AbstractFunction;
+
+/**
+ * Implements {@code batchTokenUpdates()}, which holds back the token property updates of the rest
+ * of the macro and sends them to the server as one message when the macro ends, see {@link
+ * ServerCommand#beginTokenUpdates()}. This saves the server and the other clients from handling a
+ * message, and an event, for every token when a macro changes many tokens.
+ */
+public class TokenUpdateBatchFunction extends AbstractFunction {
+  private static final TokenUpdateBatchFunction instance = new TokenUpdateBatchFunction();
+
+  private TokenUpdateBatchFunction() {
+    super(0, 0, "batchTokenUpdates");
+  }
+
+  public static TokenUpdateBatchFunction getInstance() {
+    return instance;
+  }
+
+  @Override
+  public Object childEvaluate(
+      Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+      throws ParserException {
+    if (!"batchTokenUpdates".equalsIgnoreCase(functionName)) {
+      throw new ParserException(
+          I18N.getText("macro.function.general.unknownFunction", functionName));
+    }
+    // The batch ends with the macro, so there is nothing to batch outside of one.
+    if (resolver instanceof MapToolVariableResolver mtResolver && mtResolver.isInitialized()) {
+      ServerCommand serverCommand = MapTool.serverCommand();
+      serverCommand.beginTokenUpdates();
+      mtResolver.addDelayedAction(serverCommand::endTokenUpdates);
+    }
+    return "";
+  }
+}
@@ -22,11 +22,12 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 import java.util.concurrent.ExecutionException;
+import net.rptools.maptool.client.MacroProfiler;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolVariableResolver;
 import net.rptools.maptool.client.functions.json.JSONMacroFunctions;
@@ -52,7 +53,6 @@ public class UserDefinedMacroFunctions implements Function, AdditionalFunctionDe
       new HashMap<String, FunctionDefinition>();
   private final Map<String, FunctionRedefinition> redefinedFunctions =
       new HashMap<String, FunctionRedefinition>();
-  private final Stack<String> currentFunction = new Stack<String>();
 
   private static UserDefinedMacroFunctions instance = new UserDefinedMacroFunctions();
 
@@ -123,8 +123,11 @@ public Object evaluate(
       newResolver = (MapToolVariableResolver) resolver;
     }
 
+    MacroProfiler.Frame profilerFrame =
+        MacroProfiler.getInstance().enter(MacroProfiler.Kind.USER_FUNCTION, functionName);
+    Deque<String> functionStack = MapTool.getParser().getUserFunctionStack();
     try {
-      currentFunction.push(functionName);
+      functionStack.push(functionName);
       output =
           MapTool.getParser()
               .runMacro(
@@ -137,7 +140,8 @@ public Object evaluate(
       e.addMacro(funcDef.macroName);
       throw e;
     } finally {
-      currentFunction.pop();
+      functionStack.pop();
+      MacroProfiler.getInstance().exit(profilerFrame);
     }
 
     if (funcDef.ignoreOutput) {
@@ -220,7 +224,7 @@ public void defineFunction(
 
   public Object executeOldFunction(
       Parser parser, VariableResolver resolver, List<Object> parameters) throws ParserException {
-    String functionName = currentFunction.peek();
+    String functionName = MapTool.getParser().getUserFunctionStack().peek();
     FunctionRedefinition functionRedef = redefinedFunctions.get(functionName);
     if (functionRedef == null) {
       throw new ParserException("Old definition for function " + functionName + " does not exist");
@@ -27,7 +27,10 @@
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import net.rptools.dicelib.expression.ExpressionParser;
 import net.rptools.dicelib.expression.Result;
 import net.rptools.maptool.client.MapToolVariableResolver;
@@ -161,7 +164,7 @@ public Object childEvaluate(
         } else {
           String str = potJson.toString().trim();
           if (str.startsWith("{") || str.startsWith("[")) {
-            JsonElement json = typeConversion.asJsonElement(str);
+            JsonElement json = typeConversion.asSharedJsonElement(str);
             if (json.isJsonArray()) {
               return JSONObjectType.ARRAY.name();
             } else if (json.isJsonObject()) {
@@ -173,7 +176,7 @@ public Object childEvaluate(
       case "json.length":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 1);
-          JsonElement json = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement json = sharedParamConvertedToJson(functionName, args, 0);
           if (json.isJsonObject()) {
             return jsonObjectFunctions.length(json.getAsJsonObject());
           } else {
@@ -183,7 +186,7 @@ public Object childEvaluate(
       case "json.fields":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 2);
-          JsonElement json = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement json = sharedParamConvertedToJson(functionName, args, 0);
           String delim = args.size() > 1 ? args.get(1).toString() : DEFAULT_STRING_LIST_DELIM;
 
           if (json.isJsonObject()) {
@@ -268,7 +271,7 @@ public Object childEvaluate(
           FunctionUtil.checkNumberParam(functionName, args, 2, UNLIMITED_PARAMETERS);
           JsonElement jsonElement;
           try {
-            jsonElement = FunctionUtil.paramAsJson(functionName, args, 0);
+            jsonElement = sharedParamAsJson(functionName, args, 0);
           } catch (
               ParserException
                   pe) { // If we cant convert it to a JsonArray/JsonObject then treat like array
@@ -276,21 +279,26 @@ public Object childEvaluate(
             jsonElement = new JsonArray();
             jsonElement.getAsJsonArray().add(typeConversion.asJsonElement(args.get(0)));
           }
+          Object value;
           if (jsonElement.isJsonArray()) {
             if (args.size() == 2) {
-              return jsonArrayFunctions.get(
-                  jsonElement.getAsJsonArray(),
-                  FunctionUtil.paramAsInteger(functionName, args, 1, true));
+              value =
+                  jsonArrayFunctions.get(
+                      jsonElement.getAsJsonArray(),
+                      FunctionUtil.paramAsInteger(functionName, args, 1, true));
             } else {
-              return jsonArrayFunctions.get(
-                  jsonElement.getAsJsonArray(),
-                  FunctionUtil.paramAsInteger(functionName, args, 1, true),
-                  FunctionUtil.paramAsInteger(functionName, args, 2, true));
+              value =
+                  jsonArrayFunctions.get(
+                      jsonElement.getAsJsonArray(),
+                      FunctionUtil.paramAsInteger(functionName, args, 1, true),
+                      FunctionUtil.paramAsInteger(functionName, args, 2, true));
             }
           } else {
-            return jsonObjectFunctions.get(
-                jsonElement.getAsJsonObject(), args.subList(1, args.size()));
+            value =
+                jsonObjectFunctions.get(
+                    jsonElement.getAsJsonObject(), args.subList(1, args.size()));
           }
+          return unshared(value, jsonElement != args.get(0));
         }
       case "json.append":
         {
@@ -320,7 +328,7 @@ public Object childEvaluate(
       case "json.indent":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 2);
-          JsonElement jsonElement = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement = sharedParamConvertedToJson(functionName, args, 0);
           int indentSize = 2;
           if (args.size() > 1) {
             indentSize = FunctionUtil.paramAsInteger(functionName, args, 1, true);
@@ -330,7 +338,7 @@ public Object childEvaluate(
       case "json.contains":
         {
           FunctionUtil.checkNumberParam(functionName, args, 2, 2);
-          JsonElement jsonElement = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement = sharedParamConvertedToJson(functionName, args, 0);
           boolean contains;
           if (jsonElement.isJsonArray()) {
             contains = jsonArrayFunctions.contains(jsonElement.getAsJsonArray(), args.get(1));
@@ -388,7 +396,7 @@ public Object childEvaluate(
       case "json.isEmpty":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 1);
-          JsonElement jsonElement = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement = sharedParamConvertedToJson(functionName, args, 0);
 
           boolean empty;
           if (jsonElement.isJsonArray()) {
@@ -401,8 +409,8 @@ public Object childEvaluate(
       case "json.equals":
         {
           FunctionUtil.checkNumberParam(functionName, args, 2, 2);
-          JsonElement jsonElement1 = FunctionUtil.paramConvertedToJson(functionName, args, 0);
-          JsonElement jsonElement2 = FunctionUtil.paramConvertedToJson(functionName, args, 1);
+          JsonElement jsonElement1 = sharedParamConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement2 = sharedParamConvertedToJson(functionName, args, 1);
           return jsonElement1.equals(jsonElement2) ? BigDecimal.ONE : BigDecimal.ZERO;
         }
       case "json.count":
@@ -680,6 +688,67 @@ private List<JsonElement> paramsConvertedToJsonElements(
     return elements;
   }
 
+  /**
+   * Returns the parameter as json like {@link FunctionUtil#paramAsJson(String, List, int)}, but
+   * json text is only parsed the first time it is seen. The result may be shared, so it must only
+   * be read and nothing inside it may be returned without going through {@link #unshared(Object,
+   * boolean)}.
+   *
+   * @param functionName The name of the MT Script function that was called.
+   * @param params The parameters passed to the MT Script function.
+   * @param index The index of the parameter to return.
+   * @return the parameter as a json array or object.
+   * @throws ParserException if the parameter can not be converted to json.
+   */
+  private JsonElement sharedParamAsJson(String functionName, List<Object> params, int index)
+      throws ParserException {
+    if (params.get(index) instanceof String text) {
+      JsonElement json = typeConversion.parseShared(text);
+      if (json != null) {
+        return json;
+      }
+    }
+    return FunctionUtil.paramAsJson(functionName, params, index);
+  }
+
+  /**
+   * Returns the parameter as json like {@link FunctionUtil#paramConvertedToJson(String, List,
+   * int)}, but json text is only parsed the first time it is seen. The result may be shared, so it
+   * must only be read.
+   *
+   * @param functionName The name of the MT Script function that was called.
+   * @param params The parameters passed to the MT Script function.
+   * @param index The index of the parameter to return.
+   * @return the parameter as a json array or object.
+   */
+  private JsonElement sharedParamConvertedToJson(
+      String functionName, List<Object> params, int index) {
+    if (params.get(index) instanceof String text) {
+      JsonElement json = typeConversion.parseShared(text);
+      if (json != null) {
+        return json;
+      }
+    }
+    return FunctionUtil.paramConvertedToJson(functionName, params, index);
+  }
+
+  /**
+   * Returns a value read from json so that it can be returned to MT Script. Json arrays and objects
+   * read from shared json are copied, as the caller may change them.
+   *
+   * @param value The value that was read.
+   * @param shared If the json the value was read from may be shared.
+   * @return the value, or a copy of it.
+   */
+  private Object unshared(Object value, boolean shared) {
+    if (shared
+        && value instanceof JsonElement json
+        && (json.isJsonArray() || json.isJsonObject())) {
+      return json.deepCopy();
+    }
+    return value;
+  }
+
   /**
    * Converts the argument passed to json and runs all the values contained within through the
    * parser to evaluate the contents.
@@ -780,11 +849,12 @@ private Object handleJsonPathFunctions(String functionName, List<Object> paramet
         case "json.path.read":
           {
             FunctionUtil.checkNumberParam(functionName, parameters, 2, 3);
-            JsonElement jsonElement = FunctionUtil.paramAsJson(functionName, parameters, 0);
+            JsonElement jsonElement = sharedParamAsJson(functionName, parameters, 0);
             String strPath = parameters.get(1).toString();
             String strConf = parameters.size() > 2 ? parameters.get(2).toString() : null;
             Configuration config = getConfig(strConf);
-            return jsonPathRead(jsonElement, strPath, config);
+            return unshared(
+                jsonPathRead(jsonElement, strPath, config), jsonElement != parameters.get(0));
           }
         case "json.path.add":
           {
@@ -825,20 +895,118 @@ private Object handleJsonPathFunctions(String functionName, List<Object> paramet
   }
 
   /**
-   * Returns a shallow copy of the passed in {@link JsonElement}. If the value is immutable then
-   * this method may just return the value itself without making a copy.
+   * Returns a copy of the json that the json path library can change at the specified path without
+   * changing the original. Only the arrays and objects on the way to the values matched by the path
+   * are copied; everything else is shared with the original.
+   *
+   * @param json The base {@link JsonElement}.
+   * @param path The path that will be changed.
+   * @param copyMatches If the matched values are changed, and not only the values that hold them.
+   * @return The json to change.
+   */
+  private JsonElement copyPath(JsonElement json, String path, boolean copyMatches) {
+    JsonArray matches =
+        JsonPath.using(jaywayConfig.addOptions(Option.AS_PATH_LIST)).parse(json).read(path);
+    Set<JsonElement> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+    JsonElement root = shallowCopy(json, copies);
+    for (JsonElement match : matches) {
+      List<Object> steps = pathSteps(match.getAsString());
+      if (steps == null) {
+        return json.deepCopy();
+      }
+      JsonElement parent = root;
+      int end = copyMatches ? steps.size() : steps.size() - 1;
+      for (int i = 0; i < end; i++) {
+        Object step = steps.get(i);
+        JsonElement child;
+        if (step instanceof Integer index
+            && parent.isJsonArray()
+            && index < parent.getAsJsonArray().size()) {
+          child = parent.getAsJsonArray().get(index);
+        } else if (step instanceof String key && parent.isJsonObject()) {
+          // Keys aren't escaped in the path, so a key containing "']" could have been split.
+          if (parent.getAsJsonObject().keySet().stream().anyMatch(k -> k.contains("']"))) {
+            return json.deepCopy();
+          }
+          child = parent.getAsJsonObject().get(key);
+        } else {
+          child = null;
+        }
+        if (child == null) {
+          return json.deepCopy();
+        }
+        if (!copies.contains(child)) {
+          child = shallowCopy(child, copies);
+          if (step instanceof Integer index) {
+            parent.getAsJsonArray().set(index, child);
+          } else {
+            parent.getAsJsonObject().add((String) step, child);
+          }
+        }
+        parent = child;
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Returns the array indexes and object keys of a path in the form returned by {@link
+   * Option#AS_PATH_LIST}, such as <code>$['a'][0]</code>.
+   *
+   * @param path The path to split.
+   * @return The indexes and keys, or {@code null} if the path can't be split reliably.
+   */
+  private List<Object> pathSteps(String path) {
+    if (!path.startsWith("$")) {
+      return null;
+    }
+    List<Object> steps = new ArrayList<>();
+    int start = 1;
+    while (start < path.length()) {
+      if (path.startsWith("['", start)) {
+        int end = path.indexOf("']", start + 2);
+        if (end < 0) {
+          return null;
+        }
+        steps.add(path.substring(start + 2, end));
+        start = end + 2;
+      } else if (path.startsWith("[", start)) {
+        int end = path.indexOf(']', start);
+        if (end < 0) {
+          return null;
+        }
+        try {
+          steps.add(Integer.parseInt(path.substring(start + 1, end)));
+        } catch (NumberFormatException e) {
+          return null;
+        }
+        start = end + 1;
+      } else {
+        return null;
+      }
+    }
+    return steps;
+  }
+
+  /**
+   * Returns a shallow copy of the passed in {@link JsonElement}, remembering it as a copy. If the
+   * value is immutable then this method may just return the value itself without making a copy.
    *
    * @param jsonElement The {@link JsonElement} to copy.
+   * @param copies The copies that have been made.
    * @return The resulting json data.
    */
-  private JsonElement shallowCopy(JsonElement jsonElement) {
+  private JsonElement shallowCopy(JsonElement jsonElement, Set<JsonElement> copies) {
+    JsonElement copy;
     if (jsonElement.isJsonObject()) {
-      return jsonObjectFunctions.shallowCopy(jsonElement.getAsJsonObject());
+      copy = jsonObjectFunctions.shallowCopy(jsonElement.getAsJsonObject());
     } else if (jsonElement.isJsonArray()) {
-      return jsonArrayFunctions.shallowCopy(jsonElement.getAsJsonArray());
+      copy = jsonArrayFunctions.shallowCopy(jsonElement.getAsJsonArray());
     } else {
       return jsonElement; // Is immutable so no need to return copy,
     }
+    copies.add(copy);
+    return copy;
   }
 
   /**
@@ -850,7 +1018,7 @@ private JsonElement shallowCopy(JsonElement jsonElement) {
    */
   private JsonElement jsonPathDelete(JsonElement json, String path) {
     try {
-      return JsonPath.using(jaywayConfig).parse(shallowCopy(json)).delete(path).json();
+      return JsonPath.using(jaywayConfig).parse(copyPath(json, path, false)).delete(path).json();
     } catch (PathNotFoundException ex) {
       // Return original json, this is to preserve backwards compatability pre library update
       return json;
@@ -870,7 +1038,10 @@ private JsonElement jsonPathPut(JsonElement json, String path, String key, Objec
     Object value = asJsonElement(info);
 
     try {
-      return JsonPath.using(jaywayConfig).parse(shallowCopy(json)).put(path, key, value).json();
+      return JsonPath.using(jaywayConfig)
+          .parse(copyPath(json, path, true))
+          .put(path, key, value)
+          .json();
     } catch (PathNotFoundException ex) {
       // Return original json, this is to preserve backwards compatability pre library update
       return json;
@@ -889,7 +1060,10 @@ private JsonElement jsonPathSet(JsonElement json, String path, Object info) {
     Object value = asJsonElement(info);
 
     try {
-      return JsonPath.using(jaywayConfig).parse(shallowCopy(json)).set(path, value).json();
+      return JsonPath.using(jaywayConfig)
+          .parse(copyPath(json, path, false))
+          .set(path, value)
+          .json();
     } catch (PathNotFoundException ex) {
       // Return original json, this is to preserve backwards compatability pre library update
       return json;
@@ -952,6 +1126,28 @@ public JsonElement asJsonElement(Object o) {
     return typeConversion.asJsonElement(o);
   }
 
+  /**
+   * Returns the json array or object for the text if it is strictly valid json. Text that has been
+   * seen before is not parsed again.
+   *
+   * @param text the text to parse.
+   * @return the json array or object, or {@code null} if the text is not one.
+   */
+  public JsonElement parseStrictJson(String text) {
+    return typeConversion.parseStrict(text);
+  }
+
+  /**
+   * Returns the json text of an element. Converting the text back to json will not need to parse
+   * it again.
+   *
+   * @param element the element to convert.
+   * @return the json text.
+   */
+  public String asJsonText(JsonElement element) {
+    return typeConversion.asJsonText(element);
+  }
+
   /**
    * Converts a <code>String</code> to a {@link JsonPrimitive}.
    *
@@ -14,10 +14,19 @@
  */
 package net.rptools.maptool.client.functions.json;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 
 /** Class used to convert between json and MT Script types. */
@@ -26,6 +35,18 @@ class JsonMTSTypeConversion {
   /** An empty <code>String</code> as a {@link JsonPrimitive}. */
   public static final JsonPrimitive EMPTY_STRING_ELEMENT = new JsonPrimitive("");
 
+  /** Reads json without the leniency of {@link JsonParser}. */
+  private static final TypeAdapter<JsonElement> STRICT_ADAPTER =
+      new Gson().getAdapter(JsonElement.class);
+
+  /**
+   * Json arrays and objects that have been parsed from, or serialized to, text. The elements are
+   * shared by everything that reads the same text, so they must never be modified or handed out;
+   * callers outside of the json functions only ever get copies of them.
+   */
+  private final Cache<String, JsonElement> sharedElements =
+      CacheBuilder.newBuilder().softValues().build();
+
   /** Creates a new <code>JsonMTSTypeConversion</code> object. */
   JsonMTSTypeConversion() {}
 
@@ -92,6 +113,11 @@ JsonElement asJsonElement(Object o) {
     if (o instanceof String) {
       String s = o.toString();
       if (s.startsWith("[") || s.startsWith("{")) {
+        // Text that has been parsed before is copied rather than parsed again.
+        JsonElement shared = parseShared(s);
+        if (shared != null) {
+          return shared.deepCopy();
+        }
         // if it could be a json object try parse it, if we want to try convert strings to numbers
         // parsing it will do this
         try {
@@ -109,6 +135,83 @@ JsonElement asJsonElement(Object o) {
     }
   }
 
+  /**
+   * Returns a {@link JsonElement} version of the passed in object, like {@link
+   * #asJsonElement(Object)}. Text that is a valid json array or object is only parsed the first
+   * time it is seen; after that the same element is returned, so the result must only be read, and
+   * neither it nor anything inside it may be returned to MTScript.
+   *
+   * @param o the object to convert to a {@link JsonElement}.
+   * @return a {@link JsonElement} version of the object, which may be shared.
+   */
+  JsonElement asSharedJsonElement(Object o) {
+    if (o instanceof String s) {
+      JsonElement json = parseShared(s);
+      if (json != null) {
+        return json;
+      }
+    }
+    return asJsonElement(o);
+  }
+
+  /**
+   * Returns the shared json array or object for the text, parsing it if this is the first time the
+   * text has been seen. Unlike {@link #asJsonElement(Object)} the text must be strictly valid json.
+   *
+   * @param text the text to parse.
+   * @return the shared {@link JsonElement}, or {@code null} if the text is not a json array or
+   *     object.
+   */
+  JsonElement parseShared(String text) {
+    if (!text.startsWith("[") && !text.startsWith("{")) {
+      return null;
+    }
+    JsonElement json = sharedElements.getIfPresent(text);
+    if (json == null) {
+      try (JsonReader reader = new JsonReader(new StringReader(text))) {
+        json = STRICT_ADAPTER.read(reader);
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+          return null;
+        }
+      } catch (IOException | JsonParseException | IllegalStateException e) {
+        return null;
+      }
+      sharedElements.put(text, json);
+    }
+    return json;
+  }
+
+  /**
+   * Returns a copy of the json array or object for the text, which must be strictly valid json.
+   * Text that has been seen before is copied rather than parsed again.
+   *
+   * @param text the text to parse.
+   * @return a {@link JsonElement} the caller may change, or {@code null} if the text is not a json
+   *     array or object.
+   */
+  JsonElement parseStrict(String text) {
+    JsonElement json = parseShared(text);
+    return json == null ? null : json.deepCopy();
+  }
+
+  /**
+   * Returns the json text of an element. A copy of the element is kept with the text, so that
+   * converting the text back to json, such as when a token property that was just set is read,
+   * does not need to parse it.
+   *
+   * @param element the element to convert to text.
+   * @return the json text of the element.
+   */
+  String asJsonText(JsonElement element) {
+    String text = element.toString();
+    if ((element.isJsonArray() || element.isJsonObject())
+        && sharedElements.getIfPresent(text) == null) {
+      // The caller keeps the element and may still change it, so it can't be shared itself.
+      sharedElements.put(text, element.deepCopy());
+    }
+    return text;
+  }
+
   /**
    * Returns a {@link JsonElement} version of the passed in object. If the object is already a
    * {@link JsonElement} then it will return a cloned copy. As {@link JsonPrimitive}s are immutable
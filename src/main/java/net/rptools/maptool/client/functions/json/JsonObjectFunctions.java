@@ -188,7 +188,9 @@ public JsonObject set(JsonObject jsonObject, List<Object> list) throws ParserExc
     if ((list.size() & 1) != 0) {
       throw new ParserException(I18N.getText("macro.function.json.setNoMatchingValue", "json.set"));
     }
-    JsonObject newJsonObject = jsonObject.deepCopy();
+    // Only top level fields are replaced, and values are never changed in place, so the fields
+    // that are kept can be shared with the original.
+    JsonObject newJsonObject = shallowCopy(jsonObject);
 
     for (int i = 0; i < list.size(); i += 2) {
       Object value = list.get(i + 1);
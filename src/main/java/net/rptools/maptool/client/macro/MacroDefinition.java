@@ -30,4 +30,11 @@
   boolean hidden() default false;
 
   boolean expandRolls() default true;
+
+  /**
+   * Whether the macro is run on the Swing thread. Other macros run on the thread that runs the
+   * command, which is the worker of the {@link net.rptools.maptool.client.MacroExecutor} for macros
+   * run in the background, and must use it to do anything with the user interface or the model.
+   */
+  boolean runOnSwingThread() default true;
 }
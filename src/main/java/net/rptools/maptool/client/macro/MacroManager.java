@@ -18,6 +18,7 @@
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.rptools.lib.StringUtil;
+import net.rptools.maptool.client.MacroExecutor;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolMacroContext;
 import net.rptools.maptool.client.functions.exceptions.*;
@@ -281,6 +282,23 @@ public static void executeMacro(String command) {
    * @param macroExecutionContext The context in which the macro is being executed.
    */
   public static void executeMacro(String command, MapToolMacroContext macroExecutionContext) {
+    MacroExecutor executor = MacroExecutor.getInstance();
+    if (executor.runsInBackground(macroExecutionContext)) {
+      executor.submit(() -> runMacro(command, macroExecutionContext));
+    } else {
+      runMacro(command, macroExecutionContext);
+    }
+  }
+
+  /**
+   * Runs a macro, either on the Swing thread or on the worker thread of the {@link MacroExecutor}.
+   * Anything that uses the user interface is done on the Swing thread.
+   *
+   * @param command The command to execute.
+   * @param macroExecutionContext The context in which the macro is being executed.
+   */
+  private static void runMacro(String command, MapToolMacroContext macroExecutionContext) {
+    MacroExecutor executor = MacroExecutor.getInstance();
     MacroContext context = new MacroContext();
     context.addTransform(command);
     String macroButtonName =
@@ -319,15 +337,7 @@ public static void executeMacro(String command, MapToolMacroContext macroExecuti
 
         // Preprocess line if required.
         if (def == null || def.expandRolls()) {
-          Token tokenInContext = null;
-          ZoneRenderer zr = MapTool.getFrame().getCurrentZoneRenderer();
-          if (zr != null) {
-            final MapToolFrame frame = MapTool.getFrame();
-            final CommandPanel cpanel = frame.getCommandPanel();
-            if (cpanel.getIdentityGUID() != null)
-              tokenInContext = zr.getZone().getToken(cpanel.getIdentityGUID());
-            else tokenInContext = zr.getZone().resolveToken(cpanel.getIdentity());
-          }
+          Token tokenInContext = executor.callOnEdt(MacroManager::getImpersonatedToken);
           details = MapTool.getParser().parseLine(tokenInContext, details, macroExecutionContext);
           trustedPath = MapTool.getParser().isMacroPathTrusted();
         }
@@ -348,7 +358,7 @@ public static void executeMacro(String command, MapToolMacroContext macroExecuti
         }
 
         if (mdet.size() > 1) {
-          printAmbiguousAliasMessage(key);
+          executor.runOnEdt(() -> printAmbiguousAliasMessage(key));
           return;
         }
         String alias = mdet.get(0).command();
@@ -360,24 +370,43 @@ public static void executeMacro(String command, MapToolMacroContext macroExecuti
       // Do nothing, just silently exit
       return;
     } catch (JavascriptFunctionException | AssertFunctionException afe) {
-      MapTool.addLocalMessage(afe.getMessage());
+      executor.runOnEdt(() -> MapTool.addLocalMessage(afe.getMessage()));
       return;
     } catch (ParserException e) {
       e.addMacro(macroButtonName);
-      MapTool.addErrorMessage(e);
+      executor.runOnEdt(() -> MapTool.addErrorMessage(e));
       // These are not errors to worry about as they are usually user input errors so no need to log
       // them.
       return;
     } catch (Exception e) {
-      MapTool.addLocalMessage(
-          I18N.getText("macromanager.couldNotExecute", command, e.getMessage()));
+      String message = I18N.getText("macromanager.couldNotExecute", command, e.getMessage());
+      executor.runOnEdt(() -> MapTool.addLocalMessage(message));
       log.warn("Exception executing command: " + command);
       log.warn(e.getStackTrace());
       return;
     }
 
     // We'll only get here if the recurseCount is exceeded
-    MapTool.addLocalMessage(I18N.getText("macromanager.tooManyResolves", command));
+    String message = I18N.getText("macromanager.tooManyResolves", command);
+    executor.runOnEdt(() -> MapTool.addLocalMessage(message));
+  }
+
+  /**
+   * Returns the token the chat panel is impersonating on the current map.
+   *
+   * @return the impersonated token, or null if there is none.
+   */
+  private static Token getImpersonatedToken() {
+    ZoneRenderer zr = MapTool.getFrame().getCurrentZoneRenderer();
+    if (zr == null) {
+      return null;
+    }
+    final MapToolFrame frame = MapTool.getFrame();
+    final CommandPanel cpanel = frame.getCommandPanel();
+    if (cpanel.getIdentityGUID() != null) {
+      return zr.getZone().getToken(cpanel.getIdentityGUID());
+    }
+    return zr.getZone().resolveToken(cpanel.getIdentity());
   }
 
   private static List<MacroDetails> findAlias(String key) {
@@ -627,6 +656,13 @@ private static void executeMacro(
               + macro.getClass().getSimpleName()
               + "----------------------------------------------------------------------------------");
     }
-    macro.execute(context, parameter, executionContext);
+    // Most macros write to chat or open dialogs, so they run on the Swing thread.
+    MacroDefinition def = macro.getClass().getAnnotation(MacroDefinition.class);
+    if (def != null && !def.runOnSwingThread()) {
+      macro.execute(context, parameter, executionContext);
+    } else {
+      MacroExecutor.getInstance()
+          .runOnEdt(() -> macro.execute(context, parameter, executionContext));
+    }
   }
 }
@@ -14,13 +14,14 @@
  */
 package net.rptools.maptool.client.macro.impl;
 
+import java.util.concurrent.atomic.AtomicReference;
+import net.rptools.maptool.client.MacroExecutor;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolMacroContext;
 import net.rptools.maptool.client.macro.Macro;
 import net.rptools.maptool.client.macro.MacroContext;
 import net.rptools.maptool.client.macro.MacroDefinition;
 import net.rptools.maptool.client.macro.MacroManager;
-import net.rptools.maptool.client.ui.MapToolFrame;
 import net.rptools.maptool.client.ui.commandpanel.CommandPanel;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.Token;
@@ -29,16 +30,19 @@
     name = "impersonate",
     aliases = {"im"},
     description = "impersonate.description",
-    expandRolls = false)
+    expandRolls = false,
+    runOnSwingThread = false)
 public class ImpersonateMacro implements Macro {
   public void execute(MacroContext context, String macro, MapToolMacroContext executionContext) {
-    final MapToolFrame frame = MapTool.getFrame(); // cached for quicker access
-    final CommandPanel cpanel = frame.getCommandPanel();
+    // The identity is looked up on the Swing thread, but a macro run as the token stays on this
+    // thread, which is the worker of the MacroExecutor for macros run in the background.
+    final MacroExecutor executor = MacroExecutor.getInstance();
     if (macro != null) macro = macro.trim();
 
     // Clear current identity
     if (macro == null || macro.length() == 0) {
-      cpanel.setIdentity(new CommandPanel.TokenIdentity());
+      executor.runOnEdt(
+          () -> MapTool.getFrame().getCommandPanel().setIdentity(new CommandPanel.TokenIdentity()));
       return;
     }
     // Figure out what we want to impersonate
@@ -51,7 +55,39 @@ public void execute(MacroContext context, String macro, MapToolMacroContext exec
       name = macro.substring(0, index).trim();
       macro = macro.substring(index + 1);
     }
-    Token token = frame.getCurrentZoneRenderer().getZone().resolveToken(name);
+    final String tokenName = name;
+    final boolean runMacro = index > 0;
+    var identity = new AtomicReference<CommandPanel.TokenIdentity>();
+    executor.runOnEdt(() -> identity.set(resolveIdentity(tokenName, runMacro)));
+    if (identity.get() == null) {
+      return;
+    }
+    // Impersonate
+    if (runMacro) {
+      // Enter impersonation context for the duration of the macro
+      executor.runOnEdt(
+          () -> MapTool.getFrame().getCommandPanel().enterContextIdentity(identity.get()));
+      try {
+        MacroManager.executeMacro(macro, executionContext);
+      } finally {
+        executor.runOnEdt(() -> MapTool.getFrame().getCommandPanel().leaveContextIdentity());
+      }
+    } else {
+      // Set current identity
+      executor.runOnEdt(() -> MapTool.getFrame().getCommandPanel().setIdentity(identity.get()));
+    }
+  }
+
+  /**
+   * Looks up the token to impersonate on the current map and checks that the player may
+   * impersonate it. Must be called on the Swing thread.
+   *
+   * @param name the name or id of the token, or a name that isn't a token.
+   * @param runMacro whether the identity is only used to run a macro.
+   * @return the identity, or null if the player may not impersonate it.
+   */
+  private CommandPanel.TokenIdentity resolveIdentity(String name, boolean runMacro) {
+    Token token = MapTool.getFrame().getCurrentZoneRenderer().getZone().resolveToken(name);
     if (token != null) {
       name = token.getName();
     }
@@ -62,18 +98,11 @@ public void execute(MacroContext context, String macro, MapToolMacroContext exec
       } else {
         MapTool.addLocalMessage(I18N.getText("msg.error.gmRequired"));
       }
-      return;
-    }
-    // Impersonate
-    if (index > 0) {
-      // Enter impersonation context for the duration of the macro
-      cpanel.enterContextIdentity(new CommandPanel.TokenIdentity(token, name));
-      MacroManager.executeMacro(macro, executionContext);
-      cpanel.leaveContextIdentity();
-    } else {
-      // Set current identity
-      cpanel.setIdentity(new CommandPanel.TokenIdentity(token, name, canLoadTokenMacros(token)));
+      return null;
     }
+    return runMacro
+        ? new CommandPanel.TokenIdentity(token, name)
+        : new CommandPanel.TokenIdentity(token, name, canLoadTokenMacros(token));
   }
 
   /**
@@ -50,6 +50,16 @@ public static boolean isFunctionDefined(String functionName) {
     return macros.containsKey(functionName);
   }
 
+  /**
+   * Returns if any macro has been registered by a function in the context.
+   *
+   * @param context the context to check.
+   * @return {@code true} if a registered macro calls a function in the context.
+   */
+  public static boolean isRegisteredIn(JSContext context) {
+    return macros.values().stream().anyMatch(macro -> macro.context == context);
+  }
+
   @Override
   public Object childEvaluate(
       Parser parser, VariableResolver resolver, String functionName, List<Object> args)
@@ -17,6 +17,10 @@
 import com.oracle.truffle.js.scriptengine.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Function;
 import javax.script.*;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.functions.MacroJavaScriptBridge;
@@ -38,6 +42,29 @@ public class JSScriptEngine {
   private static final Map<String, JSContext> addOnContexts = new HashMap<String, JSContext>();
   private static final Stack<JSContext> contextStack = new Stack<>();
 
+  /** The number of unused contexts kept ready for anonymous evaluations at each trust level. */
+  private static final int ANONYMOUS_POOL_SIZE = 2;
+
+  /** The name given to anonymous contexts and their sources. */
+  private static final String ANONYMOUS_NAME = "<anonymous>";
+
+  /**
+   * The engine shared by every context, so that parsed sources and compiled code survive from one
+   * context to the next.
+   */
+  private final Engine engine;
+
+  /** The API classes that are bound into every context. */
+  private final List<Class<?>> apiClasses;
+
+  /** Contexts that have never been used, ready for anonymous evaluations by trusted macros. */
+  private final BlockingDeque<Context> trustedAnonymousContexts =
+      new LinkedBlockingDeque<>(ANONYMOUS_POOL_SIZE);
+
+  /** Contexts that have never been used, ready for anonymous evaluations by untrusted macros. */
+  private final BlockingDeque<Context> untrustedAnonymousContexts =
+      new LinkedBlockingDeque<>(ANONYMOUS_POOL_SIZE);
+
   public static JSContext getCurrentContext() {
     return contextStack.peek();
   }
@@ -65,9 +92,40 @@ private JSScriptEngine() {
 
     HostAccess access = habuilder.build();
 
+    engine = Engine.newBuilder().build();
     cbuilder = Context.newBuilder("js");
+    cbuilder.engine(engine);
     cbuilder.allowHostAccess(access);
     cbuilder.option("js.ecmascript-version", "2021");
+
+    Reflections reflections = new Reflections("net.rptools.maptool.client.script.javascript.api");
+    apiClasses = List.copyOf(reflections.getTypesAnnotatedWith(MapToolJSAPIDefinition.class));
+  }
+
+  /**
+   * Prepares contexts for anonymous evaluations in the background, so that the first {@code
+   * js.eval} doesn't have to wait for one to be created.
+   */
+  public void warmUp() {
+    prepareAnonymousContext(trustedAnonymousContexts);
+    prepareAnonymousContext(untrustedAnonymousContexts);
+  }
+
+  /**
+   * Creates a context in the background and adds it to the pool, unless the pool is already full.
+   *
+   * @param pool the pool to add the context to.
+   */
+  private void prepareAnonymousContext(BlockingDeque<Context> pool) {
+    CompletableFuture.runAsync(
+        () -> {
+          if (pool.remainingCapacity() > 0) {
+            Context context = makeContext();
+            if (!pool.offerLast(context)) {
+              context.close();
+            }
+          }
+        });
   }
 
   public static JSContext registerContext(String name, boolean trusted, boolean makeTrusted)
@@ -131,10 +189,7 @@ public Context makeContext() {
     Context context = cbuilder.build();
     Value bindings = context.getBindings("js");
 
-    Reflections reflections = new Reflections("net.rptools.maptool.client.script.javascript.api");
-    Set<Class<?>> annotated = reflections.getTypesAnnotatedWith(MapToolJSAPIDefinition.class);
-
-    for (Class<?> apiClass : annotated) {
+    for (Class<?> apiClass : apiClasses) {
       try {
         if (MapToolJSAPIInterface.class.isAssignableFrom(apiClass)) {
           registerAPIObject(bindings, (MapToolJSAPIInterface) apiClass.newInstance());
@@ -160,9 +215,14 @@ public Value evalScript(String contextName, String script)
   public Value evalScript(String contextName, String script, boolean trusted)
       throws ScriptException, ParserException {
     if (contextName == null) {
-      return evalAnonymous(script);
+      // The value has to outlive the evaluation, so the context is left for the garbage collector.
+      return evalAnonymous(script, trusted, value -> value, false);
+    }
+    // Add-on scripts run in the add-on's own context, which lives until the add-on is removed.
+    JSContext jc = addOnContexts.get(contextName);
+    if (jc == null) {
+      jc = contexts.get(contextName);
     }
-    JSContext jc = contexts.get(contextName);
     if (jc == null) {
       jc = registerContext(contextName, trusted, trusted);
     }
@@ -203,20 +263,49 @@ public Object applyFunction(JSAPIRegisteredMacro macro, Object[] args) {
     }
   }
 
-  public Value evalAnonymous(String script) throws ScriptException {
+  /**
+   * Evaluates a script in a context that isn't shared with any named context, and converts the
+   * result before the context is closed. Each context is only ever used once, as a script can
+   * change anything in it, and contexts for trusted and untrusted macros are kept apart. An unused
+   * context is taken from a small pool, and a replacement is created in the background.
+   *
+   * @param script the body of the function to evaluate.
+   * @param trusted if the macro evaluating the script is trusted.
+   * @param result converts the value returned by the script, while it can still be read.
+   * @param <T> the type of the converted value.
+   * @return the converted value.
+   * @throws ScriptException if the script can't be evaluated.
+   */
+  public <T> T evalAnonymous(String script, boolean trusted, Function<Value, T> result)
+      throws ScriptException {
+    return evalAnonymous(script, trusted, result, true);
+  }
+
+  private <T> T evalAnonymous(
+      String script, boolean trusted, Function<Value, T> result, boolean close) {
 
     StringBuilder wrapped = new StringBuilder();
     wrapped
         .append("(function() { var args = MTScript.getMTScriptCallingArgs(); ")
         .append(script)
         .append("})();");
-    Context c = makeContext();
-    JSContext jc = new JSContext(MapTool.getParser().isMacroTrusted(), c, "<anonymous>");
+    BlockingDeque<Context> pool = trusted ? trustedAnonymousContexts : untrustedAnonymousContexts;
+    Context c = pool.pollFirst();
+    if (c == null) {
+      c = makeContext();
+    }
+    prepareAnonymousContext(pool);
+    JSContext jc = new JSContext(trusted, c, ANONYMOUS_NAME);
     contextStack.push(jc);
     try {
-      return makeContext().eval("js", wrapped.toString());
+      return result.apply(
+          c.eval(Source.newBuilder("js", wrapped.toString(), ANONYMOUS_NAME).buildLiteral()));
     } finally {
       contextStack.pop();
+      // Functions that the script registered as macros still need their context.
+      if (close && !JSMacro.isRegisteredIn(jc)) {
+        c.close();
+      }
     }
   }
 }
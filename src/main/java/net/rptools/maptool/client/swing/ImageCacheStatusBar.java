@@ -50,6 +50,7 @@ public void mouseClicked(java.awt.event.MouseEvent e) {
             if (e.getClickCount() == 2) {
               LOGGER.info("Clearing imageThumbs cache...");
               MapTool.getThumbnailManager().clearImageThumbCache();
+              MapTool.getAssetFileIndex().clear();
               update();
               MapTool.getFrame().getAppHomeDiskSpaceStatusBar().update();
             }
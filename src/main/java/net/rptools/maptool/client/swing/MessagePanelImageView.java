@@ -785,8 +785,8 @@ public boolean imageUpdate(
           repaint(100);
         }
       } else {
-        // Avoids a possible deadlock between us waiting for imageLoaderMutex and it waiting on
-        // us...
+        // Images are loaded and observers notified on the image loader threads, so hop back onto
+        // the EDT before touching the view.
         SwingUtilities.invokeLater(() -> imageUpdate(img, flags, x, y, newWidth, newHeight));
       }
       return ((flags & ALLBITS) == 0);
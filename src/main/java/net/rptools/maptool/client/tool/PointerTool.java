@@ -1391,30 +1391,35 @@ && new StatSheetManager().isLegacyStatSheet(tokenUnderMouse.getStatSheet())) {
                 timer.setThreshold(5);
 
                 timer.start("allProps");
-                for (TokenProperty property :
-                    MapTool.getCampaign().getTokenPropertyList(tokenUnderMouse.getPropertyType())) {
-                  if (property.isShowOnStatSheet()) {
-                    if (property.isGMOnly() && !MapTool.getPlayer().isGM()) {
-                      continue;
-                    }
-                    if (property.isOwnerOnly() && !AppUtil.playerOwns(tokenUnderMouse)) {
-                      continue;
-                    }
-                    timer.start(property.getName());
-                    MapToolVariableResolver resolver = new MapToolVariableResolver(tokenUnderMouse);
-                    resolver.initialize();
-                    resolver.setAutoPrompt(false);
-                    Object propertyValue =
-                        tokenUnderMouse.getEvaluatedProperty(resolver, property.getName());
-                    resolver.flush();
-                    if (propertyValue != null && propertyValue.toString().length() > 0) {
-                      String propName = property.getShortName();
-                      if (StringUtils.isEmpty(propName)) {
-                        propName = property.getName();
+                // Properties that refer to each other are only evaluated once per frame.
+                try (var propertyScope = EvaluatedPropertyScope.open()) {
+                  for (TokenProperty property :
+                      MapTool.getCampaign()
+                          .getTokenPropertyList(tokenUnderMouse.getPropertyType())) {
+                    if (property.isShowOnStatSheet()) {
+                      if (property.isGMOnly() && !MapTool.getPlayer().isGM()) {
+                        continue;
+                      }
+                      if (property.isOwnerOnly() && !AppUtil.playerOwns(tokenUnderMouse)) {
+                        continue;
+                      }
+                      timer.start(property.getName());
+                      MapToolVariableResolver resolver =
+                          new MapToolVariableResolver(tokenUnderMouse);
+                      resolver.initialize();
+                      resolver.setAutoPrompt(false);
+                      Object propertyValue =
+                          tokenUnderMouse.getEvaluatedProperty(resolver, property.getName());
+                      resolver.flush();
+                      if (propertyValue != null && propertyValue.toString().length() > 0) {
+                        String propName = property.getShortName();
+                        if (StringUtils.isEmpty(propName)) {
+                          propName = property.getName();
+                        }
+                        propertyMap.put(propName, propertyValue.toString());
                       }
-                      propertyMap.put(propName, propertyValue.toString());
+                      timer.stop(property.getName());
                     }
-                    timer.stop(property.getName());
                   }
                 }
                 timer.stop("allProps");
@@ -196,6 +196,9 @@ protected JMenu createToolsMenu() {
     menu.add(new JSeparator());
 
     menu.add(new RPCheckBoxMenuItem(AppActions.TOGGLE_COLLECT_PROFILING_DATA, menu));
+    menu.add(new RPCheckBoxMenuItem(AppActions.TOGGLE_SHOW_PERFORMANCE_OVERLAY, menu));
+    menu.add(new RPCheckBoxMenuItem(AppActions.TOGGLE_RECORD_RENDER_TRACE, menu));
+    menu.add(new JMenuItem(AppActions.SHOW_MACRO_PROFILER));
     menu.add(new RPCheckBoxMenuItem(AppActions.TOGGLE_LOG_CONSOLE, menu));
 
     return menu;
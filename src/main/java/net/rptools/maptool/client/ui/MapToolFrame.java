@@ -1695,12 +1695,14 @@ private void stopTokenDrag() {
    * @param renderer the ZoneRenderer
    */
   public void setCurrentZoneRenderer(ZoneRenderer renderer) {
-    // Flush first so that the new zone renderer can inject the newly needed images
+    // Pin the images of the new zone so they are not evicted while it is displayed. Images of
+    // other zones stay cached while the image cache has room for them.
     if (renderer != null) {
       new MapToolEventBus().getMainEventBus().post(new ZoneLoading(renderer.getZone()));
 
-      ImageManager.flush(renderer.getZone().getAllAssetIds());
+      ImageManager.setPinnedImages(renderer.getZone().getAllAssetIds());
     } else {
+      ImageManager.setPinnedImages(Set.of());
       ImageManager.flush();
     }
     // Handle new renderers
@@ -28,12 +28,9 @@
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
-import net.rptools.maptool.client.AppPreferences;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ui.theme.Icons;
 import net.rptools.maptool.client.ui.theme.RessourceManager;
-import net.rptools.maptool.model.Token;
-import net.rptools.maptool.util.PersistenceUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -136,16 +133,12 @@ public Image call() {
       // Load it up
       Image thumbnail = null;
       try {
-        if (imageFile.getName().toLowerCase().endsWith(Token.FILE_EXTENSION)) {
-          thumbnail = PersistenceUtil.getTokenThumbnail(imageFile);
-        } else if (imageFile.getName().toLowerCase().endsWith(".pdf")) {
+        if (imageFile.getName().toLowerCase().endsWith(".pdf")) {
           thumbnail = PDF_IMAGE;
         } else if (imageFile.getName().toLowerCase().endsWith(".por")) {
           thumbnail = HERO_LAB_IMAGE;
         } else {
-          thumbnail =
-              MapTool.getThumbnailManager()
-                  .getThumbnail(imageFile, AppPreferences.renderQuality.get());
+          thumbnail = MapTool.getAssetFileIndex().getThumbnail(imageFile);
         }
       } catch (Throwable t) {
         log.error("Error while getting image thumbnail", t);
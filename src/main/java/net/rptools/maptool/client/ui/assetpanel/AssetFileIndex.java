@@ -0,0 +1,402 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.assetpanel;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.image.ThumbnailManager;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.maptool.client.AppPreferences;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.util.PersistenceUtil;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A persistent cache of the metadata shown in the asset panel, so that browsing a directory doesn't
+ * have to open every file in it again after a restart. Thumbnails are kept by the {@link
+ * ThumbnailManager}, which this fills in for token files and large images.
+ *
+ * <p>Entries are keyed by the path, size and modification time of the file, so a file that is
+ * changed on disk is picked up again without having to clear the cache. The metadata for each
+ * directory is kept in one properties file below the cache directory. {@link #index(List)} fills
+ * the cache in the background on a bounded pool of threads, and forgets the files that are no
+ * longer in the directory, while the other methods fill it on demand for files that have not been
+ * indexed yet.
+ */
+public final class AssetFileIndex {
+  private static final Logger log = LogManager.getLogger(AssetFileIndex.class);
+
+  /** How long to wait after a change before writing the metadata of a directory. */
+  private static final long SAVE_DELAY_SECONDS = 2;
+
+  private static final String INDEX_EXTENSION = ".index";
+
+  /**
+   * The metadata of a single file.
+   *
+   * @param length the size of the file when the metadata was read.
+   * @param lastModified the modification time of the file when the metadata was read.
+   * @param width the width of the image, or -1 if the file is not an image.
+   * @param height the height of the image, or -1 if the file is not an image.
+   * @param heroLab whether the file is a token created from a Hero Lab portfolio.
+   */
+  public record Metadata(long length, long lastModified, int width, int height, boolean heroLab) {
+    private boolean matches(File file) {
+      return length == file.length() && lastModified == file.lastModified();
+    }
+
+    /**
+     * Returns the dimensions of the image.
+     *
+     * @return the dimensions, or {@code null} if the file is not an image.
+     */
+    public Dimension getDimension() {
+      return width < 0 ? null : new Dimension(width, height);
+    }
+  }
+
+  /** The metadata of the files in one directory. */
+  private static final class DirectoryIndex {
+    private final File file;
+    private final Map<String, Metadata> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    private DirectoryIndex(File file) {
+      this.file = file;
+    }
+  }
+
+  private final File cacheDir;
+  private final ThumbnailManager thumbnailManager;
+  private final Map<File, DirectoryIndex> directories = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor indexer;
+  private final ScheduledExecutorService saver =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "AssetFileIndex-save");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** Incremented whenever a new directory is indexed, so that stale indexing tasks are dropped. */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /**
+   * Creates the index.
+   *
+   * @param cacheDir the directory to keep the cache in.
+   * @param thumbnailManager the cache of the thumbnails.
+   * @param threads the number of threads used to index directories.
+   */
+  public AssetFileIndex(File cacheDir, ThumbnailManager thumbnailManager, int threads) {
+    this.cacheDir = cacheDir;
+    this.thumbnailManager = thumbnailManager;
+    this.indexer =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            10,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+              Thread thread = new Thread(r, "AssetFileIndex");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    this.indexer.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Indexes the given files of a directory in the background. Any files of a previous call that
+   * have not been indexed yet are skipped, as the asset panel is only ever showing one directory.
+   * The metadata and thumbnails of files that are no longer in the directory are removed.
+   *
+   * @param files all the asset files of the directory.
+   */
+  public void index(List<File> files) {
+    int current = generation.incrementAndGet();
+    Map<File, Set<String>> names =
+        files.stream()
+            .collect(
+                Collectors.groupingBy(
+                    file -> file.getAbsoluteFile().getParentFile(),
+                    Collectors.mapping(File::getName, Collectors.toSet())));
+    indexer.execute(() -> names.forEach(this::prune));
+    for (File file : files) {
+      indexer.execute(
+          () -> {
+            if (generation.get() != current) {
+              return;
+            }
+            try {
+              Metadata metadata = getMetadata(file);
+              // Small images are used as they are, so there is nothing to prepare for them
+              if (metadata.width() < 0
+                  || thumbnailManager.isThumbnailNeeded(file, metadata.getDimension())) {
+                getThumbnail(file);
+              }
+            } catch (IOException e) {
+              log.debug("Unable to index {}", file, e);
+            }
+          });
+    }
+  }
+
+  /**
+   * Returns the metadata of a file, reading it from the file if it is not in the cache.
+   *
+   * @param file the file.
+   * @return the metadata.
+   * @throws IOException if the file can't be read.
+   */
+  public Metadata getMetadata(File file) throws IOException {
+    DirectoryIndex directory = getDirectoryIndex(file.getParentFile());
+    Metadata metadata = directory.entries.get(file.getName());
+    if (metadata != null && metadata.matches(file)) {
+      return metadata;
+    }
+
+    long length = file.length();
+    long lastModified = file.lastModified();
+    int width = -1;
+    int height = -1;
+    boolean heroLab = false;
+    if (Token.isTokenFile(file.getName())) {
+      try (PackedFile pakFile = new PackedFile(file)) {
+        heroLab = Boolean.TRUE.equals(pakFile.getProperty(PersistenceUtil.HERO_LAB));
+      }
+    } else if (isImage(file)) {
+      Dimension size = readImageDimension(file);
+      width = size.width;
+      height = size.height;
+    }
+    metadata = new Metadata(length, lastModified, width, height, heroLab);
+    putMetadata(directory, file, metadata);
+    return metadata;
+  }
+
+  /**
+   * Returns the thumbnail of a file, creating it if it is not in the cache.
+   *
+   * @param file the image or token file.
+   * @return the thumbnail, or {@code null} if the file has none.
+   * @throws IOException if the file can't be read.
+   */
+  public Image getThumbnail(File file) throws IOException {
+    if (Token.isTokenFile(file.getName())) {
+      return thumbnailManager.getThumbnail(
+          file, AppPreferences.renderQuality.get(), AssetFileIndex::readTokenThumbnail);
+    }
+    if (!isImage(file)) {
+      return null;
+    }
+    return thumbnailManager.getThumbnail(file, AppPreferences.renderQuality.get());
+  }
+
+  /** Removes all cached metadata. */
+  public void clear() {
+    generation.incrementAndGet();
+    directories.clear();
+    try {
+      if (cacheDir.exists()) {
+        FileUtils.cleanDirectory(cacheDir);
+      }
+    } catch (IOException e) {
+      log.error("Error while clearing asset index", e);
+    }
+  }
+
+  /**
+   * Reads the dimensions of an image from its header, without decoding the image.
+   *
+   * @param imgFile the image file.
+   * @return the dimensions of the image.
+   * @throws IOException if the file is not a known image.
+   */
+  static Dimension readImageDimension(File imgFile) throws IOException {
+    String suffix = FilenameUtils.getExtension(imgFile.getName());
+    if (suffix.isEmpty()) {
+      throw new IOException("No extension for file: " + imgFile.getAbsolutePath());
+    }
+
+    Iterator<ImageReader> iter = ImageIO.getImageReadersBySuffix(suffix);
+    if (iter.hasNext()) {
+      ImageReader reader = iter.next();
+      try (ImageInputStream stream = new FileImageInputStream(imgFile)) {
+        reader.setInput(stream);
+        int width = reader.getWidth(reader.getMinIndex());
+        int height = reader.getHeight(reader.getMinIndex());
+        return new Dimension(width, height);
+      } catch (IOException e) {
+        log.warn("Error reading: " + imgFile.getAbsolutePath(), e);
+      } finally {
+        reader.dispose();
+      }
+    }
+
+    throw new IOException("Not a known image file: " + imgFile.getAbsolutePath());
+  }
+
+  private static Image readTokenThumbnail(File file) throws IOException {
+    try {
+      return PersistenceUtil.getTokenThumbnail(file);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Unable to read token " + file, e);
+    }
+  }
+
+  private boolean isImage(File file) {
+    String name = file.getName().toLowerCase();
+    return !name.endsWith(".pdf") && !name.endsWith(".por");
+  }
+
+  private File getIndexFile(File directory) {
+    MD5Key md5 = new MD5Key(directory.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+    return new File(cacheDir, md5 + INDEX_EXTENSION);
+  }
+
+  private DirectoryIndex getDirectoryIndex(File directory) {
+    return directories.computeIfAbsent(directory.getAbsoluteFile(), this::loadDirectoryIndex);
+  }
+
+  private DirectoryIndex loadDirectoryIndex(File directory) {
+    DirectoryIndex index = new DirectoryIndex(directory);
+    File indexFile = getIndexFile(directory);
+    if (!indexFile.exists()) {
+      return index;
+    }
+
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(indexFile.toPath())) {
+      props.load(in);
+    } catch (IOException e) {
+      log.warn("Unable to read asset index {}", indexFile, e);
+      return index;
+    }
+    for (String name : props.stringPropertyNames()) {
+      String[] values = props.getProperty(name).split(",");
+      if (values.length != 5) {
+        continue;
+      }
+      try {
+        index.entries.put(
+            name,
+            new Metadata(
+                Long.parseLong(values[0]),
+                Long.parseLong(values[1]),
+                Integer.parseInt(values[2]),
+                Integer.parseInt(values[3]),
+                Boolean.parseBoolean(values[4])));
+      } catch (NumberFormatException e) {
+        log.debug("Ignoring invalid asset index entry {} in {}", name, indexFile);
+      }
+    }
+    return index;
+  }
+
+  private void putMetadata(DirectoryIndex directory, File file, Metadata metadata) {
+    directory.entries.put(file.getName(), metadata);
+    scheduleSave(directory);
+  }
+
+  /**
+   * Removes the metadata and thumbnails of the files that are no longer in a directory.
+   *
+   * @param dir the directory.
+   * @param names the names of the asset files in the directory.
+   */
+  void prune(File dir, Set<String> names) {
+    DirectoryIndex directory = getDirectoryIndex(dir);
+    Set<String> removed = new HashSet<>(directory.entries.keySet());
+    removed.removeAll(names);
+    if (removed.isEmpty()) {
+      return;
+    }
+    for (String name : removed) {
+      directory.entries.remove(name);
+      thumbnailManager.removeThumbnail(new File(dir, name));
+    }
+    scheduleSave(directory);
+  }
+
+  private void scheduleSave(DirectoryIndex directory) {
+    if (directory.saveScheduled.compareAndSet(false, true)) {
+      saver.schedule(() -> saveDirectoryIndex(directory), SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  private void saveDirectoryIndex(DirectoryIndex directory) {
+    directory.saveScheduled.set(false);
+    Properties props = new Properties();
+    directory.entries.forEach(
+        (name, m) ->
+            props.setProperty(
+                name,
+                m.length()
+                    + ","
+                    + m.lastModified()
+                    + ","
+                    + m.width()
+                    + ","
+                    + m.height()
+                    + ","
+                    + m.heroLab()));
+    try {
+      Path target = getIndexFile(directory.file).toPath();
+      Files.createDirectories(target.getParent());
+      Path temp = Files.createTempFile(target.getParent(), "index", ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        props.store(out, directory.file.getAbsolutePath());
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Unable to write asset index for {}", directory.file, e);
+    }
+  }
+}
@@ -36,6 +36,7 @@
 import javax.swing.event.DocumentListener;
 import javax.swing.plaf.basic.BasicSliderUI;
 import net.rptools.maptool.client.AppConstants;
+import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.swing.ImagePanel;
 import net.rptools.maptool.client.swing.ImagePanel.SelectionMode;
 import net.rptools.maptool.client.swing.SelectionListener;
@@ -384,6 +385,7 @@ public boolean isAssetRoot(Directory dir) {
 
   public void removeAssetRoot(Directory dir) {
     assetPanelModel.removeRootGroup(dir);
+    MapTool.getAssetSearchIndex().removeRoot(dir.getPath());
   }
 
   public Directory getSelectedAssetRoot() {
@@ -392,6 +394,7 @@ public Directory getSelectedAssetRoot() {
 
   public void addAssetRoot(Directory dir) {
     assetPanelModel.addRootGroup(dir);
+    MapTool.getAssetSearchIndex().addRoot(dir.getPath());
   }
 
   public void setDirectory(Directory dir) {
@@ -0,0 +1,465 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.assetpanel;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.client.AppConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An index of the names of all image, token and PDF files below the asset roots, used for the
+ * asset panel's search of subdirectories.
+ *
+ * <p>Each root is scanned once in the background, after which the index is kept up to date with a
+ * {@link WatchService} and written to disk, so that searches are answered from the index as soon
+ * as MapTool starts. Names are kept in a sorted set, which answers prefix queries from a range of
+ * the set and substring queries with a single pass over it, without touching the file system.
+ *
+ * <p>Some network file systems don't report changes to a {@link WatchService}. Files added on
+ * such a share are picked up the next time the root is scanned, which happens when it is added or
+ * MapTool is restarted.
+ */
+public final class AssetSearchIndex {
+  private static final Logger log = LogManager.getLogger(AssetSearchIndex.class);
+
+  /** The files that are indexed. */
+  public static final FilenameFilter INDEXED_FILES =
+      (dir, name) ->
+          AppConstants.IMAGE_FILE_FILTER.accept(dir, name)
+              || name.toLowerCase().endsWith(".pdf");
+
+  /** How long to wait after a change before writing the index of a root. */
+  private static final long SAVE_DELAY_SECONDS = 10;
+
+  private static final String INDEX_EXTENSION = ".names.gz";
+
+  /**
+   * A file in the index.
+   *
+   * @param key the upper case name of the file, which is what queries are matched against.
+   * @param path the absolute path of the file.
+   */
+  private record Entry(String key, String path) {
+    private static Entry of(Path file) {
+      return new Entry(file.getFileName().toString().toUpperCase(), file.toString());
+    }
+  }
+
+  private static final Comparator<Entry> ORDER =
+      Comparator.comparing(Entry::key).thenComparing(Entry::path);
+
+  /** The index of one asset root. */
+  private static final class Root {
+    private final Path path;
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>(ORDER);
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private volatile boolean ready;
+    private volatile boolean removed;
+
+    /** The entries as an array, which is much quicker to scan; cleared whenever they change. */
+    private volatile Entry[] snapshot;
+
+    private Root(Path path) {
+      this.path = path;
+    }
+
+    private Entry[] getSnapshot() {
+      Entry[] entries = snapshot;
+      if (entries == null) {
+        entries = this.entries.toArray(new Entry[0]);
+        snapshot = entries;
+      }
+      return entries;
+    }
+
+    private void changed() {
+      snapshot = null;
+    }
+  }
+
+  /** A directory being watched, and the root it belongs to. */
+  private record WatchedDirectory(Root root, Path path) {}
+
+  private final File indexDir;
+  private final Map<Path, Root> roots = new ConcurrentHashMap<>();
+  private final Map<WatchKey, WatchedDirectory> watchKeys = new ConcurrentHashMap<>();
+
+  /** Scans roots and writes their indexes, one at a time so a slow share isn't hit in parallel. */
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "AssetSearchIndex");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          });
+
+  private WatchService watchService;
+
+  /**
+   * Creates the index.
+   *
+   * @param indexDir the directory to write the index to.
+   */
+  public AssetSearchIndex(File indexDir) {
+    this.indexDir = indexDir;
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+      Thread watcher = new Thread(this::watch, "AssetSearchIndex-watcher");
+      watcher.setDaemon(true);
+      watcher.start();
+    } catch (IOException | UnsupportedOperationException e) {
+      log.warn("Unable to watch asset roots for changes", e);
+    }
+  }
+
+  /**
+   * Adds an asset root to the index. The index of the root is read from disk, if it was written
+   * before, and the root is then scanned in the background.
+   *
+   * @param directory the asset root.
+   */
+  public void addRoot(File directory) {
+    if (!directory.isDirectory()) {
+      return;
+    }
+    Path path = directory.toPath().toAbsolutePath().normalize();
+    Root root = new Root(path);
+    if (roots.putIfAbsent(path, root) != null) {
+      return;
+    }
+    executor.execute(
+        () -> {
+          load(root);
+          scan(root, root.path);
+        });
+  }
+
+  /**
+   * Removes an asset root from the index.
+   *
+   * @param directory the asset root.
+   */
+  public void removeRoot(File directory) {
+    Root root = roots.remove(directory.toPath().toAbsolutePath().normalize());
+    if (root == null) {
+      return;
+    }
+    root.removed = true;
+    watchKeys.entrySet().removeIf(e -> cancelIfInRoot(e.getKey(), e.getValue(), root));
+  }
+
+  /**
+   * Returns whether all files below the directory are in the index.
+   *
+   * @param directory the directory.
+   * @return {@code true} if the directory is below a root that has been indexed.
+   */
+  public boolean isIndexed(File directory) {
+    return findRoot(directory) != null;
+  }
+
+  /**
+   * Searches for files below a directory by name. The case of the name is ignored.
+   *
+   * @param directory the directory to search below.
+   * @param text the text to look for in the file names.
+   * @param prefix whether the names must start with the text, rather than just contain it.
+   * @param limit the maximum number of files to return.
+   * @return the files found, in order of their names, or {@code null} if the directory isn't
+   *     indexed.
+   */
+  public List<File> search(File directory, String text, boolean prefix, int limit) {
+    Root root = findRoot(directory);
+    if (root == null) {
+      return null;
+    }
+
+    String key = text.toUpperCase();
+    String dirPath = directory.toPath().toAbsolutePath().normalize().toString();
+    String dirPrefix = dirPath.endsWith(File.separator) ? dirPath : dirPath + File.separator;
+    Iterable<Entry> candidates =
+        prefix
+            ? root.entries.subSet(
+                new Entry(key, ""), true, new Entry(key + Character.MAX_VALUE, ""), false)
+            : Arrays.asList(root.getSnapshot());
+
+    List<File> files = new ArrayList<>();
+    for (Entry entry : candidates) {
+      if ((prefix || entry.key().contains(key)) && entry.path().startsWith(dirPrefix)) {
+        files.add(new File(entry.path()));
+        if (files.size() >= limit) {
+          break;
+        }
+      }
+    }
+    return files;
+  }
+
+  /** Stops watching the asset roots. */
+  public void close() {
+    executor.shutdownNow();
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        log.debug("Error closing watch service", e);
+      }
+    }
+  }
+
+  private Root findRoot(File directory) {
+    Path path = directory.toPath().toAbsolutePath().normalize();
+    Root found = null;
+    for (Root root : roots.values()) {
+      if (root.ready
+          && path.startsWith(root.path)
+          && (found == null || root.path.getNameCount() > found.path.getNameCount())) {
+        found = root;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Scans a directory below a root, replacing the entries of the root below it and watching all
+   * of its subdirectories.
+   */
+  private void scan(Root root, Path directory) {
+    if (root.removed) {
+      return;
+    }
+    Set<Entry> found = new HashSet<>();
+    try {
+      Files.walkFileTree(
+          directory,
+          new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              if (root.removed) {
+                return FileVisitResult.TERMINATE;
+              }
+              register(root, dir);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              if (attrs.isRegularFile() && isIndexedFile(file)) {
+                found.add(Entry.of(file));
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              log.debug("Unable to index {}", file, e);
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      log.warn("Error while indexing {}", directory, e);
+      return;
+    }
+    if (root.removed) {
+      return;
+    }
+
+    root.entries.addAll(found);
+    removeBelow(root, directory, found);
+    root.changed();
+    root.ready = true;
+    scheduleSave(root);
+  }
+
+  private void register(Root root, Path directory) {
+    if (watchService == null) {
+      return;
+    }
+    try {
+      WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+      watchKeys.put(key, new WatchedDirectory(root, directory));
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Unable to watch {}", directory, e);
+    }
+  }
+
+  private boolean cancelIfInRoot(WatchKey key, WatchedDirectory watched, Root root) {
+    if (watched.root() != root) {
+      return false;
+    }
+    key.cancel();
+    return true;
+  }
+
+  /** Removes the entries at or below a path, except the ones to keep. */
+  private void removeBelow(Root root, Path path, Set<Entry> keep) {
+    String exact = path.toString();
+    String below = exact + File.separator;
+    root.entries.removeIf(
+        e ->
+            (e.path().equals(exact) || e.path().startsWith(below))
+                && (keep == null || !keep.contains(e)));
+    root.changed();
+  }
+
+  private boolean isIndexedFile(Path file) {
+    return INDEXED_FILES.accept(file.getParent().toFile(), file.getFileName().toString());
+  }
+
+  /** Applies the changes reported by the watch service, until it is closed. */
+  private void watch() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      WatchedDirectory watched = watchKeys.get(key);
+      if (watched != null && !watched.root().removed) {
+        Root root = watched.root();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            executor.execute(() -> scan(root, watched.path()));
+            continue;
+          }
+          Path child = watched.path().resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE) {
+            if (Files.isDirectory(child)) {
+              executor.execute(() -> scan(root, child));
+            } else if (isIndexedFile(child)) {
+              root.entries.add(Entry.of(child));
+              root.changed();
+            }
+          } else if (event.kind() == ENTRY_DELETE) {
+            removeBelow(root, child, null);
+          }
+        }
+        scheduleSave(root);
+      } else {
+        key.pollEvents();
+      }
+
+      if (!key.reset()) {
+        watchKeys.remove(key);
+      }
+    }
+  }
+
+  private File getIndexFile(Root root) {
+    MD5Key md5 = new MD5Key(root.path.toString().getBytes(StandardCharsets.UTF_8));
+    return new File(indexDir, md5 + INDEX_EXTENSION);
+  }
+
+  /** Reads the index of a root written by a previous run, so it can be searched right away. */
+  private void load(Root root) {
+    File indexFile = getIndexFile(root);
+    if (!indexFile.exists()) {
+      return;
+    }
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(indexFile.toPath())),
+                StandardCharsets.UTF_8))) {
+      if (!root.path.toString().equals(reader.readLine())) {
+        return;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        root.entries.add(Entry.of(root.path.resolve(line)));
+      }
+      root.ready = true;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to read asset search index {}", indexFile, e);
+      root.entries.clear();
+    }
+  }
+
+  private void scheduleSave(Root root) {
+    if (root.saveScheduled.compareAndSet(false, true)) {
+      executor.schedule(() -> save(root), SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Writes the index of a root as its path followed by the relative path of each file. */
+  private void save(Root root) {
+    root.saveScheduled.set(false);
+    if (root.removed) {
+      return;
+    }
+    try {
+      Path target = getIndexFile(root).toPath();
+      Files.createDirectories(target.getParent());
+      Path temp = Files.createTempFile(target.getParent(), "names", ".tmp");
+      try (BufferedWriter writer =
+          new BufferedWriter(
+              new OutputStreamWriter(
+                  new GZIPOutputStream(Files.newOutputStream(temp)), StandardCharsets.UTF_8))) {
+        writer.write(root.path.toString());
+        writer.newLine();
+        for (Entry entry : root.entries) {
+          writer.write(root.path.relativize(Path.of(entry.path())).toString());
+          writer.newLine();
+        }
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.warn("Unable to write asset search index for {}", root.path, e);
+    }
+  }
+}
@@ -26,20 +26,14 @@
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
-import javax.imageio.stream.FileImageInputStream;
-import javax.imageio.stream.ImageInputStream;
 import javax.swing.SwingWorker;
 import net.rptools.lib.FileUtil;
-import net.rptools.lib.io.PackedFile;
 import net.rptools.maptool.client.AppConstants;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.TransferableAsset;
@@ -132,9 +126,8 @@ public Image[] getDecorations(int index) {
     if (!Token.isTokenFile(fileList.get(index).getName())) {
       return null;
     }
-    try (PackedFile pakFile = new PackedFile(fileList.get(index))) {
-      Object isHeroLab = pakFile.getProperty(PersistenceUtil.HERO_LAB);
-      if (isHeroLab != null && (boolean) isHeroLab) {
+    try {
+      if (MapTool.getAssetFileIndex().getMetadata(fileList.get(index)).heroLab()) {
         return new Image[] {herolabDecorationImage};
       }
       return new Image[] {rptokenDecorationImage};
@@ -203,28 +196,7 @@ public Transferable getTransferable(int index) {
    * @throws IOException if the file is not a known image
    */
   public static Dimension getImageDimension(File imgFile) throws IOException {
-    int pos = imgFile.getName().lastIndexOf(".");
-    if (pos == -1) throw new IOException("No extension for file: " + imgFile.getAbsolutePath());
-
-    String suffix = imgFile.getName().substring(pos + 1);
-    Iterator<ImageReader> iter = ImageIO.getImageReadersBySuffix(suffix);
-
-    if (iter.hasNext()) {
-      ImageReader reader = iter.next();
-      try {
-        ImageInputStream stream = new FileImageInputStream(imgFile);
-        reader.setInput(stream);
-        int width = reader.getWidth(reader.getMinIndex());
-        int height = reader.getHeight(reader.getMinIndex());
-        return new Dimension(width, height);
-      } catch (IOException e) {
-        log.warn("Error reading: " + imgFile.getAbsolutePath(), e);
-      } finally {
-        reader.dispose();
-      }
-    }
-
-    throw new IOException("Not a known image file: " + imgFile.getAbsolutePath());
+    return AssetFileIndex.readImageDimension(imgFile);
   }
 
   // Jamz: Added second method to return a caption with more image details for use
@@ -241,7 +213,10 @@ public String getCaption(int index, boolean withDimensions) {
     if (!file.getName().toLowerCase().endsWith(Token.FILE_EXTENSION)
         && !file.getName().toLowerCase().endsWith(".pdf")) {
       try {
-        Dimension imageDim = getImageDimension(fileList.get(index));
+        Dimension imageDim = MapTool.getAssetFileIndex().getMetadata(file).getDimension();
+        if (imageDim == null) {
+          return caption;
+        }
         int width = imageDim.width;
         int height = imageDim.height;
         String fileSize = FileUtils.byteCountToDisplaySize(file.length());
@@ -502,26 +477,34 @@ private void refresh() {
     subDirList = new ArrayList<Directory>();
 
     if (global && filter != null && filter.length() > 0) {
+      // Asset roots are searched through the index, anything else is searched on disk.
+      List<File> found =
+          MapTool.getAssetSearchIndex()
+              .search(dir.getPath(), filter, false, AppConstants.ASSET_SEARCH_LIMIT);
+      if (found != null) {
+        fileList.addAll(found);
+        assetPanel.setLimitReached(found.size() >= AppConstants.ASSET_SEARCH_LIMIT);
+      } else {
+        try {
+          fileList.addAll(dir.getFiles());
+
+          // Filter current directory of files
+          fileList.removeIf(file -> !file.getName().toUpperCase().contains(filter));
+
+          // Now search remaining subdirectories and filter as it goes.
+          // Stop at any time if it reaches SEARCH_LIMIT
+          subDirList.addAll(dir.getSubDirs());
+          assetPanel.setLimitReached(false);
+
+          for (Directory folder : subDirList) {
+            ListFilesSwingWorker workerThread =
+                new ListFilesSwingWorker(folder.getPath(), assetPanel);
+            workerThread.execute();
+          }
 
-      try {
-        fileList.addAll(dir.getFiles());
-
-        // Filter current directory of files
-        fileList.removeIf(file -> !file.getName().toUpperCase().contains(filter));
-
-        // Now search remaining subdirectories and filter as it goes.
-        // Stop at any time if it reaches SEARCH_LIMIT
-        subDirList.addAll(dir.getSubDirs());
-        assetPanel.setLimitReached(false);
-
-        for (Directory folder : subDirList) {
-          ListFilesSwingWorker workerThread =
-              new ListFilesSwingWorker(folder.getPath(), assetPanel);
-          workerThread.execute();
+        } catch (FileNotFoundException fnf) {
+          MapTool.showError(fnf.getLocalizedMessage(), fnf);
         }
-
-      } catch (FileNotFoundException fnf) {
-        MapTool.showError(fnf.getLocalizedMessage(), fnf);
       }
     } else {
       try {
@@ -530,6 +513,10 @@ private void refresh() {
         MapTool.showError(fnf.getLocalizedMessage(), fnf);
       }
 
+      // Fill the thumbnail and metadata cache for the whole directory, not just the filtered
+      // files, so that changing the filter doesn't have to read them again.
+      MapTool.getAssetFileIndex().index(fileList);
+
       if (filter != null && filter.length() > 0) {
         fileList.removeIf(file -> !file.getName().toUpperCase().contains(filter));
       }
@@ -36,6 +36,7 @@
 import net.rptools.maptool.model.drawing.DrawablesGroup;
 import net.rptools.maptool.model.drawing.DrawnElement;
 import net.rptools.maptool.model.zones.DrawableAdded;
+import net.rptools.maptool.model.zones.DrawableChanged;
 import net.rptools.maptool.model.zones.DrawableRemoved;
 
 public class DrawPanelTreeModel implements TreeModel {
@@ -82,6 +83,14 @@ private void onDrawableAdded(DrawableAdded event) {
     update();
   }
 
+  @Subscribe
+  private void onDrawableChanged(DrawableChanged event) {
+    if (event.zone() != this.zone) {
+      return;
+    }
+    update();
+  }
+
   @Subscribe
   private void onDrawableRemoved(DrawableRemoved event) {
     if (event.zone() != this.zone) {
@@ -0,0 +1,205 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.macroprofiler;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.ToolTipManager;
+import net.rptools.maptool.client.MacroProfiler;
+import net.rptools.maptool.client.MacroProfiler.Node;
+import net.rptools.maptool.language.I18N;
+
+/**
+ * Draws the call tree of the {@link MacroProfiler} as a flame graph, with the callers at the top.
+ * The width of each bar is the time spent in the call, including the calls below it. Clicking a bar
+ * zooms in on it, and clicking the top bar zooms back out.
+ */
+class FlameGraphPanel extends JComponent {
+  private static final int ROW_HEIGHT = 18;
+  private static final int TEXT_PADDING = 3;
+
+  /** A bar drawn in the last paint, kept for tooltips and clicks. */
+  private record Bar(Node node, Rectangle bounds) {}
+
+  private final List<Bar> bars = new ArrayList<>();
+  private Node root;
+  private Node focus;
+
+  FlameGraphPanel() {
+    ToolTipManager.sharedInstance().registerComponent(this);
+    addMouseListener(
+        new MouseAdapter() {
+          @Override
+          public void mouseClicked(MouseEvent e) {
+            Bar bar = getBarAt(e.getX(), e.getY());
+            if (bar == null) {
+              return;
+            }
+            focus = bar.node() == focus ? root : bar.node();
+            revalidate();
+            repaint();
+          }
+        });
+  }
+
+  /**
+   * Sets the call tree to draw. If the graph is zoomed in, it stays zoomed in on the first call
+   * with the same name in the new tree.
+   *
+   * @param root the root of the call tree.
+   */
+  void setRoot(Node root) {
+    Node newFocus = root;
+    if (focus != null && focus != this.root) {
+      newFocus = find(root, focus);
+    }
+    this.root = root;
+    this.focus = newFocus == null ? root : newFocus;
+    revalidate();
+    repaint();
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    int depth = focus == null ? 1 : getDepth(focus);
+    return new Dimension(400, depth * ROW_HEIGHT);
+  }
+
+  @Override
+  public String getToolTipText(MouseEvent event) {
+    Bar bar = getBarAt(event.getX(), event.getY());
+    if (bar == null) {
+      return null;
+    }
+    Node node = bar.node();
+    double percent =
+        root.inclusiveNanos() == 0 ? 0 : 100.0 * node.inclusiveNanos() / root.inclusiveNanos();
+    return I18N.getText(
+        "MacroProfilerDialog.flameGraph.tooltip",
+        node.getLabel().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"),
+        String.format("%.3f", node.inclusiveNanos() / 1e6),
+        String.format("%.1f", percent),
+        String.format("%.3f", node.exclusiveNanos() / 1e6),
+        node.calls());
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    bars.clear();
+    g.setColor(getBackground() == null ? Color.WHITE : getBackground());
+    g.fillRect(0, 0, getWidth(), getHeight());
+    if (focus == null || focus.inclusiveNanos() == 0) {
+      return;
+    }
+
+    Graphics2D g2d = (Graphics2D) g.create();
+    try {
+      g2d.setRenderingHint(
+          RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g2d.setFont(getFont());
+      double scale = (double) getWidth() / focus.inclusiveNanos();
+      paintNode(g2d, focus, 0, 0, scale);
+    } finally {
+      g2d.dispose();
+    }
+  }
+
+  private void paintNode(Graphics2D g, Node node, int depth, double x, double scale) {
+    int left = (int) Math.round(x);
+    int width = (int) Math.round(x + node.inclusiveNanos() * scale) - left;
+    if (width < 1) {
+      return;
+    }
+    var bounds = new Rectangle(left, depth * ROW_HEIGHT, width, ROW_HEIGHT - 1);
+    bars.add(new Bar(node, bounds));
+
+    g.setColor(getColor(node));
+    g.fillRect(bounds.x, bounds.y, Math.max(1, bounds.width - 1), bounds.height);
+    FontMetrics metrics = g.getFontMetrics();
+    String label = node.getLabel();
+    if (bounds.width > 2 * TEXT_PADDING + metrics.charWidth('m')) {
+      g.setColor(Color.BLACK);
+      g.setClip(bounds.x, bounds.y, bounds.width - TEXT_PADDING, bounds.height);
+      g.drawString(
+          label,
+          bounds.x + TEXT_PADDING,
+          bounds.y + (bounds.height + metrics.getAscent() - metrics.getDescent()) / 2);
+      g.setClip(null);
+    }
+
+    double childX = x;
+    for (Node child : node.children()) {
+      paintNode(g, child, depth + 1, childX, scale);
+      childX += child.inclusiveNanos() * scale;
+    }
+  }
+
+  private Bar getBarAt(int x, int y) {
+    for (Bar bar : bars) {
+      if (bar.bounds().contains(x, y)) {
+        return bar;
+      }
+    }
+    return null;
+  }
+
+  private static Color getColor(Node node) {
+    if (node.kind() == null) {
+      return new Color(0xC8C8C8);
+    }
+    // Vary the shade by name so that neighbouring bars can be told apart.
+    float variation = (node.name().hashCode() & 0xFF) / 255f * 0.25f;
+    float hue =
+        switch (node.kind()) {
+          case MACRO -> 0.08f;
+          case USER_FUNCTION -> 0.13f;
+          case FUNCTION -> 0.0f;
+          case EXPRESSION -> 0.55f;
+        };
+    return Color.getHSBColor(hue, 0.45f + variation, 0.95f);
+  }
+
+  private static int getDepth(Node node) {
+    int depth = 0;
+    for (Node child : node.children()) {
+      depth = Math.max(depth, getDepth(child));
+    }
+    return depth + 1;
+  }
+
+  /** Finds the first node, in depth first order, with the same kind and name as the target. */
+  private static Node find(Node node, Node target) {
+    if (node.kind() == target.kind() && node.name().equals(target.name())) {
+      return node;
+    }
+    for (Node child : node.children()) {
+      Node found = find(child, target);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+}
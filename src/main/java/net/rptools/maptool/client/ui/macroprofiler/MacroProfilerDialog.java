@@ -0,0 +1,222 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.macroprofiler;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JToggleButton;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import net.rptools.maptool.client.MacroProfiler;
+import net.rptools.maptool.client.MacroProfiler.Entry;
+import net.rptools.maptool.client.MacroProfiler.Snapshot;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.swing.SwingUtil;
+import net.rptools.maptool.language.I18N;
+
+/**
+ * Shows the results of the {@link MacroProfiler} as a table of totals for each macro, expression
+ * and function, and as a flame graph of the call tree. The results can be exported as CSV and as
+ * folded stacks for external flame graph tools.
+ */
+public class MacroProfilerDialog extends JDialog {
+  /** How often the results are refreshed while recording, in milliseconds. */
+  private static final int REFRESH_INTERVAL = 1000;
+
+  /** Writes a snapshot to a file. */
+  private interface SnapshotWriter {
+    void write(Snapshot snapshot, Writer out) throws IOException;
+  }
+
+  private final MacroProfiler profiler = MacroProfiler.getInstance();
+  private final EntryTableModel tableModel = new EntryTableModel();
+  private final FlameGraphPanel flameGraph = new FlameGraphPanel();
+  private final Timer refreshTimer = new Timer(REFRESH_INTERVAL, e -> refresh());
+  private Snapshot snapshot;
+
+  public MacroProfilerDialog() {
+    super(MapTool.getFrame(), I18N.getText("MacroProfilerDialog.title"), false);
+    setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    setSize(900, 600);
+
+    JToggleButton recordButton =
+        new JToggleButton(I18N.getText("MacroProfilerDialog.record"), profiler.isEnabled());
+    recordButton.addActionListener(
+        e -> {
+          if (recordButton.isSelected()) {
+            profiler.start();
+            refreshTimer.start();
+          } else {
+            profiler.stop();
+            refreshTimer.stop();
+          }
+          refresh();
+        });
+    JButton refreshButton = new JButton(I18N.getText("Button.refresh"));
+    refreshButton.addActionListener(e -> refresh());
+    JButton resetButton = new JButton(I18N.getText("Button.reset"));
+    resetButton.addActionListener(
+        e -> {
+          profiler.reset();
+          refresh();
+        });
+    JButton exportTableButton = new JButton(I18N.getText("MacroProfilerDialog.exportTable"));
+    exportTableButton.addActionListener(e -> export(".csv", Snapshot::writeCsv));
+    JButton exportFlameGraphButton =
+        new JButton(I18N.getText("MacroProfilerDialog.exportFlameGraph"));
+    exportFlameGraphButton.addActionListener(e -> export(".txt", Snapshot::writeFoldedStacks));
+    JButton closeButton = new JButton(I18N.getText("Button.close"));
+    closeButton.addActionListener(e -> dispose());
+
+    JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    buttons.add(recordButton);
+    buttons.add(refreshButton);
+    buttons.add(resetButton);
+    buttons.add(exportTableButton);
+    buttons.add(exportFlameGraphButton);
+    JPanel closePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+    closePanel.add(closeButton);
+
+    JTable table = new JTable(tableModel);
+    table.setAutoCreateRowSorter(true);
+    table.getColumnModel().getColumn(1).setPreferredWidth(300);
+
+    JTabbedPane tabs = new JTabbedPane();
+    tabs.addTab(I18N.getText("MacroProfilerDialog.tab.table"), new JScrollPane(table));
+    tabs.addTab(I18N.getText("MacroProfilerDialog.tab.flameGraph"), new JScrollPane(flameGraph));
+
+    JPanel content = new JPanel(new BorderLayout());
+    content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+    content.add(buttons, BorderLayout.NORTH);
+    content.add(tabs, BorderLayout.CENTER);
+    content.add(closePanel, BorderLayout.SOUTH);
+    setContentPane(content);
+
+    if (profiler.isEnabled()) {
+      refreshTimer.start();
+    }
+    refresh();
+  }
+
+  @Override
+  public void setVisible(boolean b) {
+    if (b) {
+      SwingUtil.centerOver(this, MapTool.getFrame());
+    }
+    super.setVisible(b);
+  }
+
+  @Override
+  public void dispose() {
+    refreshTimer.stop();
+    super.dispose();
+  }
+
+  private void refresh() {
+    snapshot = profiler.getSnapshot();
+    tableModel.setEntries(snapshot.entries());
+    flameGraph.setRoot(snapshot.root());
+  }
+
+  private void export(String extension, SnapshotWriter snapshotWriter) {
+    refresh();
+    JFileChooser chooser = MapTool.getFrame().getSaveFileChooser();
+    chooser.setDialogTitle(I18N.getText("msg.title.saveMacroProfile"));
+    chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    File saveFile = chooser.getSelectedFile();
+    if (!saveFile.getName().contains(".")) {
+      saveFile = new File(saveFile.getAbsolutePath() + extension);
+    }
+    if (saveFile.exists() && !MapTool.confirm("msg.confirm.fileExists")) {
+      return;
+    }
+
+    try (Writer writer = Files.newBufferedWriter(saveFile.toPath(), StandardCharsets.UTF_8)) {
+      snapshotWriter.write(snapshot, writer);
+    } catch (IOException ioe) {
+      MapTool.showError(I18N.getString("msg.error.failedSavingMacroProfile"), ioe);
+    }
+  }
+
+  /** The totals of each macro, expression and function. */
+  private static class EntryTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {
+      "kind", "name", "calls", "inclusive", "exclusive", "average", "allocated"
+    };
+    private static final Class<?>[] COLUMN_CLASSES = {
+      String.class, String.class, Long.class, Double.class, Double.class, Double.class, Long.class
+    };
+
+    private List<Entry> entries = List.of();
+
+    void setEntries(List<Entry> entries) {
+      this.entries = entries;
+      fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+      return entries.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return I18N.getText("MacroProfilerDialog.column." + COLUMNS[column]);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+      return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+      Entry entry = entries.get(row);
+      return switch (column) {
+        case 0 -> entry.kind().name().toLowerCase();
+        case 1 -> entry.name();
+        case 2 -> entry.calls();
+        case 3 -> entry.inclusiveNanos() / 1e6;
+        case 4 -> entry.exclusiveNanos() / 1e6;
+        case 5 -> entry.calls() == 0 ? 0.0 : entry.inclusiveNanos() / 1e6 / entry.calls();
+        case 6 -> entry.allocatedBytes() / 1024;
+        default -> null;
+      };
+    }
+  }
+}
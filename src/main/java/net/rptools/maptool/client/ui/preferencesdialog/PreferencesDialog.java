@@ -41,6 +41,7 @@
 import net.rptools.lib.image.RenderQuality;
 import net.rptools.maptool.client.AppConstants;
 import net.rptools.maptool.client.AppPreferences;
+import net.rptools.maptool.client.AppPreferences.CampaignFileFormat;
 import net.rptools.maptool.client.AppPreferences.UvttLosImportType;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.DeveloperOptions;
@@ -306,6 +307,16 @@ public class PreferencesDialog extends AbeillePanel {
   /** Checkbox for if the save reminder should be shown on exit, new campaign etc. */
   private final JCheckBox saveReminderCheckBox = getCheckBox("saveReminder");
 
+  /** ComboBox for the format campaigns are saved in. */
+  private final JComboBox<CampaignFileFormat> campaignFileFormatCombo =
+      getComboBox("campaignFileFormatCombo");
+
+  /** Checkbox for if the maps of binary campaigns are only read when first used. */
+  private final JCheckBox loadMapsOnDemandCheckBox = getCheckBox("loadMapsOnDemand");
+
+  /** Spinner for the minutes after which unused maps are unloaded. */
+  private final JSpinner unloadIdleMapsSpinner = getSpinner("unloadIdleMapsSpinner");
+
   /** Checkbox for if the dialog should be shown on new token creation. */
   private final JCheckBox showDialogOnNewToken = getCheckBox("showDialogOnNewToken");
 
@@ -333,6 +344,9 @@ public class PreferencesDialog extends AbeillePanel {
   private final JComboBox<LocalizedComboItem> renderPerformanceComboBox =
       getComboBox("renderPerformanceComboBox");
 
+  /** Spinner for the memory decoded images may use, in megabytes. */
+  private final JSpinner imageCacheSizeSpinner = getSpinner("imageCacheSizeSpinner");
+
   /** Text field for the default username when not logged into a server. */
   private final JTextField defaultUsername = getTextField("defaultUsername");
 
@@ -361,6 +375,10 @@ public class PreferencesDialog extends AbeillePanel {
   private final JCheckBox allowExternalMacroAccessCheckBox =
       getCheckBox("allowExternalMacroAccess");
 
+  /** Checkbox for if trusted macros should run on a background thread. */
+  private final JCheckBox runTrustedMacrosInBackgroundCheckBox =
+      getCheckBox("runTrustedMacrosInBackground");
+
   // Authentication
   /** Text area for displaying the public key for authentication. */
   private final JTextArea publicKeyTextArea = (JTextArea) getComponent("publicKeyTextArea");
@@ -1033,6 +1051,15 @@ protected Integer convertString(String value) throws ParseException {
               RenderQuality.valueOf(
                   ((LocalizedComboItem) renderPerformanceComboBox.getSelectedItem()).getValue()));
         });
+    imageCacheSizeSpinner.addChangeListener(
+        new ChangeListenerProxy() {
+          @Override
+          protected void storeSpinnerValue(int value) {
+            if (value >= 0) {
+              AppPreferences.imageCacheSizeMB.set(value);
+            }
+          }
+        });
 
     defaultUsername.addFocusListener(
         new FocusAdapter() {
@@ -1047,10 +1074,31 @@ public void focusLost(FocusEvent e) {
 
     loadMRUcheckbox.addActionListener(
         e -> AppPreferences.loadMruCampaignAtStart.set(loadMRUcheckbox.isSelected()));
+    campaignFileFormatCombo.setModel(new DefaultComboBoxModel<>(CampaignFileFormat.values()));
+    campaignFileFormatCombo.setSelectedItem(AppPreferences.campaignFileFormat.get());
+    campaignFileFormatCombo.addItemListener(
+        e ->
+            AppPreferences.campaignFileFormat.set(
+                (CampaignFileFormat) campaignFileFormatCombo.getSelectedItem()));
+    loadMapsOnDemandCheckBox.addActionListener(
+        e -> AppPreferences.loadMapsOnDemand.set(loadMapsOnDemandCheckBox.isSelected()));
+    unloadIdleMapsSpinner.addChangeListener(
+        new ChangeListenerProxy() {
+          @Override
+          protected void storeSpinnerValue(int value) {
+            if (value >= 0) {
+              AppPreferences.unloadIdleMapsMinutes.set(value);
+            }
+          }
+        });
     allowExternalMacroAccessCheckBox.addActionListener(
         e ->
             AppPreferences.allowExternalMacroAccess.set(
                 allowExternalMacroAccessCheckBox.isSelected()));
+    runTrustedMacrosInBackgroundCheckBox.addActionListener(
+        e ->
+            AppPreferences.runTrustedMacrosInBackground.set(
+                runTrustedMacrosInBackgroundCheckBox.isSelected()));
     showDialogOnNewToken.addActionListener(
         e -> AppPreferences.showDialogOnNewToken.set(showDialogOnNewToken.isSelected()));
     autoSaveSpinner.addChangeListener(
@@ -1642,6 +1690,8 @@ public void focusLost(FocusEvent e) {
           chatAutosaveTime,
           typingNotificationDuration,
           autoSaveSpinner,
+          imageCacheSizeSpinner,
+          unloadIdleMapsSpinner,
           labelFontSizeSpinner,
           labelBorderWidthSpinner,
           labelBorderArcSpinner,
@@ -1664,9 +1714,17 @@ private void setInitialState() {
     saveReminderCheckBox.setSelected(AppPreferences.saveReminder.get());
     fillSelectionCheckBox.setSelected(AppPreferences.fillSelectionBox.get());
     frameRateCapTextField.setText(Integer.toString(AppPreferences.frameRateCap.get()));
+    int imageCacheSizeMB = AppPreferences.imageCacheSizeMB.get();
+    int maxMemoryMB = (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    imageCacheSizeSpinner.setModel(
+        new SpinnerNumberModel(imageCacheSizeMB, 0, Math.max(maxMemoryMB, imageCacheSizeMB), 64));
     defaultUsername.setText(AppPreferences.defaultUserName.get());
     autoSaveSpinner.setValue(AppPreferences.autoSaveIncrement.get());
     loadMRUcheckbox.setSelected(AppPreferences.loadMruCampaignAtStart.get());
+    loadMapsOnDemandCheckBox.setSelected(AppPreferences.loadMapsOnDemand.get());
+    unloadIdleMapsSpinner.setModel(
+        new SpinnerNumberModel(
+            AppPreferences.unloadIdleMapsMinutes.get().intValue(), 0, 24 * 60, 1));
     newMapsHaveFOWCheckBox.setSelected(AppPreferences.newMapsHaveFow.get());
     tokensPopupWarningWhenDeletedCheckBox.setSelected(AppPreferences.tokensWarnWhenDeleted.get());
     tokensStartSnapToGridCheckBox.setSelected(AppPreferences.tokensStartSnapToGrid.get());
@@ -1749,6 +1807,8 @@ private void setInitialState() {
     upnpDiscoveryTimeoutTextField.setText(
         Integer.toString(AppPreferences.upnpDiscoveryTimeout.get()));
     allowExternalMacroAccessCheckBox.setSelected(AppPreferences.allowExternalMacroAccess.get());
+    runTrustedMacrosInBackgroundCheckBox.setSelected(
+        AppPreferences.runTrustedMacrosInBackground.get());
     fileSyncPath.setText(AppPreferences.fileSyncPath.get());
 
     // get JVM User Defaults/User override preferences
@@ -49,6 +49,7 @@
 import net.rptools.maptool.model.zones.TokensAdded;
 import net.rptools.maptool.model.zones.TokensChanged;
 import net.rptools.maptool.model.zones.TokensRemoved;
+import net.rptools.maptool.model.zones.ZoneContentLoaded;
 
 /**
  * This panel shows the initiative order inside of MapTools.
@@ -565,6 +566,14 @@ private void onTokensChanged(TokensChanged event) {
     model.updateModel();
   }
 
+  @Subscribe
+  private void onZoneContentLoaded(ZoneContentLoaded event) {
+    if (event.zone() != zone) {
+      return;
+    }
+    model.updateModel();
+  }
+
   /*---------------------------------------------------------------------------------------------
    * ListSelectionListener Interface Methods
    *-------------------------------------------------------------------------------------------*/
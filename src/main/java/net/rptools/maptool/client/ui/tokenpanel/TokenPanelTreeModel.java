@@ -38,6 +38,7 @@
 import net.rptools.maptool.model.zones.TokensAdded;
 import net.rptools.maptool.model.zones.TokensChanged;
 import net.rptools.maptool.model.zones.TokensRemoved;
+import net.rptools.maptool.model.zones.ZoneContentLoaded;
 import net.rptools.maptool.server.ServerPolicy;
 
 public class TokenPanelTreeModel implements TreeModel {
@@ -364,6 +365,11 @@ private void onTokensChanged(TokensChanged event) {
     update();
   }
 
+  @Subscribe
+  private void onZoneContentLoaded(ZoneContentLoaded event) {
+    update();
+  }
+
   @Subscribe
   private void onTokensEdited(TokenEdited event) {
     update();
@@ -64,10 +64,22 @@ public BufferedImagePool(int maxSize) {
     this.maxSize = maxSize;
     this.width = 0;
     this.height = 0;
-    this.configuration =
-        GraphicsEnvironment.getLocalGraphicsEnvironment()
-            .getDefaultScreenDevice()
-            .getDefaultConfiguration();
+    this.configuration = getDefaultConfiguration();
+  }
+
+  private static GraphicsConfiguration getDefaultConfiguration() {
+    if (GraphicsEnvironment.isHeadless()) {
+      // There is no screen, such as when testing, so use the configuration of an image instead.
+      var g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+      try {
+        return g.getDeviceConfiguration();
+      } finally {
+        g.dispose();
+      }
+    }
+    return GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getDefaultScreenDevice()
+        .getDefaultConfiguration();
   }
 
   /** Removes all images from the pool. */
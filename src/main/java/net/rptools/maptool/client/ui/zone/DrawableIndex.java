@@ -0,0 +1,113 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.util.SpatialGridIndex;
+
+/**
+ * A uniform grid over the bounds of the drawables on a layer, so that the drawables overlapping an
+ * area can be found without checking every drawable on the layer.
+ *
+ * <p>The index remembers the bounds each element had when it was added, which lets the renderer
+ * find the area a drawable covered before it was changed or removed.
+ */
+final class DrawableIndex {
+  /** The size of a grid cell, in map units. */
+  private static final int CELL_SIZE = 256;
+
+  /**
+   * An indexed drawable.
+   *
+   * @param order the position of the drawable in the layer, which is the order they are drawn in.
+   * @param bounds the bounds of the drawable, including its pen.
+   */
+  private record Entry(int order, Rectangle bounds) {}
+
+  /** Drawables don't override {@code equals}, so the grid compares them by identity. */
+  private final SpatialGridIndex<DrawnElement> grid = new SpatialGridIndex<>(CELL_SIZE);
+
+  private final Map<DrawnElement, Entry> entries = new IdentityHashMap<>();
+  private int size;
+
+  /**
+   * Replaces the content of the index.
+   *
+   * @param elements the drawables on the layer, in the order they are drawn in.
+   * @param boundsOf returns the bounds of a drawable including its pen, or {@code null} if the
+   *     drawable has no bounds.
+   */
+  void rebuild(List<DrawnElement> elements, Function<DrawnElement, Rectangle> boundsOf) {
+    grid.clear();
+    entries.clear();
+    size = elements.size();
+
+    int order = 0;
+    for (DrawnElement element : elements) {
+      Rectangle bounds = boundsOf.apply(element);
+      if (bounds != null) {
+        entries.put(element, new Entry(order, bounds));
+        grid.put(element, bounds);
+      }
+      order++;
+    }
+  }
+
+  /**
+   * Returns the number of drawables the index was built from.
+   *
+   * @return the number of drawables, including those without bounds.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the bounds a drawable had when the index was built.
+   *
+   * @param element the drawable.
+   * @return the bounds including the pen, or {@code null} if the drawable isn't in the index.
+   */
+  Rectangle getBounds(DrawnElement element) {
+    Entry entry = entries.get(element);
+    return entry == null ? null : entry.bounds();
+  }
+
+  /**
+   * Returns the drawables whose bounds intersect an area.
+   *
+   * @param area the area, in map units.
+   * @return the drawables, in the order they are drawn in.
+   */
+  List<DrawnElement> query(Rectangle2D area) {
+    List<DrawnElement> found = new ArrayList<>();
+    for (DrawnElement element : grid.query(area)) {
+      // The grid also returns drawables that only touch the area
+      if (entries.get(element).bounds().intersects(area)) {
+        found.add(element);
+      }
+    }
+    found.sort(Comparator.comparingInt(element -> entries.get(element).order()));
+    return found;
+  }
+}
@@ -28,4 +28,12 @@ public void renderDrawables(
   public void flush();
 
   public void setDirty();
+
+  /**
+   * Tells the renderer that a drawable was added, changed or removed, so that only the area it
+   * covers has to be drawn again.
+   *
+   * @param element the drawable.
+   */
+  public void drawableChanged(DrawnElement element);
 }
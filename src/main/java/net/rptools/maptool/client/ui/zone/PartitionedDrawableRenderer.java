@@ -58,11 +58,21 @@ public class PartitionedDrawableRenderer implements DrawableRenderer {
 
   private boolean dirty = false;
 
+  /** The drawables of the layer, so a chunk only has to look at the drawables overlapping it. */
+  private final DrawableIndex drawableIndex = new DrawableIndex();
+
+  private boolean indexDirty = true;
+
   public PartitionedDrawableRenderer(Zone zone) {
     this.zone = zone;
   }
 
   public void flush() {
+    clearChunks();
+    indexDirty = true;
+  }
+
+  private void clearChunks() {
     int unusedSize = unusedChunkList.size();
     for (Tuple tuple : chunkList) {
       // Reuse the images
@@ -80,6 +90,48 @@ public void setDirty() {
     dirty = true;
   }
 
+  public void drawableChanged(DrawnElement element) {
+    // A changed drawable may have moved, so both its old and new area need to be redrawn.
+    invalidate(drawableIndex.getBounds(element));
+    invalidate(getDrawnBounds(element));
+    indexDirty = true;
+  }
+
+  /**
+   * Discards the chunks that overlap an area, so they are created again the next time they are
+   * rendered.
+   *
+   * @param bounds the area, in map units.
+   */
+  private void invalidate(Rectangle bounds) {
+    if (bounds == null || lastScale == 0) {
+      return;
+    }
+    // Allow for antialiasing spilling into the neighbouring pixels.
+    int minX = (int) Math.floor((bounds.getMinX() * lastScale - 2) / CHUNK_SIZE);
+    int minY = (int) Math.floor((bounds.getMinY() * lastScale - 2) / CHUNK_SIZE);
+    int maxX = (int) Math.floor((bounds.getMaxX() * lastScale + 2) / CHUNK_SIZE);
+    int maxY = (int) Math.floor((bounds.getMaxY() * lastScale + 2) / CHUNK_SIZE);
+
+    Iterator<Tuple> iter = chunkList.iterator();
+    while (iter.hasNext()) {
+      Tuple tuple = iter.next();
+      if (tuple.x >= minX && tuple.x <= maxX && tuple.y >= minY && tuple.y <= maxY) {
+        iter.remove();
+        if (unusedChunkList.size() < maxChunks) {
+          unusedChunkList.add(tuple.image);
+        }
+      }
+    }
+    noImageSet.removeIf(
+        key -> {
+          int separator = key.indexOf('.');
+          int x = Integer.parseInt(key.substring(0, separator));
+          int y = Integer.parseInt(key.substring(separator + 1));
+          return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        });
+  }
+
   public void renderDrawables(
       Graphics g, List<DrawnElement> drawableList, Rectangle viewport, double scale) {
     CodeTimer.using(
@@ -94,8 +146,16 @@ public void renderDrawables(
             return;
           }
           // View changed ?
-          if (dirty || lastScale != scale) {
+          if (dirty) {
             flush();
+          } else if (lastScale != scale) {
+            clearChunks();
+          }
+          if (indexDirty || drawableIndex.size() != drawableList.size()) {
+            timer.start("render:index");
+            drawableIndex.rebuild(drawableList, this::getDrawnBounds);
+            timer.stop("render:index");
+            indexDirty = false;
           }
           if (lastViewport == null
               || viewport.width != lastViewport.width
@@ -127,7 +187,9 @@ public void renderDrawables(
               }
               Tuple chunk = findChunk(chunkList, key);
               if (chunk == null) {
-                chunk = new Tuple(key, createChunk(drawableList, cellX, cellY, scale));
+                List<DrawnElement> drawables =
+                    drawableIndex.query(getChunkBounds(cellX, cellY, scale));
+                chunk = new Tuple(key, cellX, cellY, createChunk(drawables, cellX, cellY, scale));
 
                 if (chunk.image == null) {
                   noImageSet.add(key);
@@ -219,6 +281,7 @@ private BufferedImage createChunk(
     BufferedImage image = null;
     Composite oldComposite = null;
     Graphics2D g = null;
+    Rectangle2D chunkBounds = getChunkBounds(gridx, gridy, scale);
 
     for (DrawnElement element : drawableList) {
       timer.start("createChunk:calculate");
@@ -230,12 +293,6 @@ private BufferedImage createChunk(
       }
 
       Rectangle2D drawnBounds = new Rectangle(drawableBounds);
-      Rectangle2D chunkBounds =
-          new Rectangle(
-              (int) (gridx * (CHUNK_SIZE / scale)),
-              (int) (gridy * (CHUNK_SIZE / scale)),
-              (int) (CHUNK_SIZE / scale),
-              (int) (CHUNK_SIZE / scale));
 
       // Handle pen size
       Pen pen = element.getPen();
@@ -293,6 +350,43 @@ private BufferedImage createChunk(
     return image;
   }
 
+  /**
+   * Returns the area of the map covered by a chunk.
+   *
+   * @param gridx the column of the chunk.
+   * @param gridy the row of the chunk.
+   * @param scale the scale the chunk is drawn at.
+   * @return the area in map units.
+   */
+  private Rectangle2D getChunkBounds(int gridx, int gridy, double scale) {
+    return new Rectangle(
+        (int) (gridx * (CHUNK_SIZE / scale)),
+        (int) (gridy * (CHUNK_SIZE / scale)),
+        (int) (CHUNK_SIZE / scale),
+        (int) (CHUNK_SIZE / scale));
+  }
+
+  /**
+   * Returns the area of the map a drawable draws on, including the width of its pen.
+   *
+   * @param element the drawable.
+   * @return the area in map units, or {@code null} if the drawable has no bounds.
+   */
+  private Rectangle getDrawnBounds(DrawnElement element) {
+    Rectangle drawableBounds = element.getDrawable().getBounds(zone);
+    if (drawableBounds == null) {
+      return null;
+    }
+    Pen pen = element.getPen();
+    int penSize = (int) (pen.getThickness() / 2 + 1);
+    int thickness = (int) Math.ceil(pen.getThickness());
+    return new Rectangle(
+        drawableBounds.x - penSize,
+        drawableBounds.y - penSize,
+        drawableBounds.width + thickness + 1,
+        drawableBounds.height + thickness + 1);
+  }
+
   private BufferedImage getNewChunk() {
     BufferedImage image = null;
     if (unusedChunkList.size() > 0) {
@@ -311,10 +405,14 @@ private String getKey(int col, int row) {
 
   private static class Tuple {
     String key;
+    int x;
+    int y;
     BufferedImage image;
 
-    public Tuple(String key, BufferedImage image) {
+    public Tuple(String key, int x, int y, BufferedImage image) {
       this.key = key;
+      this.x = x;
+      this.y = y;
       this.image = image;
     }
 
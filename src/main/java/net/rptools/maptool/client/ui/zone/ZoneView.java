@@ -41,6 +41,8 @@
 import net.rptools.maptool.model.zones.TokensChanged;
 import net.rptools.maptool.model.zones.TokensRemoved;
 import net.rptools.maptool.model.zones.WallTopologyChanged;
+import net.rptools.maptool.model.zones.ZoneContentLoaded;
+import net.rptools.maptool.model.zones.ZoneContentUnloaded;
 import net.rptools.maptool.model.zones.ZoneLightingChanged;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -156,6 +158,21 @@ private void addLightSourceToken(Token token, Set<Player.Role> roles) {
   /** Cached version of the zone's topology which is fully noded. */
   private NodedTopology nodedTopology = null;
 
+  /**
+   * Hit and miss counts for the per-view illumination and per-token vision caches.
+   *
+   * @param lightHits the number of illumination lookups that were already calculated.
+   * @param lightMisses the number of illuminations that had to be calculated.
+   * @param visionHits the number of token vision lookups that were already calculated.
+   * @param visionMisses the number of token visions that had to be calculated.
+   */
+  public record CacheStats(long lightHits, long lightMisses, long visionHits, long visionMisses) {}
+
+  private long lightHits;
+  private long lightMisses;
+  private long visionHits;
+  private long visionMisses;
+
   /**
    * Construct ZoneView from zone. Build lightSourceMap, and add ZoneView to Zone as listener.
    *
@@ -164,7 +181,10 @@ private void addLightSourceToken(Token token, Set<Player.Role> roles) {
   public ZoneView(Zone zone) {
     this.zone = zone;
 
-    updateLightSourcesFromTokens(zone.getAllTokens());
+    // Zones that are loaded on demand fire ZoneContentLoaded once their tokens have been read.
+    if (zone.isContentLoaded()) {
+      updateLightSourcesFromTokens(zone.getAllTokens());
+    }
 
     new MapToolEventBus().getMainEventBus().register(this);
   }
@@ -223,6 +243,15 @@ public Area getExposedArea(PlayerView view) {
         });
   }
 
+  /**
+   * Returns how often the illumination and vision caches have been hit since the view was created.
+   *
+   * @return the cache statistics.
+   */
+  public CacheStats getCacheStats() {
+    return new CacheStats(lightHits, lightMisses, visionHits, visionMisses);
+  }
+
   /**
    * Get the vision status of the zone.
    *
@@ -485,8 +514,11 @@ private Illumination getIllumination(IlluminationKey illuminationKey) {
 
   public Illumination getIllumination(PlayerView view) {
     var illumination = illuminationsPerView.get(view);
-    if (illumination == null) {
+    if (illumination != null) {
+      lightHits++;
+    } else {
       // Not yet calculated. Do so now.
+      lightMisses++;
       final var illuminationKey = illuminationKeyFromView(view);
       final var baseIllumination = getIllumination(illuminationKey);
 
@@ -567,10 +599,12 @@ public Area getVisibleArea(@Nonnull Token token, PlayerView view) {
         tokenVisionCachePerView.computeIfAbsent(view, v -> new HashMap<>());
     Area tokenVisibleArea = tokenVisionCache.get(token.getId());
     if (tokenVisibleArea != null) {
+      visionHits++;
       return tokenVisibleArea;
     }
 
     // Not cached, so need to calculate the area.
+    visionMisses++;
     tokenVisibleArea = getTokenVisibleArea(token);
 
     // Very important that we don't use the general view, but only the view from the token's
@@ -848,6 +882,27 @@ private void onTokensAdded(TokensAdded event) {
     processTokenAddChangeEvent(event.tokens());
   }
 
+  @Subscribe
+  private void onZoneContentLoaded(ZoneContentLoaded event) {
+    if (event.zone() != zone) {
+      return;
+    }
+
+    lightSourceMap.clear();
+    updateLightSourcesFromTokens(zone.getAllTokens());
+    flush();
+  }
+
+  @Subscribe
+  private void onZoneContentUnloaded(ZoneContentUnloaded event) {
+    if (event.zone() != zone) {
+      return;
+    }
+
+    lightSourceMap.clear();
+    flush();
+  }
+
   @Subscribe
   private void onTokensRemoved(TokensRemoved event) {
     if (event.zone() != zone) {
@@ -21,7 +21,9 @@
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ImageObserver;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,6 +32,7 @@
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import net.rptools.lib.CollectionUtil;
 import net.rptools.lib.MD5Key;
@@ -50,6 +53,7 @@
 import net.rptools.maptool.model.player.Player;
 import net.rptools.maptool.util.GraphicsUtil;
 import net.rptools.maptool.util.ImageManager;
+import net.rptools.maptool.util.SpatialGridIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -121,20 +125,60 @@ public static TokenPosition fromToken(Token token, Zone zone) {
 
   private final Map<Zone.Layer, Set<GUID>> visibleTokensByLayer =
       CollectionUtil.newFilledEnumMap(Zone.Layer.class, layer -> new HashSet<>());
+  private final Map<Zone.Layer, List<Token>> visibleTokenListsByLayer =
+      CollectionUtil.newFilledEnumMap(Zone.Layer.class, layer -> new ArrayList<>());
 
   private final List<Point2D> lightPositions = new ArrayList<>();
 
   // endregion
 
+  // region These are maintained from zone events via `tokensChanged()` and `flushTokenPositions()`.
+
+  /** The positions of all tokens on the zone, whether or not they are visible in the view. */
+  private final Map<GUID, TokenPosition> positionCache = new HashMap<>();
+
+  /** The bounds of the tokens in {@link #positionCache}. */
+  private SpatialGridIndex<GUID> tokenIndex = new SpatialGridIndex<>(1);
+
+  // Zone events are not guaranteed to be delivered on the EDT.
+  private final Set<GUID> changedTokens = ConcurrentHashMap.newKeySet();
+  private volatile boolean allTokensChanged = true;
+
+  // endregion
+
   public ZoneViewModel(Zone zone, ZoneView zoneView, SelectionModel selectionModel) {
     this.zone = zone;
     this.zoneView = zoneView;
     this.selectionModel = selectionModel;
   }
 
-  /** Marks the zone as not loaded, so that it ensures once again that all assets are loaded. */
+  /**
+   * Marks the zone as not loaded, so that it ensures once again that all assets are loaded. The
+   * positions of all tokens are recalculated too.
+   */
   public void flush() {
     loadingProgress = "";
+    flushTokenPositions();
+  }
+
+  /**
+   * Marks tokens as added, changed or removed, so that their positions are recalculated on the
+   * next update.
+   *
+   * @param tokens the tokens.
+   */
+  public void tokensChanged(Collection<Token> tokens) {
+    for (Token token : tokens) {
+      changedTokens.add(token.getId());
+    }
+  }
+
+  /**
+   * Marks the positions of all tokens as changed, for changes such as a new grid that affect every
+   * token.
+   */
+  public void flushTokenPositions() {
+    allTokensChanged = true;
   }
 
   public boolean isUsingGdxRenderer() {
@@ -229,6 +273,39 @@ public Set<GUID> getVisibleTokens(Zone.Layer layer) {
     return Collections.unmodifiableSet(visibleTokensByLayer.get(layer));
   }
 
+  /**
+   * Gets the tokens on a layer that are visible in the view, in z-order.
+   *
+   * @param layer the layer.
+   * @return the tokens whose ids are in {@link #getVisibleTokens(Zone.Layer)}, bottom-most first.
+   */
+  public List<Token> getVisibleTokenList(Zone.Layer layer) {
+    return Collections.unmodifiableList(visibleTokenListsByLayer.get(layer));
+  }
+
+  /**
+   * Gets the positions of the tokens on a layer whose bounds overlap a rectangle. Only tokens that
+   * are in {@link #getTokenPositions()} are included.
+   *
+   * <p>The bounds of a token's {@link TokenPosition#transformedBounds()} are checked, so callers
+   * needing an exact test should still check the transformed bounds.
+   *
+   * @param layer the layer.
+   * @param bounds the rectangle in zone space. An empty rectangle finds the tokens at a point.
+   * @return the positions, in z-order with the top-most token last.
+   */
+  public List<TokenPosition> getTokenPositionsInBounds(Zone.Layer layer, Rectangle2D bounds) {
+    var result = new ArrayList<TokenPosition>();
+    for (GUID id : tokenIndex.query(bounds)) {
+      var position = tokenPositions.get(id);
+      if (position != null && position.token().getLayer() == layer) {
+        result.add(position);
+      }
+    }
+    result.sort(Comparator.comparing(TokenPosition::token, Zone.TOKEN_Z_ORDER_COMPARATOR));
+    return result;
+  }
+
   public boolean isTokenMoving(GUID tokenId) {
     return movingTokens.contains(tokenId);
   }
@@ -254,6 +331,7 @@ public void update() {
     updateVisibleArea();
     updateSelectedTokensList();
     updateMovingTokens();
+    updatePositionCache();
     updateTokenPositions();
     updateMarkerPositions();
     updateTokenStacks();
@@ -357,6 +435,45 @@ private void updatePlayerView() {
     playerView = makePlayerView(MapTool.getPlayer().getEffectiveRole(), true);
   }
 
+  /**
+   * Recalculates the positions of the tokens that have changed since the last update, or of all
+   * tokens if {@link #flushTokenPositions()} was called.
+   */
+  private void updatePositionCache() {
+    if (allTokensChanged) {
+      allTokensChanged = false;
+      changedTokens.clear();
+      positionCache.clear();
+      // Tokens are usually about a cell in size, so a few cells per index cell keeps both the
+      // number of index cells per token and the number of tokens per index cell small.
+      tokenIndex = new SpatialGridIndex<>(Math.max(zone.getGrid().getSize(), 1) * 4.0);
+      for (Token token : zone.getAllTokens()) {
+        cachePosition(token);
+      }
+      return;
+    }
+
+    for (var iterator = changedTokens.iterator(); iterator.hasNext(); ) {
+      var id = iterator.next();
+      iterator.remove();
+
+      var token = zone.getToken(id);
+      if (token == null) {
+        positionCache.remove(id);
+        tokenIndex.remove(id);
+      } else {
+        cachePosition(token);
+      }
+    }
+  }
+
+  private TokenPosition cachePosition(Token token) {
+    var position = TokenPosition.fromToken(token, zone);
+    positionCache.put(token.getId(), position);
+    tokenIndex.put(token.getId(), position.transformedBounds().getBounds2D());
+    return position;
+  }
+
   /** Clears and populates {@link #tokenPositions} and {@link #tokenPositionsByLayer}. */
   private void updateTokenPositions() {
     tokenPositions.clear();
@@ -376,7 +493,11 @@ private void updateTokenPositions() {
           continue;
         }
 
-        var tokenPosition = TokenPosition.fromToken(token, zone);
+        var tokenPosition = positionCache.get(token.getId());
+        if (tokenPosition == null || tokenPosition.token() != token) {
+          // The token changed without an event reaching us.
+          tokenPosition = cachePosition(token);
+        }
 
         tokenPositions.put(token.getId(), tokenPosition);
         layerList.add(tokenPosition);
@@ -385,6 +506,7 @@ private void updateTokenPositions() {
   }
 
   private void updateMarkerPositions() {
+    markerList.clear();
     for (var list : tokenPositionsByLayer.values()) {
       for (var tokenPosition : list) {
         var token = tokenPosition.token();
@@ -440,35 +562,46 @@ private void updateVisibleTokens() {
     }
 
     onScreenTokens.clear();
-
     for (var layer : Zone.Layer.values()) {
-      var tokenPositions = tokenPositionsByLayer.get(layer);
+      visibleTokensByLayer.get(layer).clear();
+      visibleTokenListsByLayer.get(layer).clear();
+    }
 
-      var visibleTokens = visibleTokensByLayer.get(layer);
-      visibleTokens.clear();
-      for (var tokenPosition : tokenPositions) {
-        // First make sure it is on screen.
-        if (!tokenPosition.transformedBounds().intersects(viewport)) {
-          continue;
-        }
+    // Only the tokens near the viewport need to be checked.
+    for (var id : tokenIndex.query(viewport)) {
+      var tokenPosition = tokenPositions.get(id);
+      if (tokenPosition == null) {
+        // Not part of this view.
+        continue;
+      }
 
-        onScreenTokens.add(tokenPosition.token().getId());
+      // First make sure it is on screen.
+      if (!tokenPosition.transformedBounds().intersects(viewport)) {
+        continue;
+      }
 
-        // Then make sure it is in revealed area (for players).
-        if (!playerView.isGMView()
-            && layer.supportsVision()
-            && zoneView.isUsingVision()
-            && !GraphicsUtil.intersects(tokenPosition.transformedBounds(), visibleArea)) {
-          continue;
-        }
+      onScreenTokens.add(id);
 
-        var bounds = tokenPosition.transformedBounds().getBounds2D();
-        if (bounds.getWidth() * scale < 1 || bounds.getHeight() * scale < 1) {
-          continue;
-        }
+      // Then make sure it is in revealed area (for players).
+      var layer = tokenPosition.token().getLayer();
+      if (!playerView.isGMView()
+          && layer.supportsVision()
+          && zoneView.isUsingVision()
+          && !GraphicsUtil.intersects(tokenPosition.transformedBounds(), visibleArea)) {
+        continue;
+      }
 
-        visibleTokens.add(tokenPosition.token().getId());
+      var bounds = tokenPosition.transformedBounds().getBounds2D();
+      if (bounds.getWidth() * scale < 1 || bounds.getHeight() * scale < 1) {
+        continue;
       }
+
+      visibleTokensByLayer.get(layer).add(id);
+      visibleTokenListsByLayer.get(layer).add(tokenPosition.token());
+    }
+
+    for (var list : visibleTokenListsByLayer.values()) {
+      list.sort(Zone.TOKEN_Z_ORDER_COMPARATOR);
     }
   }
 
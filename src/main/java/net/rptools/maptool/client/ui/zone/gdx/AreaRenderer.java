@@ -20,12 +20,15 @@
 import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ShortArray;
+import com.google.common.collect.MapMaker;
 import java.awt.geom.Area;
 import java.awt.geom.PathIterator;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
 import net.rptools.lib.GeometryUtil;
 import net.rptools.lib.gdx.Earcut;
 import net.rptools.lib.gdx.Joiner;
@@ -38,6 +41,26 @@
 public class AreaRenderer {
   public record TriangledPolygon(float[] vertices, short[] indices) {}
 
+  private record Stroke(boolean rounded, float thickness) {}
+
+  /**
+   * A retained mesh. The regions are created for a particular texture region, and are recreated
+   * from the polygons if a different one is in use.
+   */
+  private record Mesh(
+      Stroke stroke,
+      List<TriangledPolygon> polygons,
+      TextureRegion region,
+      List<PolygonRegion> regions) {}
+
+  /**
+   * Retained meshes, keyed by the identity of the area they were built for. The keys are weak, so
+   * a mesh is dropped as soon as the zone view lets go of its area.
+   */
+  private final Map<Area, Mesh> fills = new MapMaker().weakKeys().makeMap();
+
+  private final Map<Area, Mesh> outlines = new MapMaker().weakKeys().makeMap();
+
   private final ShapeDrawer drawer;
   private final TextureRegion whitePixel;
 
@@ -135,13 +158,92 @@ public void fillArea(PolygonSpriteBatch batch, Area area) {
   public void drawArea(PolygonSpriteBatch batch, Area area, boolean rounded, float thickness) {
     if (area == null || area.isEmpty()) return;
 
+    for (var polygon : outline(area, rounded, thickness)) {
+      paintPolygon(batch, polygon);
+    }
+  }
+
+  /**
+   * Fills an area that is drawn again in later frames, such as the lights, fog and darkness cached
+   * by the zone view. The area is triangulated the first time it is drawn, and the mesh is kept
+   * for as long as the area itself is alive, so the area must not be modified afterwards.
+   *
+   * @param batch the batch to draw with.
+   * @param area the area to fill.
+   */
+  public void fillRetainedArea(PolygonSpriteBatch batch, Area area) {
+    if (area == null || area.isEmpty()) {
+      return;
+    }
+    paintMesh(batch, fills, area, null, () -> triangulate(area));
+  }
+
+  /**
+   * Fills an area that is drawn again in later frames and has already been converted to polygons.
+   * As for {@link #fillRetainedArea(PolygonSpriteBatch, Area)}, the area must not be modified
+   * afterwards.
+   *
+   * @param batch the batch to draw with.
+   * @param area the area the polygons were created from, which identifies the mesh.
+   * @param polygons the polygons making up the area.
+   */
+  public void fillRetainedArea(PolygonSpriteBatch batch, Area area, Collection<Polygon> polygons) {
+    if (polygons.isEmpty()) {
+      return;
+    }
+    paintMesh(batch, fills, area, null, () -> triangulate(polygons));
+  }
+
+  /**
+   * Outlines an area that is drawn again in later frames. The outline is kept for as long as the
+   * area is alive, and is only rebuilt when the thickness or join changes.
+   *
+   * @param batch the batch to draw with.
+   * @param area the area to outline, which must not be modified afterwards.
+   * @param rounded whether to use rounded joins.
+   * @param thickness the thickness of the outline.
+   */
+  public void drawRetainedArea(
+      PolygonSpriteBatch batch, Area area, boolean rounded, float thickness) {
+    if (area == null || area.isEmpty()) {
+      return;
+    }
+    var stroke = new Stroke(rounded, thickness);
+    paintMesh(batch, outlines, area, stroke, () -> outline(area, rounded, thickness));
+  }
+
+  private void paintMesh(
+      PolygonSpriteBatch batch,
+      Map<Area, Mesh> meshes,
+      Area area,
+      Stroke stroke,
+      Supplier<List<TriangledPolygon>> triangulation) {
+    var mesh = meshes.get(area);
+    if (mesh == null || !Objects.equals(mesh.stroke(), stroke)) {
+      mesh = new Mesh(stroke, triangulation.get(), null, List.of());
+      meshes.put(area, mesh);
+    }
+    if (mesh.region() != textureRegion) {
+      var regions = new ArrayList<PolygonRegion>(mesh.polygons().size());
+      for (var poly : mesh.polygons()) {
+        regions.add(new PolygonRegion(textureRegion, poly.vertices, poly.indices));
+      }
+      mesh = new Mesh(stroke, mesh.polygons(), textureRegion, regions);
+      meshes.put(area, mesh);
+    }
+    for (var region : mesh.regions()) {
+      paintRegion(batch, region);
+    }
+  }
+
+  private List<TriangledPolygon> outline(Area area, boolean rounded, float thickness) {
     pathToFloatArray(area.getPathIterator(null));
 
+    var result = new ArrayList<TriangledPolygon>(segmentIndicies.size);
     if (segmentIndicies.size == 1) {
       removeStartFromEnd(); // start and end vertices are equal. we don't want this
-      var polygon =
-          drawPathWithJoin(tmpFloat, thickness, rounded ? JoinType.Round : JoinType.Pointy, false);
-      paintPolygon(batch, polygon);
+      result.add(
+          drawPathWithJoin(tmpFloat, thickness, rounded ? JoinType.Round : JoinType.Pointy, false));
     } else {
       var floats = tmpFloat.toArray();
       var lastSegmentIndex = 0;
@@ -153,13 +255,13 @@ public void drawArea(PolygonSpriteBatch batch, Area area, boolean rounded, float
         System.arraycopy(floats, 2 * lastSegmentIndex, tmpFloat.items, 0, 2 * vertexCount);
         tmpFloat.setSize(2 * vertexCount);
         removeStartFromEnd();
-        var polygon =
+        result.add(
             drawPathWithJoin(
-                tmpFloat, thickness, rounded ? JoinType.Round : JoinType.Pointy, false);
-        paintPolygon(batch, polygon);
+                tmpFloat, thickness, rounded ? JoinType.Round : JoinType.Pointy, false));
         lastSegmentIndex = idx;
       }
     }
+    return result;
   }
 
   private void removeStartFromEnd() {
@@ -43,6 +43,8 @@
 import javax.swing.*;
 import net.rptools.lib.AwtUtil;
 import net.rptools.lib.CodeTimer;
+import net.rptools.lib.CodeTimerStatistics;
+import net.rptools.lib.CodeTimerTrace;
 import net.rptools.maptool.client.*;
 import net.rptools.maptool.client.events.ZoneActivated;
 import net.rptools.maptool.client.swing.ImageBorder;
@@ -54,6 +56,7 @@
 import net.rptools.maptool.client.ui.token.AbstractTokenOverlay;
 import net.rptools.maptool.client.ui.token.BarTokenOverlay;
 import net.rptools.maptool.client.ui.zone.DrawableLight;
+import net.rptools.maptool.client.ui.zone.Illumination;
 import net.rptools.maptool.client.ui.zone.PlayerView;
 import net.rptools.maptool.client.ui.zone.ZoneViewModel;
 import net.rptools.maptool.client.ui.zone.gdx.drawing.DrawnElementRenderer;
@@ -61,6 +64,7 @@
 import net.rptools.maptool.client.ui.zone.gdx.label.LabelRenderer;
 import net.rptools.maptool.client.ui.zone.gdx.label.TextRenderer;
 import net.rptools.maptool.client.ui.zone.gdx.label.TokenLabelRenderer;
+import net.rptools.maptool.client.ui.zone.renderer.PerformanceOverlay;
 import net.rptools.maptool.client.ui.zone.renderer.SelectionSet;
 import net.rptools.maptool.client.walker.ZoneWalker;
 import net.rptools.maptool.events.MapToolEventBus;
@@ -86,6 +90,7 @@ public class GdxRenderer extends ApplicationAdapter {
 
   private static final Logger log = LogManager.getLogger(GdxRenderer.class);
   private static final int BLENDING_TEXTURE_INDEX = 1;
+  private static final String TIMER_NAME = "GdxRenderer.renderZone";
 
   public static final float POINTS_PER_BEZIER = 10f;
   private static GdxRenderer _instance;
@@ -102,6 +107,15 @@ public class GdxRenderer extends ApplicationAdapter {
   // from renderToken:
   private Area visibleScreenArea;
   private Area exposedFogArea;
+
+  // The fog's clear area, and the areas it was computed from.
+  private Area fogVisibleArea;
+  private Area fogExposedArea;
+  private Area fogClearArea;
+
+  // The darkened area, and the illumination it was taken from.
+  private Illumination darknessIllumination;
+  private Area darknessArea;
   private PlayerView lastView;
   private final List<ItemRenderer> itemRenderList = new LinkedList<>();
 
@@ -127,7 +141,7 @@ public class GdxRenderer extends ApplicationAdapter {
   private BitmapFont normalFont;
   private BitmapFont boldFont;
   private float boldFontScale = 0;
-  private final CodeTimer timer = new CodeTimer("GdxRenderer.renderZone");
+  private final CodeTimer timer = new CodeTimer(TIMER_NAME);
 
   /** Used by render layers to compose the layer prior to blending. */
   private FrameBuffer backBuffer;
@@ -200,6 +214,13 @@ public void create() {
             Gdx.files.classpath("net/rptools/maptool/client/ui/zone/gdx/environmentalLighting.vsh"),
             Gdx.files.classpath(
                 "net/rptools/maptool/client/ui/zone/gdx/environmentalLighting.fsh"));
+    if (!environmentalLightingShader.isCompiled()) {
+      // Some drivers, such as the Mesa software renderer in minimal setups, may reject the shader.
+      // Environmental lights are then blended like other lights rather than not drawn at all.
+      log.error(
+          "Could not compile environmental lighting shader: {}",
+          environmentalLightingShader.getLog());
+    }
 
     manager = new com.badlogic.gdx.assets.AssetManager();
     loadAssets();
@@ -420,6 +441,7 @@ private void doRendering() {
 
     initializeTimer();
     if (zoneCache.getZoneRenderer() == null) return;
+    timer.start("frame");
 
     setScale(viewModel.getZoneScale());
 
@@ -454,23 +476,39 @@ private void doRendering() {
     hudTextRenderer.drawString("FPS:   " + Gdx.graphics.getFramesPerSecond(), width - 30, 30);
     hudTextRenderer.drawString("Draws: " + batch.renderCalls, width - 30, 16);
 
+    if (AppState.isShowPerformanceOverlay()) {
+      float lineY = height - 20;
+      for (String line : PerformanceOverlay.getLines(zoneCache.getZoneRenderer(), TIMER_NAME)) {
+        hudTextRenderer.drawBoxedString(line, 10, lineY, SwingUtilities.LEFT);
+        lineY -= 18;
+      }
+    }
+
     batch.end();
+    timer.stop("frame");
     collectTimerResults();
   }
 
   private void collectTimerResults() {
     if (timer.isEnabled()) {
-      String results = timer.toString();
-      MapTool.getProfilingNoteFrame().addText(results);
-      if (log.isDebugEnabled()) {
-        log.debug(results);
+      timer.recordStatistics("frame");
+      if (AppState.isCollectProfilingData() || log.isDebugEnabled()) {
+        String results = timer.toString();
+        MapTool.getProfilingNoteFrame().addText(results);
+        if (log.isDebugEnabled()) {
+          log.debug(results);
+        }
       }
       timer.clear();
     }
   }
 
   private void initializeTimer() {
-    timer.setEnabled(AppState.isCollectProfilingData() || log.isDebugEnabled());
+    timer.setEnabled(
+        AppState.isCollectProfilingData()
+            || log.isDebugEnabled()
+            || CodeTimerStatistics.getInstance().isEnabled()
+            || CodeTimerTrace.getInstance().isRecording());
     timer.clear();
     timer.setThreshold(10);
   }
@@ -781,13 +819,20 @@ private void renderPlayerDarkness(PlayerView view) {
       return;
     }
 
-    final var darkness = zoneCache.getZoneView().getIllumination(view).getDarkenedArea();
+    // The darkened area is copied on every call, so keep the copy for as long as the illumination
+    // it came from is current. This lets its mesh be retained too.
+    final var illumination = zoneCache.getZoneView().getIllumination(view);
+    if (illumination != darknessIllumination) {
+      darknessIllumination = illumination;
+      darknessArea = illumination.getDarkenedArea();
+    }
+    final var darkness = darknessArea;
     if (darkness.isEmpty()) {
       // Skip the rendering work if it isn't necessary.
       return;
     }
     areaRenderer.setColor(Color.BLACK);
-    areaRenderer.fillArea(batch, darkness);
+    areaRenderer.fillRetainedArea(batch, darkness);
   }
 
   private void renderVisionOverlay(PlayerView view) {
@@ -875,8 +920,14 @@ private void renderFog(PlayerView view) {
     Area clearArea;
     if (zoneView.isUsingVision()) {
       softFogArea = exposedArea;
-      clearArea = new Area(visibleArea);
-      clearArea.intersect(softFogArea);
+      // Both areas are cached by the zone view, so the intersection only changes when they do.
+      if (visibleArea != fogVisibleArea || exposedArea != fogExposedArea) {
+        fogVisibleArea = visibleArea;
+        fogExposedArea = exposedArea;
+        fogClearArea = new Area(visibleArea);
+        fogClearArea.intersect(exposedArea);
+      }
+      clearArea = fogClearArea;
     } else {
       softFogArea = new Area();
       clearArea = exposedArea;
@@ -905,7 +956,7 @@ private void renderFog(PlayerView view) {
     if (!softFogArea.isEmpty()) {
       areaRenderer.setColor(tmpColor.set(0, 0, 0, AppPreferences.fogOverlayOpacity.get() / 255.0f));
       // Fill in the exposed area
-      areaRenderer.fillArea(batch, softFogArea);
+      areaRenderer.fillRetainedArea(batch, softFogArea);
     }
     timer.stop("renderFog-softFow");
 
@@ -913,7 +964,7 @@ private void renderFog(PlayerView view) {
     if (!clearArea.isEmpty()) {
       areaRenderer.setColor(tmpColor.set(Color.CLEAR));
       // Fill in the exposed area
-      areaRenderer.fillArea(batch, clearArea);
+      areaRenderer.fillRetainedArea(batch, clearArea);
     }
     timer.stop("renderFog-exposedArea");
 
@@ -921,7 +972,7 @@ private void renderFog(PlayerView view) {
     // If there is no boundary between soft fog and visible area, there is no need for an outline.
     if (!softFogArea.isEmpty() && !clearArea.isEmpty()) {
       areaRenderer.setColor(Color.BLACK);
-      areaRenderer.drawArea(
+      areaRenderer.drawRetainedArea(
           batch, visibleScreenArea, false, (float) (1 / viewModel.getZoneScale().getScale()));
     }
     timer.stop("renderFog-outline");
@@ -1224,10 +1275,10 @@ private void renderLumensOverlay(PlayerView view, float overlayAlpha) {
           tmpColor
               .set(lightShade, lightShade, lightShade, lightOpacity * overlayAlpha)
               .premultiplyAlpha());
-      areaRenderer.fillArea(batch, lumensLevel.lightArea());
+      areaRenderer.fillRetainedArea(batch, lumensLevel.lightArea());
 
       areaRenderer.setColor(tmpColor.set(0.f, 0.f, 0.f, overlayAlpha));
-      areaRenderer.fillArea(batch, lumensLevel.darknessArea());
+      areaRenderer.fillRetainedArea(batch, lumensLevel.darknessArea());
       timer.stop("renderLumensOverlay:drawLights:fillArea");
     }
 
@@ -1242,9 +1293,9 @@ private void renderLumensOverlay(PlayerView view, float overlayAlpha) {
       for (final var lumensLevel : disjointLumensLevels) {
         timer.start("renderLumensOverlay:drawLights:drawArea");
         areaRenderer.setColor(tmpColor);
-        areaRenderer.drawArea(batch, lumensLevel.lightArea(), true, borderThickness);
+        areaRenderer.drawRetainedArea(batch, lumensLevel.lightArea(), true, borderThickness);
         areaRenderer.setColor(tmpColor);
-        areaRenderer.drawArea(batch, lumensLevel.darknessArea(), true, borderThickness);
+        areaRenderer.drawRetainedArea(batch, lumensLevel.darknessArea(), true, borderThickness);
         timer.stop("renderLumensOverlay:drawLights:drawArea");
       }
     }
@@ -1268,7 +1319,8 @@ private void renderLights(PlayerView view) {
         batch.flush();
         backBuffer.end();
 
-        if (zoneCache.getZone().getLightingStyle() == Zone.LightingStyle.ENVIRONMENTAL) {
+        if (zoneCache.getZone().getLightingStyle() == Zone.LightingStyle.ENVIRONMENTAL
+            && environmentalLightingShader.isCompiled()) {
           drawBackBuffer(environmentalLightingShader);
         } else {
           drawBackBuffer(BlendFunction.ALPHA_SRC_OVER);
@@ -1335,8 +1387,7 @@ private void renderLightOverlay(
       }
       areaRenderer.setColor(tmpColor);
 
-      var triangulation = areaRenderer.triangulate(light.getAreaAsPolygons());
-      areaRenderer.fill(batch, triangulation);
+      areaRenderer.fillRetainedArea(batch, light.getArea(), light.getAreaAsPolygons());
     }
     timer.stop("renderLightOverlay:drawLights");
   }
@@ -0,0 +1,221 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone.renderer;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.ImageObserver;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import net.rptools.maptool.client.ui.zone.BufferedImagePool;
+import net.rptools.maptool.client.ui.zone.PlayerView;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Zone.Layer;
+
+/**
+ * Retained offscreen surfaces for the layers that rarely change, so that frames in which only
+ * tokens, pointers or overlays change can composite those layers instead of rendering them again.
+ *
+ * <p>Each surface is rendered for a particular {@link Key}, which holds everything about the view
+ * that the content of the layer depends on. The content of the layer itself is tracked by a
+ * version that is bumped by {@link #invalidate(Layer)} whenever something on the layer changes. A
+ * surface is only reused if both match.
+ *
+ * <p>Surfaces are checked out of a {@link BufferedImagePool} for as long as they are retained, and
+ * are returned to it when the size of the view changes or the layer is no longer cached.
+ *
+ * <p>Images drawn into a surface should be requested with the observer from {@link
+ * #getImageObserver(Layer)}, so that an image that finishes loading, or changes, only invalidates
+ * the layers it is drawn on.
+ */
+final class LayerCache {
+  /**
+   * Everything about the view that the content of a cached layer depends on.
+   *
+   * @param offsetX the horizontal offset of the view.
+   * @param offsetY the vertical offset of the view.
+   * @param scale the scale of the view.
+   * @param view the view being rendered.
+   * @param state any other state the layer depends on, compared with {@link Object#equals}.
+   */
+  record Key(int offsetX, int offsetY, double scale, PlayerView view, Object state) {}
+
+  private static final class Surface {
+    private final BufferedImagePool.Handle handle;
+    private Key key;
+    private long version = -1;
+    private volatile Set<GUID> tokenIds = Set.of();
+
+    private Surface(BufferedImagePool.Handle handle) {
+      this.handle = handle;
+    }
+  }
+
+  private final ImageObserver observer;
+  private final Map<Layer, ImageObserver> imageObservers = new ConcurrentHashMap<>();
+  private final BufferedImagePool pool = new BufferedImagePool(Layer.values().length);
+  // Zone events may be delivered off the EDT, so anything they touch must be thread safe.
+  private final Map<Layer, Surface> surfaces = new ConcurrentHashMap<>();
+  private final AtomicLongArray versions = new AtomicLongArray(Layer.values().length);
+  private GraphicsConfiguration configuration;
+
+  /**
+   * Creates the cache.
+   *
+   * @param observer the observer that image updates are passed on to once the layers the image is
+   *     drawn on have been invalidated.
+   */
+  LayerCache(ImageObserver observer) {
+    this.observer = observer;
+  }
+
+  /**
+   * Returns the observer for the images drawn into the surface of a layer.
+   *
+   * @param layer the layer being rendered.
+   * @return an observer that invalidates the layer before passing the update on.
+   */
+  ImageObserver getImageObserver(Layer layer) {
+    return imageObservers.computeIfAbsent(
+        layer,
+        l ->
+            (img, infoFlags, x, y, width, height) -> {
+              invalidate(l);
+              return observer.imageUpdate(img, infoFlags, x, y, width, height);
+            });
+  }
+
+  /**
+   * Marks the content of a layer as changed, so that its surface is rendered again the next time
+   * it is used.
+   *
+   * @param layer the layer that changed.
+   */
+  void invalidate(Layer layer) {
+    versions.incrementAndGet(layer.ordinal());
+  }
+
+  /** Marks the content of all layers as changed. */
+  void invalidateAll() {
+    for (Layer layer : Layer.values()) {
+      invalidate(layer);
+    }
+  }
+
+  /**
+   * Marks as changed every layer whose surface includes the token, as well as the layer the token
+   * is now on. This covers tokens that have moved from one layer to another.
+   *
+   * @param tokenId the id of the token.
+   * @param layer the layer the token is on now.
+   */
+  void invalidateToken(GUID tokenId, Layer layer) {
+    invalidate(layer);
+    surfaces.forEach(
+        (surfaceLayer, surface) -> {
+          if (surfaceLayer != layer && surface.tokenIds.contains(tokenId)) {
+            invalidate(surfaceLayer);
+          }
+        });
+  }
+
+  /**
+   * Sets the size and configuration of the surfaces, releasing any surface that no longer fits.
+   *
+   * @param width the width of the view.
+   * @param height the height of the view.
+   * @param configuration the configuration of the device the view is drawn on.
+   */
+  void setSize(int width, int height, GraphicsConfiguration configuration) {
+    // The pool forgets about checked out images when any of these change, so the surfaces must be
+    // returned to it first.
+    if (width != pool.getWidth()
+        || height != pool.getHeight()
+        || !configuration.equals(this.configuration)) {
+      releaseAll();
+      this.configuration = configuration;
+      pool.setWidth(width);
+      pool.setHeight(height);
+      pool.setConfiguration(configuration);
+    }
+  }
+
+  /**
+   * Draws a layer from its surface, first rendering the layer into the surface if the surface is
+   * missing or out of date.
+   *
+   * @param g the graphics to draw the layer on.
+   * @param layer the layer to draw.
+   * @param key the state of the view.
+   * @param tokenIds the ids of the tokens that are rendered as part of the layer.
+   * @param renderer renders the layer onto the graphics it is given.
+   * @return {@code true} if the surface was reused, {@code false} if the layer was rendered.
+   */
+  boolean draw(
+      Graphics2D g, Layer layer, Key key, Set<GUID> tokenIds, Consumer<Graphics2D> renderer) {
+    long version = versions.get(layer.ordinal());
+    var surface = surfaces.get(layer);
+    boolean current = surface != null && surface.version == version && key.equals(surface.key);
+    if (!current) {
+      if (surface == null) {
+        surface = new Surface(pool.acquire());
+        surfaces.put(layer, surface);
+      }
+      var image = surface.handle.get();
+      var surfaceG = image.createGraphics();
+      try {
+        surfaceG.setComposite(AlphaComposite.Clear);
+        surfaceG.fillRect(0, 0, image.getWidth(), image.getHeight());
+        surfaceG.setComposite(AlphaComposite.SrcOver);
+        surfaceG.setRenderingHints(g.getRenderingHints());
+        surfaceG.setFont(g.getFont());
+        // The whole surface is rendered, whatever part of the view is being repainted.
+        surfaceG.setClip(0, 0, image.getWidth(), image.getHeight());
+        renderer.accept(surfaceG);
+      } finally {
+        surfaceG.dispose();
+      }
+      surface.key = key;
+      surface.version = version;
+      surface.tokenIds = Set.copyOf(tokenIds);
+    }
+    g.drawImage(surface.handle.get(), 0, 0, null);
+    return current;
+  }
+
+  /**
+   * Returns the surface of a layer to the pool, for layers that are currently rendered directly.
+   *
+   * @param layer the layer.
+   */
+  void release(Layer layer) {
+    var surface = surfaces.remove(layer);
+    if (surface != null) {
+      surface.handle.close();
+    }
+  }
+
+  /** Returns all surfaces to the pool. */
+  void releaseAll() {
+    for (Surface surface : surfaces.values()) {
+      surface.handle.close();
+    }
+    surfaces.clear();
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone.renderer;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.lib.CodeTimerStatistics;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.ui.zone.ZoneOverlay;
+import net.rptools.maptool.client.ui.zone.ZoneView;
+import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.util.ImageManager;
+
+/**
+ * Draws frame time percentiles, the slowest {@link net.rptools.lib.CodeTimer} sections, and the
+ * state of the caches and network queues in the corner of the map.
+ *
+ * <p>The figures come from {@link CodeTimerStatistics}, which must be enabled while the overlay is
+ * shown.
+ */
+public class PerformanceOverlay implements ZoneOverlay {
+  /** The name of the timer that {@link ZoneRenderer#paintComponent} runs under. */
+  public static final String SWING_TIMER_NAME = "ZoneRenderer.renderZone";
+
+  private static final int SECTIONS = 5;
+  private static final int MARGIN = 10;
+  private static final int PADDING = 6;
+  private static final Color BACKGROUND = new Color(0, 0, 0, 180);
+  private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+  @Override
+  public void paintOverlay(ZoneRenderer renderer, Graphics2D g) {
+    List<String> lines = getLines(renderer, SWING_TIMER_NAME);
+
+    Graphics2D g2d = (Graphics2D) g.create();
+    try {
+      g2d.setRenderingHint(
+          RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g2d.setFont(FONT);
+      FontMetrics metrics = g2d.getFontMetrics();
+      int width = 0;
+      for (String line : lines) {
+        width = Math.max(width, metrics.stringWidth(line));
+      }
+      int lineHeight = metrics.getHeight();
+
+      g2d.setColor(BACKGROUND);
+      g2d.fillRect(MARGIN, MARGIN, width + 2 * PADDING, lines.size() * lineHeight + 2 * PADDING);
+      g2d.setColor(Color.WHITE);
+      int y = MARGIN + PADDING + metrics.getAscent();
+      for (String line : lines) {
+        g2d.drawString(line, MARGIN + PADDING, y);
+        y += lineHeight;
+      }
+    } finally {
+      g2d.dispose();
+    }
+  }
+
+  /**
+   * Returns the lines of text shown by the overlay.
+   *
+   * @param renderer the renderer whose caches are reported.
+   * @param timerName the name of the timer that measures each frame.
+   * @return the lines to show.
+   */
+  public static List<String> getLines(ZoneRenderer renderer, String timerName) {
+    var statistics = CodeTimerStatistics.getInstance();
+    List<String> lines = new ArrayList<>();
+
+    var frames = statistics.getPercentiles(timerName);
+    if (frames == null) {
+      lines.add(I18N.getText("zone.performance.noFrames"));
+    } else {
+      lines.add(
+          I18N.getText(
+              "zone.performance.frame",
+              formatMillis(frames.p50()),
+              formatMillis(frames.p95()),
+              formatMillis(frames.p99()),
+              formatMillis(frames.max()),
+              frames.count()));
+    }
+    for (var section : statistics.getSlowestSections(timerName, SECTIONS)) {
+      lines.add(String.format("  %7.2f ms  %s", section.averageMillis(), section.name()));
+    }
+
+    var images = ImageManager.getCacheStats();
+    lines.add(
+        I18N.getText(
+            "zone.performance.images",
+            images.images(),
+            images.bytes() / (1024 * 1024),
+            images.budget() / (1024 * 1024),
+            formatRate(images.hits(), images.misses())));
+
+    if (renderer != null) {
+      ZoneView.CacheStats caches = renderer.getZoneView().getCacheStats();
+      lines.add(
+          I18N.getText(
+              "zone.performance.caches",
+              formatRate(caches.lightHits(), caches.lightMisses()),
+              formatRate(caches.visionHits(), caches.visionMisses())));
+    }
+
+    var client = MapTool.getClient();
+    var server = MapTool.getServer();
+    lines.add(
+        I18N.getText(
+            "zone.performance.networkQueues",
+            client == null ? 0 : client.getConnection().getPendingMessageCount(),
+            server == null ? "-" : Integer.toString(server.getPendingMessageCount())));
+    return lines;
+  }
+
+  private static String formatMillis(double millis) {
+    return String.format("%.1f", millis);
+  }
+
+  private static String formatRate(long hits, long misses) {
+    long total = hits + misses;
+    return total == 0 ? "-" : String.format("%.0f%%", 100.0 * hits / total);
+  }
+}
@@ -44,7 +44,7 @@ public RenderHelper(ZoneRenderer renderer, BufferedImagePool tempBufferPool) {
   }
 
   public ImageObserver getImageObserver() {
-    return renderer;
+    return renderer.getImageObserver();
   }
 
   private void doRender(Graphics2D g, Consumer<Graphics2D> render) {
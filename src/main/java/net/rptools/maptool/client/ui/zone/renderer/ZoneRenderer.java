@@ -14,6 +14,7 @@
  */
 package net.rptools.maptool.client.ui.zone.renderer;
 
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.Subscribe;
 import java.awt.*;
 import java.awt.Rectangle;
@@ -28,9 +29,11 @@
 import java.awt.font.TextLayout;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -144,6 +147,7 @@ public class ZoneRenderer extends JComponent implements DropTargetListener {
   private final FogRenderer fogRenderer;
   private final VisionOverlayRenderer visionOverlayRenderer;
   private final DebugRenderer debugRenderer;
+  private final PerformanceOverlay performanceOverlay = new PerformanceOverlay();
 
   public Token getTokenUnderMouse() {
     return tokenUnderMouse;
@@ -291,6 +295,7 @@ public void flushDrawableRenderer() {
     for (final var renderer : drawableRenderers.values()) {
       renderer.flush();
     }
+    layerCache.invalidateAll();
   }
 
   public ScreenPoint getPointUnderMouse() {
@@ -602,6 +607,7 @@ public void flush() {
   /** Flush the {@link #zoneView} and repaint. */
   public void flushLight() {
     zoneView.flush();
+    layerCache.invalidateAll();
     repaintDebouncer.dispatch();
   }
 
@@ -711,7 +717,7 @@ public BufferedImage getMiniImage(int size) {
   @Override
   public void paintComponent(Graphics g) {
     CodeTimer.using(
-        "ZoneRenderer.renderZone",
+        PerformanceOverlay.SWING_TIMER_NAME,
         timer -> {
           timer.setThreshold(10);
 
@@ -723,6 +729,8 @@ public void paintComponent(Graphics g) {
             tempBufferPool.setWidth(getSize().width);
             tempBufferPool.setHeight(getSize().height);
             tempBufferPool.setConfiguration(g2d.getDeviceConfiguration());
+            layerCache.setSize(
+                getSize().width, getSize().height, g2d.getDeviceConfiguration());
             timer.stop("paintComponent:allocateBuffer");
 
             try (final var bufferHandle = tempBufferPool.acquire()) {
@@ -732,7 +740,7 @@ public void paintComponent(Graphics g) {
               // Keep the clip to avoid rendering more than we have to.
               bufferG2d.setClip(g2d.getClip());
 
-              renderZone(bufferG2d, null);
+              renderZone(bufferG2d, null, true);
 
               int noteVPos = 20;
               bufferG2d.setFont(AppStyle.labelFont);
@@ -749,6 +757,9 @@ public void paintComponent(Graphics g) {
                 GraphicsUtil.drawBoxedString(
                     bufferG2d, I18N.getText("zone.player_view"), getSize().width / 2, noteVPos);
               }
+              if (AppState.isShowPerformanceOverlay()) {
+                performanceOverlay.paintOverlay(this, bufferG2d);
+              }
 
               timer.start("paintComponent:renderBuffer");
               bufferG2d.dispose();
@@ -809,6 +820,20 @@ public boolean shouldRenderLayer(Layer layer, PlayerView view) {
    *     {@code null} to use the current view.
    */
   public void renderZone(Graphics2D g2d, @Nullable PlayerView view) {
+    renderZone(g2d, view, false);
+  }
+
+  /**
+   * Renders the zone, optionally drawing the background and object layers from the surfaces
+   * retained in {@link #layerCache}. Only the component itself retains layers; one-off renders
+   * such as screenshots and exports always render every layer.
+   *
+   * @param g2d the graphics to render on.
+   * @param view the view to render, or {@code null} to use the current view.
+   * @param retainLayers whether the background and object layers may be drawn from, and rendered
+   *     into, their retained surfaces.
+   */
+  private void renderZone(Graphics2D g2d, @Nullable PlayerView view, boolean retainLayers) {
     final var timer = CodeTimer.get();
 
     timer.start("update");
@@ -889,40 +914,62 @@ public void renderZone(Graphics2D g2d, @Nullable PlayerView view) {
       timer.stop("board");
     }
     if (shouldRenderLayer(Zone.Layer.BACKGROUND, view)) {
-      List<DrawnElement> drawables = zone.getDrawnElements(Layer.BACKGROUND);
-
-      timer.start("drawableBackground");
-      renderDrawableOverlay(g2d, drawableRenderers.get(Layer.BACKGROUND), view, drawables);
-      timer.stop("drawableBackground");
-
-      List<Token> background = zone.getTokensOnLayer(Layer.BACKGROUND, false);
-      if (!background.isEmpty()) {
-        timer.start("tokensBackground");
-        renderTokens(g2d, background, view);
-        timer.stop("tokensBackground");
-      }
+      List<Token> background = getVisibleTokensOnLayer(Layer.BACKGROUND);
+      renderLayer(
+          g2d,
+          view,
+          Layer.BACKGROUND,
+          background,
+          retainLayers,
+          (g, v) -> {
+            List<DrawnElement> drawables = zone.getDrawnElements(Layer.BACKGROUND);
+
+            timer.start("drawableBackground");
+            renderDrawableOverlay(g, drawableRenderers.get(Layer.BACKGROUND), v, drawables);
+            timer.stop("drawableBackground");
+
+            if (!background.isEmpty()) {
+              timer.start("tokensBackground");
+              renderTokens(g, background, v);
+              timer.stop("tokensBackground");
+            }
+          });
+    } else {
+      layerCache.release(Layer.BACKGROUND);
     }
     if (shouldRenderLayer(Zone.Layer.OBJECT, view)) {
-      // Drawables on the object layer are always below the grid, and...
-      List<DrawnElement> drawables = zone.getDrawnElements(Layer.OBJECT);
-
-      timer.start("drawableObjects");
-      renderDrawableOverlay(g2d, drawableRenderers.get(Layer.OBJECT), view, drawables);
-      timer.stop("drawableObjects");
-    }
-    timer.start("grid");
-
-    gridRenderer.renderGrid(g2d, view);
-    timer.stop("grid");
+      List<Token> stamps = getVisibleTokensOnLayer(Layer.OBJECT);
+      renderLayer(
+          g2d,
+          view,
+          Layer.OBJECT,
+          stamps,
+          retainLayers,
+          (g, v) -> {
+            // Drawables on the object layer are always below the grid, and...
+            List<DrawnElement> drawables = zone.getDrawnElements(Layer.OBJECT);
+
+            timer.start("drawableObjects");
+            renderDrawableOverlay(g, drawableRenderers.get(Layer.OBJECT), v, drawables);
+            timer.stop("drawableObjects");
+
+            timer.start("grid");
+            gridRenderer.renderGrid(g, v);
+            timer.stop("grid");
+
+            // ... Images on the object layer are always ABOVE the grid.
+            if (!stamps.isEmpty()) {
+              timer.start("tokensStamp");
+              renderTokens(g, stamps, v);
+              timer.stop("tokensStamp");
+            }
+          });
+    } else {
+      layerCache.release(Layer.OBJECT);
 
-    if (shouldRenderLayer(Zone.Layer.OBJECT, view)) {
-      // ... Images on the object layer are always ABOVE the grid.
-      List<Token> stamps = zone.getTokensOnLayer(Layer.OBJECT, false);
-      if (!stamps.isEmpty()) {
-        timer.start("tokensStamp");
-        renderTokens(g2d, stamps, view);
-        timer.stop("tokensStamp");
-      }
+      timer.start("grid");
+      gridRenderer.renderGrid(g2d, view);
+      timer.stop("grid");
     }
     if (shouldRenderLayer(Zone.Layer.TOKEN, view)) {
       this.lightsRenderer.renderLights(g2d, view);
@@ -967,14 +1014,14 @@ public void renderZone(Graphics2D g2d, @Nullable PlayerView view) {
         renderDrawableOverlay(g2d, drawableRenderers.get(Layer.GM), view, drawables);
         timer.stop("drawableGM");
 
-        List<Token> stamps = zone.getTokensOnLayer(Layer.GM, false);
+        List<Token> stamps = getVisibleTokensOnLayer(Layer.GM);
         if (!stamps.isEmpty()) {
           timer.start("tokensGM");
           renderTokens(g2d, stamps, view);
           timer.stop("tokensGM");
         }
       }
-      List<Token> tokens = zone.getTokensOnLayer(Layer.TOKEN, false);
+      List<Token> tokens = getVisibleTokensOnLayer(Layer.TOKEN);
       if (!tokens.isEmpty()) {
         timer.start("tokens");
         renderTokens(g2d, tokens, view);
@@ -1052,6 +1099,151 @@ public void renderZone(Graphics2D g2d, @Nullable PlayerView view) {
     debugRenderer.renderShapes(g2d, Arrays.asList(shape, shape2, shape3, shape4));
   }
 
+  /**
+   * Renders one of the layers below the tokens, drawing it from its retained surface when nothing
+   * it depends on has changed.
+   *
+   * <p>A layer is rendered directly, and its surface released, while it is the active layer or any
+   * of its tokens is being moved or showing its path, as selection borders, labels and movement
+   * are drawn for those and change from frame to frame.
+   *
+   * @param g2d the graphics to render on.
+   * @param view the view being rendered.
+   * @param layer the layer to render.
+   * @param tokens the tokens rendered as part of the layer.
+   * @param retainLayers whether the layer may be drawn from its retained surface.
+   * @param renderer renders the layer onto the graphics it is given, for the given view.
+   */
+  private void renderLayer(
+      Graphics2D g2d,
+      PlayerView view,
+      Layer layer,
+      List<Token> tokens,
+      boolean retainLayers,
+      BiConsumer<Graphics2D, PlayerView> renderer) {
+    final var timer = CodeTimer.get();
+    timer.start("layer: %s", layer);
+    if (!retainLayers || !canRetainLayer(layer, tokens)) {
+      layerCache.release(layer);
+      renderer.accept(g2d, view);
+    } else {
+      Set<GUID> tokenIds = new HashSet<>();
+      for (Token token : tokens) {
+        tokenIds.add(token.getId());
+      }
+      Set<GUID> selectedTokenIds =
+          Sets.intersection(selectionModel.getSelectedTokenIds(), tokenIds).immutableCopy();
+      var key =
+          new LayerCache.Key(
+              zoneScale.getOffsetX(),
+              zoneScale.getOffsetY(),
+              getScale(),
+              view,
+              new RetainedLayerState(
+                  tokenUnderMouse != null && tokenUnderMouse.getLayer() == layer
+                      ? tokenUnderMouse
+                      : null,
+                  AppState.isShowGrid(),
+                  AppState.getGridLineWeight(),
+                  zone.getGridColor(),
+                  view.isGMView() || !zoneView.isUsingVision()
+                      ? null
+                      : viewModel.getVisibleArea(),
+                  tokenIds,
+                  AppState.isShowTokenNames(),
+                  selectedTokenIds));
+      ImageObserver layerObserver = layerCache.getImageObserver(layer);
+      if (layerCache.draw(
+          g2d, layer, key, tokenIds, g -> renderRetainedLayer(g, view, layerObserver, renderer))) {
+        timer.increment("layer: " + layer + " (retained)");
+      }
+    }
+    timer.stop("layer: %s", layer);
+  }
+
+  /**
+   * Renders a layer into its retained surface, requesting its images with the observer of the
+   * layer so that an image update only invalidates the layers the image is drawn on.
+   */
+  private void renderRetainedLayer(
+      Graphics2D g,
+      PlayerView view,
+      ImageObserver layerObserver,
+      BiConsumer<Graphics2D, PlayerView> renderer) {
+    imageObserver = layerObserver;
+    try {
+      renderer.accept(g, view);
+    } finally {
+      imageObserver = this;
+    }
+  }
+
+  /**
+   * Returns the observer to request images with. This is the renderer itself, except while a
+   * layer is being rendered into its retained surface.
+   *
+   * @return the image observer.
+   */
+  public ImageObserver getImageObserver() {
+    return imageObserver;
+  }
+
+  private boolean canRetainLayer(Layer layer, List<Token> tokens) {
+    if (layer == getActiveLayer()) {
+      return false;
+    }
+    for (Token token : tokens) {
+      if (viewModel.isTokenMoving(token.getId()) || showPathList.contains(token)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The state outside of the layer itself that a retained layer depends on.
+   *
+   * <p>The visible area is compared by identity, which is what {@link Area} inherits from {@link
+   * Object}; the zone view creates a new area whenever vision changes. The tokens of the layer
+   * include only those visible in the view, so tokens that fog or vision hide or reveal are picked
+   * up. Token names and selection borders are only drawn on the active layer, which is never
+   * retained, but they are part of the state so that a retained layer can't show stale ones.
+   */
+  private record RetainedLayerState(
+      Token tokenUnderMouse,
+      boolean showGrid,
+      int gridLineWeight,
+      int gridColor,
+      Area visibleArea,
+      Set<GUID> tokenIds,
+      boolean showTokenNames,
+      Set<GUID> selectedTokenIds) {}
+
+  /**
+   * Marks the retained background and object layers as changed, so they are rendered again on the
+   * next repaint.
+   */
+  public void invalidateLayerCache() {
+    layerCache.invalidateAll();
+  }
+
+  /**
+   * Gets the tokens on a layer that are visible in the view, leaving out the always visible tokens
+   * that are rendered on top of fog.
+   *
+   * @param layer the layer.
+   * @return the tokens, in z-order.
+   */
+  private List<Token> getVisibleTokensOnLayer(Layer layer) {
+    var tokens = new ArrayList<Token>();
+    for (Token token : viewModel.getVisibleTokenList(layer)) {
+      if (!token.isAlwaysVisible()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+
   private void delayRendering(ItemRenderer renderer) {
     itemRenderList.add(renderer);
   }
@@ -1070,6 +1262,12 @@ private void renderRenderables(Graphics2D g) {
    */
   private final BufferedImagePool tempBufferPool = new BufferedImagePool(2);
 
+  /** Retained surfaces for the layers below the tokens. */
+  private final LayerCache layerCache = new LayerCache(this);
+
+  /** The observer images are requested with, see {@link #getImageObserver()}. */
+  private ImageObserver imageObserver = this;
+
   private void renderLabels(Graphics2D g, PlayerView view) {
     final var timer = CodeTimer.get();
 
@@ -1800,7 +1998,7 @@ protected void renderTokens(
 
       timer.start("token-list-1b");
       // get token image, using image table if present
-      BufferedImage image = ImageSupport.getTokenImage(token, this);
+      BufferedImage image = ImageSupport.getTokenImage(token, imageObserver);
       timer.stop("token-list-1b");
 
       timer.start("token-list-5a");
@@ -2128,7 +2326,8 @@ public List<GUID> getTokenIdsInBounds(Rectangle screenRect) {
     var rect = zoneScale.toWorldSpace(screenRect);
 
     final var tokens = new ArrayList<GUID>();
-    for (ZoneViewModel.TokenPosition position : getTokenPositions(getActiveLayer())) {
+    for (ZoneViewModel.TokenPosition position :
+        viewModel.getTokenPositionsInBounds(getActiveLayer(), rect)) {
       if (rect.intersects(position.transformedBounds().getBounds())) {
         tokens.add(position.token().getId());
       }
@@ -2190,7 +2389,10 @@ public Rectangle getLabelBounds(Label label) {
     var zonePoint = ScreenPoint.convertToZone2d(this, x, y);
 
     List<ZoneViewModel.TokenPosition> positionList =
-        new ArrayList<>(getTokenPositions(getActiveLayer()));
+        new ArrayList<>(
+            viewModel.getTokenPositionsInBounds(
+                getActiveLayer(),
+                new Rectangle2D.Double(zonePoint.getX(), zonePoint.getY(), 0, 0)));
     Collections.reverse(positionList);
     for (ZoneViewModel.TokenPosition location : positionList) {
       if (location.transformedBounds().contains(zonePoint)) {
@@ -2302,7 +2504,11 @@ public double getScaledGridSize() {
     return getScale() * zone.getGrid().getSize();
   }
 
-  /** This makes sure that any image updates get refreshed. This could be a little smarter. */
+  /**
+   * This makes sure that any image updates get refreshed. Images drawn on retained layers are
+   * requested with the observer of their layer, which invalidates the layer before passing the
+   * update on to here.
+   */
   @Override
   public boolean imageUpdate(Image img, int infoFlags, int x, int y, int w, int h) {
     repaintDebouncer.dispatch();
@@ -2560,9 +2766,12 @@ private void onTokensAdded(TokensAdded event) {
       return;
     }
 
+    viewModel.tokensChanged(event.tokens());
     for (Token token : event.tokens()) {
       flush(token);
+      layerCache.invalidateToken(token.getId(), token.getLayer());
     }
+    updatePinnedImages();
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
   }
@@ -2573,21 +2782,58 @@ private void onTokensRemoved(TokensRemoved event) {
       return;
     }
 
+    viewModel.tokensChanged(event.tokens());
     for (Token token : event.tokens()) {
       flush(token);
+      layerCache.invalidateToken(token.getId(), token.getLayer());
     }
+    updatePinnedImages();
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
   }
 
+  /** Keeps the images of the tokens on the map pinned in the image cache while it is displayed. */
+  private void updatePinnedImages() {
+    if (MapTool.getFrame().getCurrentZoneRenderer() == this) {
+      ImageManager.setPinnedImages(zone.getAllAssetIds());
+    }
+  }
+
+  @Subscribe
+  private void onZoneContentLoaded(ZoneContentLoaded event) {
+    zoneContentReplaced(event.zone());
+  }
+
+  @Subscribe
+  private void onZoneContentUnloaded(ZoneContentUnloaded event) {
+    zoneContentReplaced(event.zone());
+  }
+
+  /**
+   * The content of the zone has been read from or dropped to its store, so everything cached for
+   * the old tokens and drawables is thrown away.
+   */
+  private void zoneContentReplaced(Zone zone) {
+    if (zone != this.zone) {
+      return;
+    }
+
+    flush();
+    layerCache.invalidateAll();
+    MapTool.getFrame().updateTokenTree();
+    repaintDebouncer.dispatch();
+  }
+
   @Subscribe
   private void onTokensChanged(TokensChanged event) {
     if (event.zone() != this.zone) {
       return;
     }
 
+    viewModel.tokensChanged(event.tokens());
     for (Token token : event.tokens()) {
       flush(token);
+      layerCache.invalidateToken(token.getId(), token.getLayer());
     }
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
@@ -2600,6 +2846,8 @@ private void onFogChanged(FogChanged event) {
     }
 
     zoneView.flushFog();
+    // Fog decides which tokens players see, on every layer
+    layerCache.invalidateAll();
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
   }
@@ -2627,8 +2875,9 @@ private void onTopologyChanged(MaskTopologyChanged event) {
     onTopologyChanged();
   }
 
-  private void markDrawableLayerDirty(Layer layer) {
-    drawableRenderers.get(layer).setDirty();
+  private void markDrawableDirty(DrawnElement element) {
+    drawableRenderers.get(element.getDrawable().getLayer()).drawableChanged(element);
+    layerCache.invalidate(element.getDrawable().getLayer());
   }
 
   @Subscribe
@@ -2636,7 +2885,17 @@ private void onDrawableAdded(DrawableAdded event) {
     if (event.zone() != this.zone) {
       return;
     }
-    markDrawableLayerDirty(event.drawnElement().getDrawable().getLayer());
+    markDrawableDirty(event.drawnElement());
+    MapTool.getFrame().updateTokenTree(); // for any event
+    repaintDebouncer.dispatch();
+  }
+
+  @Subscribe
+  private void onDrawableChanged(DrawableChanged event) {
+    if (event.zone() != this.zone) {
+      return;
+    }
+    markDrawableDirty(event.drawnElement());
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
   }
@@ -2646,7 +2905,7 @@ private void onDrawableRemoved(DrawableRemoved event) {
     if (event.zone() != this.zone) {
       return;
     }
-    markDrawableLayerDirty(event.drawnElement().getDrawable().getLayer());
+    markDrawableDirty(event.drawnElement());
     MapTool.getFrame().updateTokenTree(); // for any event
     repaintDebouncer.dispatch();
   }
@@ -2666,8 +2925,9 @@ private void onGridChanged(GridChanged event) {
       return;
     }
 
-    // A change in grid can change the size of templates.
+    // A change in grid can change the size of templates, and the footprints of tokens.
     flushDrawableRenderer();
+    viewModel.flushTokenPositions();
     repaintDebouncer.dispatch();
   }
 
@@ -65,11 +65,15 @@ public void renderToken(Token token, TokenPosition position, Graphics2D g2d, flo
     timer.stop("TokenRenderer-renderToken");
   }
 
+  private boolean isUsingImageTable(Token token) {
+    return token.getHasImageTable() && imageTableMap.containsKey(token.getImageTableName());
+  }
+
   private BufferedImage getRenderImage(Token token) {
     var timer = CodeTimer.get();
     timer.start("TokenRenderer-getRenderImage");
     BufferedImage bi = ImageManager.BROKEN_IMAGE;
-    if (token.getHasImageTable() && imageTableMap.containsKey(token.getImageTableName())) {
+    if (isUsingImageTable(token)) {
       Map<Integer, BufferedImage> imageTable = imageTableMap.get(token.getImageTableName());
       int max = imageTable.keySet().stream().max(Integer::compareTo).orElse(Integer.MAX_VALUE);
       if (max != Integer.MAX_VALUE) {
@@ -103,6 +107,29 @@ private void paintTokenImage(Graphics2D g2d, TokenPosition position, float opaci
             new Dimension(renderImage.getWidth(), renderImage.getHeight()),
             position.footprintBounds());
 
+    // When zoomed out, draw a smaller level of the image rather than having Java2D downsample the
+    // full size image every frame.
+    if (!isUsingImageTable(token)) {
+      var screenTransform = new AffineTransform(g2d.getTransform());
+      screenTransform.concatenate(imageTransform);
+      double scale =
+          Math.max(
+              Math.hypot(screenTransform.getScaleX(), screenTransform.getShearY()),
+              Math.hypot(screenTransform.getShearX(), screenTransform.getScaleY()));
+      var mipImage = ImageSupport.getTokenImage(token, scale, renderHelper.getImageObserver());
+      if (mipImage != renderImage
+          && mipImage.getWidth() < renderImage.getWidth()
+          && mipImage.getHeight() < renderImage.getHeight()) {
+        renderImage = mipImage;
+        imageTransform =
+            TokenUtil.getRenderTransform(
+                zone,
+                token,
+                new Dimension(renderImage.getWidth(), renderImage.getHeight()),
+                position.footprintBounds());
+      }
+    }
+
     if (opacity < 1.0f) {
       g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
     }
@@ -26,6 +26,9 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharsetDecoder;
@@ -40,11 +43,14 @@
 import javax.imageio.stream.ImageInputStream;
 import net.rptools.lib.MD5Key;
 import net.rptools.lib.image.ImageUtil;
+import net.rptools.lib.io.FileRegion;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.model.library.addon.AddOnLibraryImporter;
 import net.rptools.maptool.server.proto.AssetDto;
 import net.rptools.maptool.server.proto.AssetDtoType;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.io.TikaInputStream;
@@ -54,6 +60,8 @@
 /** Asset used in the campaign. */
 public final class Asset {
 
+  private static final Logger log = LogManager.getLogger(Asset.class);
+
   /** The type of {@code Asset}. */
   public enum Type {
 
@@ -224,10 +232,16 @@ public static Type fromMediaType(MediaType mediaType, String filename) {
    */
   private final transient JsonElement json;
 
-  /** The data that makes up the {@code Asset}. */
+  /** The data that makes up the {@code Asset}, {@code null} if it is held in a file region. */
   @XStreamConverter(AssetImageConverter.class)
   private final transient byte[] data;
 
+  /** The file region holding the data of the {@code Asset}, if it is not held in memory. */
+  private final transient FileRegion dataRegion;
+
+  /** The last copy of {@link #dataRegion} returned by {@link #getData()}. */
+  private transient volatile SoftReference<byte[]> regionData;
+
   /**
    * Create an {@code Asset} for an image.
    *
@@ -467,6 +481,7 @@ public static Asset createAsset(String name, byte[] data, Type type) {
   private Asset(MD5Key key, String name, byte[] data, Type type, String extension, boolean broken) {
     assert data != null;
     this.data = Arrays.copyOf(data, data.length);
+    this.dataRegion = null;
     this.name = name;
     this.type = type;
     this.broken = broken;
@@ -526,6 +541,7 @@ private Asset(String name, BufferedImage image, boolean broken) {
       throw new AssertionError(e); // Shouldn't happen
     }
 
+    this.dataRegion = null;
     if (imageData != null) {
       this.data = imageData;
       extension = determineImageExtension();
@@ -564,6 +580,7 @@ private Asset(String name, BufferedImage image, boolean broken) {
   private Asset(MD5Key key, String name, byte[] data, String extension, Type type, boolean broken) {
     this.name = name;
     this.data = Arrays.copyOf(data, data.length);
+    this.dataRegion = null;
     this.extension = extension;
     this.type = type;
     this.md5Key = key != null ? key : new MD5Key(this.data);
@@ -589,11 +606,64 @@ private Asset(MD5Key key, String name, String extension, Type type, boolean brok
     this.extension = extension;
     this.type = type;
     data = new byte[0];
+    dataRegion = null;
     dataAsString = null;
     json = null;
     this.broken = broken;
   }
 
+  /**
+   * Creates a new {@code Asset} whose data stays in a file region until it is needed.
+   *
+   * @param key the MD5 sum of the data in the region.
+   * @param name The name of the {@code Asset}.
+   * @param type The {@link Type} of the {@code Asset}, which must not be a string type.
+   * @param region the region holding the data.
+   * @throws IOException if the region can not be read to determine the extension.
+   */
+  private Asset(MD5Key key, String name, Type type, FileRegion region) throws IOException {
+    assert !type.isStringType();
+    this.md5Key = key;
+    this.name = name;
+    this.type = type;
+    this.data = null;
+    this.dataRegion = region;
+    this.dataAsString = null;
+    this.json = null;
+    this.broken = false;
+    if (type == Type.DATA) {
+      this.extension = DATA_EXTENSION;
+    } else if (type.getDefaultExtension().isEmpty()) {
+      this.extension = determineImageExtension();
+    } else {
+      this.extension = type.getDefaultExtension();
+    }
+  }
+
+  /**
+   * Creates an {@code Asset} whose data is held in a file region rather than in memory, such as a
+   * file in the asset cache. The data is only read when it is needed, so large images do not sit
+   * on the heap while they are not being decoded or sent. {@code Asset}s that must be usable as a
+   * {@link String} are read straight away.
+   *
+   * <p>The region must not change while the {@code Asset} is in use. The key is trusted, callers
+   * should check it against the data if the region could be corrupt.
+   *
+   * @param key the MD5 sum of the data in the region.
+   * @param name The name of the {@code Asset}.
+   * @param type The {@link Type} of the {@code Asset}.
+   * @param region the region holding the data.
+   * @return the {@code Asset}.
+   * @throws IOException if the region can not be read.
+   */
+  public static Asset createFileBackedAsset(MD5Key key, String name, Type type, FileRegion region)
+      throws IOException {
+    if (type.isStringType() || type == Type.INVALID) {
+      return type.getFactory().apply(name, region.readAllBytes());
+    }
+    return new Asset(key, name, type, region);
+  }
+
   /**
    * Returns the MD5 Sum of the {@code Asset}.
    *
@@ -607,10 +677,65 @@ public MD5Key getMD5Key() {
    * Returns the data for this {@code Asset}.
    *
    * @return the data for this {@code Asset}.
+   * @throws UncheckedIOException if the data is held in a file region that can not be read.
    */
   public byte[] getData() {
-    return data; // This should be a defensive copy but that really blows out memory on load/save
-    // campaign
+    if (dataRegion == null) {
+      return data; // This should be a defensive copy but that really blows out memory on
+      // load/save campaign
+    }
+
+    // Keep the copy while it is in use so repeated calls do not read the region again, but let it
+    // be collected once the callers are done with it.
+    var cached = regionData;
+    byte[] bytes = cached == null ? null : cached.get();
+    if (bytes == null) {
+      try {
+        bytes = dataRegion.readAllBytes();
+      } catch (IOException e) {
+        log.error("Unable to read data for asset {} from {}", md5Key, dataRegion.path(), e);
+        throw new UncheckedIOException(e);
+      }
+      regionData = new SoftReference<>(bytes);
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the number of bytes of data in this {@code Asset}, without reading it if it is held in
+   * a file region.
+   *
+   * @return the length of the data.
+   */
+  public long getDataLength() {
+    if (dataRegion != null) {
+      return dataRegion.length();
+    }
+    return data == null ? 0 : data.length;
+  }
+
+  /**
+   * Returns if the data of this {@code Asset} is held in a file region rather than in memory.
+   *
+   * @return {@code true} if the data is held in a file region.
+   */
+  public boolean isFileBacked() {
+    return dataRegion != null;
+  }
+
+  /**
+   * Writes the data of this {@code Asset} to a stream. Data held in a file region is copied
+   * without being read onto the heap.
+   *
+   * @param out the stream to write to.
+   * @throws IOException if the data can not be read or written.
+   */
+  public void writeData(OutputStream out) throws IOException {
+    if (dataRegion != null) {
+      dataRegion.transferTo(out);
+    } else {
+      out.write(data);
+    }
   }
 
   /**
@@ -633,14 +758,15 @@ public Asset setData(byte[] data, boolean recalcMd5) {
   private String determineImageExtension() {
     String ext = "";
     try {
-      if (data != null && data.length >= 4) {
-        InputStream is = new ByteArrayInputStream(data);
-        ImageInputStream iis = ImageIO.createImageInputStream(is);
-        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
-        if (readers.hasNext()) {
-          ImageReader reader = readers.next();
-          reader.setInput(iis);
-          ext = reader.getFormatName().toLowerCase();
+      if (getDataLength() >= 4) {
+        try (InputStream is = getDataAsInputStream()) {
+          ImageInputStream iis = ImageIO.createImageInputStream(is);
+          Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+          if (readers.hasNext()) {
+            ImageReader reader = readers.next();
+            reader.setInput(iis);
+            ext = reader.getFormatName().toLowerCase();
+          }
         }
         // We can store more than images, eg HeroLabData in the form of a HashMap, assume this if
         // an image type can not be established
@@ -723,7 +849,12 @@ public boolean isStringAsset() {
 
   @Override
   public String toString() {
-    return md5Key + "/" + name + "(" + (data != null ? data.length : "-") + ")";
+    return md5Key
+        + "/"
+        + name
+        + "("
+        + (data != null || dataRegion != null ? getDataLength() : "-")
+        + ")";
   }
 
   @Override
@@ -828,8 +959,12 @@ private boolean isBroken() {
    * Returns an {@link InputStream} for the {@code Asset}.
    *
    * @return the {@link InputStream} for the {@code Asset}.
+   * @throws IOException if the data is held in a file region that can not be opened.
    */
-  public InputStream getDataAsInputStream() {
+  public InputStream getDataAsInputStream() throws IOException {
+    if (dataRegion != null) {
+      return dataRegion.openStream();
+    }
     return new ByteArrayInputStream(data);
   }
 
@@ -865,8 +1000,9 @@ public AssetDto toDto() {
             .setExtension(getExtension())
             .setType(AssetDtoType.valueOf(getType().name()));
 
-    if (getData() != null) {
-      builder.setData(ByteString.copyFrom(data));
+    byte[] bytes = getData();
+    if (bytes != null) {
+      builder.setData(ByteString.copyFrom(bytes));
     }
     return builder.build();
   }
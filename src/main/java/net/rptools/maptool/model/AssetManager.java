@@ -42,6 +42,7 @@
 import java.util.concurrent.ForkJoinPool;
 import net.rptools.lib.FileUtil;
 import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.FileRegion;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.language.I18N;
@@ -108,6 +109,10 @@ public class AssetManager {
   public static void clearCache() {
     try {
       if (cacheDir != null) {
+        // Assets that read their data from the cache would lose it.
+        synchronized (assetMap) {
+          assetMap.values().removeIf(Asset::isFileBacked);
+        }
         FileUtils.cleanDirectory(cacheDir);
       }
     } catch (IOException e) {
@@ -238,14 +243,14 @@ public static void putAsset(Asset asset) {
 
     synchronized (assetMap) {
       var oldAsset = assetMap.get(asset.getMD5Key());
-      if (oldAsset == null || oldAsset.getData() == null || oldAsset.getData().length == 0) {
+      if (oldAsset == null || oldAsset.getDataLength() == 0) {
         assetMap.put(asset.getMD5Key(), asset);
       }
     }
 
     // Invalid images are represented by empty assets.
     // Don't persist those
-    if (asset.getData().length > 0) {
+    if (asset.getDataLength() > 0) {
       putInPersistentCache(asset);
     }
 
@@ -278,7 +283,7 @@ public static void getAssetAsynchronously(
           Asset asset = getAsset(id);
 
           // Simplest case, we already have it
-          if (asset != null && asset.getData() != null && asset.getData().length > 0) {
+          if (asset != null && asset.getDataLength() > 0) {
             for (AssetAvailableListener listener : listeners) {
               listener.assetAvailable(id);
             }
@@ -445,7 +450,6 @@ private static Asset getFromPersistentCache(MD5Key id) {
     File assetFile = getAssetCacheFile(id);
 
     try {
-      byte[] data = FileUtils.readFileToByteArray(assetFile);
       Properties props = getAssetInfo(id);
 
       String name = props.getProperty(NAME);
@@ -454,12 +458,25 @@ private static Asset getFromPersistentCache(MD5Key id) {
       Asset asset;
 
       if (type != null) {
-        asset = Asset.Type.valueOf(type).getFactory().apply(name, data);
+        // Leave the data in the cache file until it is needed, the hash is checked by streaming
+        // the file so that it is never read onto the heap here.
+        asset =
+            Asset.createFileBackedAsset(
+                id, name, Asset.Type.valueOf(type), FileRegion.of(assetFile.toPath()));
       } else {
-        asset = Asset.createAssetDetectType(props.getProperty(NAME), data);
+        asset =
+            Asset.createAssetDetectType(
+                props.getProperty(NAME), FileUtils.readFileToByteArray(assetFile));
+      }
+
+      MD5Key dataKey = asset.getMD5Key();
+      if (asset.isFileBacked()) {
+        try (InputStream is = new BufferedInputStream(asset.getDataAsInputStream())) {
+          dataKey = new MD5Key(is);
+        }
       }
 
-      if (!asset.getMD5Key().equals(id)) {
+      if (!dataKey.equals(id)) {
         log.error("MD5 for asset " + asset.getName() + " corrupted; purging corrupted file");
         assetFile.delete();
         return null;
@@ -467,7 +484,7 @@ private static Asset getFromPersistentCache(MD5Key id) {
 
       synchronized (assetMap) {
         var oldAsset = assetMap.get(id);
-        if (oldAsset == null || oldAsset.getData() == null || oldAsset.getData().length == 0) {
+        if (oldAsset == null || oldAsset.getDataLength() == 0) {
           assetMap.put(id, asset);
         }
       }
@@ -522,6 +539,52 @@ public static Asset createAsset(URL url, Asset.Type assetType) throws IOExceptio
     }
   }
 
+  /**
+   * Creates an asset by copying its data from a stream straight into the persistent cache. The
+   * returned asset reads its data from the cache file, so large images are never held on the heap
+   * while a campaign is loaded. If the data can not be cached, or does not match {@code id}, the
+   * asset is created in memory as {@link Asset.Type#getFactory()} would.
+   *
+   * @param id the expected MD5 sum of the data.
+   * @param name the name of the asset.
+   * @param type the type of the asset.
+   * @param in the stream providing the data, which is not closed.
+   * @return the asset.
+   * @throws IOException if the data can not be read.
+   */
+  public static Asset createCachedAsset(MD5Key id, String name, Asset.Type type, InputStream in)
+      throws IOException {
+    if (!usePersistentCache
+        || type.isStringType()
+        || type == Asset.Type.INVALID
+        || sanitizeAssetId(id) != id) {
+      return type.getFactory().apply(name, in.readAllBytes());
+    }
+
+    File assetFile = getAssetCacheFile(id);
+    if (!assetIsInPersistentCache(id)) {
+      assetFile.getParentFile().mkdirs();
+      try (var operation = new AssetWriteRenameOperation(assetFile)) {
+        try (var temporaryFileStream = new FileOutputStream(operation.temporaryFile)) {
+          in.transferTo(temporaryFileStream);
+        }
+
+        MD5Key dataKey;
+        try (InputStream is =
+            new BufferedInputStream(new FileInputStream(operation.temporaryFile))) {
+          dataKey = new MD5Key(is);
+        }
+        if (!dataKey.equals(id)) {
+          log.warn("Data for asset {} does not match its id, loading it as {}", id, dataKey);
+          return type.getFactory()
+              .apply(name, FileUtils.readFileToByteArray(operation.temporaryFile));
+        }
+        operation.commit();
+      }
+    }
+    return Asset.createFileBackedAsset(id, name, type, FileRegion.of(assetFile.toPath()));
+  }
+
   /**
    * Return a set of properties associated with the asset.
    *
@@ -560,11 +623,12 @@ private static void putInPersistentCache(final Asset asset) {
 
             try (var operation = new AssetWriteRenameOperation(assetFile)) {
               try (var temporaryFileStream = new FileOutputStream(operation.temporaryFile)) {
-                temporaryFileStream.write(asset.getData());
+                asset.writeData(temporaryFileStream);
               }
 
               // Now that the data is in a file, we move it to its final resting place.
               operation.commit();
+              releaseToPersistentCache(asset, assetFile);
             } catch (IOException ioe) {
               log.error("Could not persist asset while writing image data", ioe);
             } catch (NullPointerException npe) {
@@ -587,6 +651,29 @@ private static void putInPersistentCache(final Asset asset) {
     }
   }
 
+  /**
+   * Replaces an in memory asset that has just been written to the persistent cache with one that
+   * reads its data from the cache file, so that the data of large images does not stay on the
+   * heap. String assets are left alone as they keep their decoded text anyway.
+   *
+   * @param asset the asset that was written.
+   * @param assetFile the cache file it was written to.
+   */
+  private static void releaseToPersistentCache(Asset asset, File assetFile) {
+    if (asset.isFileBacked() || asset.isStringAsset() || asset.getType() == Asset.Type.INVALID) {
+      return;
+    }
+    try {
+      var region = FileRegion.of(assetFile.toPath());
+      Asset fileBacked =
+          Asset.createFileBackedAsset(asset.getMD5Key(), asset.getName(), asset.getType(), region);
+      // Only replace the asset if nothing else has been put in its place in the meantime.
+      assetMap.replace(asset.getMD5Key(), asset, fileBacked);
+    } catch (IOException ioe) {
+      log.warn("Could not map asset {} from the persistent cache", asset.getMD5Key(), ioe);
+    }
+  }
+
   /**
    * Return the file associated with the asset, if any.
    *
@@ -272,6 +272,7 @@ public List<TokenProperty> getTokenPropertyList(String tokenType) {
 
   public void putTokenType(String name, List<TokenProperty> propertyList) {
     getTokenTypeMap().put(name, propertyList);
+    EvaluatedPropertyScope.propertyTypesChanged();
   }
 
   /**
@@ -429,10 +430,12 @@ public void setHasUsedFogToolbar(boolean b) {
 
   public void mergeCampaignProperties(CampaignProperties properties) {
     properties.mergeInto(campaignProperties);
+    EvaluatedPropertyScope.propertyTypesChanged();
   }
 
   public void replaceCampaignProperties(CampaignProperties properties) {
     campaignProperties = new CampaignProperties(properties);
+    EvaluatedPropertyScope.propertyTypesChanged();
   }
 
   /**
@@ -734,6 +737,17 @@ public static Campaign fromDto(CampaignDto dto) {
   }
 
   public CampaignDto toDto() {
+    return toDto(true);
+  }
+
+  /**
+   * Converts this campaign to a {@link CampaignDto}.
+   *
+   * @param includeZones if {@code false} the zones are left out, so they can be converted one at a
+   *     time by the caller.
+   * @return the {@link CampaignDto} for this campaign.
+   */
+  public CampaignDto toDto(boolean includeZones) {
     var dto = CampaignDto.newBuilder();
     dto.setId(id.toString());
     dto.setName(name);
@@ -754,7 +768,9 @@ public CampaignDto toDto() {
         macroButtonProperties.stream()
             .map(MacroButtonProperties::toDto)
             .collect(Collectors.toList()));
-    dto.addAllZones(zones.values().stream().map(Zone::toDto).collect(Collectors.toList()));
+    if (includeZones) {
+      dto.addAllZones(getZones().stream().map(Zone::toDto).collect(Collectors.toList()));
+    }
     // gmMacroButtonProperties is null if you are loading an old campaign file < 1.5.6
     if (gmMacroButtonProperties != null) {
       dto.addAllGmMacroButtonProperties(
@@ -0,0 +1,202 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import com.google.gson.JsonElement;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the evaluated values of token properties while a scope is open, so that a property
+ * read many times in one macro run, or while one stat sheet is drawn, is only evaluated once.
+ *
+ * <p>A scope belongs to the thread that opened it. Opening a scope while one is already open on
+ * the thread joins the outer scope, so a macro run that starts while a stat sheet is drawn shares
+ * its values. Closing a joined scope does nothing. Work
+ * that a thread hands to another thread and waits for, such as a step of a background macro run
+ * on the Swing thread, can use the waiting thread's scope with {@link #setCurrent}.
+ *
+ * <p>A remembered value is discarded when its token changes in a way that properties commonly
+ * read, or when the campaign's token property types change. That is a property, the property
+ * type, the name, GM name, label, notes, GM notes, a state or bar, the position or the facing of
+ * the token; see {@link Token#getPropertyVersion()}. Values that depend on anything else, such as
+ * other tokens, the token's owners or lights, or chance, are not detected, apart from dice rolls,
+ * which {@link Token} never remembers. Macros that read such properties can turn memoization off
+ * for the rest of the run with {@code setPropertyMemoization(0)}.
+ *
+ * <p>Json values are copied when they are remembered and when they are returned, as callers may
+ * change them.
+ */
+public final class EvaluatedPropertyScope implements AutoCloseable {
+  private static final ThreadLocal<EvaluatedPropertyScope> CURRENT = new ThreadLocal<>();
+
+  /** Returned when a scope is already open; it is never current, so closing it does nothing. */
+  private static final EvaluatedPropertyScope JOINED = new EvaluatedPropertyScope();
+
+  /** Changed whenever the token property types of the campaign change. */
+  private static final AtomicInteger propertyTypesVersion = new AtomicInteger();
+
+  /**
+   * A remembered value.
+   *
+   * @param tokenVersion the property version of the token when the value was evaluated.
+   * @param typesVersion the version of the property types when the value was evaluated.
+   * @param value the evaluated value.
+   */
+  private record Memo(int tokenVersion, int typesVersion, Object value) {}
+
+  private final Map<Token, Map<String, Memo>> values = new IdentityHashMap<>();
+  private boolean enabled = true;
+
+  private EvaluatedPropertyScope() {}
+
+  /**
+   * Opens a scope on the current thread, or joins the scope that is already open. Use it in a
+   * try-with-resources statement.
+   *
+   * @return the scope to close when done.
+   */
+  public static EvaluatedPropertyScope open() {
+    if (CURRENT.get() != null) {
+      return JOINED;
+    }
+    var scope = new EvaluatedPropertyScope();
+    CURRENT.set(scope);
+    return scope;
+  }
+
+  @Override
+  public void close() {
+    if (CURRENT.get() == this) {
+      CURRENT.remove();
+    }
+  }
+
+  /**
+   * @return the scope open on the current thread, or {@code null} if there is none.
+   */
+  @Nullable
+  public static EvaluatedPropertyScope getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes a scope the one open on the current thread. The thread that opened the scope must wait
+   * until the previous scope is restored, as scopes are not thread safe.
+   *
+   * @param scope the scope, or {@code null} for none.
+   * @return the scope that was open before, to restore when done.
+   */
+  @Nullable
+  public static EvaluatedPropertyScope setCurrent(@Nullable EvaluatedPropertyScope scope) {
+    EvaluatedPropertyScope previous = CURRENT.get();
+    if (scope == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(scope);
+    }
+    return previous;
+  }
+
+  /**
+   * Turns memoization on or off for the rest of the scope that is open on the current thread.
+   * Turning it off also forgets the values remembered so far.
+   *
+   * @param enabled whether to remember evaluated values.
+   */
+  public static void setEnabled(boolean enabled) {
+    EvaluatedPropertyScope scope = CURRENT.get();
+    if (scope != null) {
+      scope.enabled = enabled;
+      if (!enabled) {
+        scope.values.clear();
+      }
+    }
+  }
+
+  /**
+   * @return whether evaluated values are remembered on the current thread.
+   */
+  public static boolean isEnabled() {
+    EvaluatedPropertyScope scope = CURRENT.get();
+    return scope != null && scope.enabled;
+  }
+
+  /** Forgets all remembered values, because the token property types of the campaign changed. */
+  public static void propertyTypesChanged() {
+    propertyTypesVersion.incrementAndGet();
+  }
+
+  /**
+   * Returns the remembered value of a property.
+   *
+   * @param token the token the property belongs to.
+   * @param key the name of the property.
+   * @return the value, or {@code null} if there is none or it is out of date.
+   */
+  @Nullable
+  static Object get(@Nonnull Token token, @Nonnull String key) {
+    EvaluatedPropertyScope scope = CURRENT.get();
+    if (scope == null || !scope.enabled) {
+      return null;
+    }
+    Map<String, Memo> tokenValues = scope.values.get(token);
+    Memo memo = tokenValues == null ? null : tokenValues.get(key.toLowerCase());
+    if (memo == null
+        || memo.tokenVersion() != token.getPropertyVersion()
+        || memo.typesVersion() != propertyTypesVersion.get()) {
+      return null;
+    }
+    return memo.value() instanceof JsonElement json ? json.deepCopy() : memo.value();
+  }
+
+  /**
+   * Remembers the value of a property until the scope is closed.
+   *
+   * @param token the token the property belongs to.
+   * @param key the name of the property.
+   * @param tokenVersion the property version of the token before the value was evaluated.
+   * @param typesVersion the value of {@link #getPropertyTypesVersion()} before the value was
+   *     evaluated.
+   * @param value the evaluated value.
+   */
+  static void put(
+      @Nonnull Token token,
+      @Nonnull String key,
+      int tokenVersion,
+      int typesVersion,
+      @Nonnull Object value) {
+    EvaluatedPropertyScope scope = CURRENT.get();
+    if (scope == null || !scope.enabled) {
+      return;
+    }
+    Object copy = value instanceof JsonElement json ? json.deepCopy() : value;
+    scope
+        .values
+        .computeIfAbsent(token, t -> new HashMap<>())
+        .put(key.toLowerCase(), new Memo(tokenVersion, typesVersion, copy));
+  }
+
+  /**
+   * @return the current version of the token property types.
+   */
+  public static int getPropertyTypesVersion() {
+    return propertyTypesVersion.get();
+  }
+}
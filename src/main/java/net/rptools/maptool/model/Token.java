@@ -14,11 +14,7 @@
  */
 package net.rptools.maptool.model;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.TypeAdapter;
-import com.google.gson.stream.JsonReader;
 import com.google.protobuf.Int32Value;
 import com.google.protobuf.StringValue;
 import java.awt.Color;
@@ -33,7 +29,6 @@
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.StringReader;
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -101,10 +96,6 @@ public class Token implements Cloneable {
   /** The stat sheet properties for the token. */
   @Nullable private StatSheetProperties statSheet;
 
-  /** the only way to make Gson apply strict evaluation to JsonObjects, apparently. see #2396 */
-  private static final TypeAdapter<JsonObject> strictGsonObjectAdapter =
-      new Gson().getAdapter(JsonObject.class);
-
   public boolean getAllowURIAccess() {
     if (allowURIAccess && !isLibToken()) {
       allowURIAccess = false;
@@ -368,6 +359,12 @@ public String toString() {
 
   private CaseInsensitiveHashMap<Object> propertyMapCI = new CaseInsensitiveHashMap<>();
 
+  /**
+   * Changed when a property, the property type, or anything else that properties commonly read
+   * changes; see {@link EvaluatedPropertyScope}.
+   */
+  private transient int propertyVersion;
+
   private Map<String, String> macroMap;
   private Map<Integer, MacroButtonProperties> macroPropertiesMap = new HashMap<>();
 
@@ -614,6 +611,7 @@ public String getPropertyType() {
 
   public void setPropertyType(String propertyType) {
     this.propertyType = propertyType;
+    propertyVersion++;
   }
 
   public String getGMNotes() {
@@ -626,6 +624,7 @@ public String getGMNotes() {
 
   public void setGMNotes(String notes) {
     gmNotes = notes;
+    propertyVersion++;
   }
 
   public String getGmNotesType() {
@@ -646,6 +645,7 @@ public String getGMName() {
 
   public void setGMName(String name) {
     gmName = name;
+    propertyVersion++;
   }
 
   public String getLabel() {
@@ -654,6 +654,7 @@ public String getLabel() {
 
   public void setLabel(String label) {
     this.label = label;
+    propertyVersion++;
   }
 
   public void setHaloColor(Color color) {
@@ -1099,6 +1100,7 @@ public int getZOrder() {
    */
   public void setName(String name) {
     this.name = name;
+    propertyVersion++;
   }
 
   /**
@@ -1233,11 +1235,13 @@ public int getY() {
   public void setX(int x) {
     lastX = this.x;
     this.x = x;
+    propertyVersion++;
   }
 
   public void setY(int y) {
     lastY = this.y;
     this.y = y;
+    propertyVersion++;
   }
 
   public void setLastPath(Path<? extends AbstractPoint> path) {
@@ -1720,6 +1724,7 @@ public List<String> getSetStates() {
    * @return The original value of the state, if any.
    */
   public Object setState(String aState, Object aValue) {
+    propertyVersion++;
     // the GUI sends null to mean remove a state/bar
     if (aValue == null) {
       return state.remove(aState);
@@ -1749,10 +1754,20 @@ public void setAllStates(Object aValue) {
 
   public void resetProperty(String key) {
     getPropertyMap().remove(key);
+    propertyVersion++;
   }
 
   public void setProperty(String key, Object value) {
     getPropertyMap().put(key, value);
+    propertyVersion++;
+  }
+
+  /**
+   * @return a number that changes whenever a property, the property type, the name, GM name,
+   *     label, notes, GM notes, a state or bar, the position or the facing of the token changes.
+   */
+  int getPropertyVersion() {
+    return propertyVersion;
   }
 
   public Object getProperty(String key) {
@@ -1768,13 +1783,8 @@ public Object getProperty(String key) {
    */
   @Nullable
   public String getPropertyDefault(@Nonnull String key) {
-    List<TokenProperty> propertyList =
-        MapTool.getCampaign().getCampaignProperties().getTokenPropertyList(propertyType);
-    if (propertyList == null) {
-      return null;
-    }
-
-    for (TokenProperty property : propertyList) {
+    // Campaign.getCampaignProperties() would copy every property type just to read this one.
+    for (TokenProperty property : MapTool.getCampaign().getTokenPropertyList(propertyType)) {
       if (key.equalsIgnoreCase(property.getName())) {
         return property.getDefaultValue();
       }
@@ -1799,21 +1809,12 @@ public Object evaluateProperty(
        * The normal Gson evaluator was too lenient in identifying JSON objects, so we had to move
        * that lower (see #1560). But we would really like to avoid the performance cost of
        * attempting to parse anything that actually is a proper JSON, so let's try a stricter
-       * evaluation process here first (see #2396).
+       * evaluation process here first (see #2396). Text that has been seen before is not parsed
+       * again.
        */
-      try {
-        try (JsonReader reader = new JsonReader(new StringReader(val.toString()))) {
-          JsonObject result = strictGsonObjectAdapter.read(reader);
-          // in case of a situation like {"a": 1}{"b": 2}, the above would have stopped at the first
-          // complete object.  This next line will throw an exception on finding another top-level
-          // object, allowing us to move on with other evaluation.
-          reader.hasNext();
-          if (result.isJsonObject()) {
-            return result;
-          }
-        }
-      } catch (IOException e) {
-        // deliberately ignored - continue parsing
+      JsonElement json = JSONMacroFunctions.getInstance().parseStrictJson(val.toString().trim());
+      if (json != null && json.isJsonObject()) {
+        return json;
       }
     }
     // try to convert it to a JSON array. Fixes #2057.
@@ -1856,6 +1857,11 @@ public Object getEvaluatedProperty(@Nonnull String key) {
   /**
    * Returns the evaluated property corresponding to the key.
    *
+   * <p>While an {@link EvaluatedPropertyScope} is open, such as during a macro run, the value is
+   * remembered and returned again until the token's properties change. Values are not remembered
+   * when they are evaluated with a resolver for a different token, or when evaluating them rolled
+   * dice.
+   *
    * @param resolver the variable resolver to parse code inside the property
    * @param key the key of the value
    * @return the value
@@ -1863,6 +1869,18 @@ public Object getEvaluatedProperty(@Nonnull String key) {
   @Nonnull
   public Object getEvaluatedProperty(
       @Nullable MapToolVariableResolver resolver, @Nonnull String key) {
+    boolean memoize =
+        (resolver == null || resolver.getTokenInContext() == this)
+            && EvaluatedPropertyScope.isEnabled();
+    if (memoize) {
+      Object memo = EvaluatedPropertyScope.get(this, key);
+      if (memo != null) {
+        return memo;
+      }
+    }
+
+    int tokenVersion = propertyVersion;
+    int typesVersion = EvaluatedPropertyScope.getPropertyTypesVersion();
     Object val = getProperty(key);
     if (val == null) {
       val = getPropertyDefault(key);
@@ -1870,7 +1888,16 @@ public Object getEvaluatedProperty(
     if (val == null) {
       return "";
     }
-    return evaluateProperty(resolver, key, val);
+    if (!memoize) {
+      return evaluateProperty(resolver, key, val);
+    }
+
+    long rollCount = MapTool.getParser().getRollCount();
+    Object result = evaluateProperty(resolver, key, val);
+    if (MapTool.getParser().getRollCount() == rollCount) {
+      EvaluatedPropertyScope.put(this, key, tokenVersion, typesVersion, result);
+    }
+    return result;
   }
 
   /**
@@ -2075,6 +2102,7 @@ public String getNotes() {
    */
   public void setNotes(String aNotes) {
     notes = aNotes;
+    propertyVersion++;
   }
 
   public String getNotesType() {
@@ -2200,10 +2228,12 @@ public void setFacing(int direction) {
       direction += direction < -179 ? 360 : 0;
     }
     this.facing = direction;
+    propertyVersion++;
   }
 
   public void removeFacing() {
     this.facing = null;
+    propertyVersion++;
   }
 
   /**
@@ -2674,6 +2704,22 @@ public void setHeroLabData(HeroLabData heroLabData) {
    * @param parameters An array of parameters
    */
   public void updateProperty(Zone zone, Update update, List<TokenPropertyValueDto> parameters) {
+    var events = new TokenUpdateEvents(zone);
+    updateProperty(update, parameters, events);
+    events.fire();
+  }
+
+  /**
+   * Applies an update like {@link #updateProperty(Zone, Update, List)}, but collects the events it
+   * causes instead of firing them, so that the events of many updates are fired together.
+   *
+   * @param update The method to be used
+   * @param parameters An array of parameters
+   * @param events The events of the updates, which also holds the zone where the token is
+   */
+  public void updateProperty(
+      Update update, List<TokenPropertyValueDto> parameters, TokenUpdateEvents events) {
+    Zone zone = events.getZone();
     boolean lightChanged = false;
     boolean macroChanged = false;
     boolean panelLookChanged = false; // appearance of token in a panel changed
@@ -2932,18 +2978,18 @@ public void updateProperty(Zone zone, Update update, List<TokenPropertyValueDto>
         break;
     }
     if (lightChanged) {
-      getZoneRenderer().flushLight(); // flush lights if it changed
+      events.lightChanged(this); // flush lights if it changed
     }
     if (macroChanged) {
-      zone.tokenMacroChanged(this);
+      events.macroChanged(this);
     }
     if (panelLookChanged) {
-      zone.tokenPanelChanged(this);
+      events.panelChanged(this);
     }
     if (topologyChangeType != null) {
-      zone.tokenMaskTopologyChanged(EnumSet.of(topologyChangeType));
+      events.maskTopologyChanged(topologyChangeType);
     }
-    zone.tokenChanged(this); // fire Event.TOKEN_CHANGED, which updates topology if token has VBL
+    events.tokenChanged(this); // fire Event.TOKEN_CHANGED, which updates topology if token has VBL
   }
 
   public static Token fromDto(TokenDto dto) {
@@ -0,0 +1,100 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collects the events caused by {@link Token#updateProperty(Token.Update, java.util.List,
+ * TokenUpdateEvents) updates} of tokens in a zone, so that they are fired once for all the updates
+ * instead of once per update. Updating many tokens this way posts a single {@code TokensChanged}
+ * event and flushes the lights at most once.
+ */
+public final class TokenUpdateEvents {
+  private final Zone zone;
+
+  /** The tokens that changed, in the order they were first updated. */
+  private final Set<Token> changedTokens = new LinkedHashSet<>();
+
+  private final Set<Token> macroChangedTokens = new LinkedHashSet<>();
+
+  private final Set<Token> panelChangedTokens = new LinkedHashSet<>();
+
+  private final EnumSet<Zone.TopologyType> changedTopologyTypes =
+      EnumSet.noneOf(Zone.TopologyType.class);
+
+  /** A token whose light changed, used to find the renderer to flush. */
+  private Token lightChangedToken;
+
+  /**
+   * Creates an empty set of events.
+   *
+   * @param zone the zone of the updated tokens.
+   */
+  public TokenUpdateEvents(Zone zone) {
+    this.zone = zone;
+  }
+
+  /**
+   * Returns the zone of the updated tokens.
+   *
+   * @return the zone.
+   */
+  public Zone getZone() {
+    return zone;
+  }
+
+  void tokenChanged(Token token) {
+    // the token is already changed, so queries made before the events are fired must see it
+    zone.tokenIndexChanged(token);
+    changedTokens.add(token);
+  }
+
+  void lightChanged(Token token) {
+    if (lightChangedToken == null) {
+      lightChangedToken = token;
+    }
+  }
+
+  void macroChanged(Token token) {
+    macroChangedTokens.add(token);
+  }
+
+  void panelChanged(Token token) {
+    panelChangedTokens.add(token);
+  }
+
+  void maskTopologyChanged(Zone.TopologyType type) {
+    changedTopologyTypes.add(type);
+  }
+
+  /** Fires the collected events, in the same order as a single update fires them. */
+  public void fire() {
+    if (lightChangedToken != null) {
+      lightChangedToken.getZoneRenderer().flushLight();
+    }
+    macroChangedTokens.forEach(zone::tokenMacroChanged);
+    panelChangedTokens.forEach(zone::tokenPanelChanged);
+    if (!changedTopologyTypes.isEmpty()) {
+      zone.tokenMaskTopologyChanged(changedTopologyTypes);
+    }
+    if (!changedTokens.isEmpty()) {
+      zone.tokensChanged(new ArrayList<>(changedTokens));
+    }
+  }
+}
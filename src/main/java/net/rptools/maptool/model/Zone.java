@@ -19,6 +19,7 @@
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Area;
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -54,6 +55,7 @@
 import net.rptools.maptool.model.topology.WallTopology;
 import net.rptools.maptool.model.zones.BoardChanged;
 import net.rptools.maptool.model.zones.DrawableAdded;
+import net.rptools.maptool.model.zones.DrawableChanged;
 import net.rptools.maptool.model.zones.DrawableRemoved;
 import net.rptools.maptool.model.zones.FogChanged;
 import net.rptools.maptool.model.zones.GridChanged;
@@ -67,6 +69,8 @@
 import net.rptools.maptool.model.zones.TokensChanged;
 import net.rptools.maptool.model.zones.TokensRemoved;
 import net.rptools.maptool.model.zones.WallTopologyChanged;
+import net.rptools.maptool.model.zones.ZoneContentLoaded;
+import net.rptools.maptool.model.zones.ZoneContentUnloaded;
 import net.rptools.maptool.model.zones.ZoneLightingChanged;
 import net.rptools.maptool.server.Mapper;
 import net.rptools.maptool.server.proto.DrawnElementListDto;
@@ -425,6 +429,24 @@ public enum TopologyType {
 
   private transient Map<String, Integer> tokenNumberCache;
 
+  /** The secondary token indexes, built on first use after the tokens last changed. */
+  private transient @Nullable ZoneTokenIndex tokenIndex;
+
+  /** The tokens changed since {@link #tokenIndex} was last brought up to date. */
+  private transient @Nullable Set<Token> tokensToReindex;
+
+  /**
+   * Where the tokens, drawables, labels, topology and exposed areas are read from if they are not
+   * in memory; {@code null} once they have been loaded. See {@link #isContentLoaded()}.
+   */
+  private transient volatile @Nullable ZoneContentSource contentSource;
+
+  /** The asset ids referenced by the content while it is not in memory. */
+  private transient @Nullable Set<MD5Key> unloadedAssetIds;
+
+  /** When the content was last read from {@link #contentSource}. */
+  private transient volatile long loadTime;
+
   {
     drawablesByLayer = new EnumMap<>(Layer.class);
     drawablesByLayer.put(Layer.TOKEN, drawables);
@@ -437,6 +459,127 @@ public Zone() {
     undo = new UndoPerZone(this); // registers as ModelChangeListener for drawables...
   }
 
+  /**
+   * Creates a zone from its header only. The content of the zone is read from {@code source} the
+   * first time any of it is used.
+   *
+   * @param header the zone without tokens, drawables, labels, topology or exposed areas.
+   * @param source where the rest of the zone is read from.
+   * @param assetIds the asset ids referenced by the content, so that the campaign's assets can be
+   *     collected without loading the zone.
+   * @return the zone.
+   */
+  public static Zone createStub(ZoneDto header, ZoneContentSource source, Set<MD5Key> assetIds) {
+    var zone = fromDto(header);
+    zone.unloadedAssetIds = new HashSet<>(assetIds);
+    zone.contentSource = source;
+    return zone;
+  }
+
+  /**
+   * Returns whether the content of the zone is in memory. Zones are always loaded unless they were
+   * created with {@link #createStub(ZoneDto, ZoneContentSource, Set)} or unloaded with {@link
+   * #unloadContent(ZoneContentSource)}.
+   *
+   * @return {@code true} if the content is loaded.
+   */
+  public boolean isContentLoaded() {
+    return contentSource == null;
+  }
+
+  /**
+   * Returns where the content of the zone is read from while it is not loaded.
+   *
+   * @return the source, or {@code null} if the content is in memory.
+   */
+  public @Nullable ZoneContentSource getContentSource() {
+    return contentSource;
+  }
+
+  /**
+   * Returns when the content of the zone was last read from its {@link ZoneContentSource}.
+   *
+   * @return the time in milliseconds, or 0 if the content has always been in memory.
+   */
+  public long getLoadTime() {
+    return loadTime;
+  }
+
+  /**
+   * Makes sure the content of the zone is in memory, reading it from its source if necessary. All
+   * methods that use the content call this, so it only needs to be called directly to load a zone
+   * ahead of time.
+   *
+   * @throws IllegalStateException if the content could not be read.
+   */
+  public void ensureContentLoaded() {
+    if (contentSource != null && loadContent()) {
+      // Posted outside the lock, as subscribers may well use other zones.
+      new MapToolEventBus().getMainEventBus().post(new ZoneContentLoaded(this));
+    }
+  }
+
+  /**
+   * Reads the content from {@link #contentSource}.
+   *
+   * @return {@code false} if the content had already been loaded by another thread.
+   */
+  private synchronized boolean loadContent() {
+    var source = contentSource;
+    if (source == null) {
+      return false;
+    }
+
+    log.debug("Loading content of map {}", name);
+    ZoneDto dto;
+    try {
+      dto = source.loadContent(id);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load the content of map " + name, e);
+    }
+    applyContent(dto);
+    collapseDrawables();
+    unloadedAssetIds = null;
+    loadTime = System.currentTimeMillis();
+    // Only publish the content once it is complete, other threads wait on the lock until then.
+    contentSource = null;
+    return true;
+  }
+
+  /**
+   * Removes the content of the zone from memory. The caller must have written the content to
+   * {@code source} beforehand; it is read back the next time it is used. The tokens, drawables and
+   * labels read back are new objects, so references to the old ones must not be used once {@link
+   * ZoneContentUnloaded} has been posted. Undo history is kept, as it refers to drawables by id.
+   *
+   * @param source where the content will be read from.
+   */
+  public void unloadContent(ZoneContentSource source) {
+    synchronized (this) {
+      if (contentSource != null) {
+        return;
+      }
+      unloadedAssetIds = getAllAssetIds();
+      contentSource = source;
+
+      drawablesByLayer.values().forEach(List::clear);
+      labels.clear();
+      tokenMap.clear();
+      tokenOrderedList.clear();
+      tokenIndex = null;
+      exposedAreaMeta = new HashMap<>();
+      exposedArea = new Area();
+      topology = new Area();
+      hillVbl = new Area();
+      pitVbl = new Area();
+      coverVbl = new Area();
+      topologyTerrain = new Area();
+      walls = new WallTopology();
+      tokenNumberCache = null;
+    }
+    new MapToolEventBus().getMainEventBus().post(new ZoneContentUnloaded(this));
+  }
+
   public void setBackgroundPaint(DrawablePaint paint) {
     backgroundPaint = paint;
   }
@@ -595,6 +738,21 @@ public Zone(Zone zone, boolean keepIds) {
     imageScaleX = zone.imageScaleX;
     imageScaleY = zone.imageScaleY;
     playerAlias = zone.playerAlias;
+    boardPosition = (Point) zone.boardPosition.clone();
+    aStarRounding = zone.aStarRounding;
+    isVisible = zone.isVisible;
+    hasFog = zone.hasFog;
+
+    var source = zone.contentSource;
+    if (keepIds && source != null) {
+      // The copy has the same ids, so it can read the same content when it needs it.
+      initiativeList = InitiativeList.fromDto(zone.initiativeList.toDto());
+      initiativeList.setZone(this);
+      unloadedAssetIds = zone.unloadedAssetIds;
+      contentSource = source;
+      return;
+    }
+    zone.ensureContentLoaded();
 
     for (final var entry : drawablesByLayer.entrySet()) {
       final var otherDrawables = zone.drawablesByLayer.get(entry.getKey());
@@ -671,7 +829,6 @@ public Zone(Zone zone, boolean keepIds) {
     initiativeList.setRound(zone.initiativeList.getRound());
     initiativeList.setHideNPC(zone.initiativeList.isHideNPC());
 
-    boardPosition = (Point) zone.boardPosition.clone();
     exposedArea = (Area) zone.exposedArea.clone();
 
     topology = new Area(zone.topology);
@@ -680,10 +837,6 @@ public Zone(Zone zone, boolean keepIds) {
     coverVbl = new Area(zone.coverVbl);
     topologyTerrain = new Area(zone.topologyTerrain);
     walls = new WallTopology(zone.walls);
-
-    aStarRounding = zone.aStarRounding;
-    isVisible = zone.isVisible;
-    hasFog = zone.hasFog;
   }
 
   public GUID getId() {
@@ -725,6 +878,7 @@ public void setVisible(boolean isVisible) {
   public void setGrid(Grid grid) {
     this.grid = grid;
     grid.setZone(this);
+    tokenIndex = null;
     // invoke later to prevent firing with null zone during initialisation
     SwingUtilities.invokeLater(
         () -> new MapToolEventBus().getMainEventBus().post(new GridChanged(this)));
@@ -841,6 +995,7 @@ public void setHasFog(boolean flag) {
    * @return is the point visible?
    */
   public boolean isPointVisible(ZonePoint point, PlayerView view) {
+    ensureContentLoaded();
     if (!hasFog() || view.isGMView()) {
       return true;
     }
@@ -861,6 +1016,7 @@ public boolean isPointVisible(ZonePoint point, PlayerView view) {
   }
 
   public boolean isEmpty() {
+    ensureContentLoaded();
     return drawablesByLayer.values().stream().allMatch(List::isEmpty)
         && tokenOrderedList.isEmpty()
         && labels.isEmpty();
@@ -882,6 +1038,7 @@ public boolean isEmpty() {
    * @return is the token visible?
    */
   public boolean isTokenVisible(Token token) {
+    ensureContentLoaded();
     if (token == null) {
       return false;
     }
@@ -922,6 +1079,7 @@ public boolean isTokenVisible(Token token) {
   }
 
   public boolean isTokenFootprintVisible(Token token) {
+    ensureContentLoaded();
     if (token == null) {
       return false;
     }
@@ -959,6 +1117,7 @@ public boolean isTokenFootprintVisible(Token token) {
   }
 
   public WallTopology getWalls() {
+    ensureContentLoaded();
     return walls;
   }
 
@@ -996,11 +1155,13 @@ public List<MaskTopology> getMasks(Set<TopologyType> types, @Nullable GUID exclu
   }
 
   public void replaceWalls(WallTopology walls) {
+    ensureContentLoaded();
     this.walls = walls;
     new MapToolEventBus().getMainEventBus().post(new WallTopologyChanged(this));
   }
 
   public void updateWall(Wall wall) {
+    ensureContentLoaded();
     var existingWall = this.walls.getWall(wall.from(), wall.to());
 
     existingWall.ifPresentOrElse(
@@ -1015,6 +1176,7 @@ public void updateWall(Wall wall) {
   }
 
   public Area getMaskTopology(TopologyType topologyType) {
+    ensureContentLoaded();
     return switch (topologyType) {
       case WALL_VBL -> topology;
       case HILL_VBL -> hillVbl;
@@ -1031,6 +1193,7 @@ public Area getMaskTopology(TopologyType topologyType) {
    * @param topologyType the type of the topology
    */
   public void updateMaskTopology(Area area, boolean erase, TopologyType topologyType) {
+    ensureContentLoaded();
     var topology =
         switch (topologyType) {
           case WALL_VBL -> this.topology;
@@ -1081,11 +1244,22 @@ public Map<TopologyType, List<Area>> getTokenMaskTopologies(@Nullable GUID exclu
    * @param token the token that changed
    */
   public void tokenChanged(Token token) {
+    tokenIndexChanged(token);
     new MapToolEventBus()
         .getMainEventBus()
         .post(new TokensChanged(this, Collections.singletonList(token)));
   }
 
+  /**
+   * Fire the event TOKEN_CHANGED once for several tokens.
+   *
+   * @param tokens the tokens that changed
+   */
+  public void tokensChanged(List<Token> tokens) {
+    tokens.forEach(this::tokenIndexChanged);
+    new MapToolEventBus().getMainEventBus().post(new TokensChanged(this, tokens));
+  }
+
   /**
    * Fire the event TOKEN_MACRO_CHANGED.
    *
@@ -1110,6 +1284,7 @@ public void tokenPanelChanged(Token token) {
    * @param globalOnly should the exposed area of all tokens be also cleared?
    */
   public void clearExposedArea(boolean globalOnly) {
+    ensureContentLoaded();
     exposedArea = new Area();
     if (!globalOnly) {
       exposedAreaMeta.clear();
@@ -1149,6 +1324,7 @@ public void clearExposedArea(Set<GUID> tokenSet) {
    * @param tok the token to expose for, or null
    */
   public void exposeArea(Area area, Token tok) {
+    ensureContentLoaded();
     if (area == null || area.isEmpty()) {
       return;
     }
@@ -1186,6 +1362,7 @@ public void exposeArea(Area area, Token tok) {
    * @param selectedToks the set GUID of selected tokens
    */
   public void exposeArea(Area area, Set<GUID> selectedToks) {
+    ensureContentLoaded();
     if (area == null || area.isEmpty()) {
       return;
     }
@@ -1236,6 +1413,7 @@ public void exposeArea(Area area, Set<GUID> selectedToks) {
    * @param selectedToks the selected tokens
    */
   public void setFogArea(Area area, Set<GUID> selectedToks) {
+    ensureContentLoaded();
     if (area == null) {
       return;
     }
@@ -1267,6 +1445,7 @@ public void setFogArea(Area area, Set<GUID> selectedToks) {
   }
 
   public void hideArea(Area area, Set<GUID> selectedToks) {
+    ensureContentLoaded();
     if (area == null) {
       return;
     }
@@ -1317,6 +1496,7 @@ public long getCreationTime() {
    * @return the exposed area
    */
   public Area getExposedArea(PlayerView view) {
+    ensureContentLoaded();
     Area combined = new Area(exposedArea);
 
     // Don't need to worry about StrictTokenOwnership since the PlayerView only contains tokens we
@@ -1340,6 +1520,7 @@ public Area getExposedArea(PlayerView view) {
    * @return Area object representing exposed fog area visible to all tokens
    */
   public Area getExposedArea() {
+    ensureContentLoaded();
     return exposedArea;
   }
 
@@ -1364,42 +1545,49 @@ public void setAStarRounding(AStarRoundingOptions aStarRounding) {
   }
 
   public int getLargestZOrder() {
+    ensureContentLoaded();
     return tokenOrderedList.size() > 0
         ? tokenOrderedList.get(tokenOrderedList.size() - 1).getZOrder()
         : 0;
   }
 
   public int getSmallestZOrder() {
+    ensureContentLoaded();
     return tokenOrderedList.size() > 0 ? tokenOrderedList.get(0).getZOrder() : 0;
   }
 
   /** Sort the tokens by their ZOrder */
   public void sortZOrder() {
+    ensureContentLoaded();
     tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    tokenIndex = null;
   }
 
   ///////////////////////////////////////////////////////////////////////////
   // labels
   ///////////////////////////////////////////////////////////////////////////
   public void putLabel(Label label) {
+    ensureContentLoaded();
     boolean newLabel = labels.containsKey(label.getId());
     labels.put(label.getId(), label);
 
     if (newLabel) {
-      new MapToolEventBus().getMainEventBus().post(new LabelAdded(label));
+      new MapToolEventBus().getMainEventBus().post(new LabelAdded(this, label));
     } else {
-      new MapToolEventBus().getMainEventBus().post(new LabelChanged(label));
+      new MapToolEventBus().getMainEventBus().post(new LabelChanged(this, label));
     }
   }
 
   public List<Label> getLabels() {
+    ensureContentLoaded();
     return new ArrayList<Label>(this.labels.values());
   }
 
   public void removeLabel(GUID labelId) {
+    ensureContentLoaded();
     Label label = labels.remove(labelId);
     if (label != null) {
-      new MapToolEventBus().getMainEventBus().post(new LabelRemoved(label));
+      new MapToolEventBus().getMainEventBus().post(new LabelRemoved(this, label));
     }
   }
 
@@ -1408,23 +1596,27 @@ public void removeLabel(GUID labelId) {
   ///////////////////////////////////////////////////////////////////////////
 
   public void addDrawable(DrawnElement drawnElement) {
+    ensureContentLoaded();
     drawablesByLayer.get(drawnElement.getDrawable().getLayer()).add(drawnElement);
     new MapToolEventBus().getMainEventBus().post(new DrawableAdded(this, drawnElement));
   }
 
   public void updateDrawable(DrawnElement drawnElement, Pen pen) {
+    ensureContentLoaded();
     final var elementList = drawablesByLayer.get(drawnElement.getDrawable().getLayer());
     for (DrawnElement de : elementList) {
       if (de.getDrawable().getId().equals(drawnElement.getDrawable().getId())) {
         de.setDrawable(drawnElement.getDrawable());
         de.setPen(new Pen(pen));
-        break;
+        new MapToolEventBus().getMainEventBus().post(new DrawableChanged(this, de));
+        return;
       }
     }
     new MapToolEventBus().getMainEventBus().post(new DrawableAdded(this, drawnElement));
   }
 
   public void addDrawableRear(DrawnElement drawnElement) {
+    ensureContentLoaded();
     // Since the list is drawn in order
     // items that are drawn first are at the "back"
     drawablesByLayer.get(drawnElement.getDrawable().getLayer()).addFirst(drawnElement);
@@ -1432,10 +1624,12 @@ public void addDrawableRear(DrawnElement drawnElement) {
   }
 
   public List<DrawnElement> getDrawnElements(Zone.Layer layer) {
+    ensureContentLoaded();
     return Collections.unmodifiableList(drawablesByLayer.get(layer));
   }
 
   public void removeDrawable(GUID drawableId) {
+    ensureContentLoaded();
     // Since we don't know anything about the drawable, look through all the layers
     // Do we need to remove it from the Undo manager as well? Probably. Perhaps some
     // UndoPerZone method that searches and deletes the drawable ID?
@@ -1461,6 +1655,7 @@ private void removeDrawable(List<DrawnElement> drawableList, GUID drawableId) {
   }
 
   public void clearDrawables(Layer layer) {
+    ensureContentLoaded();
     final var original = drawablesByLayer.get(layer);
     final var copy = new ArrayList<>(original);
     original.clear();
@@ -1503,6 +1698,7 @@ public void redoDrawable() {
    * @param token the Token to be added to this zone
    */
   public void putToken(Token token) {
+    ensureContentLoaded();
     boolean newToken = !tokenMap.containsKey(token.getId());
 
     tokenMap.put(token.getId(), token);
@@ -1511,6 +1707,7 @@ public void putToken(Token token) {
     tokenOrderedList.remove(token);
     tokenOrderedList.add(token);
     tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    tokenIndex = null;
 
     if (newToken) {
       new MapToolEventBus()
@@ -1546,6 +1743,7 @@ public void editToken(Token token) {
    */
   @Deprecated
   public void putTokens(List<Token> tokens) {
+    ensureContentLoaded();
     Collection<Token> values = tokenMap.values();
 
     List<Token> addedTokens = new LinkedList<Token>(tokens);
@@ -1560,6 +1758,7 @@ public void putTokens(List<Token> tokens) {
     tokenOrderedList.removeAll(tokens);
     tokenOrderedList.addAll(tokens);
     tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    tokenIndex = null;
 
     if (!addedTokens.isEmpty()) {
       new MapToolEventBus().getMainEventBus().post(new TokensAdded(this, addedTokens));
@@ -1575,9 +1774,11 @@ public void putTokens(List<Token> tokens) {
    * @param id the id of the token
    */
   public void removeToken(GUID id) {
+    ensureContentLoaded();
     Token token = tokenMap.remove(id);
     if (token != null) {
       tokenOrderedList.remove(token);
+      tokenIndex = null;
       new MapToolEventBus()
           .getMainEventBus()
           .post(new TokensRemoved(this, Collections.singletonList(token)));
@@ -1590,12 +1791,14 @@ public void removeToken(GUID id) {
    * @param ids the list of ids of the tokens
    */
   public void removeTokens(List<GUID> ids) {
+    ensureContentLoaded();
     List<Token> removedTokens = new ArrayList<>();
     if (ids != null) {
       for (GUID id : ids) {
         Token token = tokenMap.remove(id);
         if (token != null) {
           tokenOrderedList.remove(token);
+          tokenIndex = null;
           removedTokens.add(token);
         }
       }
@@ -1606,6 +1809,7 @@ public void removeTokens(List<GUID> ids) {
   }
 
   public Token getToken(GUID id) {
+    ensureContentLoaded();
     return tokenMap.get(id);
   }
 
@@ -1664,6 +1868,7 @@ public Token getTokenByGMName(String name) {
   }
 
   public List<DrawnElement> getAllDrawnElements() {
+    ensureContentLoaded();
     var list = new ArrayList<DrawnElement>();
     for (var deList : drawablesByLayer.values()) {
       list.addAll(deList);
@@ -1693,10 +1898,12 @@ private DrawnElement findDrawnElement(List<DrawnElement> list, GUID id) {
   }
 
   public int getTokenCount() {
+    ensureContentLoaded();
     return tokenOrderedList.size();
   }
 
   public List<Token> getAllTokens() {
+    ensureContentLoaded();
     return List.copyOf(tokenOrderedList);
   }
 
@@ -1712,6 +1919,14 @@ public Set<MD5Key> getAllAssetIds() {
       idSet.add(((DrawableTexturePaint) getFogPaint()).getAssetId());
     }
 
+    // Don't load the zone just to find out which assets it uses
+    Set<MD5Key> contentAssetIds = unloadedAssetIds;
+    if (!isContentLoaded() && contentAssetIds != null) {
+      idSet.addAll(contentAssetIds);
+      idSet.remove(null);
+      return idSet;
+    }
+
     // Tokens
     for (Token token : getAllTokens()) {
       idSet.addAll(token.getAllImageAssets());
@@ -1735,6 +1950,7 @@ public Set<MD5Key> getAllAssetIds() {
   }
 
   public List<Token> getTokensFiltered(Filter filter) {
+    ensureContentLoaded();
     ArrayList<Token> copy = new ArrayList<Token>(getTokenCount());
 
     for (Token token : tokenOrderedList) {
@@ -1745,6 +1961,44 @@ public List<Token> getTokensFiltered(Filter filter) {
     return Collections.unmodifiableList(copy);
   }
 
+  /**
+   * Returns the secondary indexes over the tokens of the zone. The index is built again on the
+   * first call after tokens are put, removed or re-sorted, or after the grid changes size. Tokens
+   * that only changed are filed again under their new values instead, unless many of them did.
+   *
+   * @return the token index.
+   */
+  public ZoneTokenIndex getTokenIndex() {
+    ensureContentLoaded();
+    var index = tokenIndex;
+    var changed = tokensToReindex;
+    tokensToReindex = null;
+    if (index == null
+        || index.getGridSize() != grid.getSize()
+        || (changed != null && changed.size() > index.size() / 4)) {
+      index = new ZoneTokenIndex(this, tokenOrderedList);
+      tokenIndex = index;
+    } else if (changed != null) {
+      index.update(changed);
+    }
+    return index;
+  }
+
+  /**
+   * Notes that a token changed, so that the token index files it again before it is next used.
+   * This is called as soon as the token changes, even if the events of the change are held back.
+   *
+   * @param token the token that changed.
+   */
+  void tokenIndexChanged(Token token) {
+    if (tokenIndex != null) {
+      if (tokensToReindex == null) {
+        tokensToReindex = Collections.newSetFromMap(new IdentityHashMap<>());
+      }
+      tokensToReindex.add(token);
+    }
+  }
+
   public List<Token> getTokensOnLayer(Layer layer) {
     return getTokensOnLayer(layer, true);
   }
@@ -2007,6 +2261,7 @@ public void setInitiativeList(InitiativeList initiativeList) {
   }
 
   public void optimize() {
+    ensureContentLoaded();
     log.debug("Optimizing Map " + getName());
     MapTool.getFrame().setStatusMessage(I18N.getText("Zone.status.optimizing", getName()));
     collapseDrawables();
@@ -2064,6 +2319,12 @@ private void collapseDrawableLayer(List<DrawnElement> layer) {
     }
   }
 
+  /** XStream reads the fields directly, so the content must be in memory before it does. */
+  protected Object writeReplace() {
+    ensureContentLoaded();
+    return this;
+  }
+
   ////
   // Backward compatibility
   @SuppressWarnings("ConstantConditions")
@@ -2185,6 +2446,7 @@ protected Object readResolve() {
    * @return the exposedAreaMeta.
    */
   public Map<GUID, ExposedAreaMetaData> getExposedAreaMetaData() {
+    ensureContentLoaded();
     if (exposedAreaMeta == null) {
       exposedAreaMeta = new HashMap<GUID, ExposedAreaMetaData>();
     }
@@ -2198,6 +2460,7 @@ public Map<GUID, ExposedAreaMetaData> getExposedAreaMetaData() {
    * @return area of fog cleared away for/by this token
    */
   public ExposedAreaMetaData getExposedAreaMetaData(GUID tokenExposedAreaGUID) {
+    ensureContentLoaded();
     ExposedAreaMetaData meta = exposedAreaMeta.get(tokenExposedAreaGUID);
     if (meta != null) {
       return meta;
@@ -2214,6 +2477,7 @@ public ExposedAreaMetaData getExposedAreaMetaData(GUID tokenExposedAreaGUID) {
    * @param meta the exposed metadata
    */
   public void setExposedAreaMetaData(GUID tokenExposedAreaGUID, ExposedAreaMetaData meta) {
+    ensureContentLoaded();
     if (exposedAreaMeta == null) {
       exposedAreaMeta = new HashMap<GUID, ExposedAreaMetaData>();
     }
@@ -2251,40 +2515,10 @@ public static Zone fromDto(ZoneDto dto) {
     zone.tokenVisionDistance = dto.getTokenVisionDistance();
     zone.unitsPerCell = dto.getUnitsPerCell();
     zone.aStarRounding = AStarRoundingOptions.valueOf(dto.getAStarRounding().name());
-
-    dto.getDrawablesMap()
-        .forEach(
-            (layerName, listDto) -> {
-              var list = zone.drawablesByLayer.get(Layer.valueOf(layerName));
-              listDto.getDrawnElementsList().stream().map(DrawnElement::fromDto).forEach(list::add);
-            });
-
-    dto.getLabelsList().stream()
-        .map(d -> Label.fromDto(d))
-        .forEach(l -> zone.labels.put(l.getId(), l));
-    dto.getTokensList().stream()
-        .map(t -> Token.fromDto(t))
-        .forEach(
-            t -> {
-              zone.tokenMap.put(t.getId(), t);
-              zone.tokenOrderedList.add(t);
-            });
-    zone.tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
-    dto.getExposedAreaMetaMap()
-        .forEach(
-            (id, area) ->
-                zone.exposedAreaMeta.put(
-                    GUID.valueOf(id), new ExposedAreaMetaData(Mapper.map(area))));
+    zone.applyContent(dto);
     zone.initiativeList = InitiativeList.fromDto(dto.getInitiative());
-    zone.exposedArea = Mapper.map(dto.getExposedArea());
     zone.hasFog = dto.getHasFog();
     zone.fogPaint = DrawablePaint.fromDto(dto.getFogPaint());
-    zone.topology = Mapper.map(dto.getTopology());
-    zone.hillVbl = Mapper.map(dto.getHillVbl());
-    zone.pitVbl = Mapper.map(dto.getPitVbl());
-    zone.coverVbl = Mapper.map(dto.getCoverVbl());
-    zone.topologyTerrain = Mapper.map(dto.getTopologyTerrain());
-    zone.walls = WallTopology.fromDto(dto.getWalls());
     zone.backgroundPaint = DrawablePaint.fromDto(dto.getBackgroundPaint());
     zone.mapAsset = dto.hasMapAsset() ? new MD5Key(dto.getMapAsset().getValue()) : null;
     zone.boardPosition.x = dto.getBoardPosition().getX();
@@ -2303,21 +2537,68 @@ public static Zone fromDto(ZoneDto dto) {
     return zone;
   }
 
+  /**
+   * Creates a zone from the header of one {@link ZoneDto} and the content of another.
+   *
+   * @param header the DTO to take everything but the content from.
+   * @param content the DTO to take the tokens, drawables, labels, exposed areas and topology from.
+   * @return the zone.
+   */
+  public static Zone fromDto(ZoneDto header, ZoneDto content) {
+    var zone = fromDto(header.toBuilder().clearTokens().build());
+    zone.applyContent(content);
+    return zone;
+  }
+
+  /**
+   * Sets the content of the zone - tokens, drawables, labels, exposed areas and topology - from a
+   * {@link ZoneDto}. The rest of the DTO is ignored.
+   */
+  private void applyContent(ZoneDto dto) {
+    dto.getDrawablesMap()
+        .forEach(
+            (layerName, listDto) -> {
+              var list = drawablesByLayer.get(Layer.valueOf(layerName));
+              listDto.getDrawnElementsList().stream().map(DrawnElement::fromDto).forEach(list::add);
+            });
+
+    dto.getLabelsList().stream().map(d -> Label.fromDto(d)).forEach(l -> labels.put(l.getId(), l));
+    dto.getTokensList().stream()
+        .map(t -> Token.fromDto(t))
+        .forEach(
+            t -> {
+              tokenMap.put(t.getId(), t);
+              tokenOrderedList.add(t);
+            });
+    tokenOrderedList.sort(TOKEN_Z_ORDER_COMPARATOR);
+    tokenIndex = null;
+    dto.getExposedAreaMetaMap()
+        .forEach(
+            (id, area) ->
+                exposedAreaMeta.put(GUID.valueOf(id), new ExposedAreaMetaData(Mapper.map(area))));
+    exposedArea = Mapper.map(dto.getExposedArea());
+    topology = Mapper.map(dto.getTopology());
+    hillVbl = Mapper.map(dto.getHillVbl());
+    pitVbl = Mapper.map(dto.getPitVbl());
+    coverVbl = Mapper.map(dto.getCoverVbl());
+    topologyTerrain = Mapper.map(dto.getTopologyTerrain());
+    walls = WallTopology.fromDto(dto.getWalls());
+  }
+
   public ZoneDto toDto() {
-    var dto = ZoneDto.newBuilder();
-    dto.setName(name);
-    if (playerAlias != null) {
-      dto.setPlayerAlias(StringValue.of(playerAlias));
-    }
-    dto.setCreationTime(creationTime);
-    dto.setId(id.toString());
-    dto.setGrid(grid.toDto());
-    dto.setGridColor(gridColor);
-    dto.setImageScaleX(imageScaleX);
-    dto.setImageScaleY(imageScaleY);
-    dto.setTokenVisionDistance(tokenVisionDistance);
-    dto.setUnitsPerCell(unitsPerCell);
-    dto.setAStarRounding(ZoneDto.AStarRoundingOptionsDto.valueOf(aStarRounding.name()));
+    return toDto(true);
+  }
+
+  /**
+   * Converts this zone to a {@link ZoneDto}.
+   *
+   * @param includeTokens if {@code false} the tokens are left out, which lets callers that write
+   *     the tokens separately avoid building the whole zone in memory.
+   * @return the {@link ZoneDto} for this zone.
+   */
+  public ZoneDto toDto(boolean includeTokens) {
+    ensureContentLoaded();
+    var dto = toHeaderDtoBuilder();
 
     drawablesByLayer.forEach(
         (layer, drawables) ->
@@ -2328,7 +2609,10 @@ public ZoneDto toDto() {
                     .build()));
 
     dto.addAllLabels(labels.values().stream().map(l -> l.toDto()).collect(Collectors.toList()));
-    dto.addAllTokens(tokenMap.values().stream().map(t -> t.toDto()).collect(Collectors.toList()));
+    if (includeTokens) {
+      dto.addAllTokens(
+          tokenMap.values().stream().map(t -> t.toDto()).collect(Collectors.toList()));
+    }
     exposedAreaMeta.forEach(
         (id, area) -> {
           if (id == null) {
@@ -2336,20 +2620,49 @@ public ZoneDto toDto() {
           }
           dto.putExposedAreaMeta(id.toString(), Mapper.map(area.getExposedAreaHistory()));
         });
-    dto.setInitiative(initiativeList.toDto());
     dto.setExposedArea(Mapper.map(exposedArea));
-    dto.setHasFog(hasFog);
     dto.setTopology(Mapper.map(topology));
-    if (fogPaint == null) { // Account for old campaigns without fog paint
-      dto.setFogPaint(DEFAULT_FOG.toDto());
-    } else {
-      dto.setFogPaint(fogPaint.toDto());
-    }
     dto.setHillVbl(Mapper.map(hillVbl));
     dto.setPitVbl(Mapper.map(pitVbl));
     dto.setCoverVbl(Mapper.map(coverVbl));
     dto.setTopologyTerrain(Mapper.map(topologyTerrain));
     dto.setWalls(walls.toDto());
+    return dto.build();
+  }
+
+  /**
+   * Converts the header of this zone to a {@link ZoneDto}, leaving out the tokens, drawables,
+   * labels, exposed areas and topology. This does not load the zone; see {@link
+   * #createStub(ZoneDto, ZoneContentSource, Set)}.
+   *
+   * @return the {@link ZoneDto} for the header of this zone.
+   */
+  public ZoneDto toHeaderDto() {
+    return toHeaderDtoBuilder().build();
+  }
+
+  private ZoneDto.Builder toHeaderDtoBuilder() {
+    var dto = ZoneDto.newBuilder();
+    dto.setName(name);
+    if (playerAlias != null) {
+      dto.setPlayerAlias(StringValue.of(playerAlias));
+    }
+    dto.setCreationTime(creationTime);
+    dto.setId(id.toString());
+    dto.setGrid(grid.toDto());
+    dto.setGridColor(gridColor);
+    dto.setImageScaleX(imageScaleX);
+    dto.setImageScaleY(imageScaleY);
+    dto.setTokenVisionDistance(tokenVisionDistance);
+    dto.setUnitsPerCell(unitsPerCell);
+    dto.setAStarRounding(ZoneDto.AStarRoundingOptionsDto.valueOf(aStarRounding.name()));
+    dto.setInitiative(initiativeList.toDto());
+    dto.setHasFog(hasFog);
+    if (fogPaint == null) { // Account for old campaigns without fog paint
+      dto.setFogPaint(DEFAULT_FOG.toDto());
+    } else {
+      dto.setFogPaint(fogPaint.toDto());
+    }
     dto.setBackgroundPaint(backgroundPaint.toDto());
     if (mapAsset != null) {
       dto.setMapAsset(StringValue.of(mapAsset.toString()));
@@ -2363,6 +2676,6 @@ public ZoneDto toDto() {
     dto.setTokenSelection(ZoneDto.TokenSelectionDto.valueOf(tokenSelection.name()));
     dto.setHeight(height);
     dto.setWidth(width);
-    return dto.build();
+    return dto;
   }
 }
@@ -0,0 +1,47 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import net.rptools.maptool.server.proto.ZoneDto;
+
+/**
+ * Supplies the content of a {@link Zone} that is not held in memory. Zones created with {@link
+ * Zone#createStub(ZoneDto, ZoneContentSource, java.util.Set)} only carry their header
+ * (name, grid, paints, initiative, ...) and read their tokens, drawables, labels, topology and
+ * exposed areas from a source the first time they are needed.
+ */
+public interface ZoneContentSource {
+
+  /**
+   * Reads the content of a zone.
+   *
+   * @param zoneId the id of the zone.
+   * @return the zone, including its tokens.
+   * @throws IOException if the content can not be read.
+   */
+  ZoneDto loadContent(GUID zoneId) throws IOException;
+
+  /**
+   * Copies the stored content of a zone without reading it, so that a zone which has not been
+   * loaded can be saved again.
+   *
+   * @param zoneId the id of the zone.
+   * @param out the stream to copy the content to.
+   * @throws IOException if the content can not be read or written.
+   */
+  void copyContent(GUID zoneId, OutputStream out) throws IOException;
+}
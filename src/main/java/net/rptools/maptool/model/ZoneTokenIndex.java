@@ -0,0 +1,366 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import net.rptools.maptool.util.SpatialGridIndex;
+
+/**
+ * Secondary indexes over the tokens of a {@link Zone}, so that queries such as those of {@code
+ * getTokens()} can start from the tokens that can possibly match instead of from every token.
+ *
+ * <p>{@link Zone#getTokenIndex()} builds a new index after tokens are put, removed or re-sorted,
+ * and files tokens that only changed again under their new values. The lists returned are not
+ * changed by that, so a query sees the tokens as they were when it started. Every list returned is
+ * in z-order, like {@link Zone#getAllTokens()}. The lists are candidates only: callers must still
+ * test their own conditions on each token, as the index does not exclude image and library tokens,
+ * and a token changed without the zone being told may be filed under an old value.
+ */
+public final class ZoneTokenIndex {
+  private final Zone zone;
+  private final int gridSize;
+  private final List<Token> tokens;
+  private final Map<Token, Integer> positions = new IdentityHashMap<>();
+  private final Map<GUID, Token> byId = new HashMap<>();
+  private final Map<Zone.Layer, List<Token>> byLayer = new EnumMap<>(Zone.Layer.class);
+  private final Map<Token.Type, List<Token>> byType = new EnumMap<>(Token.Type.class);
+  private final Map<String, List<Token>> byOwner = new HashMap<>();
+  private List<Token> ownedByAll = new ArrayList<>();
+  private final Map<String, List<Token>> byPropertyType = new HashMap<>();
+  private final Map<String, List<Token>> byState = new HashMap<>();
+
+  /** The values each token is filed under, to find it again when it changes. */
+  private final Map<Token, Keys> keys = new IdentityHashMap<>();
+
+  /** The values of a token that the index files it under. */
+  private record Keys(
+      Zone.Layer layer,
+      Token.Type type,
+      String propertyType,
+      boolean ownedByAll,
+      Set<String> owners,
+      Set<String> states) {
+    static Keys of(Token token) {
+      var states = new HashSet<String>();
+      for (String state : token.getStatePropertyNames()) {
+        if (isSet(token.getState(state))) {
+          states.add(state);
+        }
+      }
+      return new Keys(
+          token.getLayer(),
+          token.getType(),
+          token.getPropertyType(),
+          token.isOwnedByAll(),
+          Set.copyOf(token.getOwners()),
+          states);
+    }
+  }
+
+  /** Built on first use, as computing the bounds of every token is the costly part. */
+  private SpatialGridIndex<GUID> spatialIndex;
+
+  /**
+   * Indexes tokens.
+   *
+   * @param zone the zone the tokens are on.
+   * @param tokens the tokens of the zone, in z-order.
+   */
+  ZoneTokenIndex(Zone zone, List<Token> tokens) {
+    this.zone = zone;
+    this.gridSize = zone.getGrid().getSize();
+    this.tokens = List.copyOf(tokens);
+
+    for (Token token : this.tokens) {
+      positions.put(token, positions.size());
+      byId.put(token.getId(), token);
+      var tokenKeys = Keys.of(token);
+      keys.put(token, tokenKeys);
+      add(byLayer, tokenKeys.layer(), token);
+      add(byType, tokenKeys.type(), token);
+      add(byPropertyType, tokenKeys.propertyType(), token);
+      if (tokenKeys.ownedByAll()) {
+        ownedByAll.add(token);
+      }
+      for (String owner : tokenKeys.owners()) {
+        add(byOwner, owner, token);
+      }
+      for (String state : tokenKeys.states()) {
+        add(byState, state, token);
+      }
+    }
+  }
+
+  private static <K> void add(Map<K, List<Token>> map, K key, Token token) {
+    if (key != null) {
+      map.computeIfAbsent(key, k -> new ArrayList<>()).add(token);
+    }
+  }
+
+  /**
+   * Files changed tokens again under their current values. The lists are replaced rather than
+   * changed, so lists already returned stay as they were. Tokens that are not indexed are ignored.
+   *
+   * @param changed the tokens that changed.
+   */
+  void update(Collection<Token> changed) {
+    for (Token token : changed) {
+      var old = keys.get(token);
+      if (old == null) {
+        continue;
+      }
+      var now = Keys.of(token);
+      if (!now.equals(old)) {
+        keys.put(token, now);
+        move(byLayer, old.layer(), now.layer(), token);
+        move(byType, old.type(), now.type(), token);
+        move(byPropertyType, old.propertyType(), now.propertyType(), token);
+        if (old.ownedByAll() != now.ownedByAll()) {
+          ownedByAll = now.ownedByAll() ? with(ownedByAll, token) : without(ownedByAll, token);
+        }
+        moveAll(byOwner, old.owners(), now.owners(), token);
+        moveAll(byState, old.states(), now.states(), token);
+      }
+      if (spatialIndex != null) {
+        spatialIndex.put(token.getId(), getBounds(token));
+      }
+    }
+  }
+
+  private <K> void move(Map<K, List<Token>> map, K from, K to, Token token) {
+    if (!Objects.equals(from, to)) {
+      moveAll(
+          map,
+          from == null ? Set.of() : Set.of(from),
+          to == null ? Set.of() : Set.of(to),
+          token);
+    }
+  }
+
+  private <K> void moveAll(Map<K, List<Token>> map, Set<K> from, Set<K> to, Token token) {
+    for (K key : from) {
+      if (!to.contains(key)) {
+        var list = without(map.get(key), token);
+        if (list.isEmpty()) {
+          map.remove(key);
+        } else {
+          map.put(key, list);
+        }
+      }
+    }
+    for (K key : to) {
+      if (!from.contains(key)) {
+        map.put(key, with(map.getOrDefault(key, List.of()), token));
+      }
+    }
+  }
+
+  /** Returns a copy of a z-ordered list with a token inserted at its place. */
+  private List<Token> with(List<Token> list, Token token) {
+    int position = positions.get(token);
+    int low = 0;
+    int high = list.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (positions.get(list.get(mid)) < position) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    var result = new ArrayList<Token>(list.size() + 1);
+    result.addAll(list.subList(0, low));
+    result.add(token);
+    result.addAll(list.subList(low, list.size()));
+    return result;
+  }
+
+  /** Returns a copy of a list without a token. */
+  private static List<Token> without(List<Token> list, Token token) {
+    var result = new ArrayList<Token>(list.size());
+    for (Token t : list) {
+      if (t != token) {
+        result.add(t);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Checks if a state value counts as set, the same way as the {@code setStates} condition of
+   * {@code getTokens()}.
+   */
+  private static boolean isSet(Object value) {
+    if (value == null) {
+      return false;
+    } else if (value instanceof Boolean b) {
+      return b;
+    } else if (value instanceof BigDecimal bd) {
+      return !bd.equals(BigDecimal.ZERO);
+    }
+    return true;
+  }
+
+  /**
+   * @return the grid size the index was built for.
+   */
+  int getGridSize() {
+    return gridSize;
+  }
+
+  /**
+   * @return the number of indexed tokens.
+   */
+  public int size() {
+    return tokens.size();
+  }
+
+  /**
+   * @return all indexed tokens.
+   */
+  public List<Token> getTokens() {
+    return tokens;
+  }
+
+  /**
+   * @param layers the layers.
+   * @return the tokens on any of the layers.
+   */
+  public List<Token> getTokensOnLayers(Collection<Zone.Layer> layers) {
+    return union(layers, byLayer);
+  }
+
+  /**
+   * @param type the token type.
+   * @return the tokens of the type.
+   */
+  public List<Token> getTokensOfType(Token.Type type) {
+    return Collections.unmodifiableList(byType.getOrDefault(type, List.of()));
+  }
+
+  /**
+   * @param players the player names.
+   * @return the tokens owned by all players, or by any of {@code players}.
+   */
+  public List<Token> getTokensOwnedBy(Collection<String> players) {
+    if (players.isEmpty()) {
+      return List.of();
+    }
+    var result = new HashSet<Token>(ownedByAll);
+    for (String player : players) {
+      result.addAll(byOwner.getOrDefault(player, List.of()));
+    }
+    return inZOrder(result);
+  }
+
+  /**
+   * @return the tokens owned by all players.
+   */
+  public List<Token> getTokensOwnedByAll() {
+    return Collections.unmodifiableList(ownedByAll);
+  }
+
+  /**
+   * @param propertyTypes the property types.
+   * @return the tokens with any of the property types.
+   */
+  public List<Token> getTokensWithPropertyTypes(Collection<String> propertyTypes) {
+    return union(propertyTypes, byPropertyType);
+  }
+
+  /**
+   * @param state the name of the state.
+   * @return the tokens that have the state set.
+   */
+  public List<Token> getTokensWithState(String state) {
+    return Collections.unmodifiableList(byState.getOrDefault(state, List.of()));
+  }
+
+  /**
+   * Finds the tokens whose footprint or image overlaps a rectangle.
+   *
+   * @param rect the rectangle in zone space.
+   * @return the tokens.
+   */
+  public List<Token> getTokensNear(Rectangle2D rect) {
+    if (spatialIndex == null) {
+      // Tokens are usually about a cell in size, so a few cells per index cell keeps both the
+      // number of index cells per token and the number of tokens per index cell small.
+      spatialIndex = new SpatialGridIndex<>(Math.max(gridSize, 1) * 4.0);
+      for (Token token : tokens) {
+        spatialIndex.put(token.getId(), getBounds(token));
+      }
+    }
+    var result = new ArrayList<Token>();
+    for (GUID id : spatialIndex.query(rect)) {
+      result.add(byId.get(id));
+    }
+    return inZOrder(result);
+  }
+
+  /**
+   * Returns the area a token covers, both the cells it occupies and the image drawn for it.
+   *
+   * @param token the token.
+   * @return the bounds in zone space.
+   */
+  public Rectangle getBounds(Token token) {
+    Rectangle bounds = token.getFootprintBounds(zone);
+    bounds.add(token.getImageBounds(zone));
+    return bounds;
+  }
+
+  /**
+   * Sorts indexed tokens in z-order. Tokens that are not indexed are dropped.
+   *
+   * @param candidates the tokens.
+   * @return the tokens in z-order.
+   */
+  public List<Token> inZOrder(Collection<Token> candidates) {
+    var result = new ArrayList<Token>(candidates.size());
+    for (Token token : candidates) {
+      if (positions.containsKey(token)) {
+        result.add(token);
+      }
+    }
+    result.sort((t1, t2) -> Integer.compare(positions.get(t1), positions.get(t2)));
+    return result;
+  }
+
+  private <K> List<Token> union(Collection<K> keys, Map<K, List<Token>> map) {
+    Set<K> distinct = new HashSet<>(keys);
+    if (distinct.size() == 1) {
+      return Collections.unmodifiableList(map.getOrDefault(distinct.iterator().next(), List.of()));
+    }
+    var result = new ArrayList<Token>();
+    for (K key : distinct) {
+      result.addAll(map.getOrDefault(key, List.of()));
+    }
+    return inZOrder(result);
+  }
+}
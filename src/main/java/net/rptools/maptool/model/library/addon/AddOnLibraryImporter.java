@@ -129,7 +129,7 @@ public AddOnLibrary importFromAsset(Asset asset) throws IOException {
     tempFile.deleteOnExit();
 
     try (OutputStream outputStream = Files.newOutputStream(tempFile.toPath())) {
-      outputStream.write(asset.getData());
+      asset.writeData(outputStream);
     }
 
     return importFromFile(tempFile);
@@ -294,7 +294,7 @@ private Map<String, Pair<MD5Key, Type>> processAssets(String namespace, ZipFile
    */
   private void addAsset(Asset asset) {
     if (!AssetManager.hasAsset(asset)
-        || AssetManager.getAsset(asset.getMD5Key()).getData().length == 0) {
+        || AssetManager.getAsset(asset.getMD5Key()).getDataLength() == 0) {
       AssetManager.putAsset(asset);
     }
   }
@@ -317,10 +317,11 @@ public CompletableFuture<Optional<MTScriptMacroInfo>> getMTScriptMacroInfo(Strin
         .runOnSwingThread(
             () -> {
               Token library = findLibrary(id);
-              MacroButtonProperties buttonProps = library.getMacro(macroName, false);
+              var index = LibraryTokenIndex.getInstance();
+              MacroButtonProperties buttonProps = index.getMacro(library, macroName);
               if (buttonProps == null) {
                 // Try the "unknown macro"
-                buttonProps = library.getMacro(UNKNOWN_LIB_MACRO, false);
+                buttonProps = index.getMacro(library, UNKNOWN_LIB_MACRO);
                 if (buttonProps == null) {
                   return Optional.empty();
                 }
@@ -401,6 +402,11 @@ public Set<MacroDetails> getSlashCommands() {
    * @return the Token for the library.
    */
   private Token findLibrary(GUID id) {
+    var entry = LibraryTokenIndex.getInstance().getToken(id);
+    if (entry != null) {
+      return entry.token();
+    }
+    // The token may no longer have a Lib: name.
     for (var zone : MapTool.getCampaign().getZones()) {
       var token = zone.getToken(id);
       if (token != null) {
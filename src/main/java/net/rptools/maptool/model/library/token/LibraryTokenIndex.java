@@ -0,0 +1,296 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model.library.token;
+
+import com.google.common.eventbus.Subscribe;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.events.MapToolEventBus;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.MacroButtonProperties;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.zones.TokenEdited;
+import net.rptools.maptool.model.zones.TokensAdded;
+import net.rptools.maptool.model.zones.TokensChanged;
+import net.rptools.maptool.model.zones.TokensRemoved;
+import net.rptools.maptool.model.zones.ZoneAdded;
+import net.rptools.maptool.model.zones.ZoneRemoved;
+
+/**
+ * An index of the Lib:tokens on every map of the campaign, and of the macro labels on each of them,
+ * so that macro calls and events do not have to search every token on every map.
+ *
+ * <p>Tokens are indexed by their lower-cased name. The index is kept up to date by the token
+ * events; a token that is renamed to or from a Lib: name is picked up by the {@link TokensChanged}
+ * event that follows. Adding or removing a map, or replacing the campaign, rebuilds the index the
+ * next time it is used.
+ *
+ * <p>All methods are thread safe.
+ */
+public final class LibraryTokenIndex {
+  private static final String LIB_PREFIX = "lib:";
+
+  private static final LibraryTokenIndex INSTANCE = createInstance();
+
+  /**
+   * A Lib:token and the map it is on.
+   *
+   * @param zone the map the token is on.
+   * @param token the token.
+   */
+  public record Entry(Zone zone, Token token) {}
+
+  private final Supplier<Campaign> campaignSupplier;
+
+  /** Entries by lower-cased token name. More than one entry means the name is duplicated. */
+  private final Map<String, Map<GUID, Entry>> entriesByName = new HashMap<>();
+
+  /** The lower-cased name each token is indexed under. */
+  private final Map<GUID, String> namesById = new HashMap<>();
+
+  /** The first macro with each label on each token, as found by {@link Token#getMacro}. */
+  private final Map<GUID, Map<String, MacroButtonProperties>> macrosById = new HashMap<>();
+
+  /** The tokens that have a macro with each label. */
+  private final Map<String, Set<GUID>> idsByMacroLabel = new HashMap<>();
+
+  private @Nullable Campaign indexedCampaign;
+  private boolean stale = true;
+
+  /**
+   * Creates an index of the campaign returned by the supplier.
+   *
+   * @param campaignSupplier supplies the current campaign.
+   */
+  LibraryTokenIndex(Supplier<Campaign> campaignSupplier) {
+    this.campaignSupplier = campaignSupplier;
+  }
+
+  private static LibraryTokenIndex createInstance() {
+    var index = new LibraryTokenIndex(MapTool::getCampaign);
+    new MapToolEventBus().getMainEventBus().register(index);
+    return index;
+  }
+
+  /**
+   * @return the index of the current campaign.
+   */
+  public static LibraryTokenIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns whether a token name is that of a Lib:token.
+   *
+   * @param name the name of the token.
+   * @return {@code true} if the name starts with "lib:", ignoring case.
+   */
+  public static boolean isLibTokenName(String name) {
+    return name != null && name.regionMatches(true, 0, LIB_PREFIX, 0, LIB_PREFIX.length());
+  }
+
+  /**
+   * Returns the Lib:tokens with a name, ignoring case.
+   *
+   * @param name the name of the token, including the "lib:" prefix.
+   * @return the tokens with the name, usually only one.
+   */
+  public synchronized List<Entry> getTokens(String name) {
+    ensureCurrent();
+    var entries = entriesByName.get(name.toLowerCase(Locale.ROOT));
+    return entries == null ? List.of() : List.copyOf(entries.values());
+  }
+
+  /**
+   * Returns the Lib:token with an id.
+   *
+   * @param id the id of the token.
+   * @return the token and its map, or {@code null} if there is no Lib:token with the id.
+   */
+  public synchronized @Nullable Entry getToken(GUID id) {
+    ensureCurrent();
+    String name = namesById.get(id);
+    return name == null ? null : entriesByName.get(name).get(id);
+  }
+
+  /**
+   * Returns the Lib:tokens that have a macro with a label.
+   *
+   * @param label the label of the macro, which is case-sensitive.
+   * @return the tokens with such a macro.
+   */
+  public synchronized List<Entry> getTokensWithMacro(String label) {
+    ensureCurrent();
+    var ids = idsByMacroLabel.get(label);
+    if (ids == null) {
+      return List.of();
+    }
+    List<Entry> entries = new ArrayList<>(ids.size());
+    for (GUID id : ids) {
+      entries.add(entriesByName.get(namesById.get(id)).get(id));
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the first macro with a label on a Lib:token. This gives the same result as {@link
+   * Token#getMacro(String, boolean)} without checking ownership, but does not search the macros.
+   *
+   * @param token the Lib:token.
+   * @param label the label of the macro.
+   * @return the macro, or {@code null} if the token has no macro with the label.
+   */
+  public synchronized @Nullable MacroButtonProperties getMacro(Token token, String label) {
+    ensureCurrent();
+    var macros = macrosById.get(token.getId());
+    String name = namesById.get(token.getId());
+    if (macros == null || entriesByName.get(name).get(token.getId()).token() != token) {
+      return token.getMacro(label, false);
+    }
+    var macro = macros.get(label);
+    if (macro != null && token.getMacroPropertiesMap(false).get(macro.getIndex()) != macro) {
+      // The macros were replaced without an event; index them again.
+      var entry = entriesByName.get(name).get(token.getId());
+      remove(token.getId());
+      add(entry.zone(), token);
+      macro = macrosById.get(token.getId()).get(label);
+    }
+    return macro;
+  }
+
+  @Subscribe
+  private void onTokensAdded(TokensAdded event) {
+    update(event.zone(), event.tokens());
+  }
+
+  @Subscribe
+  private void onTokensChanged(TokensChanged event) {
+    update(event.zone(), event.tokens());
+  }
+
+  @Subscribe
+  private void onTokenEdited(TokenEdited event) {
+    update(event.zone(), List.of(event.token()));
+  }
+
+  @Subscribe
+  private synchronized void onTokensRemoved(TokensRemoved event) {
+    for (Token token : event.tokens()) {
+      remove(token.getId());
+    }
+  }
+
+  @Subscribe
+  private synchronized void onZoneAdded(ZoneAdded event) {
+    stale = true;
+  }
+
+  @Subscribe
+  private synchronized void onZoneRemoved(ZoneRemoved event) {
+    stale = true;
+  }
+
+  /** Rebuilds the index if the campaign has been replaced or maps have been added or removed. */
+  private void ensureCurrent() {
+    Campaign campaign = campaignSupplier.get();
+    if (!stale && campaign == indexedCampaign) {
+      return;
+    }
+    clear();
+    indexedCampaign = campaign;
+    stale = false;
+    if (campaign == null) {
+      return;
+    }
+    for (Zone zone : campaign.getZones()) {
+      // Maps that have not been read yet never hold Lib:tokens.
+      if (zone.isContentLoaded()) {
+        for (Token token : zone.getTokensFiltered(t -> isLibTokenName(t.getName()))) {
+          add(zone, token);
+        }
+      }
+    }
+  }
+
+  private synchronized void update(Zone zone, List<Token> tokens) {
+    if (stale) {
+      // Everything is read again on the next lookup.
+      return;
+    }
+    for (Token token : tokens) {
+      boolean indexed = namesById.containsKey(token.getId());
+      boolean lib = isLibTokenName(token.getName());
+      if (indexed) {
+        remove(token.getId());
+      }
+      if (lib) {
+        add(zone, token);
+      }
+    }
+  }
+
+  private void add(Zone zone, Token token) {
+    GUID id = token.getId();
+    String name = token.getName().toLowerCase(Locale.ROOT);
+    entriesByName.computeIfAbsent(name, n -> new LinkedHashMap<>()).put(id, new Entry(zone, token));
+    namesById.put(id, name);
+
+    Map<String, MacroButtonProperties> macros = new HashMap<>();
+    for (MacroButtonProperties macro : token.getMacroPropertiesMap(false).values()) {
+      if (macro.getLabel() != null && macros.putIfAbsent(macro.getLabel(), macro) == null) {
+        idsByMacroLabel.computeIfAbsent(macro.getLabel(), l -> new LinkedHashSet<>()).add(id);
+      }
+    }
+    macrosById.put(id, macros);
+  }
+
+  private void remove(GUID id) {
+    String name = namesById.remove(id);
+    if (name == null) {
+      return;
+    }
+    var entries = entriesByName.get(name);
+    entries.remove(id);
+    if (entries.isEmpty()) {
+      entriesByName.remove(name);
+    }
+    var macros = macrosById.remove(id);
+    for (String label : macros.keySet()) {
+      var ids = idsByMacroLabel.get(label);
+      ids.remove(id);
+      if (ids.isEmpty()) {
+        idsByMacroLabel.remove(label);
+      }
+    }
+  }
+
+  private void clear() {
+    entriesByName.clear();
+    namesById.clear();
+    macrosById.clear();
+    idsByMacroLabel.clear();
+  }
+}
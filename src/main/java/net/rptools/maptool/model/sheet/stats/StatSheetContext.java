@@ -24,6 +24,7 @@
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolVariableResolver;
+import net.rptools.maptool.model.EvaluatedPropertyScope;
 import net.rptools.maptool.model.Token;
 import net.rptools.maptool.model.player.Player;
 import net.rptools.maptool.util.HTMLUtil;
@@ -195,40 +196,42 @@ public StatSheetContext(Token token, Player player, StatSheetLocation location)
       portraitAsset = null;
     }
     label = token.getLabel();
-    MapToolVariableResolver resolver = new MapToolVariableResolver(token);
-    MapTool.getCampaign()
-        .getCampaignProperties()
-        .getTokenPropertyList(token.getPropertyType())
-        .forEach(
-            tp -> {
-              if (tp.isShowOnStatSheet()) {
-                if (tp.isGMOnly() && !MapTool.getPlayer().isGM()) {
-                  return;
-                }
-
-                if (tp.isOwnerOnly() && !AppUtil.playerOwns(token)) {
-                  return;
-                }
+    // Properties that refer to each other are only evaluated once per sheet.
+    try (var propertyScope = EvaluatedPropertyScope.open()) {
+      MapToolVariableResolver resolver = new MapToolVariableResolver(token);
+      MapTool.getCampaign()
+          .getTokenPropertyList(token.getPropertyType())
+          .forEach(
+              tp -> {
+                if (tp.isShowOnStatSheet()) {
+                  if (tp.isGMOnly() && !MapTool.getPlayer().isGM()) {
+                    return;
+                  }
 
-                Object value = token.getEvaluatedProperty(resolver, tp.getName());
-                if (value == null) {
-                  return;
-                }
+                  if (tp.isOwnerOnly() && !AppUtil.playerOwns(token)) {
+                    return;
+                  }
 
-                if (value instanceof String svalue) {
-                  if (svalue.isBlank()) {
+                  Object value = token.getEvaluatedProperty(resolver, tp.getName());
+                  if (value == null) {
                     return;
                   }
+
+                  if (value instanceof String svalue) {
+                    if (svalue.isBlank()) {
+                      return;
+                    }
+                  }
+                  properties.add(
+                      new Property(
+                          tp.getName(),
+                          tp.getDisplayName(),
+                          tp.getShortName(),
+                          value,
+                          tp.isGMOnly()));
                 }
-                properties.add(
-                    new Property(
-                        tp.getName(),
-                        tp.getDisplayName(),
-                        tp.getShortName(),
-                        value,
-                        tp.isGMOnly()));
-              }
-            });
+              });
+    }
 
     Dimension dim;
     if (token.getPortraitImage() != null) {
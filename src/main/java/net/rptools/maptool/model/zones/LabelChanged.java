@@ -15,5 +15,6 @@
 package net.rptools.maptool.model.zones;
 
 import net.rptools.maptool.model.Label;
+import net.rptools.maptool.model.Zone;
 
-public record LabelChanged(Label label) {}
+public record LabelChanged(Zone zone, Label label) {}
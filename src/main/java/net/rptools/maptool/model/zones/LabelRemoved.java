@@ -15,5 +15,6 @@
 package net.rptools.maptool.model.zones;
 
 import net.rptools.maptool.model.Label;
+import net.rptools.maptool.model.Zone;
 
-public record LabelRemoved(Label label) {}
+public record LabelRemoved(Zone zone, Label label) {}
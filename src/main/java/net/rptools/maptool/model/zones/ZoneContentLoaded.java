@@ -0,0 +1,24 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model.zones;
+
+import net.rptools.maptool.model.Zone;
+
+/**
+ * The content of a zone that was not in memory has been read. The tokens, drawables and labels of
+ * the zone are new objects, so anything cached for the zone's content should be rebuilt. The
+ * tokens have not been added to the zone, so this is not followed by {@link TokensAdded}.
+ */
+public record ZoneContentLoaded(Zone zone) {}
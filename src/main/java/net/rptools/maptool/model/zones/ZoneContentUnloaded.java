@@ -0,0 +1,25 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model.zones;
+
+import net.rptools.maptool.model.Zone;
+
+/**
+ * The content of a zone has been dropped from memory and will be read back the next time it is
+ * used. The tokens of the zone have not been deleted, so this is not followed by {@link
+ * TokensRemoved}, but anything holding on to the zone's tokens, drawables or labels should let go
+ * of them and look them up again by id once the content is back.
+ */
+public record ZoneContentUnloaded(Zone zone) {}
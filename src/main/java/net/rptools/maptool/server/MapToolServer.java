@@ -472,6 +472,13 @@ public void broadcastMessage(String[] exclude, Message message) {
     router.broadcastMessage(exclude, message.toByteArray());
   }
 
+  /**
+   * @return the number of messages waiting to be sent to all connected clients.
+   */
+  public int getPendingMessageCount() {
+    return router.getPendingMessageCount();
+  }
+
   private class HeartbeatThread extends Thread {
 
     private static final Random random = new Random();
@@ -237,5 +237,18 @@ void updateTokenProperty(
 
   void updateTokenProperty(Token token, Token.Update update, String value, BigDecimal value2);
 
+  /**
+   * Starts holding back token property updates, so that they are sent to the server as a single
+   * message by the matching {@link #endTokenUpdates()}. The updates are still applied locally right
+   * away, but the events they cause are fired together when the batch ends. Batches may be nested,
+   * in which case the updates are sent when the outermost one ends. Any other message sent while a
+   * batch is open first sends the updates held back so far, so the server always sees the changes
+   * in the order they were made.
+   */
+  void beginTokenUpdates();
+
+  /** Ends a batch started by {@link #beginTokenUpdates()}. */
+  void endTokenUpdates();
+
   void updatePlayerStatus(Player player);
 }
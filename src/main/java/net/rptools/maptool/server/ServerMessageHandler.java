@@ -219,6 +219,10 @@ public void handleMessage(String id, byte[] message) {
           handle(msg.getUpdateTokenPropertyMsg());
           sendToClients(id, msg);
         }
+        case UPDATE_TOKEN_PROPERTIES_MSG -> {
+          handle(msg.getUpdateTokenPropertiesMsg());
+          sendToClients(id, msg);
+        }
         case SET_ZONE_VISIBILITY_MSG -> {
           handle(msg.getSetZoneVisibilityMsg());
           sendToAllClients(msg);
@@ -405,6 +409,22 @@ private void handle(UpdateTokenPropertyMsg msg) {
         });
   }
 
+  private void handle(UpdateTokenPropertiesMsg msg) {
+    EventQueue.invokeLater(
+        () -> {
+          Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+          var events = new TokenUpdateEvents(zone);
+          for (var update : msg.getUpdatesList()) {
+            Token token = zone.getToken(GUID.valueOf(update.getTokenGuid()));
+            token.updateProperty(
+                Token.Update.valueOf(update.getProperty().name()),
+                update.getValuesList(),
+                events); // update server version of token
+          }
+          events.fire();
+        });
+  }
+
   private void handle(UpdateDrawingMsg msg) {
     EventQueue.invokeLater(
         () -> {
@@ -16,9 +16,10 @@
 
 import com.google.protobuf.ByteString;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.FileRegion;
 import net.rptools.maptool.server.proto.AssetChunkDto;
 
 /**
@@ -31,8 +32,10 @@ public class AssetProducer {
   private MD5Key id;
   private String name;
   private File assetFile;
+  private FileRegion region;
   private long length;
   private long currentPosition = 0;
+  private ByteBuffer buffer; // Reused for every chunk
 
   public AssetProducer(MD5Key id, String name, File assetFile) {
     if (!assetFile.exists() || assetFile.isDirectory()) {
@@ -42,6 +45,7 @@ public AssetProducer(MD5Key id, String name, File assetFile) {
     this.name = name;
     this.assetFile = assetFile;
     length = assetFile.length();
+    region = new FileRegion(assetFile.toPath(), 0, length);
   }
 
   /**
@@ -62,15 +66,17 @@ public AssetChunkDto nextChunk(int size) throws IOException {
     if (currentPosition + size > length) {
       size = (int) (length - currentPosition);
     }
-    byte[] data = new byte[size];
-    try (FileInputStream in = new FileInputStream(assetFile)) {
-      in.skip(currentPosition);
-      in.read(data, 0, size);
+    // Read just the chunk at its position rather than reading the file up to it
+    if (buffer == null || buffer.capacity() < size) {
+      buffer = ByteBuffer.allocate(size);
     }
+    buffer.clear().limit(size);
+    region.read(currentPosition, buffer);
+    buffer.flip();
     currentPosition += size;
     return AssetChunkDto.newBuilder()
         .setId(id.toString())
-        .setData(ByteString.copyFrom(data))
+        .setData(ByteString.copyFrom(buffer))
         .build();
   }
 
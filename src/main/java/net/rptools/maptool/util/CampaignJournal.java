@@ -0,0 +1,397 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.model.Asset;
+import net.rptools.maptool.model.AssetManager;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.server.proto.AssetDto;
+import net.rptools.maptool.server.proto.CampaignDto;
+import net.rptools.maptool.server.proto.TokenDto;
+import net.rptools.maptool.server.proto.ZoneDto;
+import net.rptools.maptool.util.PersistenceUtil.PersistedCampaign;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An append-only log of the changes made to a campaign since it was last saved in full.
+ *
+ * <p>The journal starts with a header naming the base campaign file, with its length and modification
+ * time, followed by one {@link Batch} per autosave. Each batch holds the zones (without their
+ * tokens) and the tokens that changed since the previous one, the assets that are not in the base
+ * file yet, and the campaign itself without its zones (only their headers), so that it can be
+ * replayed on top of the base file to recover the campaign after a crash. A journal is only
+ * replayed if the base file is still the one it was written against. A batch is written as a single length-prefixed, checksummed block; a batch that was only
+ * partly written when MapTool died is ignored on replay.
+ *
+ * <p>The journal is discarded whenever the campaign is saved in full, which compacts all of the
+ * batches into the campaign file.
+ */
+public final class CampaignJournal {
+
+  private static final Logger log = LogManager.getLogger(CampaignJournal.class);
+
+  private static final int MAGIC = 0x4D544A4C; // MTJL
+  private static final int VERSION = 2;
+
+  /**
+   * The campaign file a journal applies to, as it was when it was saved. Replaying a journal on top
+   * of a file that has been changed or replaced since would mix two different campaigns.
+   *
+   * @param file the campaign file.
+   * @param length the length of the file.
+   * @param lastModified when the file was last modified.
+   */
+  public record BaseFile(File file, long length, long lastModified) {
+
+    /**
+     * Records the current state of a campaign file.
+     *
+     * @param file the campaign file.
+     * @return the state of the file.
+     */
+    public static BaseFile of(File file) {
+      File absolute = file.getAbsoluteFile();
+      return new BaseFile(absolute, absolute.length(), absolute.lastModified());
+    }
+
+    /**
+     * Returns whether the file is still the one that was recorded.
+     *
+     * @return {@code true} if the file exists with the recorded length and modification time.
+     */
+    public boolean isUnchanged() {
+      return file.isFile() && file.length() == length && file.lastModified() == lastModified;
+    }
+  }
+
+  /** The changes made to a campaign between two autosaves. */
+  public static final class Batch {
+    private final CampaignDto campaign;
+    private final List<ZoneDto> zones = new ArrayList<>();
+    private final List<TokenChanges> tokenChanges = new ArrayList<>();
+    private final Set<MD5Key> assetIds = new HashSet<>();
+
+    /**
+     * Creates a batch for the campaign. Only the campaign's own properties and the headers of its
+     * zones are taken now; changed zones, tokens and assets have to be added.
+     *
+     * @param campaign the campaign.
+     */
+    public Batch(Campaign campaign) {
+      var dto = campaign.toDto(false).toBuilder();
+      for (Zone zone : campaign.getZones()) {
+        dto.addZones(zone.toHeaderDto());
+      }
+      this.campaign = dto.build();
+    }
+
+    /**
+     * Adds a zone that has to be written in full, apart from its tokens. The tokens of a zone are
+     * only written when they change, see {@link #addTokens(Zone, Set)}.
+     *
+     * @param zone the zone.
+     */
+    public void addZone(Zone zone) {
+      zones.add(zone.toDto(false));
+    }
+
+    /**
+     * Adds changes to the tokens of a zone.
+     *
+     * @param zone the zone.
+     * @param tokenIds the ids of the tokens that were added, changed or removed.
+     */
+    public void addTokens(Zone zone, Set<GUID> tokenIds) {
+      var changes = new TokenChanges(zone.getId(), new ArrayList<>(), new ArrayList<>());
+      for (GUID tokenId : tokenIds) {
+        Token token = zone.getToken(tokenId);
+        if (token != null) {
+          changes.tokens().add(token.toDto());
+        } else {
+          changes.removedIds().add(tokenId);
+        }
+      }
+      tokenChanges.add(changes);
+    }
+
+    /**
+     * Adds assets that are not in the base campaign file. They are read from the {@link
+     * AssetManager} when the batch is written.
+     *
+     * @param assetIds the ids of the assets.
+     */
+    public void addAssets(Set<MD5Key> assetIds) {
+      this.assetIds.addAll(assetIds);
+    }
+  }
+
+  private record TokenChanges(GUID zoneId, List<TokenDto> tokens, List<GUID> removedIds) {}
+
+  private CampaignJournal() {}
+
+  /**
+   * Appends a batch to the journal, creating it if it doesn't exist yet. The data is forced to the
+   * disk before returning.
+   *
+   * @param journal the journal file.
+   * @param baseFile the campaign file the journal applies to.
+   * @param batch the batch to append.
+   * @throws IOException if an error occurs writing the journal.
+   */
+  public static void append(File journal, BaseFile baseFile, Batch batch) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    var out = new DataOutputStream(bytes);
+
+    out.writeInt(batch.assetIds.size());
+    for (MD5Key assetId : batch.assetIds) {
+      Asset asset = AssetManager.getAsset(assetId);
+      if (asset == null) {
+        throw new IOException("Asset " + assetId + " is not available");
+      }
+      asset.toDto().writeDelimitedTo(out);
+    }
+    out.writeInt(batch.zones.size());
+    for (ZoneDto zone : batch.zones) {
+      zone.writeDelimitedTo(out);
+    }
+    out.writeInt(batch.tokenChanges.size());
+    for (TokenChanges changes : batch.tokenChanges) {
+      out.writeUTF(changes.zoneId().toString());
+      out.writeInt(changes.tokens().size());
+      for (TokenDto token : changes.tokens()) {
+        token.writeDelimitedTo(out);
+      }
+      out.writeInt(changes.removedIds().size());
+      for (GUID tokenId : changes.removedIds()) {
+        out.writeUTF(tokenId.toString());
+      }
+    }
+    batch.campaign.writeDelimitedTo(out);
+    out.flush();
+
+    byte[] data = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    boolean exists = journal.exists();
+    try (FileOutputStream fos = new FileOutputStream(journal, true)) {
+      var fileOut = new DataOutputStream(fos);
+      if (!exists) {
+        fileOut.writeInt(MAGIC);
+        fileOut.writeInt(VERSION);
+        fileOut.writeUTF(baseFile.file().getAbsolutePath());
+        fileOut.writeLong(baseFile.length());
+        fileOut.writeLong(baseFile.lastModified());
+      }
+      fileOut.writeInt(data.length);
+      fileOut.write(data);
+      fileOut.writeLong(crc.getValue());
+      fileOut.flush();
+      fos.getFD().sync();
+    }
+  }
+
+  /**
+   * Returns the campaign file a journal applies to.
+   *
+   * @param journal the journal file.
+   * @return the base campaign file, as it was when the journal was started.
+   * @throws IOException if the journal can not be read.
+   */
+  public static BaseFile getBaseFile(File journal) throws IOException {
+    try (var in = new DataInputStream(new FileInputStream(journal))) {
+      return readHeader(in);
+    }
+  }
+
+  /**
+   * Loads the base campaign file of a journal and replays all complete batches on top of it.
+   *
+   * @param journal the journal file.
+   * @return the recovered campaign, or {@code null} if the base campaign could not be loaded.
+   * @throws IOException if the journal or the base campaign can not be read, or the base campaign
+   *     has changed since the journal was started.
+   */
+  public static PersistedCampaign replay(File journal) throws IOException {
+    BaseFile baseFile = getBaseFile(journal);
+    checkBaseFile(baseFile);
+    PersistedCampaign persistedCampaign = PersistenceUtil.loadCampaign(baseFile.file());
+    if (persistedCampaign == null) {
+      return null;
+    }
+    persistedCampaign.campaign = replay(journal, persistedCampaign.campaign);
+    return persistedCampaign;
+  }
+
+  /**
+   * Replays all complete batches of a journal on top of the campaign loaded from its base file.
+   *
+   * @param journal the journal file.
+   * @param campaign the campaign loaded from the base file.
+   * @return the recovered campaign.
+   * @throws IOException if the journal can not be read, or the base campaign has changed since the
+   *     journal was started.
+   */
+  static Campaign replay(File journal, Campaign campaign) throws IOException {
+    try (var in = new DataInputStream(new FileInputStream(journal))) {
+      BaseFile baseFile = readHeader(in);
+      checkBaseFile(baseFile);
+
+      int batches = 0;
+      byte[] data;
+      while ((data = readBatch(in)) != null) {
+        campaign = apply(campaign, data);
+        batches++;
+      }
+      log.info("Replayed {} autosave batches on top of {}", batches, baseFile.file());
+      return campaign;
+    }
+  }
+
+  private static void checkBaseFile(BaseFile baseFile) throws IOException {
+    if (!baseFile.isUnchanged()) {
+      throw new IOException(I18N.getText("msg.error.journalBaseChanged", baseFile.file()));
+    }
+  }
+
+  private static BaseFile readHeader(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not an autosave journal");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported autosave journal version " + version);
+    }
+    return new BaseFile(new File(in.readUTF()), in.readLong(), in.readLong());
+  }
+
+  /** Reads the next batch, or returns {@code null} at the end of the journal or a torn write. */
+  private static byte[] readBatch(DataInputStream in) throws IOException {
+    try {
+      int length = in.readInt();
+      if (length < 0) {
+        return null;
+      }
+      byte[] data = in.readNBytes(length);
+      if (data.length < length) {
+        return null;
+      }
+      long expected = in.readLong();
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      if (crc.getValue() != expected) {
+        log.warn("Ignoring corrupt autosave batch");
+        return null;
+      }
+      return data;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private static Campaign apply(Campaign campaign, byte[] data) throws IOException {
+    InputStream bytes = new ByteArrayInputStream(data);
+    var in = new DataInputStream(bytes);
+
+    int assetCount = in.readInt();
+    for (int i = 0; i < assetCount; i++) {
+      AssetManager.putAsset(Asset.fromDto(AssetDto.parseDelimitedFrom(in)));
+    }
+
+    Map<GUID, Zone> zones = new HashMap<>();
+    for (Zone zone : campaign.getZones()) {
+      zones.put(zone.getId(), zone);
+    }
+    Set<GUID> replaced = new HashSet<>();
+    int zoneCount = in.readInt();
+    for (int i = 0; i < zoneCount; i++) {
+      Zone zone = Zone.fromDto(ZoneDto.parseDelimitedFrom(in));
+      // Zones are journaled without their tokens, changed tokens follow as token changes
+      Zone previous = zones.put(zone.getId(), zone);
+      if (previous != null) {
+        zone.putTokens(previous.getAllTokens());
+      }
+      replaced.add(zone.getId());
+    }
+
+    List<TokenChanges> tokenChanges = new ArrayList<>();
+    int changesCount = in.readInt();
+    for (int i = 0; i < changesCount; i++) {
+      var changes =
+          new TokenChanges(GUID.valueOf(in.readUTF()), new ArrayList<>(), new ArrayList<>());
+      int tokenCount = in.readInt();
+      for (int t = 0; t < tokenCount; t++) {
+        changes.tokens().add(TokenDto.parseDelimitedFrom(in));
+      }
+      int removedCount = in.readInt();
+      for (int t = 0; t < removedCount; t++) {
+        changes.removedIds().add(GUID.valueOf(in.readUTF()));
+      }
+      tokenChanges.add(changes);
+    }
+
+    CampaignDto campaignDto = CampaignDto.parseDelimitedFrom(in);
+    Campaign result = Campaign.fromDto(campaignDto.toBuilder().clearZones().build());
+    for (ZoneDto header : campaignDto.getZonesList()) {
+      Zone zone = zones.get(GUID.valueOf(header.getId()));
+      if (zone == null) {
+        log.warn("Autosave journal refers to unknown map {}", header.getName());
+        continue;
+      }
+      if (!replaced.contains(zone.getId()) && !zone.toHeaderDto().equals(header)) {
+        // Changes to the zone's own properties don't raise events, so only the header is updated
+        zone = Zone.fromDto(header, zone.toDto());
+      }
+      result.putZone(zone);
+    }
+
+    for (TokenChanges changes : tokenChanges) {
+      Zone zone = result.getZone(changes.zoneId());
+      if (zone == null) {
+        continue;
+      }
+      for (TokenDto token : changes.tokens()) {
+        zone.putToken(Token.fromDto(token));
+      }
+      for (GUID tokenId : changes.removedIds()) {
+        zone.removeToken(tokenId);
+      }
+    }
+    return result;
+  }
+}
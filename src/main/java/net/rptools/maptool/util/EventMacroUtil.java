@@ -21,11 +21,11 @@
 import net.rptools.maptool.client.MapToolVariableResolver;
 import net.rptools.maptool.client.functions.exceptions.*;
 import net.rptools.maptool.client.macro.MacroLocationFactory;
-import net.rptools.maptool.client.ui.zone.renderer.ZoneRenderer;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.TextMessage;
 import net.rptools.maptool.model.Token;
 import net.rptools.maptool.model.library.LibraryManager;
+import net.rptools.maptool.model.library.token.LibraryTokenIndex;
 import net.rptools.parser.ParserException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,32 +38,26 @@ public class EventMacroUtil {
       MacroLocationFactory.getInstance();
 
   /**
-   * Scans all maps to find any Lib:Tokens that contain a macro matching the given "callback" label.
+   * Finds the Lib:Tokens on all maps that contain a macro matching the given "callback" label.
    *
    * @param macroCallback the macro name to find
    * @return a (possibly empty) list of Lib:tokens that contain the requested macro
    */
   public static List<Token> getEventMacroTokens(final String macroCallback) {
     List<Token> found = new ArrayList<>();
-    List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
-    for (ZoneRenderer zr : zrenderers) {
-      List<Token> tokenList =
-          zr.getZone().getTokensFiltered(t -> t.getName().toLowerCase().startsWith("lib:"));
-      var nonGms = MapTool.getNonGMs();
-      for (Token token : tokenList) {
-        // If the token is not owned by everyone and all owners are GMs then we are in
-        // its a trusted Lib:token so we can run the macro
-        if (token.isOwnedByAll()) {
-          continue;
-        }
-        if (token.isOwnedByAny(nonGms)) {
-          // Not trusted, don't run.
-          continue;
-        }
-        if (token.getMacro(macroCallback, false) != null) {
-          found.add(token);
-        }
+    var nonGms = MapTool.getNonGMs();
+    for (var entry : LibraryTokenIndex.getInstance().getTokensWithMacro(macroCallback)) {
+      Token token = entry.token();
+      // If the token is not owned by everyone and all owners are GMs then we are in
+      // its a trusted Lib:token so we can run the macro
+      if (token.isOwnedByAll()) {
+        continue;
       }
+      if (token.isOwnedByAny(nonGms)) {
+        // Not trusted, don't run.
+        continue;
+      }
+      found.add(token);
     }
     return found;
   }
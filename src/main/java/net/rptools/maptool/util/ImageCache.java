@@ -0,0 +1,318 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import net.rptools.lib.MD5Key;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A cache of decoded images that is limited by the memory the images use rather than by their
+ * number. Images are weighed by {@code width * height * bytesPerPixel}, and the least recently
+ * used images are evicted once the total goes over the budget. Pinned images, such as those used
+ * by the map being displayed, are only evicted once everything else has been and they use more than
+ * {@link #PINNED_SHARE} of the budget, so there is always room left for the images that are not
+ * pinned. The image that was just added is never evicted to make room, otherwise an image that
+ * does not fit would be decoded, evicted and asked for again over and over.
+ *
+ * <p>Evicted images are held through soft references, so that callers can keep showing them while
+ * they are decoded again instead of a placeholder. See {@link #getEvicted(MD5Key)}.
+ *
+ * <p>An image may also hold the levels of its mip pyramid, which count towards the budget and are
+ * evicted along with it.
+ *
+ * <p>All methods are thread safe.
+ */
+public final class ImageCache {
+  private static final Logger log = LogManager.getLogger(ImageCache.class);
+
+  /** The share of the budget pinned images are protected up to. */
+  static final double PINNED_SHARE = 0.75;
+
+  /**
+   * Hit, miss and eviction counts along with the current size of the cache.
+   *
+   * @param hits the number of lookups that found an image.
+   * @param misses the number of lookups that did not find an image.
+   * @param evictions the number of images evicted to stay within the budget.
+   * @param images the number of images in the cache.
+   * @param bytes the estimated memory used by the images in the cache.
+   * @param budget the memory budget of the cache.
+   */
+  public record Stats(
+      long hits, long misses, long evictions, int images, long bytes, long budget) {}
+
+  /** A cached image and its mip levels, if they have been created. */
+  private static final class Entry {
+    private final BufferedImage image;
+    private BufferedImage[] mipLevels;
+    private long weight;
+
+    private Entry(BufferedImage image, long weight) {
+      this.image = image;
+      this.weight = weight;
+    }
+  }
+
+  /** The images in access order, the least recently used first. */
+  private final LinkedHashMap<MD5Key, Entry> images = new LinkedHashMap<>(64, 0.75f, true);
+
+  /** Images that have been evicted, for as long as the garbage collector leaves them. */
+  private final Map<MD5Key, SoftReference<BufferedImage>> evicted = new HashMap<>();
+
+  /** Images that must never be evicted, for example the placeholder for an image being loaded. */
+  private final Set<BufferedImage> permanentImages;
+
+  private Set<MD5Key> pinned = Set.of();
+  private long budget;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param budget the number of bytes the images may use.
+   * @param permanentImages shared placeholder images, which are neither weighed nor evicted.
+   */
+  ImageCache(long budget, BufferedImage... permanentImages) {
+    this.budget = budget;
+    this.permanentImages = new HashSet<>(Arrays.asList(permanentImages));
+  }
+
+  /**
+   * Returns the image for the key, marking it as recently used.
+   *
+   * @param key the key of the image.
+   * @return the image, or {@code null} if it is not in the cache.
+   */
+  synchronized BufferedImage get(MD5Key key) {
+    Entry entry = images.get(key);
+    if (entry == null || permanentImages.contains(entry.image)) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return entry == null ? null : entry.image;
+  }
+
+  /**
+   * Returns the image for the key without counting the lookup in the statistics.
+   *
+   * @param key the key of the image.
+   * @return the image, or {@code null} if it is not in the cache.
+   */
+  synchronized BufferedImage peek(MD5Key key) {
+    Entry entry = images.get(key);
+    return entry == null ? null : entry.image;
+  }
+
+  /**
+   * Returns an image that has been evicted, if it has not been garbage collected yet. It can be
+   * shown in place of a placeholder until the image has been decoded again.
+   *
+   * @param key the key of the image.
+   * @return the image, or {@code null} if it was not evicted or is gone.
+   */
+  synchronized BufferedImage getEvicted(MD5Key key) {
+    var ref = evicted.get(key);
+    return ref == null ? null : ref.get();
+  }
+
+  /**
+   * Adds an image, replacing any image already held for the key, and evicts the least recently
+   * used images if the cache is now over its budget.
+   *
+   * @param key the key of the image.
+   * @param image the image.
+   */
+  synchronized void put(MD5Key key, BufferedImage image) {
+    long weight = weigh(image);
+    Entry old = images.put(key, new Entry(image, weight));
+    if (old != null) {
+      bytes -= old.weight;
+    }
+    bytes += weight;
+    evicted.remove(key);
+    trim(key);
+  }
+
+  /**
+   * Returns the mip levels of an image.
+   *
+   * @param key the key of the image.
+   * @param image the image the levels must have been created from.
+   * @return the levels, or {@code null} if the image is not cached or has no levels yet.
+   */
+  synchronized BufferedImage[] getMipLevels(MD5Key key, BufferedImage image) {
+    Entry entry = images.get(key);
+    return entry == null || entry.image != image ? null : entry.mipLevels;
+  }
+
+  /**
+   * Adds the mip levels of an image, if it is still cached.
+   *
+   * @param key the key of the image.
+   * @param image the image the levels were created from.
+   * @param mipLevels the levels.
+   */
+  synchronized void putMipLevels(MD5Key key, BufferedImage image, BufferedImage[] mipLevels) {
+    Entry entry = images.get(key);
+    if (entry == null || entry.image != image || entry.mipLevels != null) {
+      return;
+    }
+    long weight = 0;
+    for (BufferedImage level : mipLevels) {
+      weight += weigh(level);
+    }
+    entry.mipLevels = mipLevels;
+    entry.weight += weight;
+    bytes += weight;
+    trim(key);
+  }
+
+  /**
+   * Removes an image.
+   *
+   * @param key the key of the image.
+   */
+  synchronized void remove(MD5Key key) {
+    evicted.remove(key);
+    Entry old = images.remove(key);
+    if (old != null) {
+      bytes -= old.weight;
+    }
+  }
+
+  /**
+   * Removes all images whose key is not in {@code keep}.
+   *
+   * @param keep the keys of the images to keep.
+   */
+  synchronized void retainAll(Set<MD5Key> keep) {
+    for (MD5Key key : new HashSet<>(images.keySet())) {
+      if (!keep.contains(key)) {
+        remove(key);
+      }
+    }
+    evicted.keySet().retainAll(keep);
+  }
+
+  /** Removes all images. */
+  synchronized void clear() {
+    images.clear();
+    evicted.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Sets the images that may not be evicted, replacing the previous set.
+   *
+   * @param keys the keys of the images to pin.
+   */
+  synchronized void setPinned(Set<MD5Key> keys) {
+    pinned = Set.copyOf(keys);
+    trim(null);
+  }
+
+  /**
+   * Changes the budget, evicting images if the cache is now over it.
+   *
+   * @param budget the number of bytes the images may use.
+   */
+  synchronized void setBudget(long budget) {
+    this.budget = budget;
+    trim(null);
+  }
+
+  /**
+   * Returns the current statistics of the cache.
+   *
+   * @return the statistics.
+   */
+  synchronized Stats getStats() {
+    return new Stats(hits, misses, evictions, images.size(), bytes, budget);
+  }
+
+  /**
+   * Evicts the least recently used images until the cache fits its budget. Images that are not
+   * pinned go first; pinned images only go while they use more than their share of the budget.
+   *
+   * @param keep the image that was just added, which is not evicted, or {@code null}.
+   */
+  private void trim(@Nullable MD5Key keep) {
+    if (bytes <= budget) {
+      return;
+    }
+    long pinnedBudget = (long) (budget * PINNED_SHARE);
+    long pinnedBytes = 0;
+    for (var entry : images.entrySet()) {
+      if (pinned.contains(entry.getKey())) {
+        pinnedBytes += entry.getValue().weight;
+      }
+    }
+
+    for (boolean evictPinned : new boolean[] {false, true}) {
+      Iterator<Map.Entry<MD5Key, Entry>> it = images.entrySet().iterator();
+      while (bytes > budget && (!evictPinned || pinnedBytes > pinnedBudget) && it.hasNext()) {
+        var entry = it.next();
+        MD5Key key = entry.getKey();
+        if (key.equals(keep)
+            || pinned.contains(key) != evictPinned
+            || permanentImages.contains(entry.getValue().image)) {
+          continue;
+        }
+        bytes -= entry.getValue().weight;
+        if (evictPinned) {
+          pinnedBytes -= entry.getValue().weight;
+        }
+        it.remove();
+        evictions++;
+        evicted.put(key, new SoftReference<>(entry.getValue().image));
+        log.debug("Evicted image {}, {} of {} bytes used", key, bytes, budget);
+      }
+    }
+
+    // Forget the images the garbage collector has already taken
+    if (evicted.size() > images.size() * 2 + 64) {
+      evicted.values().removeIf(ref -> ref.get() == null);
+    }
+  }
+
+  /**
+   * Returns the estimated memory used by the pixels of an image.
+   *
+   * @param image the image.
+   * @return the number of bytes.
+   */
+  private long weigh(BufferedImage image) {
+    if (permanentImages.contains(image)) {
+      return 0;
+    }
+    int bytesPerPixel = (image.getColorModel().getPixelSize() + 7) / 8;
+    return (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+  }
+}
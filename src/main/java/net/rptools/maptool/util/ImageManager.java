@@ -14,14 +14,20 @@
  */
 package net.rptools.maptool.util;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import net.rptools.lib.MD5Key;
 import net.rptools.lib.image.ImageUtil;
 import net.rptools.maptool.client.AppPreferences;
@@ -30,31 +36,28 @@
 import net.rptools.maptool.model.Asset;
 import net.rptools.maptool.model.AssetAvailableListener;
 import net.rptools.maptool.model.AssetManager;
-import org.apache.commons.collections4.map.AbstractReferenceMap;
-import org.apache.commons.collections4.map.ReferenceMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * The ImageManager class keeps a cache of loaded images. This class can be used to load the raw
  * image data from an asset. The loading of the raw image data into a usable class is done in the
- * background by one of two threads. The ImageManager will return a "?" (UNKNOWN_IMAGE) if the asset
- * is still downloading or the asset image is still being loaded, and a "X" (BROKEN_IMAGE) if the
- * asset or image is invalid. Small images are loaded using a different thread pool from large
- * images, and allows small images to load quicker.
+ * background by a pool with a thread per core. The ImageManager will return a "?" (UNKNOWN_IMAGE)
+ * if the asset is still downloading or the asset image is still being loaded, and a "X"
+ * (BROKEN_IMAGE) if the asset or image is invalid. Images that something is waiting on or
+ * observing, such as the images on the map being displayed, are decoded before images that are
+ * only being preloaded.
  *
  * @author RPTools Team.
  */
 public class ImageManager {
   private static final Logger log = LogManager.getLogger(ImageManager.class);
 
-  /** Cache of images loaded for assets. */
-  private static final Map<MD5Key, BufferedImage> imageMap = new HashMap<MD5Key, BufferedImage>();
-
-  /** Additional Soft-reference Cache of images that allows best . */
-  private static final Map<MD5Key, BufferedImage> backupImageMap =
-      new ReferenceMap(
-          AbstractReferenceMap.ReferenceStrength.HARD, AbstractReferenceMap.ReferenceStrength.SOFT);
+  /**
+   * Cache of images loaded for assets, limited by {@link AppPreferences#imageCacheSizeMB}. Images
+   * that are evicted are decoded again from their asset when they are next needed.
+   */
+  private static final ImageCache imageCache;
 
   /**
    * The unknown image, a "?" is used for all situations where the image will eventually appear e.g.
@@ -66,12 +69,32 @@ public class ImageManager {
   /** The broken image, a "X" is used for all situations where the asset or image was invalid. */
   public static BufferedImage BROKEN_IMAGE;
 
-  /** Small and large thread pools for background processing of asset raw image data. */
-  private static ExecutorService smallImageLoader = Executors.newFixedThreadPool(1);
+  /**
+   * Thread pool for background processing of asset raw image data, ordered by {@link
+   * BackgroundImageLoader#compareTo(BackgroundImageLoader)}.
+   */
+  private static final ThreadPoolExecutor imageLoader;
+
+  /** Images that are being loaded, completed with the image once it has been decoded. */
+  private static final Map<MD5Key, CompletableFuture<BufferedImage>> pendingImages =
+      new ConcurrentHashMap<>();
 
-  private static ExecutorService largeImageLoader = Executors.newFixedThreadPool(1);
+  /** Images that a thread is blocked waiting for. */
+  private static final Set<MD5Key> awaitedImages = ConcurrentHashMap.newKeySet();
 
-  private static final Object imageLoaderMutex = new Object();
+  /** Thread pool for building mip pyramids, so that decoding images is never held up by them. */
+  private static final ExecutorService mipLevelBuilder =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder().setNameFormat("mip-level-builder-%d").setDaemon(true).build());
+
+  /** Images whose mip pyramid is being built. */
+  private static final Set<MD5Key> mipLevelsInProgress = ConcurrentHashMap.newKeySet();
+
+  /** Images whose shorter side is smaller than this are always drawn at full size. */
+  private static final int MIN_MIPMAPPED_SIZE = 64;
+
+  /** The smallest size of a side of a mip level. */
+  private static final int MIN_MIP_LEVEL_SIZE = 16;
 
   /**
    * A Map containing sets of observers for each asset id. Observers are notified when the image is
@@ -83,25 +106,61 @@ public class ImageManager {
   static {
     TRANSFERING_IMAGE = RessourceManager.getImage(Images.UNKNOWN);
     BROKEN_IMAGE = RessourceManager.getImage(Images.BROKEN);
+    imageCache = new ImageCache(getCacheBudget(), TRANSFERING_IMAGE, BROKEN_IMAGE);
+    AppPreferences.imageCacheSizeMB.onChange(size -> imageCache.setBudget(getCacheBudget()));
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    imageLoader =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new PriorityBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("image-loader-%d").setDaemon(true).build());
+    imageLoader.allowCoreThreadTimeOut(true);
   }
 
   /**
-   * Remove all images from the image cache. The observers and image load hints are not flushed. The
-   * same observers will be notified when the image is reloaded, and the same hints will be used for
-   * loading.
+   * Returns the number of bytes decoded images may use, from {@link
+   * AppPreferences#imageCacheSizeMB}.
+   *
+   * @return the budget of the image cache.
    */
-  public static void flush() {
-    imageMap.clear();
+  private static long getCacheBudget() {
+    int sizeMB = AppPreferences.imageCacheSizeMB.get();
+    if (sizeMB <= 0) {
+      return Runtime.getRuntime().maxMemory() / 4;
+    }
+    return sizeMB * 1024L * 1024L;
   }
 
   /**
-   * Loads the asset's raw image data into a buffered image, and waits for the image to load.
+   * Sets the images that should stay in the cache, such as the images of the map being displayed.
+   * Other images stay cached while there is room for them, and are evicted least recently used
+   * first. Pinned images are only evicted if they take up more than their share of the cache.
    *
-   * @param assetId Load image data from this asset
-   * @return BufferedImage Return the loaded image
+   * @param assetIds the ids of the images to keep.
+   */
+  public static void setPinnedImages(Set<MD5Key> assetIds) {
+    imageCache.setPinned(assetIds);
+  }
+
+  /**
+   * Returns the hit, miss and eviction counts and the size of the image cache.
+   *
+   * @return the statistics of the image cache.
    */
-  public static BufferedImage getImageAndWait(MD5Key assetId) {
-    return getImageAndWait(assetId, null);
+  public static ImageCache.Stats getCacheStats() {
+    return imageCache.getStats();
+  }
+
+  /**
+   * Remove all images from the image cache. The observers are not flushed, so the same observers
+   * will be notified when the image is reloaded.
+   */
+  public static void flush() {
+    imageCache.clear();
   }
 
   /**
@@ -111,51 +170,37 @@ public static BufferedImage getImageAndWait(MD5Key assetId) {
    * @param exceptionSet a set of images not to be flushed
    */
   public static void flush(Set<MD5Key> exceptionSet) {
-    synchronized (imageLoaderMutex) {
-      for (MD5Key id : new HashSet<MD5Key>(imageMap.keySet())) {
-        if (!exceptionSet.contains(id)) {
-          imageMap.remove(id);
-        }
-      }
-    }
+    imageCache.retainAll(exceptionSet);
   }
 
   /**
    * Loads the asset's raw image data into a buffered image, and waits for the image to load.
    *
    * @param assetId Load image data from this asset
-   * @param hintMap Hints used when loading the image
    * @return BufferedImage Return the loaded image
    */
-  public static BufferedImage getImageAndWait(final MD5Key assetId, Map<String, Object> hintMap) {
+  public static BufferedImage getImageAndWait(final MD5Key assetId) {
     if (assetId == null) {
       return BROKEN_IMAGE;
     }
-    BufferedImage image = null;
-    final CountDownLatch loadLatch = new CountDownLatch(1);
-    image =
-        getImage(
-            assetId,
-            (img, infoflags, x, y, width, height) -> {
-              // If we're here then the image has just finished loading
-              // release the blocked thread
-              log.debug("Countdown: " + assetId);
-              loadLatch.countDown();
-              return false;
-            });
-    if (image == TRANSFERING_IMAGE) {
-      try {
-        log.debug("Wait for:  " + assetId);
-        loadLatch.await();
-        // This time we'll get the cached version
-        image = getImage(assetId);
-      } catch (InterruptedException ie) {
-        log.error(
-            "getImageAndWait(" + assetId + "):  image not resolved; InterruptedException", ie);
-        image = BROKEN_IMAGE;
-      }
+    BufferedImage image = imageCache.get(assetId);
+    if (image != null && image != TRANSFERING_IMAGE) {
+      return image;
+    }
+
+    // Only wait for this image, the future holds it even if it is evicted before we get to it.
+    awaitedImages.add(assetId);
+    try {
+      log.debug("Wait for:  " + assetId);
+      return loadImage(assetId).get();
+    } catch (InterruptedException ie) {
+      log.error("getImageAndWait(" + assetId + "):  image not resolved; InterruptedException", ie);
+      Thread.currentThread().interrupt();
+      return BROKEN_IMAGE;
+    } catch (ExecutionException ee) {
+      log.error("getImageAndWait(" + assetId + "):  image not resolved", ee.getCause());
+      return BROKEN_IMAGE;
     }
-    return image;
   }
 
   /**
@@ -169,30 +214,115 @@ public static BufferedImage getImage(MD5Key assetId, ImageObserver... observers)
     if (assetId == null) {
       return BROKEN_IMAGE;
     }
-    synchronized (imageLoaderMutex) {
-      BufferedImage image = imageMap.get(assetId);
-      if (image != null && image != TRANSFERING_IMAGE) {
-        return image;
-      }
+    BufferedImage image = imageCache.get(assetId);
+    if (image != null && image != TRANSFERING_IMAGE) {
+      return image;
+    }
 
-      // check if the soft reference still resolves image
-      image = backupImageMap.get(assetId);
-      if (image != null) {
-        imageMap.put(assetId, image);
-        return image;
-      }
+    // Make sure we are informed when it's done loading
+    addObservers(assetId, observers);
+    // An image that was evicted is shown until it has been decoded again, rather than flickering
+    BufferedImage evicted = imageCache.getEvicted(assetId);
+    return loadImage(assetId).getNow(evicted != null ? evicted : TRANSFERING_IMAGE);
+  }
 
-      // Make note that we're currently processing it
-      imageMap.put(assetId, TRANSFERING_IMAGE);
+  /**
+   * Returns the future for an image that is being loaded, starting the load if it has not been
+   * started already. Only the first caller for an image starts the load, everyone else shares its
+   * future.
+   *
+   * @param assetId Load image data from this asset.
+   * @return the future that is completed once the image has been decoded.
+   */
+  private static CompletableFuture<BufferedImage> loadImage(MD5Key assetId) {
+    CompletableFuture<BufferedImage> future = pendingImages.get(assetId);
+    if (future != null) {
+      return future;
+    }
 
-      // Make sure we are informed when it's done loading
-      addObservers(assetId, observers);
+    BufferedImage image = imageCache.peek(assetId);
+    if (image != null && image != TRANSFERING_IMAGE) {
+      return CompletableFuture.completedFuture(image);
+    }
+
+    var newFuture = new CompletableFuture<BufferedImage>();
+    future = pendingImages.putIfAbsent(assetId, newFuture);
+    if (future != null) {
+      return future;
+    }
 
-      // Force a load of the asset, this will trigger a transfer if the
-      // asset is not available locally
-      AssetManager.getAssetAsynchronously(assetId, new AssetListener(assetId));
-      return TRANSFERING_IMAGE;
+    // Force a load of the asset, this will trigger a transfer if the
+    // asset is not available locally
+    AssetManager.getAssetAsynchronously(assetId, new AssetListener(assetId));
+    return newFuture;
+  }
+
+  /**
+   * Return the image corresponding to the assetId, at a size suited to drawing it at {@code scale}
+   * times its full size. When the image is drawn at half its size or less, one of the levels of its
+   * mip pyramid is returned, which is at least as large as the image will be drawn; the caller must
+   * scale it by the ratio of its size to the full size image. The pyramid is built in the
+   * background the first time it is needed, the full size image is returned until it is ready and
+   * the observers are then notified.
+   *
+   * @param assetId Load image data from this asset.
+   * @param scale the ratio of the drawn size of the image to its full size.
+   * @param observers the observers to be notified when the image or its levels load.
+   * @return the image, or BROKEN_IMAGE if assetId null, or TRANSFERING_IMAGE if loading.
+   */
+  public static BufferedImage getImage(MD5Key assetId, double scale, ImageObserver... observers) {
+    BufferedImage image = getImage(assetId, observers);
+    if (image == TRANSFERING_IMAGE
+        || image == BROKEN_IMAGE
+        || scale > 0.5
+        || Math.min(image.getWidth(), image.getHeight()) < MIN_MIPMAPPED_SIZE) {
+      return image;
+    }
+
+    BufferedImage[] mipLevels = imageCache.getMipLevels(assetId, image);
+    if (mipLevels == null) {
+      // No point in building levels for an evicted image that is still being decoded again
+      if (imageCache.peek(assetId) == image) {
+        buildMipLevels(assetId, image, observers);
+      }
+      return image;
+    }
+
+    // Level n is 2^-(n+1) of the full size, pick the smallest one that is still large enough.
+    int level = (int) Math.floor(-Math.log(scale) / Math.log(2)) - 1;
+    if (level < 0 || mipLevels.length == 0) {
+      return image;
+    }
+    return mipLevels[Math.min(level, mipLevels.length - 1)];
+  }
+
+  /**
+   * Builds the mip pyramid of an image in the background, unless it is already being built.
+   *
+   * @param assetId the asset of the image.
+   * @param image the full size image.
+   * @param observers the observers to notify once the pyramid is ready.
+   */
+  private static void buildMipLevels(
+      MD5Key assetId, BufferedImage image, ImageObserver... observers) {
+    if (!mipLevelsInProgress.add(assetId)) {
+      return;
     }
+    mipLevelBuilder.execute(
+        () -> {
+          try {
+            BufferedImage[] mipLevels = ImageUtil.createMipLevels(image, MIN_MIP_LEVEL_SIZE);
+            imageCache.putMipLevels(assetId, image, mipLevels);
+          } catch (Throwable t) {
+            log.error("Unable to create mip levels for {}", assetId, t);
+          } finally {
+            mipLevelsInProgress.remove(assetId);
+          }
+          for (ImageObserver observer : observers) {
+            observer.imageUpdate(
+                image, ImageObserver.ALLBITS, 0, 0, image.getWidth(), image.getHeight());
+          }
+        });
   }
 
   /**
@@ -280,7 +410,7 @@ public static BufferedImage getImageFromUrl(URL url) {
       }
     }
 
-    image = getImageAndWait(new MD5Key(id), null);
+    image = getImageAndWait(new MD5Key(id));
     imageW = image.getWidth();
     imageH = image.getHeight();
 
@@ -330,12 +460,11 @@ public static void flushImage(Asset asset) {
    */
   public static void flushImage(MD5Key assetId) {
     // LATER: investigate how this effects images that are already in progress
-    imageMap.remove(assetId);
+    imageCache.remove(assetId);
   }
 
   /**
-   * Add observers, and associated hints for image loading, to be notified when the asset has
-   * completed loading.
+   * Add observers to be notified when the asset has completed loading.
    *
    * @param assetId Waiting for this asset to load
    * @param observers Observers to be notified
@@ -344,9 +473,16 @@ public static void addObservers(MD5Key assetId, ImageObserver... observers) {
     if (observers == null || observers.length == 0) {
       return;
     }
-    Set<ImageObserver> observerSet =
-        imageObserverMap.computeIfAbsent(assetId, k -> new HashSet<ImageObserver>());
-    observerSet.addAll(Arrays.asList(observers));
+    // Added within compute() so the set cannot be taken by notifyObservers() halfway through
+    imageObserverMap.compute(
+        assetId,
+        (k, observerSet) -> {
+          if (observerSet == null) {
+            observerSet = ConcurrentHashMap.newKeySet();
+          }
+          observerSet.addAll(Arrays.asList(observers));
+          return observerSet;
+        });
   }
 
   /**
@@ -354,26 +490,47 @@ public static void addObservers(MD5Key assetId, ImageObserver... observers) {
    *
    * @author RPTools Team.
    */
-  private static class BackgroundImageLoader implements Runnable {
+  private static class BackgroundImageLoader
+      implements Runnable, Comparable<BackgroundImageLoader> {
+    private static final AtomicLong sequence = new AtomicLong();
+
     private final Asset asset;
 
+    /** Whether something is waiting for or observing the image. */
+    private final boolean urgent;
+
+    /** Orders loaders of the same urgency by when they were created. */
+    private final long order = sequence.getAndIncrement();
+
     /**
-     * Create a background image loader to load the asset image using the hints provided.
+     * Create a background image loader to load the asset image.
      *
      * @param asset Asset to load
      */
     public BackgroundImageLoader(Asset asset) {
       this.asset = asset;
+      MD5Key id = asset.getMD5Key();
+      this.urgent = awaitedImages.contains(id) || imageObserverMap.containsKey(id);
+    }
+
+    /** Urgent images first, then in the order they were requested. */
+    @Override
+    public int compareTo(BackgroundImageLoader other) {
+      if (urgent != other.urgent) {
+        return urgent ? -1 : 1;
+      }
+      return Long.compare(order, other.order);
     }
 
     /** Load the asset raw image data and notify observers that the image is loaded. */
     public void run() {
       log.debug("Loading asset: " + asset.getMD5Key());
-      BufferedImage image = imageMap.get(asset.getMD5Key());
+      BufferedImage image = imageCache.peek(asset.getMD5Key());
 
       if (image != null && image != TRANSFERING_IMAGE) {
         // We've somehow already loaded this image
         log.debug("Image wasn't in transit: " + asset.getMD5Key());
+        imageLoaded(asset.getMD5Key(), image);
         return;
       }
 
@@ -411,25 +568,37 @@ public void run() {
         }
       }
 
-      synchronized (imageLoaderMutex) {
-        // Replace placeholder with actual image
-        imageMap.put(asset.getMD5Key(), image);
-        backupImageMap.put(asset.getMD5Key(), image);
-        notifyObservers(asset, image);
-      }
+      // Cache the image before the load is finished, so anyone who misses the future finds it
+      imageCache.put(asset.getMD5Key(), image);
+      imageLoaded(asset.getMD5Key(), image);
+    }
+  }
+
+  /**
+   * Finishes the load of an image, completing its future and notifying its observers.
+   *
+   * @param assetId the asset of the image.
+   * @param image Result of loading the asset raw image data
+   */
+  private static void imageLoaded(MD5Key assetId, BufferedImage image) {
+    CompletableFuture<BufferedImage> future = pendingImages.remove(assetId);
+    awaitedImages.remove(assetId);
+    notifyObservers(assetId, image);
+    if (future != null) {
+      future.complete(image);
     }
   }
 
   /**
    * Notify all observers watching the asset that the image is loaded.
    *
-   * @param asset Loaded image from this asset
+   * @param assetId Loaded image from this asset
    * @param image Result of loading the asset raw image data
    */
-  private static void notifyObservers(Asset asset, BufferedImage image) {
+  private static void notifyObservers(MD5Key assetId, BufferedImage image) {
     // Notify observers
-    log.debug("Notifying observers of image availability: " + asset.getMD5Key());
-    Set<ImageObserver> observerSet = imageObserverMap.remove(asset.getMD5Key());
+    log.debug("Notifying observers of image availability: " + assetId);
+    Set<ImageObserver> observerSet = imageObserverMap.remove(assetId);
     if (observerSet != null) {
       for (ImageObserver observer : observerSet) {
         observer.imageUpdate(
@@ -439,17 +608,12 @@ private static void notifyObservers(Asset asset, BufferedImage image) {
   }
 
   /**
-   * Run a thread to load the asset raw image data in the background using the provided hints.
+   * Run a thread to load the asset raw image data in the background.
    *
    * @param asset Load raw image data from this asset
    */
   private static void backgroundLoadImage(Asset asset) {
-    // Use large image loader if the image is larger than 128kb.
-    if (asset.getData().length > 128 * 1024) {
-      largeImageLoader.execute(new BackgroundImageLoader(asset));
-    } else {
-      smallImageLoader.execute(new BackgroundImageLoader(asset));
-    }
+    imageLoader.execute(new BackgroundImageLoader(asset));
   }
 
   private static class AssetListener implements AssetAvailableListener {
@@ -468,7 +632,12 @@ public void assetAvailable(MD5Key key) {
 
       // Image is now available for loading
       log.debug("Asset available: " + id);
-      backgroundLoadImage(AssetManager.getAsset(id));
+      Asset asset = AssetManager.getAsset(id);
+      if (asset == null) {
+        imageLoaded(id, BROKEN_IMAGE);
+      } else {
+        backgroundLoadImage(asset);
+      }
     }
 
     @Override
@@ -19,6 +19,7 @@
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
+import net.rptools.lib.MD5Key;
 import net.rptools.lib.image.ImageUtil;
 import net.rptools.lib.image.RenderQuality;
 import net.rptools.maptool.client.MapTool;
@@ -176,8 +177,32 @@ public static double getIsoFigureScaleFactor(Token token, Rectangle2D footprintB
    * @return BufferedImage
    */
   public static BufferedImage getTokenImage(Token token, ImageObserver... observers) {
-    BufferedImage image = null;
-    // Get the basic image
+    // Adds zr as observer so we can repaint once the image is ready. Fixes #1700.
+    return ImageManager.getImage(getTokenImageId(token), observers);
+  }
+
+  /**
+   * Returns the token image at a size suited to drawing it at {@code scale} times its full size,
+   * as {@link ImageManager#getImage(MD5Key, double, ImageObserver...)} does.
+   *
+   * @param token the token to get the image from.
+   * @param scale the ratio of the drawn size of the image to its full size.
+   * @param observers the observers to be notified when the image loads.
+   * @return BufferedImage
+   */
+  public static BufferedImage getTokenImage(
+      Token token, double scale, ImageObserver... observers) {
+    return ImageManager.getImage(getTokenImageId(token), scale, observers);
+  }
+
+  /**
+   * Returns the asset of the image to draw for a token, from its image table if it has one and a
+   * facing, otherwise its basic image.
+   *
+   * @param token the token to get the image of.
+   * @return the asset id of the image.
+   */
+  public static MD5Key getTokenImageId(Token token) {
     if (token.getHasImageTable() && token.hasFacing() && token.getImageTableName() != null) {
       LookupTable lookupTable =
           MapTool.getCampaign().getLookupTableMap().get(token.getImageTableName());
@@ -186,19 +211,14 @@ public static BufferedImage getTokenImage(Token token, ImageObserver... observer
           LookupTable.LookupEntry result =
               lookupTable.getLookup(Integer.toString(token.getFacing()));
           if (result != null) {
-            image = ImageManager.getImage(result.getImageId(), observers);
+            return result.getImageId();
           }
         } catch (ParserException p) {
           // do nothing
         }
       }
     }
-
-    if (image == null) {
-      // Adds zr as observer so we can repaint once the image is ready. Fixes #1700.
-      image = ImageManager.getImage(token.getImageAssetId(), observers);
-    }
-    return image;
+    return token.getImageAssetId();
   }
 
   /**
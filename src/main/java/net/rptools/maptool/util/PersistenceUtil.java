@@ -14,6 +14,7 @@
  */
 package net.rptools.maptool.util;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.util.JsonFormat;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.ConversionException;
@@ -29,24 +30,31 @@
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 import net.rptools.lib.AwtUtil;
 import net.rptools.lib.CodeTimer;
-import net.rptools.lib.FileUtil;
 import net.rptools.lib.MD5Key;
 import net.rptools.lib.ModelVersionManager;
 import net.rptools.lib.StringUtil;
 import net.rptools.lib.image.ImageUtil;
 import net.rptools.lib.io.PackedFile;
+import net.rptools.lib.io.PackedFileWriter;
 import net.rptools.maptool.client.AppConstants;
 import net.rptools.maptool.client.AppPreferences;
+import net.rptools.maptool.client.AppPreferences.CampaignFileFormat;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ui.Scale;
@@ -100,6 +108,22 @@ public class PersistenceUtil {
   /** The campaign version property for a persisted campaign. */
   public static final String PROP_CAMPAIGN_VERSION = "campaignVersion"; // $NON-NLS-1$
 
+  /**
+   * The format property for a persisted campaign, absent for campaigns stored as XStream XML.
+   *
+   * @see CampaignFileFormat
+   */
+  public static final String PROP_CAMPAIGN_FORMAT = "campaignFormat"; // $NON-NLS-1$
+
+  /** The version of the layout of the format named by {@link #PROP_CAMPAIGN_FORMAT}. */
+  public static final String PROP_CAMPAIGN_FORMAT_VERSION = "campaignFormatVersion"; // $NON-NLS-1$
+
+  /** The zone that was current when the campaign was saved, for binary campaign files. */
+  private static final String PROP_CURRENT_ZONE_ID = "currentZoneId"; // $NON-NLS-1$
+
+  /** The view of the current zone when the campaign was saved, for binary campaign files. */
+  private static final String PROP_CURRENT_VIEW = "currentView"; // $NON-NLS-1$
+
   /**
    * The ASSET_DIR variable represents the directory path where assets are stored within a persisted
    * file.
@@ -251,6 +275,7 @@ public static class PersistedMap {
   /** Class representing a persisted campaign. */
   public static class PersistedCampaign {
     public Campaign campaign;
+
     public Map<MD5Key, Asset> assetMap = new HashMap<MD5Key, Asset>();
     public GUID currentZoneId;
     public Scale currentView;
@@ -389,15 +414,10 @@ public static void saveCampaign(Campaign campaign, File campaignFile) throws IOE
         saveTimer -> {
           saveTimer.setThreshold(5);
 
-          // Strategy: save the file to a tmp location so that if there's a failure the original
-          // file won't be touched. Then once we're finished, replace the old with the new.
-          File tmpDir = AppUtil.getTmpDir();
-          File tmpFile = new File(tmpDir.getAbsolutePath(), campaignFile.getName());
-          if (tmpFile.exists()) tmpFile.delete();
-
-          PackedFile pakFile = null;
-          try {
-            pakFile = new PackedFile(tmpFile);
+          // Strategy: stream the file to a part file next to the destination so that if there's a
+          // failure the original file won't be touched. Once we're finished, the part file is
+          // moved over the old one. Nothing is exploded to the tmp directory first.
+          try (PackedFileWriter writer = new PackedFileWriter(campaignFile)) {
             // Configure the meta file (this is for legacy support)
             PersistedCampaign persistedCampaign = new PersistedCampaign();
 
@@ -418,79 +438,40 @@ public static void saveCampaign(Campaign campaign, File campaignFile) throws IOE
             }
             saveTimer.stop("Collect all assets");
 
+            saveTimer.start("Set content");
+            writeCampaignContent(
+                persistedCampaign, writer, AppPreferences.campaignFileFormat.get());
+            saveTimer.stop("Set content");
+
             // And store the asset elsewhere
             saveTimer.start("Save assets");
-            saveAssets(allAssetIds, pakFile);
+            saveAssets(allAssetIds, writer);
             saveTimer.stop("Save assets");
 
             // Store the Drop In Libraries.
             saveTimer.start("Save Drop In Libraries");
-            saveAddOnLibraries(pakFile);
+            saveAddOnLibraries(writer);
             saveTimer.stop("Save Drop In Libraries");
 
             // Store the Game Data
             saveTimer.start("Save Game Data");
-            saveGameData(pakFile);
+            saveGameData(writer);
             saveTimer.stop("Save Game Data");
 
-            try {
-              saveTimer.start("Set content");
-
-              pakFile.setContent(persistedCampaign);
-              pakFile.setProperty(PROP_CAMPAIGN_VERSION, CAMPAIGN_VERSION);
-              pakFile.setProperty(PROP_VERSION, MapTool.getVersion());
-
-              saveTimer.stop("Set content");
-              saveTimer.start("Save");
-              pakFile.save();
-              saveTimer.stop("Save");
-            } catch (OutOfMemoryError oom) {
-              /*
-               * This error is normally because the heap space has been exceeded while trying to save the campaign. Since MapTool caches the images used by the current Zone, and since the
-               * VersionManager must keep the XML for objects in memory in order to apply transforms to them, the memory usage can spike very high during the save() operation. A common solution is
-               * to switch to an empty map and perform the save from there; this causes MapTool to unload any images that it may have had cached and this can frequently free up enough memory for the
-               * save() to work. We'll tell the user all this right here and then fail the save and they can try again.
-               */
-              saveTimer.start("OOM Close");
-              pakFile.close(); // Have to close the tmpFile first on some OSes
-              pakFile = null;
-              tmpFile.delete(); // Delete the temporary file
-              saveTimer.stop("OOM Close");
-              MapTool.showError("msg.error.failedSaveCampaignOOM");
-              return;
-            }
-          } finally {
-            saveTimer.start("Close");
-            try {
-              if (pakFile != null) pakFile.close();
-            } catch (Exception e) {
-            }
-            saveTimer.stop("Close");
-            pakFile = null;
+            saveTimer.start("Commit");
+            writer.commit();
+            saveTimer.stop("Commit");
+          } catch (OutOfMemoryError oom) {
+            /*
+             * This error is normally because the heap space has been exceeded while trying to save the campaign. Since MapTool caches the images used by the current Zone, and since the
+             * VersionManager must keep the XML for objects in memory in order to apply transforms to them, the memory usage can spike very high during the save() operation. A common solution is
+             * to switch to an empty map and perform the save from there; this causes MapTool to unload any images that it may have had cached and this can frequently free up enough memory for the
+             * save() to work. We'll tell the user all this right here and then fail the save and they can try again. The writer has already discarded the partial file at this point.
+             */
+            MapTool.showError("msg.error.failedSaveCampaignOOM");
+            return;
           }
 
-          /*
-           * Copy to the new location. Not the fastest solution in the world if renameTo() fails, but worth the safety net it provides. Jamz: So, renameTo() is causing more issues than it is worth. It
-           * has a tendency to lock a file under Google Drive/Drop box causing the save to fail. Removed the for final save location...
-           */
-          saveTimer.start("Backup");
-          File bakFile = new File(tmpDir.getAbsolutePath(), campaignFile.getName() + ".bak");
-
-          bakFile.delete(); // Delete the last backup file...
-
-          if (campaignFile.exists()) {
-            saveTimer.start("Backup campaignFile");
-            FileUtil.copyFile(campaignFile, bakFile);
-            saveTimer.stop("Backup campaignFile");
-          }
-
-          saveTimer.start("Backup tmpFile");
-          FileUtil.copyFile(tmpFile, campaignFile);
-          tmpFile.delete();
-          saveTimer.stop("Backup tmpFile");
-          if (bakFile.exists()) bakFile.delete();
-          saveTimer.stop("Backup");
-
           // Save the campaign thumbnail
           saveTimer.start("Thumbnail");
           saveCampaignThumbnail(campaignFile.getName());
@@ -498,6 +479,109 @@ public static void saveCampaign(Campaign campaign, File campaignFile) throws IOE
         });
   }
 
+  /**
+   * Writes the campaign and its zones, but not the assets, to a campaign file in the requested
+   * format.
+   *
+   * @param persistedCampaign The campaign to write.
+   * @param writer The writer for the campaign file.
+   * @param format The format to write the campaign in.
+   * @throws IOException If an I/O error occurs while writing.
+   */
+  static void writeCampaignContent(
+      PersistedCampaign persistedCampaign, PackedFileWriter writer, CampaignFileFormat format)
+      throws IOException {
+    if (format == CampaignFileFormat.PROTOBUF) {
+      ProtobufCampaignFormat.write(persistedCampaign.campaign, writer);
+      writer.setProperty(PROP_CAMPAIGN_FORMAT, ProtobufCampaignFormat.FORMAT_NAME);
+      writer.setProperty(
+          PROP_CAMPAIGN_FORMAT_VERSION, Integer.toString(ProtobufCampaignFormat.FORMAT_VERSION));
+      if (persistedCampaign.currentZoneId != null) {
+        writer.setProperty(PROP_CURRENT_ZONE_ID, persistedCampaign.currentZoneId.toString());
+      }
+      if (persistedCampaign.currentView != null) {
+        writer.setProperty(PROP_CURRENT_VIEW, persistedCampaign.currentView);
+      }
+    } else {
+      writer.setContent(persistedCampaign);
+    }
+    writer.setProperty(PROP_CAMPAIGN_VERSION, CAMPAIGN_VERSION);
+    writer.setProperty(PROP_VERSION, MapTool.getVersion());
+  }
+
+  /**
+   * Reads the campaign and its zones, but not the assets, from a campaign file in either format.
+   *
+   * @param pakFile The campaign file.
+   * @return The campaign read from the file.
+   * @throws IOException If an I/O error occurs while reading.
+   */
+  static PersistedCampaign readCampaignContent(PackedFile pakFile) throws IOException {
+    if (ProtobufCampaignFormat.FORMAT_NAME.equals(pakFile.getProperty(PROP_CAMPAIGN_FORMAT))) {
+      PersistedCampaign persistedCampaign = new PersistedCampaign();
+      persistedCampaign.campaign =
+          ProtobufCampaignFormat.read(pakFile, AppPreferences.loadMapsOnDemand.get());
+      persistedCampaign.mapToolVersion = (String) pakFile.getProperty(PROP_VERSION);
+      Object currentZoneId = pakFile.getProperty(PROP_CURRENT_ZONE_ID);
+      if (currentZoneId != null) {
+        persistedCampaign.currentZoneId = GUID.valueOf(currentZoneId.toString());
+      }
+      if (pakFile.getProperty(PROP_CURRENT_VIEW) instanceof Scale scale) {
+        persistedCampaign.currentView = scale;
+      }
+      for (MD5Key key : persistedCampaign.campaign.getAllAssetIds()) {
+        persistedCampaign.assetMap.put(key, null);
+      }
+      return persistedCampaign;
+    }
+
+    String campaignVersion = (String) pakFile.getProperty(PROP_CAMPAIGN_VERSION);
+    // This is where the campaignVersion was added
+    campaignVersion = campaignVersion == null ? "1.3.50" : campaignVersion;
+
+    return (PersistedCampaign) pakFile.getContent(campaignVersionManager, campaignVersion);
+  }
+
+  /**
+   * Converts a campaign file from one format to another without loading it into MapTool. The
+   * campaign is read from either format and written in the requested one; assets, add-on libraries
+   * and game data are copied across unchanged. This can be used to turn XStream campaigns into
+   * binary ones, or to produce a file that older versions of MapTool can read.
+   *
+   * @param source The campaign file to convert.
+   * @param target The file to write the converted campaign to, may not be the same as {@code
+   *     source}.
+   * @param format The format to write the campaign in.
+   * @throws IOException If an I/O error occurs or the source is not a campaign file.
+   */
+  public static void convertCampaign(File source, File target, CampaignFileFormat format)
+      throws IOException {
+    try (PackedFile pakFile = new PackedFile(source);
+        PackedFileWriter writer = new PackedFileWriter(target)) {
+      PersistedCampaign persistedCampaign = readCampaignContent(pakFile);
+      if (persistedCampaign == null || persistedCampaign.campaign == null) {
+        throw new IOException(I18N.getText("PersistenceUtil.warn.campaignNotLoaded"));
+      }
+      writeCampaignContent(persistedCampaign, writer, format);
+
+      for (String path : pakFile.getPaths()) {
+        if (path.endsWith("/")
+            || path.startsWith(ProtobufCampaignFormat.ZONE_DIR)
+            || path.equals(PackedFile.CONTENT_FILE)
+            || path.equals(PackedFile.PROPERTY_FILE)
+            || path.equals(ProtobufCampaignFormat.CAMPAIGN_ENTRY)
+            || writer.hasFile(path)
+            || !pakFile.hasFile(path)) {
+          continue;
+        }
+        try (InputStream is = pakFile.getFileAsInputStream(path)) {
+          writer.putFile(path, is);
+        }
+      }
+      writer.commit();
+    }
+  }
+
   /**
    * Saves a thumbnail image for a campaign.
    *
@@ -554,12 +638,8 @@ public static PersistedCampaign loadCampaign(File campaignFile) throws IOExcepti
       String progVersion = (String) pakFile.getProperty(PROP_VERSION);
       if (!versionCheck(progVersion)) return null;
 
-      String campaignVersion = (String) pakFile.getProperty(PROP_CAMPAIGN_VERSION);
-      // This is where the campaignVersion was added
-      campaignVersion = campaignVersion == null ? "1.3.50" : campaignVersion;
-
       try {
-        persistedCampaign = (PersistedCampaign) pakFile.getContent(campaignVersion);
+        persistedCampaign = readCampaignContent(pakFile);
       } catch (ConversionException ce) {
         // Ignore the exception and check for "campaign == null" below...
         MapTool.showError("PersistenceUtil.error.campaignVersion", ce);
@@ -577,7 +657,10 @@ public static PersistedCampaign loadCampaign(File campaignFile) throws IOExcepti
         Set<MD5Key> allAssetIds = persistedCampaign.assetMap.keySet();
         loadAssets(allAssetIds, pakFile);
         for (Zone zone : persistedCampaign.campaign.getZones()) {
-          zone.optimize();
+          // Zones that are loaded on demand are optimized when they are loaded
+          if (zone.isContentLoaded()) {
+            zone.optimize();
+          }
         }
 
         new CampaignManager().clearCampaignData();
@@ -793,7 +876,7 @@ private static void loadAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
         }
         // pre 1.3b52 campaign files stored the image data directly in the asset serialization.
         // New XStreamConverter creates empty byte[] for image.
-        if (asset.getData() == null || asset.getData().length < 4) {
+        if (asset.getDataLength() < 4) {
           String ext = asset.getExtension();
           pathname = pathname + "." + (StringUtil.isEmpty(ext) ? "dat" : ext);
           pathname = assetnameVersionManager.transform(pathname, campaignVersion);
@@ -865,30 +948,28 @@ private static void loadAddOnLibraries(PackedFile packedFile) throws IOException
   /**
    * Saves the add-on libraries to the provided packed file.
    *
-   * @param packedFile The packed file to save the add-on libraries to.
+   * @param writer The packed file to save the add-on libraries to.
    * @throws IOException If an error occurs while saving the add-on libraries.
    */
-  private static void saveAddOnLibraries(PackedFile packedFile) throws IOException {
-    // remove all drop-in libraries from the packed file first.
-    for (String path : packedFile.getPaths()) {
-      if (path.startsWith(DROP_IN_LIBRARY_ASSET_DIR) && !path.equals(DROP_IN_LIBRARY_ASSET_DIR)) {
-        packedFile.removeFile(path);
-      }
-    }
-
+  private static void saveAddOnLibraries(PackedFileWriter writer) throws IOException {
     AddOnLibraryListDto dto = null;
     try {
       dto = new LibraryManager().addOnLibrariesToDto().get();
     } catch (InterruptedException | ExecutionException e) {
       throw new IOException(e);
     }
-    packedFile.putFile(
+    writer.putFile(
         DROP_IN_LIBRARY_LIST_FILE,
         JsonFormat.printer().print(dto).getBytes(StandardCharsets.UTF_8));
 
     for (var ldto : dto.getLibrariesList()) {
       Asset asset = AssetManager.getAsset(new MD5Key(ldto.getMd5Hash()));
-      packedFile.putFile(DROP_IN_LIBRARY_ASSET_DIR + asset.getMD5Key().toString(), asset.getData());
+      // Libraries are zip files already, so there is nothing to gain from compressing them again
+      byte[] data = asset.getData();
+      writer.putStoredFile(
+          DROP_IN_LIBRARY_ASSET_DIR + asset.getMD5Key().toString(),
+          data,
+          PackedFileWriter.crc(data));
     }
   }
 
@@ -920,25 +1001,17 @@ private static void loadGameData(PackedFile packedFile) throws IOException {
   /**
    * Saves the game data to the specified packed file.
    *
-   * @param packedFile The packed file to save the game data to.
+   * @param writer The packed file to save the game data to.
    * @throws IOException If an I/O error occurs while saving the game data.
    */
-  private static void saveGameData(PackedFile packedFile) throws IOException {
-    // Remove all the game data from the packed file first.
-    for (String path : packedFile.getPaths()) {
-      if (path.startsWith(GAME_DATA_DIR) && !path.equals(GAME_DATA_DIR)) {
-        packedFile.removeFile(path);
-      }
-    }
-
+  private static void saveGameData(PackedFileWriter writer) throws IOException {
     try {
       DataStoreManager dataStoreManager = new DataStoreManager();
       DataStoreDto dto = dataStoreManager.toDto().get();
-      packedFile.putFile(
+      writer.putFile(
           GAME_DATA_FILE, JsonFormat.printer().print(dto).getBytes(StandardCharsets.UTF_8));
 
-      Set<MD5Key> assets = dataStoreManager.getAssets().get();
-      saveAssets(dataStoreManager.getAssets().get(), packedFile);
+      saveAssets(dataStoreManager.getAssets().get(), writer);
     } catch (ExecutionException | InterruptedException e) {
       throw new IOException(e);
     }
@@ -976,6 +1049,120 @@ private static void saveAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
     }
   }
 
+  /**
+   * Saves a collection of assets to a packed file that is being streamed to disk.
+   *
+   * <p>Fetching the asset data (which may have to come from the asset cache on disk), calculating
+   * checksums and serializing the asset descriptors is done on a pool of threads, while the entries
+   * are handed to the writer in order on the calling thread. Only a small window of assets is in
+   * flight at any time so the memory used does not grow with the size of the campaign. Data that
+   * is already compressed is stored without deflating it again.
+   *
+   * @param assetIds A collection of MD5Key objects representing the asset IDs to be saved.
+   * @param writer The writer for the file to save the assets to.
+   * @throws IOException If there is an error writing the assets to the file.
+   */
+  private static void saveAssets(Collection<MD5Key> assetIds, PackedFileWriter writer)
+      throws IOException {
+    // Special handling of assets: XML file to describe the Asset, but binary file for the image
+    // data
+    XStream xStream = writer.getXStream();
+    xStream.processAnnotations(Asset.class);
+
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("campaign-save-%d").setDaemon(true).build());
+    Deque<Future<AssetEntry>> inFlight = new ArrayDeque<>();
+    try {
+      for (MD5Key assetId : new LinkedHashSet<>(assetIds)) {
+        if (assetId == null || writer.hasFile(ASSET_DIR + assetId)) continue;
+
+        inFlight.add(executor.submit(() -> AssetEntry.prepare(assetId, xStream)));
+        if (inFlight.size() >= threads * 2) {
+          writeAssetEntry(writer, inFlight.removeFirst());
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        writeAssetEntry(writer, inFlight.removeFirst());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for an asset entry to be prepared and writes it.
+   *
+   * @param writer The writer for the file to save the asset to.
+   * @param future The asset entry being prepared.
+   * @throws IOException If there is an error writing the asset to the file.
+   */
+  private static void writeAssetEntry(PackedFileWriter writer, Future<AssetEntry> future)
+      throws IOException {
+    AssetEntry entry;
+    try {
+      entry = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    if (entry == null) {
+      return;
+    }
+
+    // As of 1.3.b64, assets are written in binary to allow them to be readable
+    // when a campaign file is unpacked.
+    String dataPath = ASSET_DIR + entry.assetId() + "." + entry.extension();
+    if (entry.crc() >= 0) {
+      writer.putStoredFile(dataPath, entry.data(), entry.crc());
+    } else {
+      writer.putFile(dataPath, entry.data());
+    }
+    writer.putFile(ASSET_DIR + entry.assetId(), entry.descriptor()); // Does not write the image
+  }
+
+  /**
+   * An asset that is ready to be written to a campaign file.
+   *
+   * @param assetId the id of the asset.
+   * @param extension the extension of the data file.
+   * @param data the asset data.
+   * @param crc the checksum of the data if it should be stored uncompressed, otherwise -1.
+   * @param descriptor the XML describing the asset.
+   */
+  private record AssetEntry(
+      MD5Key assetId, String extension, byte[] data, long crc, byte[] descriptor) {
+
+    /**
+     * Prepares the entry for an asset, returns {@code null} if the asset is not available.
+     *
+     * @param assetId the id of the asset.
+     * @param xStream the configured XStream used to serialize the asset descriptor.
+     * @return the entry, or {@code null}.
+     */
+    static AssetEntry prepare(MD5Key assetId, XStream xStream) {
+      Asset asset = AssetManager.getAsset(assetId);
+      if (asset == null) {
+        log.error("AssetId " + assetId + " not found while saving?!");
+        return null;
+      }
+
+      byte[] data = asset.getData();
+      long crc =
+          switch (asset.getType()) {
+            case IMAGE, AUDIO, MTLIB -> PackedFileWriter.crc(data);
+            default -> -1;
+          };
+      byte[] descriptor =
+          (xStream.toXML(asset) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+      return new AssetEntry(assetId, asset.getExtension(), data, crc, descriptor);
+    }
+  }
+
   /**
    * Clears all assets in the given packed file that are located in the asset directory.
    *
@@ -0,0 +1,263 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.lib.io.PackedFileWriter;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.ZoneContentSource;
+import net.rptools.maptool.server.proto.CampaignDto;
+import net.rptools.maptool.server.proto.TokenDto;
+import net.rptools.maptool.server.proto.ZoneDto;
+
+/**
+ * Reads and writes the binary campaign format, which stores the same DTOs that are used to send
+ * campaigns over the network inside the campaign's {@link PackedFile}.
+ *
+ * <p>The layout of the entries is:
+ *
+ * <ul>
+ *   <li><code>campaign.pb</code> - a length-delimited {@link CampaignDto}. Its zones only carry
+ *       their header (see {@link Zone#toHeaderDto()}), and are listed in campaign order.
+ *   <li><code>zones/&lt;id&gt;.pb</code> - a length-delimited {@link ZoneDto} without tokens,
+ *       followed by a length-delimited {@link TokenDto} for each token on the zone.
+ *   <li><code>zones/&lt;id&gt;.index</code> - a properties file listing the assets used by the
+ *       zone and whether it holds library tokens, so that a zone can be left unloaded.
+ * </ul>
+ *
+ * <p>Assets, add-on libraries and game data are stored exactly as in the XStream format. The
+ * version of the layout is stored in the {@link PersistenceUtil#PROP_CAMPAIGN_FORMAT_VERSION}
+ * property; files with a newer version are rejected rather than partially loaded. Version 1 files
+ * have no headers or index entries, so all of their zones are loaded when they are read.
+ */
+final class ProtobufCampaignFormat {
+
+  /** The value of the {@link PersistenceUtil#PROP_CAMPAIGN_FORMAT} property for this format. */
+  static final String FORMAT_NAME = "protobuf";
+
+  /** The version of the layout written by this class. */
+  static final int FORMAT_VERSION = 2;
+
+  /** The entry holding the campaign. */
+  static final String CAMPAIGN_ENTRY = "campaign.pb";
+
+  /** The directory holding the zones. */
+  static final String ZONE_DIR = "zones/";
+
+  /** The extension of the zone entries. */
+  private static final String ZONE_EXTENSION = ".pb";
+
+  /** The extension of the zone index entries. */
+  private static final String INDEX_EXTENSION = ".index";
+
+  private static final String INDEX_ASSETS = "assets";
+  private static final String INDEX_LIBRARY_TOKENS = "libraryTokens";
+
+  private ProtobufCampaignFormat() {}
+
+  /**
+   * Writes the campaign and its zones. Each zone is converted and written on its own, so only one
+   * zone's DTO exists at any one time, and tokens are written one at a time. Zones that are not
+   * loaded are copied from their {@link ZoneContentSource} without being read.
+   *
+   * @param campaign the campaign to write.
+   * @param writer the writer for the campaign file.
+   * @throws IOException if an error occurs writing the campaign.
+   */
+  static void write(Campaign campaign, PackedFileWriter writer) throws IOException {
+    var campaignDto = campaign.toDto(false).toBuilder();
+    for (Zone zone : campaign.getZones()) {
+      ZoneContentSource source = zone.getContentSource();
+      try (OutputStream out = writer.getOutputStream(getZoneEntry(zone.getId()))) {
+        if (source != null) {
+          source.copyContent(zone.getId(), out);
+        } else {
+          writeZone(zone, out);
+        }
+      }
+
+      // Only loaded zones can hold library tokens, as those zones are never left unloaded.
+      boolean libraryTokens =
+          source == null && zone.getAllTokens().stream().anyMatch(Token::isLibToken);
+      var index = new Properties();
+      index.setProperty(
+          INDEX_ASSETS,
+          zone.getAllAssetIds().stream().map(MD5Key::toString).collect(Collectors.joining(",")));
+      index.setProperty(INDEX_LIBRARY_TOKENS, Boolean.toString(libraryTokens));
+      try (OutputStream out = writer.getOutputStream(getIndexEntry(zone.getId()))) {
+        index.store(out, null);
+      }
+
+      campaignDto.addZones(zone.toHeaderDto());
+    }
+
+    try (OutputStream out = writer.getOutputStream(CAMPAIGN_ENTRY)) {
+      campaignDto.build().writeDelimitedTo(out);
+    }
+  }
+
+  /**
+   * Reads the campaign. If {@code onDemand} is set, zones without library tokens are only read as
+   * far as their header, and the rest is read when the zone is first used; library tokens must be
+   * known as soon as the campaign is loaded, so their zones are always read in full.
+   *
+   * @param pakFile the campaign file.
+   * @param onDemand whether to defer reading the content of the zones.
+   * @return the campaign.
+   * @throws IOException if an error occurs reading the campaign or the file was written by a newer
+   *     version of the format.
+   */
+  static Campaign read(PackedFile pakFile, boolean onDemand) throws IOException {
+    Object version = pakFile.getProperty(PersistenceUtil.PROP_CAMPAIGN_FORMAT_VERSION);
+    int formatVersion = version == null ? 0 : Integer.parseInt(version.toString());
+    if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+      throw new IOException("Unsupported campaign format version " + version);
+    }
+
+    CampaignDto campaignDto;
+    try (InputStream in = new BufferedInputStream(pakFile.getFileAsInputStream(CAMPAIGN_ENTRY))) {
+      campaignDto = CampaignDto.parseDelimitedFrom(in);
+    }
+    if (campaignDto == null) {
+      throw new IOException("Campaign entry is empty");
+    }
+
+    Campaign campaign = Campaign.fromDto(campaignDto.toBuilder().clearZones().build());
+    ZoneContentStore store = null;
+    for (ZoneDto header : campaignDto.getZonesList()) {
+      GUID zoneId = GUID.valueOf(header.getId());
+      Properties index = formatVersion >= 2 && onDemand ? readIndex(pakFile, zoneId) : null;
+      if (index == null || Boolean.parseBoolean(index.getProperty(INDEX_LIBRARY_TOKENS))) {
+        campaign.putZone(readZone(pakFile, zoneId));
+        continue;
+      }
+
+      if (store == null) {
+        store = ZoneContentStore.create();
+      }
+      store.extract(pakFile, zoneId);
+      Set<MD5Key> assetIds = new HashSet<>();
+      for (String assetId : index.getProperty(INDEX_ASSETS, "").split(",")) {
+        if (!assetId.isEmpty()) {
+          assetIds.add(new MD5Key(assetId));
+        }
+      }
+      campaign.putZone(Zone.createStub(header, store, assetIds));
+    }
+    return campaign;
+  }
+
+  /**
+   * Reads a single zone and its tokens.
+   *
+   * @param pakFile the campaign file.
+   * @param zoneId the id of the zone to read.
+   * @return the zone.
+   * @throws IOException if an error occurs reading the zone.
+   */
+  static Zone readZone(PackedFile pakFile, GUID zoneId) throws IOException {
+    try (InputStream in =
+        new BufferedInputStream(pakFile.getFileAsInputStream(getZoneEntry(zoneId)))) {
+      return Zone.fromDto(readZoneDto(in, zoneId));
+    }
+  }
+
+  /**
+   * Reads a zone entry.
+   *
+   * @param in the stream positioned at the start of the entry.
+   * @param zoneId the id of the zone, for error messages.
+   * @return the zone, including its tokens.
+   * @throws IOException if an error occurs reading the zone.
+   */
+  static ZoneDto readZoneDto(InputStream in, GUID zoneId) throws IOException {
+    ZoneDto zoneDto = ZoneDto.parseDelimitedFrom(in);
+    if (zoneDto == null) {
+      throw new IOException("Zone entry for " + zoneId + " is empty");
+    }
+    var zone = zoneDto.toBuilder();
+    TokenDto token;
+    while ((token = TokenDto.parseDelimitedFrom(in)) != null) {
+      zone.addTokens(token);
+    }
+    return zone.build();
+  }
+
+  /**
+   * Writes a zone entry for a loaded zone.
+   *
+   * @param zone the zone to write.
+   * @param out the stream to write the entry to.
+   * @throws IOException if an error occurs writing the zone.
+   */
+  static void writeZone(Zone zone, OutputStream out) throws IOException {
+    zone.toDto(false).writeDelimitedTo(out);
+    for (Token token : zone.getAllTokens()) {
+      token.toDto().writeDelimitedTo(out);
+    }
+  }
+
+  /**
+   * Writes a zone entry from the content of a zone that has already been converted.
+   *
+   * @param zoneDto the zone, including its tokens.
+   * @param out the stream to write the entry to.
+   * @throws IOException if an error occurs writing the zone.
+   */
+  static void writeZone(ZoneDto zoneDto, OutputStream out) throws IOException {
+    zoneDto.toBuilder().clearTokens().build().writeDelimitedTo(out);
+    for (TokenDto token : zoneDto.getTokensList()) {
+      token.writeDelimitedTo(out);
+    }
+  }
+
+  /**
+   * Returns the path of the entry for a zone.
+   *
+   * @param zoneId the id of the zone.
+   * @return the path within the campaign file.
+   */
+  static String getZoneEntry(GUID zoneId) {
+    return ZONE_DIR + zoneId + ZONE_EXTENSION;
+  }
+
+  private static String getIndexEntry(GUID zoneId) {
+    return ZONE_DIR + zoneId + INDEX_EXTENSION;
+  }
+
+  private static Properties readIndex(PackedFile pakFile, GUID zoneId) throws IOException {
+    String entry = getIndexEntry(zoneId);
+    if (!pakFile.hasFile(entry)) {
+      return null;
+    }
+    var index = new Properties();
+    try (InputStream in = pakFile.getFileAsInputStream(entry)) {
+      index.load(in);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform grid over the bounds of items in zone space, such as tokens or drawables, so that the
+ * items near an area or point can be found without checking every item on the zone.
+ *
+ * <p>The index only tracks bounds; it is up to the owner to {@link #put(Object, Rectangle2D)}
+ * items again when they change and to {@link #remove(Object)} them when they are removed. Queries
+ * return candidates whose bounds overlap the query rectangle, so callers with more precise shapes
+ * should still test the candidates against them.
+ *
+ * @param <K> the type of the keys of the items. Keys are compared with {@code equals}.
+ */
+public final class SpatialGridIndex<K> {
+  /** Items covering more cells than this are kept in a set that is checked by every query. */
+  private static final int MAX_CELLS_PER_ENTRY = 64;
+
+  private record Entry(Rectangle2D bounds, int minX, int minY, int maxX, int maxY) {
+    boolean isLarge() {
+      return (long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_ENTRY;
+    }
+  }
+
+  private final double cellSize;
+  private final Map<K, Entry> entries = new HashMap<>();
+  private final Map<Long, Set<K>> cells = new HashMap<>();
+  private final Set<K> largeEntries = new HashSet<>();
+
+  /**
+   * Creates an empty index.
+   *
+   * @param cellSize the size of a grid cell in zone units. A few times the size of a typical item
+   *     works well.
+   */
+  public SpatialGridIndex(double cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+    }
+    this.cellSize = cellSize;
+  }
+
+  /**
+   * Adds an item to the index, or moves it if it is already indexed.
+   *
+   * @param id the key of the item.
+   * @param bounds the bounds of the item in zone space.
+   */
+  public void put(K id, Rectangle2D bounds) {
+    remove(id);
+
+    var entry =
+        new Entry(
+            (Rectangle2D) bounds.clone(),
+            cell(bounds.getMinX()),
+            cell(bounds.getMinY()),
+            cell(bounds.getMaxX()),
+            cell(bounds.getMaxY()));
+    entries.put(id, entry);
+    if (entry.isLarge()) {
+      largeEntries.add(id);
+      return;
+    }
+    for (int x = entry.minX(); x <= entry.maxX(); x++) {
+      for (int y = entry.minY(); y <= entry.maxY(); y++) {
+        cells.computeIfAbsent(key(x, y), k -> new HashSet<>()).add(id);
+      }
+    }
+  }
+
+  /**
+   * Removes an item from the index.
+   *
+   * @param id the key of the item.
+   * @return {@code true} if the item was indexed.
+   */
+  public boolean remove(K id) {
+    var entry = entries.remove(id);
+    if (entry == null) {
+      return false;
+    }
+    if (entry.isLarge()) {
+      largeEntries.remove(id);
+      return true;
+    }
+    for (int x = entry.minX(); x <= entry.maxX(); x++) {
+      for (int y = entry.minY(); y <= entry.maxY(); y++) {
+        var key = key(x, y);
+        var cell = cells.get(key);
+        if (cell != null && cell.remove(id) && cell.isEmpty()) {
+          cells.remove(key);
+        }
+      }
+    }
+    return true;
+  }
+
+  /** Removes all items from the index. */
+  public void clear() {
+    entries.clear();
+    cells.clear();
+    largeEntries.clear();
+  }
+
+  /**
+   * @return the number of items in the index.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the bounds an item was indexed with.
+   *
+   * @param id the key of the item.
+   * @return the bounds, or {@code null} if the item is not indexed.
+   */
+  public Rectangle2D getBounds(K id) {
+    var entry = entries.get(id);
+    return entry == null ? null : (Rectangle2D) entry.bounds().clone();
+  }
+
+  /**
+   * Finds the items whose bounds overlap a rectangle. Bounds that only touch the rectangle count
+   * as overlapping, so a rectangle of zero size can be used to find the items at a point.
+   *
+   * @param rect the rectangle in zone space.
+   * @return the keys of the items, in no particular order.
+   */
+  public Set<K> query(Rectangle2D rect) {
+    var result = new HashSet<K>();
+    int minX = cell(rect.getMinX());
+    int minY = cell(rect.getMinY());
+    int maxX = cell(rect.getMaxX());
+    int maxY = cell(rect.getMaxY());
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+      // The rectangle covers more cells than are occupied, so check the occupied ones instead.
+      for (var cell : cells.values()) {
+        addOverlapping(cell, rect, result);
+      }
+    } else {
+      for (int x = minX; x <= maxX; x++) {
+        for (int y = minY; y <= maxY; y++) {
+          var cell = cells.get(key(x, y));
+          if (cell != null) {
+            addOverlapping(cell, rect, result);
+          }
+        }
+      }
+    }
+    addOverlapping(largeEntries, rect, result);
+    return result;
+  }
+
+  private void addOverlapping(Set<K> ids, Rectangle2D rect, Set<K> result) {
+    for (K id : ids) {
+      var bounds = entries.get(id).bounds();
+      if (bounds.getMinX() <= rect.getMaxX()
+          && bounds.getMaxX() >= rect.getMinX()
+          && bounds.getMinY() <= rect.getMaxY()
+          && bounds.getMaxY() >= rect.getMinY()) {
+        result.add(id);
+      }
+    }
+  }
+
+  private int cell(double coordinate) {
+    return (int) Math.floor(coordinate / cellSize);
+  }
+
+  private static long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.ZoneContentSource;
+import net.rptools.maptool.server.proto.ZoneDto;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds the content of zones that are not in memory, one file per zone in a directory below the
+ * {@link PackedFile#getTmpDir() tmp directory}. The files use the same layout as the zone entries
+ * of the binary campaign format, so they can be copied in and out of campaign files as they are.
+ *
+ * <p>Zone entries are extracted from the campaign file when it is opened rather than read from it
+ * later, as the campaign file may be replaced or deleted while the campaign is open.
+ */
+public final class ZoneContentStore implements ZoneContentSource {
+
+  private static final Logger log = LogManager.getLogger(ZoneContentStore.class);
+
+  private final File dir;
+
+  private ZoneContentStore(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Creates a new, empty, store.
+   *
+   * @return the store.
+   * @throws IOException if the directory for the store can not be created.
+   */
+  public static ZoneContentStore create() throws IOException {
+    File dir = new File(PackedFile.getTmpDir(), "zones-" + new GUID());
+    Files.createDirectories(dir.toPath());
+    dir.deleteOnExit();
+    return new ZoneContentStore(dir);
+  }
+
+  /**
+   * Copies the entry of a zone from a campaign file in the binary format into the store.
+   *
+   * @param pakFile the campaign file.
+   * @param zoneId the id of the zone.
+   * @throws IOException if the entry can not be copied.
+   */
+  void extract(PackedFile pakFile, GUID zoneId) throws IOException {
+    String entry = ProtobufCampaignFormat.getZoneEntry(zoneId);
+    try (InputStream in = pakFile.getFileAsInputStream(entry)) {
+      File file = getFile(zoneId);
+      Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Writes the content of a zone into the store, replacing anything stored for it before. The zone
+   * can then be unloaded with {@link Zone#unloadContent(ZoneContentSource)}.
+   *
+   * @param zone the zone to write.
+   * @throws IOException if the zone can not be written.
+   */
+  public void store(Zone zone) throws IOException {
+    File file = getFile(zone.getId());
+    File partFile = new File(dir, file.getName() + ".part");
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16)) {
+      ProtobufCampaignFormat.writeZone(zone, out);
+    }
+    Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    file.deleteOnExit();
+  }
+
+  /**
+   * Writes the content of a zone into the store on a background thread, replacing anything stored
+   * for it before. The returned source serves the content from {@code zoneDto} until it has been
+   * written and from the store afterwards, so the zone can be unloaded with {@link
+   * Zone#unloadContent(ZoneContentSource)} straight away without waiting for the disk. If the
+   * content can not be written it is kept in memory.
+   *
+   * @param zoneId the id of the zone.
+   * @param zoneDto the content of the zone, including its tokens.
+   * @param executor the executor to write the content on.
+   * @return the source to unload the zone with.
+   */
+  public ZoneContentSource storeLater(GUID zoneId, ZoneDto zoneDto, Executor executor) {
+    var pending = new PendingContent(zoneId, zoneDto);
+    executor.execute(pending::write);
+    return pending;
+  }
+
+  @Override
+  public ZoneDto loadContent(GUID zoneId) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(getFile(zoneId)), 1 << 16)) {
+      return ProtobufCampaignFormat.readZoneDto(in, zoneId);
+    }
+  }
+
+  @Override
+  public void copyContent(GUID zoneId, OutputStream out) throws IOException {
+    Files.copy(getFile(zoneId).toPath(), out);
+  }
+
+  private File getFile(GUID zoneId) {
+    return new File(dir, zoneId + ".pb");
+  }
+
+  /** The content of a zone that is being written to the store by {@link #storeLater}. */
+  private final class PendingContent implements ZoneContentSource {
+    private final GUID zoneId;
+
+    /** The content until it has been written, {@code null} afterwards. */
+    private volatile @Nullable ZoneDto zoneDto;
+
+    private PendingContent(GUID zoneId, ZoneDto zoneDto) {
+      this.zoneId = zoneId;
+      this.zoneDto = zoneDto;
+    }
+
+    private void write() {
+      var dto = zoneDto;
+      File file = getFile(zoneId);
+      File partFile = new File(dir, file.getName() + ".part");
+      try {
+        try (OutputStream out =
+            new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16)) {
+          ProtobufCampaignFormat.writeZone(dto, out);
+        }
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file.deleteOnExit();
+        zoneDto = null;
+      } catch (IOException e) {
+        log.warn("Unable to store map {}, keeping it in memory", dto.getName(), e);
+      }
+    }
+
+    @Override
+    public ZoneDto loadContent(GUID zoneId) throws IOException {
+      var dto = zoneDto;
+      return dto != null ? dto : ZoneContentStore.this.loadContent(zoneId);
+    }
+
+    @Override
+    public void copyContent(GUID zoneId, OutputStream out) throws IOException {
+      var dto = zoneDto;
+      if (dto != null) {
+        ProtobufCampaignFormat.writeZone(dto, out);
+      } else {
+        ZoneContentStore.this.copyContent(zoneId, out);
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CodeTimerStatisticsTest {
+  private static final long MILLIS = 1_000_000;
+
+  @Test
+  void testPercentilesCoverRecentRuns() {
+    var statistics = new CodeTimerStatistics(100);
+    statistics.setEnabled(true);
+    for (int i = 1; i <= 150; i++) {
+      statistics.record("frame", i * MILLIS, Map.of());
+    }
+
+    var percentiles = statistics.getPercentiles("frame");
+    assertNotNull(percentiles);
+    assertEquals(100, percentiles.count());
+    assertEquals(100.0, percentiles.p50());
+    assertEquals(145.0, percentiles.p95());
+    assertEquals(149.0, percentiles.p99());
+    assertEquals(150.0, percentiles.max());
+    assertNull(statistics.getPercentiles("other"));
+  }
+
+  @Test
+  void testSlowestSectionsAreOrderedAndDisabledCollectsNothing() {
+    var statistics = new CodeTimerStatistics(10);
+    statistics.record("frame", MILLIS, Map.of("ignored", MILLIS));
+    assertNull(statistics.getPercentiles("frame"));
+
+    statistics.setEnabled(true);
+    for (int i = 0; i < 50; i++) {
+      statistics.record(
+          "frame", 10 * MILLIS, Map.of("fog", 6 * MILLIS, "grid", MILLIS, "tokens", 3 * MILLIS));
+    }
+
+    var sections = statistics.getSlowestSections("frame", 2);
+    assertEquals(2, sections.size());
+    assertEquals("fog", sections.get(0).name());
+    assertEquals("tokens", sections.get(1).name());
+    assertEquals(6.0, sections.get(0).averageMillis(), 0.1);
+
+    statistics.setEnabled(false);
+    assertTrue(statistics.getSlowestSections("frame", 2).isEmpty());
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonParser;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+class CodeTimerTraceTest {
+
+  @Test
+  void testRecordingIsWrittenAsChromeTrace() throws Exception {
+    var trace = new CodeTimerTrace(2);
+    trace.add("ignored", "before start", System.nanoTime(), System.nanoTime());
+
+    trace.start();
+    long start = System.nanoTime();
+    trace.add("ZoneRenderer.renderZone", "fog", start, start + 2_000_000);
+    trace.add("ZoneRenderer.renderZone", "grid", start, start + 1_000);
+    trace.add("ZoneRenderer.renderZone", "dropped", start, start + 1_000);
+    var recording = trace.stop();
+    assertFalse(trace.isRecording());
+    assertEquals(2, recording.events().size());
+    assertEquals(1, recording.dropped());
+
+    var out = new StringWriter();
+    recording.writeChromeTrace(out);
+    var events = JsonParser.parseString(out.toString()).getAsJsonObject().get("traceEvents");
+    var array = events.getAsJsonArray();
+    // One thread name followed by the two sections.
+    assertEquals(3, array.size());
+    assertEquals("M", array.get(0).getAsJsonObject().get("ph").getAsString());
+    var fog = array.get(1).getAsJsonObject();
+    assertEquals("fog", fog.get("name").getAsString());
+    assertEquals("ZoneRenderer.renderZone", fog.get("cat").getAsString());
+    assertEquals("X", fog.get("ph").getAsString());
+    assertEquals(2000.0, fog.get("dur").getAsDouble());
+  }
+}
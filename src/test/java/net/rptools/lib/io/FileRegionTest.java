@@ -0,0 +1,69 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileRegionTest {
+  @TempDir Path tempDir;
+
+  @Test
+  @DisplayName("Only the bytes of the region are read, streamed and transferred")
+  void readsRegion() throws Exception {
+    Path file = tempDir.resolve("data");
+    Files.writeString(file, "headerPAYLOADtrailer", StandardCharsets.UTF_8);
+    var region = new FileRegion(file, 6, 7);
+
+    assertEquals("PAYLOAD", new String(region.readAllBytes(), StandardCharsets.UTF_8));
+
+    var chunk = ByteBuffer.allocate(5);
+    assertEquals(4, region.read(3, chunk));
+    assertEquals("LOAD", new String(chunk.array(), 0, chunk.position(), StandardCharsets.UTF_8));
+    chunk.clear();
+    assertEquals(2, region.read(0, chunk.limit(2)));
+    assertEquals("PA", new String(chunk.array(), 0, chunk.position(), StandardCharsets.UTF_8));
+    assertThrows(IndexOutOfBoundsException.class, () -> region.read(8, ByteBuffer.allocate(1)));
+
+    try (InputStream in = region.openStream()) {
+      assertEquals("PAYLOAD", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    var out = new ByteArrayOutputStream();
+    region.transferTo(out);
+    assertEquals("PAYLOAD", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  @DisplayName("A region of a whole file covers all of it")
+  void wholeFile() throws Exception {
+    Path file = tempDir.resolve("data");
+    Files.write(file, new byte[] {1, 2, 3});
+    var region = FileRegion.of(file);
+
+    assertEquals(0, region.offset());
+    assertEquals(3, region.length());
+    assertArrayEquals(new byte[] {1, 2, 3}, region.readAllBytes());
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.benchmark;
+
+/**
+ * Times the runs of a {@link Benchmark} and prints the results to standard output, as the test
+ * logging configuration turns logging off.
+ */
+public final class Benchmarks {
+  /** A piece of work that is timed. */
+  @FunctionalInterface
+  public interface Task {
+    /**
+     * Runs the work once.
+     *
+     * @throws Exception if the work fails, which fails the benchmark.
+     */
+    void run() throws Exception;
+  }
+
+  /**
+   * The timings of a benchmark.
+   *
+   * @param runs the number of timed runs.
+   * @param totalNanos the time taken by all the runs.
+   * @param minNanos the time taken by the fastest run.
+   */
+  public record Result(int runs, long totalNanos, long minNanos) {
+    /**
+     * Returns the mean time of a run.
+     *
+     * @return the time in milliseconds.
+     */
+    public double meanMillis() {
+      return totalNanos / 1_000_000.0 / runs;
+    }
+
+    /**
+     * Returns the time of the fastest run.
+     *
+     * @return the time in milliseconds.
+     */
+    public double minMillis() {
+      return minNanos / 1_000_000.0;
+    }
+  }
+
+  private Benchmarks() {}
+
+  /**
+   * Runs a task a number of times without timing it, so the code is loaded and compiled, and then
+   * times a number of runs.
+   *
+   * @param warmup the number of untimed runs.
+   * @param runs the number of timed runs.
+   * @param task the work to time.
+   * @return the timings.
+   * @throws Exception if a run fails.
+   */
+  public static Result measure(int warmup, int runs, Task task) throws Exception {
+    for (int i = 0; i < warmup; i++) {
+      task.run();
+    }
+    long total = 0;
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+      task.run();
+      long nanos = System.nanoTime() - start;
+      total += nanos;
+      min = Math.min(min, nanos);
+    }
+    return new Result(runs, total, min);
+  }
+
+  /**
+   * Prints the timings of a benchmark.
+   *
+   * @param benchmark what was measured.
+   * @param variant the variant of the code that was measured, such as with or without a cache.
+   * @param result the timings.
+   */
+  public static void report(String benchmark, String variant, Result result) {
+    System.out.printf(
+        "%-32s %-10s mean %10.3f ms  min %10.3f ms  (%d runs)%n",
+        benchmark, variant, result.meanMillis(), result.minMillis(), result.runs());
+  }
+
+  /**
+   * Prints some other figure of a benchmark, such as the size of a file.
+   *
+   * @param format the message, as a {@link String#format} format string.
+   * @param args the arguments of the format.
+   */
+  public static void report(String format, Object... args) {
+    System.out.println(String.format(format, args));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import net.rptools.maptool.client.macro.MacroLocationFactory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares running a large framework style macro when its compiled plans are discarded before each
+ * run and when they are kept between runs. The macro builds a character sheet from a string
+ * property list, so it exercises nested code blocks, loops, IF and SWITCH branches the way library
+ * macros in popular frameworks do.
+ */
+@Benchmark
+class MacroPlanBenchmarkTest {
+  private static final int SKILLS = 40;
+  private static final int WARMUP = 20;
+  private static final int ITERATIONS = 200;
+
+  private static final String SHEET_MACRO =
+      """
+      [h: skills = ""]
+      [h, for(i, 0, %d): skills = setStrProp(skills, "Skill" + i, math.mod(i, 7))]
+      [h: output = "<table>"]
+      [h, foreach(skill, skills, "", ";"), code: {
+        [h: name = indexKeyStrProp(skills, roll.count)]
+        [h: rank = getStrProp(skills, name)]
+        [h, if(rank > 3), code: {
+          [h: style = "trained"]
+          [h: bonus = rank * 2]
+        };{
+          [h: style = "untrained"]
+          [h: bonus = rank]
+        }]
+        [h, switch(rank): case 0: label = "none"; case 1: label = "novice";
+            case 2: label = "apprentice"; case 3: label = "journeyman";
+            case 4: label = "adept"; case 5: label = "expert"; default: label = "master"]
+        [h, count(2, ""): bonus = bonus + 1]
+        [h: row = strformat("<tr class='%%{style}'><td>%%{name}</td><td>%%{label}</td>")]
+        [h: row = row + "<td>" + bonus + "</td></tr>"]
+        [h, if(bonus > 10): row = replace(row, "<tr", "<tr data-high='1'")]
+        [h: output = output + row]
+      }]
+      [r: output + "</table>"]
+      """
+          .formatted(SKILLS);
+
+  @Test
+  @DisplayName("Run a character sheet macro with and without cached plans")
+  void benchmarkPlans() throws Exception {
+    MapToolLineParser parser = MapTool.getParser();
+    String expected = run(parser);
+    assertTrue(expected.startsWith("<table>") && expected.endsWith("</table>"));
+
+    for (boolean cached : new boolean[] {false, true}) {
+      var result =
+          Benchmarks.measure(
+              WARMUP, ITERATIONS, () -> assertEquals(expected, runOnce(parser, cached)));
+      Benchmarks.report("character sheet macro", cached ? "cached" : "uncached", result);
+    }
+  }
+
+  private static String runOnce(MapToolLineParser parser, boolean cached) throws Exception {
+    if (!cached) {
+      MacroPlan.clearCache();
+    }
+    return run(parser);
+  }
+
+  private static String run(MapToolLineParser parser) throws Exception {
+    var loc = MacroLocationFactory.getInstance().createChatLocation();
+    MapToolMacroContext context = new MapToolMacroContext("benchmark", loc, true);
+    return parser.parseLine(new MapToolVariableResolver(null), null, SHEET_MACRO, context);
+  }
+}
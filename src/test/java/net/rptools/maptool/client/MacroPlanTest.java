@@ -0,0 +1,79 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MacroPlanTest {
+
+  @Test
+  void testLocatesRolls() {
+    var rolls = MacroPlan.of("a [h: x = 1] b {x} c [r: \"]\"]").getRolls();
+
+    assertEquals(3, rolls.size());
+    assertEquals("h", rolls.get(0).getOpt());
+    assertEquals(" x = 1", rolls.get(0).getRoll());
+    assertEquals("{x}", rolls.get(1).getMatch());
+    assertEquals("x", rolls.get(1).getRoll());
+    assertEquals(" \"]\"", rolls.get(2).getRoll());
+  }
+
+  @Test
+  void testPlansAreCachedByText() {
+    String line = "[r: 1] [r: 2]";
+
+    assertSame(MacroPlan.of(line), MacroPlan.of(line));
+    assertNotSame(MacroPlan.of(line), MacroPlan.of(line + " [r: 3]"));
+  }
+
+  @Test
+  void testOptionsAreParsedOnce() throws Exception {
+    var roll = MacroPlan.of("[h, count(3, \"\"): 1]").getRolls().get(0);
+
+    List<OptionInfo> options = roll.getOptions();
+    assertEquals(2, options.size());
+    assertEquals(OptionInfo.OptionType.HIDDEN, options.get(0).getOptionType());
+    assertEquals(OptionInfo.OptionType.COUNT, options.get(1).getOptionType());
+    assertSame(options, roll.getOptions());
+  }
+
+  @Test
+  void testIfBranches() {
+    var roll = MacroPlan.of("[if(x): \"yes\"; \"no\"]").getRolls().get(0);
+    var codeRoll = MacroPlan.of("[if(x), code: {[r: 1]}; {[r: 2]}]").getRolls().get(0);
+
+    assertEquals(new MacroPlan.IfBranches("\"yes\"", "\"no\""), roll.getIfBranches(false));
+    assertEquals("[r: 1]", codeRoll.getIfBranches(true).whenTrue());
+    assertEquals("[r: 2]", codeRoll.getIfBranches(true).whenFalse());
+    assertNull(MacroPlan.of("[if(x): 1; 2; 3]").getRolls().get(0).getIfBranches(false));
+  }
+
+  @Test
+  void testSwitchCases() {
+    var roll =
+        MacroPlan.of("[switch(x): case 1: \"one\"; case \"two\": 2; default: 0]").getRolls().get(0);
+
+    assertEquals(
+        List.of(
+            new MacroPlan.SwitchCase("1", "\"one\""),
+            new MacroPlan.SwitchCase("two", "2"),
+            new MacroPlan.SwitchCase(null, "0")),
+        roll.getSwitchCases(false));
+    assertNull(MacroPlan.of("[switch(x): 1; 2]").getRolls().get(0).getSwitchCases(false));
+  }
+}
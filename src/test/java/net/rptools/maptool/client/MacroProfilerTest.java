@@ -0,0 +1,126 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.StringWriter;
+import net.rptools.maptool.client.MacroProfiler.Entry;
+import net.rptools.maptool.client.MacroProfiler.Kind;
+import net.rptools.maptool.client.MacroProfiler.Node;
+import net.rptools.maptool.client.MacroProfiler.Snapshot;
+import org.junit.jupiter.api.Test;
+
+class MacroProfilerTest {
+
+  private static Entry findEntry(Snapshot snapshot, Kind kind, String name) {
+    return snapshot.entries().stream()
+        .filter(e -> e.kind() == kind && e.name().equals(name))
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static void busyWait(long nanos) {
+    long end = System.nanoTime() + nanos;
+    while (System.nanoTime() < end) {
+      Thread.onSpinWait();
+    }
+  }
+
+  @Test
+  void testNothingRecordedWhenStopped() {
+    var profiler = new MacroProfiler();
+    assertNull(profiler.enter(Kind.MACRO, "test@lib:test"));
+    profiler.exit(null);
+    assertTrue(profiler.getSnapshot().entries().isEmpty());
+  }
+
+  @Test
+  void testInclusiveAndExclusiveTimes() {
+    var profiler = new MacroProfiler();
+    profiler.start();
+    var macro = profiler.enter(Kind.MACRO, "test@lib:test");
+    busyWait(2_000_000);
+    for (int i = 0; i < 3; i++) {
+      var function = profiler.enter(Kind.FUNCTION, "getProperty");
+      busyWait(1_000_000);
+      profiler.exit(function);
+    }
+    profiler.exit(macro);
+
+    Snapshot snapshot = profiler.getSnapshot();
+    Entry macroEntry = findEntry(snapshot, Kind.MACRO, "test@lib:test");
+    Entry functionEntry = findEntry(snapshot, Kind.FUNCTION, "getProperty");
+    assertEquals(1, macroEntry.calls());
+    assertEquals(3, functionEntry.calls());
+    assertTrue(functionEntry.inclusiveNanos() >= 3_000_000);
+    assertEquals(functionEntry.inclusiveNanos(), functionEntry.exclusiveNanos());
+    assertTrue(macroEntry.inclusiveNanos() >= macroEntry.exclusiveNanos() + 3_000_000);
+
+    Node macroNode = snapshot.root().children().get(0);
+    assertEquals("macro:test@lib:test", macroNode.getLabel());
+    assertEquals(1, macroNode.children().size());
+    assertEquals(3, macroNode.children().get(0).calls());
+  }
+
+  @Test
+  void testRecursiveCallsCountedOnce() {
+    var profiler = new MacroProfiler();
+    profiler.start();
+    var outer = profiler.enter(Kind.USER_FUNCTION, "fib");
+    var inner = profiler.enter(Kind.USER_FUNCTION, "fib");
+    busyWait(1_000_000);
+    profiler.exit(inner);
+    profiler.exit(outer);
+
+    Entry entry = findEntry(profiler.getSnapshot(), Kind.USER_FUNCTION, "fib");
+    assertEquals(2, entry.calls());
+    assertTrue(entry.inclusiveNanos() >= entry.exclusiveNanos());
+  }
+
+  @Test
+  void testNamesAreNormalized() {
+    var profiler = new MacroProfiler();
+    profiler.start();
+    profiler.exit(profiler.enter(Kind.EXPRESSION, "  1 +\n   2  "));
+    assertEquals("1 + 2", profiler.getSnapshot().entries().get(0).name());
+  }
+
+  @Test
+  void testFoldedStacks() throws Exception {
+    var profiler = new MacroProfiler();
+    profiler.start();
+    var macro = profiler.enter(Kind.MACRO, "a;b@lib:test");
+    var function = profiler.enter(Kind.FUNCTION, "json.get");
+    busyWait(1_000_000);
+    profiler.exit(function);
+    profiler.exit(macro);
+
+    var out = new StringWriter();
+    profiler.getSnapshot().writeFoldedStacks(out);
+    assertTrue(out.toString().contains("macro:a,b@lib:test;function:json.get "), out.toString());
+  }
+
+  @Test
+  void testResetDiscardsResults() {
+    var profiler = new MacroProfiler();
+    profiler.start();
+    profiler.exit(profiler.enter(Kind.FUNCTION, "roll"));
+    profiler.reset();
+    Snapshot snapshot = profiler.getSnapshot();
+    assertTrue(snapshot.entries().isEmpty());
+    assertTrue(snapshot.root().children().isEmpty());
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import net.rptools.maptool.client.macro.MacroLocationFactory;
+import org.junit.jupiter.api.Test;
+
+public class MapToolVariableResolverConcurrencyTest {
+
+  private static final int THREADS = 8;
+
+  private static final int ITERATIONS = 10_000;
+
+  private static final long TIMEOUT_SECONDS = 30;
+
+  /** Runs a task on the worker thread of the macro executor and waits for its result. */
+  private static <T> T onWorker(MacroExecutor.EdtTask<T> task) throws Exception {
+    var future = new CompletableFuture<T>();
+    MacroExecutor.getInstance()
+        .submit(
+            () -> {
+              try {
+                future.complete(task.call());
+              } catch (Throwable t) {
+                future.completeExceptionally(t);
+              }
+            });
+    return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void resolversOnDifferentThreadsDoNotShareVariables() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    try {
+      var start = new CountDownLatch(1);
+      List<Future<MapToolVariableResolver>> results = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        BigDecimal id = BigDecimal.valueOf(i);
+        results.add(
+            pool.submit(
+                () -> {
+                  var resolver = new MapToolVariableResolver(null);
+                  start.await();
+                  for (int n = 0; n < ITERATIONS; n++) {
+                    resolver.setVariable("id", id);
+                    resolver.setVariable("count", BigDecimal.valueOf(n));
+                    assertEquals(id, resolver.getVariable("id"));
+                  }
+                  return resolver;
+                }));
+      }
+      start.countDown();
+
+      for (int i = 0; i < THREADS; i++) {
+        var resolver = results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(BigDecimal.valueOf(i), resolver.getVariable("id"));
+        assertEquals(BigDecimal.valueOf(ITERATIONS - 1), resolver.getVariable("count"));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void variablesAreHandedBetweenThreads() throws Exception {
+    var resolver = new MapToolVariableResolver(null);
+    resolver.setVariable("before", BigDecimal.ONE);
+
+    Object seenOnWorker =
+        onWorker(
+            () -> {
+              resolver.setVariable("during", BigDecimal.TWO);
+              return resolver.getVariable("before");
+            });
+
+    assertEquals(BigDecimal.ONE, seenOnWorker);
+    assertEquals(BigDecimal.TWO, resolver.getVariable("during"));
+  }
+
+  @Test
+  public void macrosOnTheWorkerUseTheirOwnParser() throws Exception {
+    var resolver = new MapToolVariableResolver(null);
+    var loc = MacroLocationFactory.getInstance().createChatLocation();
+    var context = new MapToolMacroContext("test", loc, true);
+
+    MapToolLineParser workerParser =
+        onWorker(
+            () -> {
+              MapTool.getParser().parseLine(resolver, null, "[h: a = 20][h: b = a + 1]", context);
+              return MapTool.getParser();
+            });
+
+    assertNotSame(MapTool.getParser(), workerParser);
+    assertEquals(BigDecimal.valueOf(21), resolver.getVariable("b"));
+  }
+
+  @Test
+  public void stepsRunOnTheSwingThreadWithTheWorkerParser() throws Exception {
+    List<Object> seen =
+        onWorker(
+            () -> {
+              MapToolLineParser workerParser = MapTool.getParser();
+              return MacroExecutor.getInstance()
+                  .callOnEdt(
+                      () ->
+                          List.of(
+                              SwingUtilities.isEventDispatchThread(),
+                              workerParser,
+                              MapTool.getParser()));
+            });
+
+    assertTrue((Boolean) seen.get(0));
+    assertSame(seen.get(1), seen.get(2));
+    assertNotSame(MapTool.getParser(), seen.get(2));
+  }
+
+  @Test
+  public void swingThreadStepsSeeWorkerVariablesInOrder() throws Exception {
+    var resolver = new MapToolVariableResolver(null);
+    int steps = 1_000;
+
+    List<Object> seen =
+        onWorker(
+            () -> {
+              List<Object> values = new ArrayList<>();
+              for (int n = 0; n < steps; n++) {
+                resolver.setVariable("order", BigDecimal.valueOf(n));
+                values.add(
+                    MacroExecutor.getInstance().callOnEdt(() -> resolver.getVariable("order")));
+              }
+              return values;
+            });
+
+    assertEquals(steps, seen.size());
+    for (int n = 0; n < steps; n++) {
+      assertEquals(BigDecimal.valueOf(n), seen.get(n));
+    }
+  }
+}
@@ -351,4 +351,21 @@ public void testListFormat() throws ParameterException {
     assertEquals("[[(a)...(b)...(c)]]", listFormat(",", "a,b,c", "[[%list]]", "(%item)", "..."));
     assertEquals("[[(a)...(b)...(c)]]", listFormat(";", "a;b;c", "[[%list]]", "(%item)", "..."));
   }
+
+  @Test
+  public void testListAppendCachesWhatParsingGives() throws ParameterException {
+    String[] lists = {"a", "a, b", "a,", "a,,", "x;y", "a b"};
+    String[] items = {"c", "", "d e", "c,d", "c;d"};
+    for (String delim : new String[] {",", ";", "%%", " ", ""}) {
+      for (String list : lists) {
+        for (String item : items) {
+          StrListFunctions.toList(list, delim);
+          String appended = (String) funcs.listAppend(toParms(list, item, delim), list, delim);
+          List<String> cached = StrListFunctions.toList(appended, delim);
+          ParsedStringCache.clear();
+          assertEquals(StrListFunctions.toList(appended, delim), cached, appended);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,114 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares reading and updating a character sheet held as a property string, and a list of its
+ * keys, when the parse cache is cleared before every call and when parsed strings are reused.
+ */
+@Benchmark
+class StrPropBenchmarkTest {
+  private static final int KEYS = 200;
+  private static final int ITERATIONS = 200;
+
+  private static String sheet;
+  private static String keys;
+
+  @BeforeAll
+  static void createSheet() {
+    StringBuilder props = new StringBuilder();
+    StringBuilder list = new StringBuilder();
+    for (int i = 0; i < KEYS; i++) {
+      if (i > 0) {
+        props.append(" ; ");
+        list.append(", ");
+      }
+      props.append("Skill").append(i).append("=").append(i % 10);
+      list.append("Skill").append(i);
+    }
+    sheet = props.toString();
+    keys = list.toString();
+  }
+
+  @Test
+  @DisplayName("Read and update a 200 key property string with and without the parse cache")
+  void benchmarkStrProps() throws Exception {
+    StrPropFunctions funcs = StrPropFunctions.getInstance();
+    for (boolean cached : new boolean[] {false, true}) {
+      String[] props = {sheet};
+      int[] iteration = {0};
+      var result =
+          Benchmarks.measure(
+              0,
+              ITERATIONS,
+              () -> {
+                // Read every skill the way a sheet is drawn, then change one as a macro updating
+                // it would.
+                int total = 0;
+                for (int k = 0; k < KEYS; k++) {
+                  if (!cached) {
+                    ParsedStringCache.clear();
+                  }
+                  String key = "Skill" + k;
+                  var parameters = List.<Object>of(props[0], key);
+                  total += ((BigDecimal) funcs.getStrProp(parameters, key, props[0])).intValue();
+                }
+                assertEquals(KEYS / 10 * 45, total);
+                if (!cached) {
+                  ParsedStringCache.clear();
+                }
+                int i = iteration[0]++;
+                String key = "Skill" + (i % KEYS);
+                String value = String.valueOf(i % 10);
+                props[0] =
+                    (String) funcs.setStrProp(List.of(props[0], key, value), value, props[0]);
+              });
+      String variant = cached ? "cached" : "parsed";
+      Benchmarks.report(KEYS + " strProp reads and an update", variant, result);
+    }
+  }
+
+  @Test
+  @DisplayName("Read every item of a 200 item list with and without the parse cache")
+  void benchmarkStrLists() throws Exception {
+    StrListFunctions funcs = StrListFunctions.getInstance();
+    for (boolean cached : new boolean[] {false, true}) {
+      var result =
+          Benchmarks.measure(
+              0,
+              ITERATIONS,
+              () -> {
+                for (int k = 0; k < KEYS; k++) {
+                  if (!cached) {
+                    ParsedStringCache.clear();
+                  }
+                  var parameters = List.<Object>of(keys, BigDecimal.valueOf(k));
+                  assertEquals("Skill" + k, funcs.listGet(parameters, keys, String.valueOf(k)));
+                }
+              });
+      Benchmarks.report(KEYS + " strList reads", cached ? "cached" : "parsed", result);
+    }
+  }
+}
@@ -20,6 +20,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import net.rptools.parser.ParserException;
 import org.junit.jupiter.api.Test;
 
 class StrPropFunctionsTest {
@@ -89,4 +90,41 @@ void parse_onePropWithTwoSpaces() {
 
     inMap(map).key("A B 1").hasValue("1");
   }
+
+  @Test
+  void setAndDeleteStrProp_cacheWhatParsingGives() throws ParserException {
+    StrPropFunctions funcs = StrPropFunctions.getInstance();
+    String[][] cases = {
+      {"a=1 ; b=two", "c", "3"},
+      {"a=1; b = 2;", "B", "4"},
+      {"a=1", "b", "  padded  "},
+      {"a=1", "b", "x;y"},
+      {"a=1", "b", "multi\nline"},
+      {"a=b=c", "d", "e=f"},
+      {"a=1", "not-a-key", "1"},
+      {"", "a", ""},
+    };
+    for (String delim : new String[] {";", "%%", "", " ", ".", "="}) {
+      for (String[] c : cases) {
+        String props = c[0].replace(";", delim.isEmpty() ? ";" : delim);
+        String set = (String) funcs.setStrProp(List.of(props, c[1], c[2], delim), delim, props);
+        assertCachedAsParsed(set, delim);
+        String deleted = (String) funcs.deleteStrProp(List.of(set, "a", delim), delim, set);
+        assertCachedAsParsed(deleted, delim);
+      }
+    }
+
+    String set = (String) funcs.setStrProp(List.of("a=1 ; b=2", "c", "3"), "3", "a=1 ; b=2");
+    assertEquals("a=1 ; b=2 ; c=3", set);
+    assertNotNull(ParsedStringCache.getStrProp(set, ";"));
+  }
+
+  private static void assertCachedAsParsed(String props, String delim) {
+    ParsedStringCache.StrProp cached = ParsedStringCache.getStrProp(props, delim);
+    ParsedStringCache.clear();
+    ParsedStringCache.StrProp parsed = StrPropFunctions.parse(props, delim);
+    if (cached != null) {
+      assertEquals(parsed, cached, "cached settings of <" + props + ">");
+    }
+  }
 }
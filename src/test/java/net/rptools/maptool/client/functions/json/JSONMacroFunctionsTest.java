@@ -15,12 +15,18 @@
 package net.rptools.maptool.client.functions.json;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.math.BigDecimal;
 import java.util.List;
+import net.rptools.parser.ParserException;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -33,6 +39,56 @@ void setup() {
     jsonMacroFunctions = JSONMacroFunctions.getInstance();
   }
 
+  @Test
+  void testPathChangesOnlyCopyTheChangedPath() throws ParserException {
+    JsonObject json = parse("{\"a\": {\"b\": 1}, \"c\": {\"d\": [2]}}").getAsJsonObject();
+    JsonObject original = json.deepCopy();
+
+    JsonObject set = evaluate("json.path.set", json, "$.a.b", BigDecimal.TEN).getAsJsonObject();
+    assertEquals(parse("{\"a\": {\"b\": 10}, \"c\": {\"d\": [2]}}"), set);
+    assertSame(json.get("c"), set.get("c"));
+
+    JsonObject put = evaluate("json.path.put", json, "$.c", "e", BigDecimal.ONE).getAsJsonObject();
+    assertEquals(parse("{\"a\": {\"b\": 1}, \"c\": {\"d\": [2], \"e\": 1}}"), put);
+    assertSame(json.get("a"), put.get("a"));
+
+    JsonObject delete = evaluate("json.path.delete", json, "$.c.d[0]").getAsJsonObject();
+    assertEquals(parse("{\"a\": {\"b\": 1}, \"c\": {\"d\": []}}"), delete);
+    assertSame(json.get("a"), delete.get("a"));
+
+    assertEquals(original, json);
+  }
+
+  @Test
+  void testPathChangesWithFilters() throws ParserException {
+    String text = "[{\"n\": \"x\", \"v\": 1}, {\"n\": \"y\", \"v\": 2}, {\"n\": \"x\", \"v\": 3}]";
+    JsonElement set = evaluate("json.path.set", text, "$[?(@.n == 'x')].v", BigDecimal.ZERO);
+    assertEquals(
+        parse("[{\"n\": \"x\", \"v\": 0}, {\"n\": \"y\", \"v\": 2}, {\"n\": \"x\", \"v\": 0}]"),
+        set);
+    assertEquals(parse(text), jsonMacroFunctions.asJsonElement(text));
+  }
+
+  @Test
+  void testReadsFromTextAreCopies() throws ParserException {
+    String text = "{\"a\": {\"b\": [1, 2]}}";
+    JsonObject first = evaluate("json.get", text, "a").getAsJsonObject();
+    first.getAsJsonArray("b").add(3);
+
+    JsonObject second = evaluate("json.get", text, "a").getAsJsonObject();
+    assertNotSame(first, second);
+    assertEquals(parse("{\"b\": [1, 2]}"), second);
+    assertEquals(parse("[1, 2]"), evaluate("json.path.read", text, "$.a.b"));
+  }
+
+  private JsonElement evaluate(String function, Object... args) throws ParserException {
+    return (JsonElement) jsonMacroFunctions.childEvaluate(null, null, function, List.of(args));
+  }
+
+  private static JsonElement parse(String text) {
+    return JsonParser.parseString(text);
+  }
+
   @ParameterizedTest
   @MethodSource("indentSource")
   void testIndent(JsonElement input, int indent, String expectedOutput) {
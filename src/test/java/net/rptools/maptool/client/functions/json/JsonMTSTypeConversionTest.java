@@ -195,4 +195,58 @@ void convertPrimitiveFromString() {
     assertTrue(jsonPrimitive.isString());
     assertFalse(jsonPrimitive.isNumber());
   }
+
+  @Test
+  void asSharedJsonElement() {
+    String text = "{\"hp\": 10, \"skills\": [1, 2, 3]}";
+    JsonElement json = typeConversion.asSharedJsonElement(text);
+    assertTrue(json.isJsonObject());
+    assertEquals(typeConversion.asJsonElement(text), json);
+    assertSame(json, typeConversion.asSharedJsonElement(new String(text)));
+
+    // Lenient json is still converted, but not shared.
+    JsonElement lenient = typeConversion.asSharedJsonElement("{a:1}");
+    assertTrue(lenient.isJsonObject());
+    assertNotSame(lenient, typeConversion.asSharedJsonElement("{a:1}"));
+
+    assertEquals(new JsonPrimitive("test"), typeConversion.asSharedJsonElement("test"));
+    assertNull(typeConversion.parseShared("{\"a\": 1}{\"b\": 2}"));
+  }
+
+  @Test
+  void asJsonText() {
+    JsonObject jsonObject = new JsonObject();
+    jsonObject.addProperty("name", "Sheet");
+    jsonObject.add("stats", new JsonArray());
+
+    String text = typeConversion.asJsonText(jsonObject);
+    assertEquals(jsonObject.toString(), text);
+    JsonElement shared = typeConversion.asSharedJsonElement(new String(text));
+    assertEquals(jsonObject, shared);
+    assertNotSame(jsonObject, shared);
+
+    // The caller still owns the element, so changing it doesn't change what the text reads as.
+    jsonObject.addProperty("hp", 10);
+    assertEquals(text, typeConversion.asSharedJsonElement(text).toString());
+    assertEquals("\"test\"", typeConversion.asJsonText(new JsonPrimitive("test")));
+  }
+
+  @Test
+  void asJsonElementReturnsCopies() {
+    String text = "{\"hp\": 10, \"skills\": [1, 2, 3]}";
+    JsonElement shared = typeConversion.asSharedJsonElement(text);
+    JsonObject first = typeConversion.asJsonElement(text).getAsJsonObject();
+    JsonObject second = typeConversion.asJsonElement(text).getAsJsonObject();
+    assertEquals(shared, first);
+    assertNotSame(shared, first);
+    assertNotSame(first, second);
+
+    first.getAsJsonArray("skills").add(4);
+    assertEquals(3, second.getAsJsonArray("skills").size());
+    assertEquals(3, shared.getAsJsonObject().getAsJsonArray("skills").size());
+
+    assertEquals(shared, typeConversion.parseStrict(text));
+    assertNotSame(shared, typeConversion.parseStrict(text));
+    assertNull(typeConversion.parseStrict("{a:1}"));
+  }
 }
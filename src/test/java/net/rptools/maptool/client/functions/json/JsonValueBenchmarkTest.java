@@ -0,0 +1,115 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions.json;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.MapToolMacroContext;
+import net.rptools.maptool.client.MapToolVariableResolver;
+import net.rptools.maptool.client.macro.MacroLocationFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares reading and updating a large character sheet held as json text when the text is parsed
+ * every time, as it used to be, and when parsed values are kept and copied for each reader.
+ */
+@Benchmark
+class JsonValueBenchmarkTest {
+  private static final int FIELDS = 300;
+  private static final int ITERATIONS = 2_000;
+  private static final int MACRO_RUNS = 20;
+
+  private static String sheet;
+
+  @BeforeAll
+  static void createSheet() {
+    JsonObject json = new JsonObject();
+    for (int i = 0; i < FIELDS; i++) {
+      JsonObject skill = new JsonObject();
+      skill.addProperty("rank", i % 10);
+      skill.addProperty("ability", "Ability" + (i % 6));
+      JsonArray notes = new JsonArray();
+      notes.add("note " + i);
+      skill.add("notes", notes);
+      json.add("Skill" + i, skill);
+    }
+    sheet = json.toString();
+  }
+
+  @Test
+  @DisplayName("Read and update a character sheet with and without shared json values")
+  void benchmarkConversions() throws Exception {
+    for (boolean shared : new boolean[] {false, true}) {
+      JsonMTSTypeConversion typeConversion = new JsonMTSTypeConversion();
+      String[] text = {sheet};
+      int[] iteration = {0};
+      var result =
+          Benchmarks.measure(
+              0,
+              ITERATIONS,
+              () -> {
+                // Read the sheet the way json.get does, then write a field back as a macro
+                // setting a token property would, and read it back the way the property is.
+                JsonElement json =
+                    shared
+                        ? typeConversion.asSharedJsonElement(text[0])
+                        : JsonParser.parseString(text[0]);
+                JsonObject updated = json.getAsJsonObject().deepCopy();
+                int i = iteration[0]++;
+                updated.addProperty("Skill" + (i % FIELDS), i);
+                text[0] = shared ? typeConversion.asJsonText(updated) : updated.toString();
+                for (int r = 0; r < 10; r++) {
+                  json =
+                      shared
+                          ? typeConversion.asJsonElement(text[0])
+                          : JsonParser.parseString(text[0]);
+                  assertTrue(json.getAsJsonObject().has("Skill" + r));
+                }
+              });
+      Benchmarks.report("json update and 10 reads", shared ? "shared" : "parsed", result);
+    }
+  }
+
+  @Test
+  @DisplayName("Run a macro that reads a character sheet held as text")
+  void benchmarkMacro() throws Exception {
+    String macro =
+        ("[h: total = 0][h, for(i, 0, %d): total = total + json.get(json.get(sheet, \"Skill\" + i),"
+                + " \"rank\")][r: total]")
+            .formatted(FIELDS);
+    var loc = MacroLocationFactory.getInstance().createChatLocation();
+    var result =
+        Benchmarks.measure(
+            MACRO_RUNS,
+            MACRO_RUNS,
+            () -> {
+              MapToolVariableResolver resolver = new MapToolVariableResolver(null);
+              resolver.setVariable("sheet", sheet);
+              MapToolMacroContext context = new MapToolMacroContext("benchmark", loc, true);
+              String total = MapTool.getParser().parseLine(resolver, null, macro, context);
+              assertEquals(String.valueOf(FIELDS / 10 * 45), total);
+            });
+    Benchmarks.report("json sheet macro", "shared", result);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.script.javascript;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.MapToolMacroContext;
+import net.rptools.maptool.client.MapToolVariableResolver;
+import net.rptools.maptool.client.macro.MacroLocationFactory;
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the latency of {@code js.eval} on the first call, which has to create the engine and a
+ * context, and once the engine is warm and unused contexts are prepared in the background. For
+ * comparison it also times creating a context for the same script on the calling thread, which is
+ * what every anonymous evaluation used to do.
+ */
+@Benchmark
+class JSScriptEngineBenchmarkTest {
+  private static final String SCRIPT =
+      "let total = 0; for (let i = 0; i < 1000; i++) { total += i % 7; } return total;";
+  private static final String MACRO = "[r: js.eval(\"" + SCRIPT + "\")]";
+  private static final String EXPECTED = "2997";
+  private static final int WARMUP = 50;
+  private static final int ITERATIONS = 500;
+  private static final int FRESH_CONTEXT_ITERATIONS = 20;
+
+  @Test
+  @DisplayName("Time js.eval on the first call, when warm, and with a new context per call")
+  void benchmarkEval() throws Exception {
+    Benchmarks.Task call = () -> assertEquals(EXPECTED, eval());
+    Benchmarks.report("js.eval", "first", Benchmarks.measure(0, 1, call));
+    Benchmarks.report("js.eval", "prepared", Benchmarks.measure(WARMUP, ITERATIONS, call));
+
+    JSScriptEngine engine = JSScriptEngine.getJSScriptEngine();
+    var fresh =
+        Benchmarks.measure(
+            0,
+            FRESH_CONTEXT_ITERATIONS,
+            () -> {
+              Context context = engine.makeContext();
+              assertEquals(2997, context.eval("js", "(function() {" + SCRIPT + "})();").asInt());
+              context.close();
+            });
+    Benchmarks.report("js.eval", "fresh", fresh);
+  }
+
+  private static String eval() throws Exception {
+    var loc = MacroLocationFactory.getInstance().createChatLocation();
+    MapToolMacroContext context = new MapToolMacroContext("benchmark", loc, true);
+    return MapTool.getParser().parseLine(new MapToolVariableResolver(null), null, MACRO, context);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.assetpanel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Set;
+import javax.imageio.ImageIO;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.image.ThumbnailManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AssetFileIndexTest {
+  @TempDir File tempDir;
+
+  @Test
+  void testMetadataFollowsFileChanges() throws Exception {
+    File cacheDir = new File(tempDir, "cache");
+    File imageFile = new File(tempDir, "image.png");
+    ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+
+    AssetFileIndex index = new AssetFileIndex(cacheDir, thumbnails(new File(tempDir, "thumbs")), 1);
+    AssetFileIndex.Metadata metadata = index.getMetadata(imageFile);
+    assertEquals(new Dimension(20, 10), metadata.getDimension());
+    assertSame(metadata, index.getMetadata(imageFile));
+
+    ImageIO.write(new BufferedImage(30, 40, BufferedImage.TYPE_INT_RGB), "png", imageFile);
+    imageFile.setLastModified(metadata.lastModified() + 10_000);
+    assertEquals(new Dimension(30, 40), index.getMetadata(imageFile).getDimension());
+  }
+
+  @Test
+  void testPrunesRemovedFiles() throws Exception {
+    File cacheDir = new File(tempDir, "cache");
+    File thumbDir = new File(tempDir, "thumbs");
+    File imageFile = new File(tempDir, "image.png");
+    ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB), "png", imageFile);
+    // A cached thumbnail, as left by a file that has since been removed
+    assertTrue(thumbDir.mkdirs());
+    MD5Key key = new MD5Key(imageFile.getAbsolutePath().getBytes());
+    File thumbnail = new File(thumbDir, key.toString());
+    assertTrue(thumbnail.createNewFile());
+
+    AssetFileIndex index = new AssetFileIndex(cacheDir, thumbnails(thumbDir), 1);
+    AssetFileIndex.Metadata metadata = index.getMetadata(imageFile);
+    index.prune(tempDir.getAbsoluteFile(), Set.of(imageFile.getName()));
+    assertSame(metadata, index.getMetadata(imageFile));
+    assertTrue(thumbnail.exists());
+
+    index.prune(tempDir.getAbsoluteFile(), Set.of());
+    assertNotSame(metadata, index.getMetadata(imageFile));
+    assertFalse(thumbnail.exists());
+  }
+
+  private static ThumbnailManager thumbnails(File dir) {
+    return new ThumbnailManager(dir, new Dimension(50, 50));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.assetpanel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AssetSearchIndexTest {
+  @TempDir File tempDir;
+
+  private AssetSearchIndex index;
+  private File root;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    root = new File(tempDir, "assets");
+    createFile("Goblin.png");
+    createFile("monsters/Goblin Archer.png");
+    createFile("monsters/Hobgoblin.rptok");
+    createFile("monsters/notes.txt");
+    createFile("books/Bestiary.pdf");
+
+    index = new AssetSearchIndex(new File(tempDir, "index"));
+    index.addRoot(root);
+    for (int i = 0; i < 100 && !index.isIndexed(root); i++) {
+      Thread.sleep(50);
+    }
+    assertTrue(index.isIndexed(root));
+  }
+
+  @AfterEach
+  void tearDown() {
+    index.close();
+  }
+
+  @Test
+  void testSearch() {
+    assertEquals(
+        List.of("Goblin Archer.png", "Goblin.png", "Hobgoblin.rptok"),
+        names(index.search(root, "goblin", false, 10)));
+    assertEquals(
+        List.of("Goblin Archer.png", "Goblin.png"), names(index.search(root, "gob", true, 10)));
+    assertEquals(List.of("Bestiary.pdf"), names(index.search(root, "best", true, 10)));
+    assertEquals(List.of(), names(index.search(root, "notes", false, 10)));
+    assertEquals(1, index.search(root, "goblin", false, 1).size());
+  }
+
+  @Test
+  void testSearchBelowDirectory() {
+    File monsters = new File(root, "monsters");
+    assertEquals(
+        List.of("Goblin Archer.png", "Hobgoblin.rptok"),
+        names(index.search(monsters, "goblin", false, 10)));
+    assertNull(index.search(tempDir, "goblin", false, 10));
+  }
+
+  private void createFile(String path) throws IOException {
+    File file = new File(root, path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.writeString(file.toPath(), path);
+  }
+
+  private static List<String> names(List<File> files) {
+    return files.stream().map(File::getName).toList();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import org.junit.jupiter.api.Test;
+
+class DrawableIndexTest {
+  private final Map<DrawnElement, Rectangle> bounds = new IdentityHashMap<>();
+  private final List<DrawnElement> elements = new ArrayList<>();
+
+  private DrawnElement add(int x, int y, int width, int height) {
+    DrawnElement element = new DrawnElement(null, null);
+    bounds.put(element, new Rectangle(x, y, width, height));
+    elements.add(element);
+    return element;
+  }
+
+  @Test
+  void testQueryReturnsOverlappingDrawablesInDrawOrder() {
+    DrawnElement large = add(-10_000, -10_000, 20_000, 20_000);
+    DrawnElement near = add(10, 10, 50, 50);
+    DrawnElement far = add(5_000, 5_000, 50, 50);
+    DrawnElement spanning = add(200, 200, 400, 100);
+    DrawnElement negative = add(-300, -300, 20, 20);
+
+    DrawableIndex index = new DrawableIndex();
+    index.rebuild(elements, bounds::get);
+
+    assertEquals(List.of(large, near), index.query(new Rectangle(0, 0, 100, 100)));
+    assertEquals(List.of(large, spanning), index.query(new Rectangle(500, 250, 10, 10)));
+    assertEquals(List.of(large, far), index.query(new Rectangle(4_900, 4_900, 200, 200)));
+    assertEquals(List.of(large, negative), index.query(new Rectangle(-290, -290, 5, 5)));
+    assertEquals(
+        List.of(large, near, far, spanning, negative),
+        index.query(new Rectangle(-1_000, -1_000, 10_000, 10_000)));
+  }
+
+  @Test
+  void testRemembersIndexedBounds() {
+    DrawnElement element = add(0, 0, 10, 10);
+    DrawnElement unbounded = new DrawnElement(null, null);
+    elements.add(unbounded);
+
+    DrawableIndex index = new DrawableIndex();
+    index.rebuild(elements, bounds::get);
+    bounds.put(element, new Rectangle(100, 100, 10, 10));
+
+    assertEquals(new Rectangle(0, 0, 10, 10), index.getBounds(element));
+    assertNull(index.getBounds(unbounded));
+    assertNull(index.getBounds(new DrawnElement(null, null)));
+    assertEquals(2, index.size());
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone.renderer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.util.Set;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Zone.Layer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LayerCacheTest {
+  private final BufferedImage target = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+  private int imageUpdates;
+  private int renders;
+  private LayerCache cache;
+  private Graphics2D g;
+
+  @BeforeEach
+  void setUp() {
+    cache =
+        new LayerCache(
+            (img, infoFlags, x, y, width, height) -> {
+              imageUpdates++;
+              return false;
+            });
+    g = target.createGraphics();
+    cache.setSize(10, 10, g.getDeviceConfiguration());
+  }
+
+  private static LayerCache.Key key(Object state) {
+    return new LayerCache.Key(0, 0, 1, null, state);
+  }
+
+  private boolean draw(Layer layer, Object state, Set<GUID> tokenIds) {
+    return cache.draw(g, layer, key(state), tokenIds, surface -> renders++);
+  }
+
+  @Test
+  @DisplayName("A layer is reused until it or the state it depends on changes")
+  void reusesUnchangedLayers() {
+    assertFalse(draw(Layer.OBJECT, "state", Set.of()));
+    assertTrue(draw(Layer.OBJECT, "state", Set.of()));
+    assertEquals(1, renders);
+
+    assertFalse(draw(Layer.OBJECT, "other state", Set.of()));
+    cache.invalidate(Layer.OBJECT);
+    assertFalse(draw(Layer.OBJECT, "other state", Set.of()));
+    assertEquals(3, renders);
+  }
+
+  @Test
+  @DisplayName("Invalidating a layer leaves the other layers alone")
+  void invalidatesSingleLayers() {
+    draw(Layer.BACKGROUND, "state", Set.of());
+    draw(Layer.OBJECT, "state", Set.of());
+
+    cache.invalidate(Layer.BACKGROUND);
+    assertFalse(draw(Layer.BACKGROUND, "state", Set.of()));
+    assertTrue(draw(Layer.OBJECT, "state", Set.of()));
+  }
+
+  @Test
+  @DisplayName("A token moved to another layer invalidates the layer it was drawn on")
+  void invalidatesLayersOfTokens() {
+    var token = new GUID();
+    draw(Layer.BACKGROUND, "state", Set.of(token));
+    draw(Layer.OBJECT, "state", Set.of());
+
+    cache.invalidateToken(token, Layer.TOKEN);
+    assertFalse(draw(Layer.BACKGROUND, "state", Set.of()));
+    assertTrue(draw(Layer.OBJECT, "state", Set.of()));
+  }
+
+  @Test
+  @DisplayName("An image update only invalidates the layer the image was requested for")
+  void imageUpdatesInvalidateTheirLayer() {
+    draw(Layer.BACKGROUND, "state", Set.of());
+    draw(Layer.OBJECT, "state", Set.of());
+
+    ImageObserver observer = cache.getImageObserver(Layer.OBJECT);
+    assertSame(observer, cache.getImageObserver(Layer.OBJECT));
+    observer.imageUpdate(target, ImageObserver.ALLBITS, 0, 0, 10, 10);
+
+    assertEquals(1, imageUpdates);
+    assertTrue(draw(Layer.BACKGROUND, "state", Set.of()));
+    assertFalse(draw(Layer.OBJECT, "state", Set.of()));
+  }
+}
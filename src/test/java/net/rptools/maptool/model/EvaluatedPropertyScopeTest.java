@@ -0,0 +1,221 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.gson.JsonObject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.client.MapToolVariableResolver;
+import net.rptools.maptool.client.macro.MacroLocationFactory;
+import net.rptools.parser.ParserException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EvaluatedPropertyScopeTest {
+
+  /** Counts how often each property is looked up, which only happens when it is evaluated. */
+  private static class CountingToken extends Token {
+    private final Map<String, Integer> lookups = new HashMap<>();
+
+    @Override
+    public String getPropertyDefault(String key) {
+      lookups.merge(key.toLowerCase(), 1, Integer::sum);
+      return super.getPropertyDefault(key);
+    }
+
+    int lookups(String key) {
+      return lookups.getOrDefault(key.toLowerCase(), 0);
+    }
+  }
+
+  private CountingToken token;
+  private MapToolVariableResolver resolver;
+
+  @BeforeEach
+  void setUp() {
+    MapTool.getCampaign()
+        .putTokenType(
+            "scopeTest",
+            List.of(
+                new TokenProperty("Strength", null, true, false, false, "18"),
+                new TokenProperty("Bonus", null, true, false, false, "{Strength - 10}"),
+                new TokenProperty("Rolled", null, true, false, false, "{1d6}"),
+                new TokenProperty("Sheet", null, true, false, false, "{\"hp\": 10}")));
+    token = new CountingToken();
+    token.setPropertyType("scopeTest");
+    resolver = new MapToolVariableResolver(token);
+    var loc = MacroLocationFactory.getInstance().createTokenLocation("test", token);
+    MapTool.getParser().enterContext("test", loc, true);
+  }
+
+  private static void remember(Token token, String key, Object value) {
+    EvaluatedPropertyScope.put(
+        token,
+        key,
+        token.getPropertyVersion(),
+        EvaluatedPropertyScope.getPropertyTypesVersion(),
+        value);
+  }
+
+  @Test
+  void testNothingRememberedOutsideScope() {
+    Token token = new Token();
+    remember(token, "Strength", "18");
+    assertFalse(EvaluatedPropertyScope.isEnabled());
+    assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+  }
+
+  @Test
+  void testRememberedUntilScopeCloses() {
+    Token token = new Token();
+    try (var scope = EvaluatedPropertyScope.open()) {
+      remember(token, "Strength", "18");
+      assertEquals("18", EvaluatedPropertyScope.get(token, "strength"));
+    }
+    try (var scope = EvaluatedPropertyScope.open()) {
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+    }
+  }
+
+  @Test
+  void testNestedScopeJoinsOuterScope() {
+    Token token = new Token();
+    try (var outer = EvaluatedPropertyScope.open()) {
+      try (var inner = EvaluatedPropertyScope.open()) {
+        remember(token, "Strength", "18");
+      }
+      assertEquals("18", EvaluatedPropertyScope.get(token, "Strength"));
+    }
+  }
+
+  @Test
+  void testPropertyChangeInvalidates() {
+    Token token = new Token();
+    Token other = new Token();
+    try (var scope = EvaluatedPropertyScope.open()) {
+      remember(token, "Strength", "18");
+      remember(other, "Strength", "10");
+      token.setProperty("Dexterity", "12");
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+      assertEquals("10", EvaluatedPropertyScope.get(other, "Strength"));
+
+      remember(token, "Strength", "18");
+      token.setPropertyType("Monster");
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+    }
+  }
+
+  @Test
+  void testPropertyTypeChangeInvalidates() {
+    Token token = new Token();
+    try (var scope = EvaluatedPropertyScope.open()) {
+      remember(token, "Strength", "18");
+      EvaluatedPropertyScope.propertyTypesChanged();
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+    }
+  }
+
+  @Test
+  void testDisabling() {
+    Token token = new Token();
+    try (var scope = EvaluatedPropertyScope.open()) {
+      remember(token, "Strength", "18");
+      EvaluatedPropertyScope.setEnabled(false);
+      assertFalse(EvaluatedPropertyScope.isEnabled());
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+      remember(token, "Strength", "18");
+      EvaluatedPropertyScope.setEnabled(true);
+      assertNull(EvaluatedPropertyScope.get(token, "Strength"));
+    }
+  }
+
+  @Test
+  void testTokenRemembersEvaluatedProperties() {
+    try (var scope = EvaluatedPropertyScope.open()) {
+      assertEquals("8", token.getEvaluatedProperty(resolver, "Bonus"));
+      assertEquals("8", token.getEvaluatedProperty(resolver, "Bonus"));
+      assertEquals(1, token.lookups("Bonus"));
+    }
+
+    token.getEvaluatedProperty(resolver, "Bonus");
+    token.getEvaluatedProperty(resolver, "Bonus");
+    assertEquals(3, token.lookups("Bonus"));
+  }
+
+  @Test
+  void testDiceRollsAreNotRemembered() {
+    try (var scope = EvaluatedPropertyScope.open()) {
+      token.getEvaluatedProperty(resolver, "Rolled");
+      token.getEvaluatedProperty(resolver, "Rolled");
+      assertEquals(2, token.lookups("Rolled"));
+    }
+  }
+
+  @Test
+  void testResolversForOtherTokensAreNotRemembered() {
+    var other = new MapToolVariableResolver(new Token());
+    try (var scope = EvaluatedPropertyScope.open()) {
+      token.getEvaluatedProperty(other, "Strength");
+      token.getEvaluatedProperty(other, "Strength");
+      assertEquals(2, token.lookups("Strength"));
+
+      token.getEvaluatedProperty(resolver, "Strength");
+      token.getEvaluatedProperty(resolver, "Strength");
+      assertEquals(3, token.lookups("Strength"));
+    }
+  }
+
+  @Test
+  void testMacroRunsJoinTheOpenScope() throws ParserException {
+    String macro = "[h: a = Bonus][h: b = Bonus][r: a]";
+    assertEquals("8", MapTool.getParser().parseLine(resolver, token, macro));
+    assertEquals(1, token.lookups("Bonus"));
+
+    try (var scope = EvaluatedPropertyScope.open()) {
+      token.getEvaluatedProperty(resolver, "Bonus");
+      assertEquals("8", MapTool.getParser().parseLine(resolver, token, macro));
+      assertEquals(2, token.lookups("Bonus"));
+    }
+  }
+
+  @Test
+  void testTokenChangesInvalidate() {
+    try (var scope = EvaluatedPropertyScope.open()) {
+      token.getEvaluatedProperty(resolver, "Bonus");
+      token.setName("Renamed");
+      token.getEvaluatedProperty(resolver, "Bonus");
+      token.setState("Dead", true);
+      token.getEvaluatedProperty(resolver, "Bonus");
+      token.setX(50);
+      token.getEvaluatedProperty(resolver, "Bonus");
+      assertEquals(4, token.lookups("Bonus"));
+    }
+  }
+
+  @Test
+  void testRememberedJsonIsCopied() {
+    try (var scope = EvaluatedPropertyScope.open()) {
+      JsonObject first = (JsonObject) token.getEvaluatedProperty(resolver, "Sheet");
+      first.addProperty("hp", 0);
+      JsonObject second = (JsonObject) token.getEvaluatedProperty(resolver, "Sheet");
+      assertEquals(10, second.get("hp").getAsInt());
+      assertEquals(1, token.lookups("Sheet"));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.eventbus.Subscribe;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.events.MapToolEventBus;
+import net.rptools.maptool.model.zones.TokensChanged;
+import net.rptools.maptool.server.proto.TokenPropertyValueDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TokenUpdateEventsTest {
+  private final List<TokensChanged> events = new ArrayList<>();
+  private Zone zone;
+  private List<Token> tokens;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    tokens = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      Token token = new Token();
+      token.setName("Goblin " + i);
+      zone.putToken(token);
+      tokens.add(token);
+    }
+    new MapToolEventBus().getMainEventBus().register(this);
+  }
+
+  @AfterEach
+  void tearDown() {
+    new MapToolEventBus().getMainEventBus().unregister(this);
+  }
+
+  @Subscribe
+  void onTokensChanged(TokensChanged event) {
+    events.add(event);
+  }
+
+  @Test
+  void testSingleUpdateFiresItsOwnEvent() {
+    Token token = tokens.get(0);
+    token.updateProperty(zone, Token.Update.setProperty, setProperty("HP", "7"));
+
+    assertEquals("7", token.getProperty("HP"));
+    assertEquals(1, events.size());
+    assertEquals(List.of(token), events.get(0).tokens());
+  }
+
+  @Test
+  void testBatchedUpdatesFireOneEvent() {
+    var batch = new TokenUpdateEvents(zone);
+    for (Token token : tokens) {
+      token.updateProperty(Token.Update.setProperty, setProperty("HP", "3"), batch);
+      token.updateProperty(Token.Update.setProperty, setProperty("AC", "12"), batch);
+    }
+    assertEquals(0, events.size());
+
+    batch.fire();
+
+    assertEquals(1, events.size());
+    assertEquals(tokens, events.get(0).tokens());
+    for (Token token : tokens) {
+      assertEquals("3", token.getProperty("HP"));
+      assertEquals("12", token.getProperty("AC"));
+    }
+  }
+
+  @Test
+  void testEmptyBatchFiresNothing() {
+    new TokenUpdateEvents(zone).fire();
+
+    assertEquals(0, events.size());
+  }
+
+  private static List<TokenPropertyValueDto> setProperty(String name, String value) {
+    return List.of(
+        TokenPropertyValueDto.newBuilder().setStringValue(name).build(),
+        TokenPropertyValueDto.newBuilder().setStringValue(value).build());
+  }
+}
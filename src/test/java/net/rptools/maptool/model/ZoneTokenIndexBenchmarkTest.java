@@ -0,0 +1,93 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import net.rptools.maptool.server.proto.TokenPropertyValueDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares a macro loop that sets a state on a token and then looks up the tokens with that state,
+ * when the tokens are scanned, when the token index is built again after every change, and when
+ * the changed token is filed again in the index.
+ */
+@Benchmark
+class ZoneTokenIndexBenchmarkTest {
+  private static final int TOKENS = 2000;
+  private static final int UPDATES = 200;
+  private static final int WARMUP = 20;
+  private static final int ITERATIONS = 50;
+
+  private Zone zone;
+  private List<Token> tokens;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    for (int i = 0; i < TOKENS; i++) {
+      var token = new Token();
+      token.setName("Token " + i);
+      token.setZOrder(i);
+      token.setType(i % 10 == 0 ? Token.Type.PC : Token.Type.NPC);
+      zone.putToken(token);
+    }
+    tokens = zone.getAllTokens();
+  }
+
+  @Test
+  @DisplayName("Set a state and then find the tokens with it")
+  void benchmarkSetThenGet() throws Exception {
+    for (String variant : new String[] {"scan", "rebuilt", "updated"}) {
+      int[] iteration = {0};
+      var result =
+          Benchmarks.measure(
+              WARMUP,
+              ITERATIONS,
+              () -> {
+                for (int u = 0; u < UPDATES; u++) {
+                  int i = iteration[0]++;
+                  // setState() inside batchTokenUpdates() changes the token, holding back events
+                  var events = new TokenUpdateEvents(zone);
+                  tokens
+                      .get(i * 7 % TOKENS)
+                      .updateProperty(
+                          Token.Update.setState,
+                          List.of(
+                              TokenPropertyValueDto.newBuilder().setStringValue("Marked").build(),
+                              TokenPropertyValueDto.newBuilder().setBoolValue(i % 2 == 0).build()),
+                          events);
+                  List<Token> marked =
+                      switch (variant) {
+                        case "scan" ->
+                            zone.getTokensFiltered(t -> Boolean.TRUE.equals(t.getState("Marked")));
+                        case "rebuilt" -> {
+                          zone.sortZOrder();
+                          yield zone.getTokenIndex().getTokensWithState("Marked");
+                        }
+                        default -> zone.getTokenIndex().getTokensWithState("Marked");
+                      };
+                  assertTrue(marked.size() <= TOKENS);
+                }
+              });
+      Benchmarks.report(TOKENS + " tokens, set then get", variant, result);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import net.rptools.maptool.server.proto.TokenPropertyValueDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ZoneTokenIndexTest {
+  private Zone zone;
+  private Token pc;
+  private Token npc;
+  private Token object;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    pc = createToken("Hero", 3, Zone.Layer.TOKEN, Token.Type.PC);
+    pc.addOwner("alice");
+    pc.setState("Prone", Boolean.TRUE);
+    npc = createToken("Goblin", 1, Zone.Layer.TOKEN, Token.Type.NPC);
+    npc.setPropertyType("Monster");
+    npc.setState("Prone", BigDecimal.ZERO);
+    object = createToken("Chest", 2, Zone.Layer.OBJECT, Token.Type.NPC);
+    object.setOwnedByAll(true);
+    object.setState("Prone", BigDecimal.ONE);
+  }
+
+  private Token createToken(String name, int z, Zone.Layer layer, Token.Type type) {
+    var token = new Token();
+    token.setName(name);
+    token.setZOrder(z);
+    token.setLayer(layer);
+    token.setType(type);
+    zone.putToken(token);
+    return token;
+  }
+
+  @Test
+  void testListsAreInZOrder() {
+    var index = zone.getTokenIndex();
+
+    assertEquals(List.of(npc, object, pc), index.getTokens());
+    assertEquals(
+        List.of(npc, object, pc),
+        index.getTokensOnLayers(List.of(Zone.Layer.TOKEN, Zone.Layer.OBJECT)));
+    assertEquals(List.of(npc, pc), index.getTokensOnLayers(List.of(Zone.Layer.TOKEN)));
+    assertEquals(List.of(npc, pc), index.inZOrder(List.of(pc, npc)));
+  }
+
+  @Test
+  void testIndexesByValue() {
+    var index = zone.getTokenIndex();
+
+    assertEquals(List.of(npc, object), index.getTokensOfType(Token.Type.NPC));
+    assertEquals(List.of(pc), index.getTokensOfType(Token.Type.PC));
+    assertEquals(List.of(npc), index.getTokensWithPropertyTypes(List.of("Monster")));
+    assertEquals(List.of(object, pc), index.getTokensWithState("Prone"));
+    assertEquals(List.of(object, pc), index.getTokensOwnedBy(Set.of("alice")));
+    assertEquals(List.of(object), index.getTokensOwnedBy(Set.of("bob")));
+    assertEquals(List.of(object), index.getTokensOwnedByAll());
+  }
+
+  @Test
+  void testIndexIsRebuiltAfterChanges() {
+    var index = zone.getTokenIndex();
+    assertSame(index, zone.getTokenIndex());
+
+    npc.setType(Token.Type.PC);
+    zone.tokenChanged(npc);
+    var changed = zone.getTokenIndex();
+    assertNotSame(index, changed);
+    assertEquals(List.of(npc, pc), changed.getTokensOfType(Token.Type.PC));
+
+    zone.removeToken(pc.getId());
+    assertEquals(List.of(npc), zone.getTokenIndex().getTokensOfType(Token.Type.PC));
+  }
+
+  @Test
+  void testChangesInABatchAreSeenBeforeTheEventsFire() {
+    for (int i = 0; i < 8; i++) {
+      createToken("Rat " + i, 10 + i, Zone.Layer.TOKEN, Token.Type.NPC);
+    }
+    var index = zone.getTokenIndex();
+    var prone = index.getTokensWithState("Prone");
+
+    // a batch applies the updates right away but fires their events when it ends
+    var events = new TokenUpdateEvents(zone);
+    npc.updateProperty(Token.Update.setPC, List.of(), events);
+    pc.updateProperty(
+        Token.Update.setState,
+        List.of(
+            TokenPropertyValueDto.newBuilder().setStringValue("Prone").build(),
+            TokenPropertyValueDto.newBuilder().setBoolValue(false).build()),
+        events);
+
+    var changed = zone.getTokenIndex();
+    assertSame(index, changed);
+    assertEquals(List.of(npc, pc), changed.getTokensOfType(Token.Type.PC));
+    assertEquals(List.of(object), changed.getTokensWithState("Prone"));
+    assertEquals(List.of(object, pc), prone);
+  }
+
+  @Test
+  void testUpdatedIndexMatchesARebuiltOne() {
+    for (int i = 0; i < 8; i++) {
+      createToken("Rat " + i, 10 + i, Zone.Layer.TOKEN, Token.Type.NPC);
+    }
+    var index = zone.getTokenIndex();
+
+    object.setLayer(Zone.Layer.TOKEN);
+    object.setOwnedByAll(false);
+    npc.addOwner("bob");
+    npc.setPropertyType("Boss");
+    zone.tokensChanged(List.of(object, npc));
+
+    var changed = zone.getTokenIndex();
+    var rebuilt = new ZoneTokenIndex(zone, zone.getAllTokens());
+    assertSame(index, changed);
+    var layers = List.of(Zone.Layer.TOKEN);
+    assertEquals(rebuilt.getTokensOnLayers(layers), changed.getTokensOnLayers(layers));
+    var objects = List.of(Zone.Layer.OBJECT);
+    assertEquals(rebuilt.getTokensOnLayers(objects), changed.getTokensOnLayers(objects));
+    assertEquals(List.of(), changed.getTokensOwnedByAll());
+    assertEquals(List.of(npc), changed.getTokensOwnedBy(Set.of("bob")));
+    assertEquals(List.of(npc), changed.getTokensWithPropertyTypes(List.of("Boss")));
+    assertEquals(List.of(), changed.getTokensWithPropertyTypes(List.of("Monster")));
+  }
+}
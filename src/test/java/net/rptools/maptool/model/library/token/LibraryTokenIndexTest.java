@@ -0,0 +1,112 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model.library.token;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.google.common.eventbus.EventBus;
+import java.util.List;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.MacroButtonProperties;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.zones.TokensAdded;
+import net.rptools.maptool.model.zones.TokensChanged;
+import net.rptools.maptool.model.zones.TokensRemoved;
+import net.rptools.maptool.model.zones.ZoneAdded;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LibraryTokenIndexTest {
+  private Campaign campaign;
+  private Zone zone;
+  private Token library;
+  private LibraryTokenIndex index;
+  private EventBus eventBus;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    library = new Token();
+    library.setName("Lib:Dice");
+    library.saveMacro(createMacro(0, "onTokenMove"));
+    library.saveMacro(createMacro(1, "roll"));
+    Token plain = new Token();
+    plain.setName("Goblin");
+    zone.putTokens(List.of(library, plain));
+
+    campaign = new Campaign();
+    campaign.putZone(zone);
+    index = new LibraryTokenIndex(() -> campaign);
+    eventBus = new EventBus();
+    eventBus.register(index);
+  }
+
+  @Test
+  void testFindsLibTokensAndMacrosIgnoringNameCase() {
+    assertEquals(List.of(library), tokens(index.getTokens("LIB:dice")));
+    assertTrue(index.getTokens("Goblin").isEmpty());
+    assertEquals(List.of(library), tokens(index.getTokensWithMacro("onTokenMove")));
+    assertTrue(index.getTokensWithMacro("ontokenmove").isEmpty());
+    assertEquals("roll", index.getMacro(library, "roll").getLabel());
+    assertNull(index.getMacro(library, "missing"));
+  }
+
+  @Test
+  void testFollowsTokenEvents() {
+    index.getTokens("lib:dice");
+
+    library.setName("Lib:Cards");
+    eventBus.post(new TokensChanged(zone, List.of(library)));
+    assertTrue(index.getTokens("lib:dice").isEmpty());
+    assertEquals(List.of(library), tokens(index.getTokens("lib:cards")));
+
+    Token other = new Token();
+    other.setName("lib:cards");
+    zone.putToken(other);
+    eventBus.post(new TokensAdded(zone, List.of(other)));
+    assertEquals(2, index.getTokens("Lib:Cards").size());
+
+    eventBus.post(new TokensRemoved(zone, List.of(library)));
+    assertEquals(List.of(other), tokens(index.getTokens("Lib:Cards")));
+    assertTrue(index.getTokensWithMacro("onTokenMove").isEmpty());
+  }
+
+  @Test
+  void testRebuildsWhenMapsChange() {
+    assertEquals(1, index.getTokens("lib:dice").size());
+
+    Zone second = new Zone();
+    Token copy = new Token();
+    copy.setName("Lib:Dice");
+    second.putToken(copy);
+    campaign.putZone(second);
+    eventBus.post(new ZoneAdded(second));
+
+    assertEquals(2, index.getTokens("lib:dice").size());
+    assertEquals(second, index.getToken(copy.getId()).zone());
+  }
+
+  private static MacroButtonProperties createMacro(int index, String label) {
+    var macro = new MacroButtonProperties(index);
+    macro.setLabel(label);
+    macro.setCommand("[r: 1]");
+    return macro;
+  }
+
+  private static List<Token> tokens(List<LibraryTokenIndex.Entry> entries) {
+    return entries.stream().map(LibraryTokenIndex.Entry::token).toList();
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.lib.io.PackedFileWriter;
+import net.rptools.maptool.benchmark.Benchmark;
+import net.rptools.maptool.benchmark.Benchmarks;
+import net.rptools.maptool.client.AppPreferences.CampaignFileFormat;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.SquareGrid;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.drawing.DrawableColorPaint;
+import net.rptools.maptool.util.PersistenceUtil.PersistedCampaign;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares saving and loading a 50 map campaign in the XStream and binary formats. Only the
+ * campaign content is written, as assets are stored identically in both formats.
+ */
+@Benchmark
+class CampaignFormatBenchmarkTest {
+  private static final int ZONES = 50;
+  private static final int TOKENS_PER_ZONE = 200;
+  private static final int PROPERTIES_PER_TOKEN = 30;
+  private static final int WARMUP = 3;
+  private static final int ITERATIONS = 5;
+
+  @TempDir File tempDir;
+
+  @Test
+  @DisplayName("Save and load a 50 map campaign as XStream and protobuf")
+  void benchmarkFormats() throws Exception {
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = createCampaign();
+
+    for (CampaignFileFormat format : CampaignFileFormat.values()) {
+      File file = new File(tempDir, "benchmark-" + format.name() + ".cmpgn");
+      var save =
+          Benchmarks.measure(
+              WARMUP,
+              ITERATIONS,
+              () -> {
+                try (PackedFileWriter writer = new PackedFileWriter(file)) {
+                  PersistenceUtil.writeCampaignContent(persistedCampaign, writer, format);
+                  writer.commit();
+                }
+              });
+      PersistedCampaign[] loaded = new PersistedCampaign[1];
+      var load =
+          Benchmarks.measure(
+              WARMUP,
+              ITERATIONS,
+              () -> {
+                try (PackedFile pakFile = new PackedFile(file)) {
+                  loaded[0] = PersistenceUtil.readCampaignContent(pakFile);
+                }
+              });
+
+      assertNotNull(loaded[0]);
+      assertEquals(ZONES, loaded[0].campaign.getZones().size());
+      assertEquals(TOKENS_PER_ZONE, loaded[0].campaign.getZones().get(0).getAllTokens().size());
+      Benchmarks.report("campaign save", format.name(), save);
+      Benchmarks.report("campaign load", format.name(), load);
+      Benchmarks.report("campaign size %s %d KB", format.name(), file.length() / 1024);
+    }
+  }
+
+  private static Campaign createCampaign() {
+    Campaign campaign = new Campaign();
+    for (int z = 0; z < ZONES; z++) {
+      Zone zone = new Zone();
+      SquareGrid grid = new SquareGrid();
+      grid.setSize(50);
+      zone.setGrid(grid);
+      zone.setName("Map " + z);
+      zone.setBackgroundPaint(new DrawableColorPaint(Color.GREEN));
+
+      List<Token> tokens = new ArrayList<>(TOKENS_PER_ZONE);
+      for (int t = 0; t < TOKENS_PER_ZONE; t++) {
+        MD5Key image = new MD5Key(("image " + t).getBytes(StandardCharsets.UTF_8));
+        Token token = new Token("Token " + z + "-" + t, image);
+        token.setX(t * 50);
+        token.setY(z * 50);
+        for (int p = 0; p < PROPERTIES_PER_TOKEN; p++) {
+          token.setProperty("Property" + p, "{\"value\": " + p + ", \"max\": " + (p * 2) + "}");
+        }
+        tokens.add(token);
+      }
+      zone.putTokens(tokens);
+      campaign.putZone(zone);
+    }
+    return campaign;
+  }
+}
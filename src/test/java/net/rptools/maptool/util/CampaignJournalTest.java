@@ -0,0 +1,148 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.SquareGrid;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.util.CampaignJournal.BaseFile;
+import net.rptools.maptool.util.CampaignJournal.Batch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CampaignJournalTest {
+  private final MD5Key image = new MD5Key("image".getBytes(StandardCharsets.UTF_8));
+
+  @TempDir File tempDir;
+
+  private Campaign campaign;
+  private Zone zone;
+  private Token one;
+  private File journal;
+  private BaseFile baseFile;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    zone = new Zone();
+    SquareGrid grid = new SquareGrid();
+    grid.setSize(50);
+    zone.setGrid(grid);
+    zone.setName("Map");
+    one = new Token("One", image);
+    zone.putTokens(List.of(one));
+    campaign = new Campaign();
+    campaign.putZone(zone);
+
+    File file = new File(tempDir, "base.cmpgn");
+    Files.writeString(file.toPath(), "campaign");
+    baseFile = BaseFile.of(file);
+    journal = new File(tempDir, "AutoSave.journal");
+  }
+
+  /** What loading the base file would return: the campaign as it was before any changes. */
+  private Campaign loadBase() {
+    return Campaign.fromDto(campaign.toDto());
+  }
+
+  @Test
+  @DisplayName("Replaying appended batches restores changed, added and removed tokens")
+  void testAppendAndReplay() throws Exception {
+    Campaign base = loadBase();
+
+    Token two = new Token("Two", image);
+    zone.putToken(two);
+    one.setX(100);
+    var first = new Batch(campaign);
+    first.addTokens(zone, Set.of(one.getId(), two.getId()));
+    CampaignJournal.append(journal, baseFile, first);
+
+    zone.removeToken(one.getId());
+    var second = new Batch(campaign);
+    second.addTokens(zone, Set.of(one.getId()));
+    CampaignJournal.append(journal, baseFile, second);
+
+    Zone replayed = CampaignJournal.replay(journal, base).getZone(zone.getId());
+    assertNull(replayed.getToken(one.getId()));
+    assertNotNull(replayed.getToken(two.getId()));
+    assertEquals("Two", replayed.getToken(two.getId()).getName());
+  }
+
+  @Test
+  @DisplayName("Zones journaled without their tokens keep the tokens they had")
+  void testZoneKeepsTokens() throws Exception {
+    Campaign base = loadBase();
+
+    zone.setName("Renamed");
+    var batch = new Batch(campaign);
+    batch.addZone(zone);
+    CampaignJournal.append(journal, baseFile, batch);
+
+    Zone replayed = CampaignJournal.replay(journal, base).getZone(zone.getId());
+    assertEquals("Renamed", replayed.getName());
+    assertNotNull(replayed.getToken(one.getId()));
+  }
+
+  @Test
+  @DisplayName("A batch torn by a crash is ignored, earlier batches are still replayed")
+  void testTornBatchIgnored() throws Exception {
+    Campaign base = loadBase();
+
+    one.setX(100);
+    var first = new Batch(campaign);
+    first.addTokens(zone, Set.of(one.getId()));
+    CampaignJournal.append(journal, baseFile, first);
+
+    one.setX(200);
+    var second = new Batch(campaign);
+    second.addTokens(zone, Set.of(one.getId()));
+    CampaignJournal.append(journal, baseFile, second);
+
+    try (var file = new RandomAccessFile(journal, "rw")) {
+      file.setLength(file.length() - 5);
+    }
+
+    Zone replayed = CampaignJournal.replay(journal, base).getZone(zone.getId());
+    assertEquals(100, replayed.getToken(one.getId()).getX());
+  }
+
+  @Test
+  @DisplayName("A journal is not replayed on top of a base file that has changed")
+  void testChangedBaseFileRefused() throws Exception {
+    Campaign base = loadBase();
+
+    var batch = new Batch(campaign);
+    batch.addTokens(zone, Set.of(one.getId()));
+    CampaignJournal.append(journal, baseFile, batch);
+    assertEquals(baseFile, CampaignJournal.getBaseFile(journal));
+    assertTrue(CampaignJournal.getBaseFile(journal).isUnchanged());
+
+    Files.writeString(baseFile.file().toPath(), "another campaign");
+    assertFalse(CampaignJournal.getBaseFile(journal).isUnchanged());
+    assertThrows(IOException.class, () -> CampaignJournal.replay(journal, base));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ImageCacheTest {
+  /** 10 x 10 ARGB images weigh 400 bytes. */
+  private static BufferedImage image() {
+    return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  @Test
+  @DisplayName("Least recently used images are evicted once over budget")
+  void evictsLeastRecentlyUsed() {
+    var cache = new ImageCache(1000);
+    var a = new MD5Key("a");
+    var b = new MD5Key("b");
+    var c = new MD5Key("c");
+    cache.put(a, image());
+    cache.put(b, image());
+    assertNotNull(cache.get(a)); // b is now the least recently used
+    cache.put(c, image());
+
+    assertNotNull(cache.get(a));
+    assertNull(cache.get(b));
+    assertNotNull(cache.get(c));
+
+    var stats = cache.getStats();
+    assertEquals(3, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.evictions());
+    assertEquals(2, stats.images());
+    assertEquals(800, stats.bytes());
+  }
+
+  @Test
+  @DisplayName("Pinned images are evicted after other images, and placeholders never")
+  void keepsPinnedImages() {
+    var placeholder = image();
+    var cache = new ImageCache(1000, placeholder);
+    var pinned = new MD5Key("pinned");
+    var loading = new MD5Key("loading");
+    var first = new MD5Key("first");
+    var second = new MD5Key("second");
+    cache.setPinned(Set.of(pinned));
+    cache.put(loading, placeholder);
+    cache.put(pinned, image());
+    cache.put(first, image());
+    cache.put(second, image());
+
+    assertSame(placeholder, cache.peek(loading));
+    assertNotNull(cache.peek(pinned));
+    assertNull(cache.peek(first));
+    assertNotNull(cache.peek(second));
+
+    cache.setBudget(500);
+    assertNotNull(cache.peek(pinned));
+    assertNull(cache.peek(second));
+
+    cache.setBudget(0);
+    assertNull(cache.peek(pinned));
+    assertSame(placeholder, cache.peek(loading));
+  }
+
+  @Test
+  @DisplayName("Pinned images cannot take up more than their share of the budget")
+  void capsPinnedImages() {
+    var cache = new ImageCache(1000);
+    var pinned1 = new MD5Key("pinned1");
+    var pinned2 = new MD5Key("pinned2");
+    var other = new MD5Key("other");
+    cache.setPinned(Set.of(pinned1, pinned2));
+    cache.put(pinned1, image());
+    cache.put(pinned2, image());
+    cache.put(other, image());
+
+    // The image just added stays, the least recently used pinned image makes room for it
+    assertNull(cache.peek(pinned1));
+    assertNotNull(cache.peek(pinned2));
+    assertNotNull(cache.peek(other));
+    assertEquals(800, cache.getStats().bytes());
+  }
+
+  @Test
+  @DisplayName("Evicted images can still be shown until they are decoded again")
+  void remembersEvictedImages() {
+    var cache = new ImageCache(500);
+    var a = new MD5Key("a");
+    var b = new MD5Key("b");
+    var image = image();
+    cache.put(a, image);
+    cache.put(b, image());
+
+    assertNull(cache.get(a));
+    assertSame(image, cache.getEvicted(a));
+
+    cache.put(a, image());
+    assertNull(cache.getEvicted(a));
+    assertNotNull(cache.getEvicted(b));
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.lib.io.PackedFileWriter;
+import net.rptools.maptool.client.AppPreferences.CampaignFileFormat;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.SquareGrid;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.TokenProperty;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.util.PersistenceUtil.PersistedCampaign;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProtobufCampaignFormatTest {
+  private static final int ZONES = 3;
+  private static final int TOKENS_PER_ZONE = 4;
+
+  @TempDir File tempDir;
+
+  private Campaign campaign;
+
+  @BeforeEach
+  void setUp() {
+    campaign = new Campaign();
+    campaign.putTokenType(
+        "Hero",
+        List.of(
+            new TokenProperty("Strength", "Str", true, false, false, "10"),
+            new TokenProperty("Secret", null, false, false, true, "")));
+    for (int z = 0; z < ZONES; z++) {
+      Zone zone = new Zone();
+      SquareGrid grid = new SquareGrid();
+      grid.setSize(40 + z);
+      zone.setGrid(grid);
+      zone.setName("Map " + z);
+
+      List<Token> tokens = new ArrayList<>();
+      for (int t = 0; t < TOKENS_PER_ZONE; t++) {
+        MD5Key image = new MD5Key(("image " + z + "-" + t).getBytes(StandardCharsets.UTF_8));
+        Token token = new Token("Token " + z + "-" + t, image);
+        token.setX(t * 50);
+        token.setY(z * 50);
+        token.setPropertyType("Hero");
+        token.setProperty("Strength", Integer.toString(10 + t));
+        token.setProperty("Sheet", "{\"hp\": " + t + ", \"items\": [\"rope\", \"torch\"]}");
+        token.setState("Dead", t % 2 == 0);
+        token.setNotes("Notes of token " + t);
+        tokens.add(token);
+      }
+      zone.putTokens(tokens);
+      campaign.putZone(zone);
+    }
+  }
+
+  @Test
+  @DisplayName("A campaign saved in the binary format loads with the same content")
+  void testSaveAndLoad() throws Exception {
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = campaign;
+    persistedCampaign.currentZoneId = campaign.getZones().get(1).getId();
+    File file = new File(tempDir, "binary.cmpgn");
+    try (PackedFileWriter writer = new PackedFileWriter(file)) {
+      PersistenceUtil.writeCampaignContent(persistedCampaign, writer, CampaignFileFormat.PROTOBUF);
+      writer.commit();
+    }
+
+    PersistedCampaign loaded;
+    try (PackedFile pakFile = new PackedFile(file)) {
+      loaded = PersistenceUtil.readCampaignContent(pakFile);
+    }
+
+    assertEquals(persistedCampaign.currentZoneId, loaded.currentZoneId);
+    assertEquals(campaign.getAllAssetIds(), loaded.assetMap.keySet());
+    assertSameContent(campaign, loaded.campaign);
+  }
+
+  @Test
+  @DisplayName("Converting an XStream campaign keeps its content and copies its assets")
+  void testConvertFromXStream() throws Exception {
+    MD5Key asset = campaign.getZones().get(0).getAllTokens().get(0).getImageAssetId();
+    String assetPath = "assets/" + asset;
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = campaign;
+    File source = new File(tempDir, "xstream.cmpgn");
+    try (PackedFileWriter writer = new PackedFileWriter(source)) {
+      PersistenceUtil.writeCampaignContent(persistedCampaign, writer, CampaignFileFormat.XSTREAM);
+      writer.putFile(assetPath, "asset".getBytes(StandardCharsets.UTF_8));
+      writer.commit();
+    }
+
+    File target = new File(tempDir, "converted.cmpgn");
+    PersistenceUtil.convertCampaign(source, target, CampaignFileFormat.PROTOBUF);
+
+    try (PackedFile pakFile = new PackedFile(target)) {
+      assertEquals(
+          ProtobufCampaignFormat.FORMAT_NAME,
+          pakFile.getProperty(PersistenceUtil.PROP_CAMPAIGN_FORMAT));
+      assertSameContent(campaign, PersistenceUtil.readCampaignContent(pakFile).campaign);
+      try (InputStream in = pakFile.getFileAsInputStream(assetPath)) {
+        assertEquals("asset", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  private static void assertSameContent(Campaign expected, Campaign actual) {
+    assertEquals(expected.getTokenTypeMap().keySet(), actual.getTokenTypeMap().keySet());
+    List<TokenProperty> expectedProperties = expected.getTokenPropertyList("Hero");
+    List<TokenProperty> actualProperties = actual.getTokenPropertyList("Hero");
+    assertEquals(expectedProperties.size(), actualProperties.size());
+    for (int i = 0; i < expectedProperties.size(); i++) {
+      TokenProperty property = expectedProperties.get(i);
+      assertEquals(property.getName(), actualProperties.get(i).getName());
+      assertEquals(property.getShortName(), actualProperties.get(i).getShortName());
+      assertEquals(property.isGMOnly(), actualProperties.get(i).isGMOnly());
+      assertEquals(property.getDefaultValue(), actualProperties.get(i).getDefaultValue());
+    }
+
+    assertEquals(expected.getAllAssetIds(), actual.getAllAssetIds());
+    assertEquals(expected.getZones().size(), actual.getZones().size());
+    for (Zone zone : expected.getZones()) {
+      Zone loadedZone = actual.getZone(zone.getId());
+      assertNotNull(loadedZone, zone.getName());
+      assertEquals(zone.getName(), loadedZone.getName());
+      assertEquals(zone.getGrid().getSize(), loadedZone.getGrid().getSize());
+      assertEquals(zone.getAllAssetIds(), loadedZone.getAllAssetIds());
+      assertEquals(zone.getAllTokens().size(), loadedZone.getAllTokens().size());
+
+      for (Token token : zone.getAllTokens()) {
+        Token loadedToken = loadedZone.getToken(token.getId());
+        assertNotNull(loadedToken, token.getName());
+        assertEquals(token.getName(), loadedToken.getName());
+        assertEquals(token.getX(), loadedToken.getX());
+        assertEquals(token.getY(), loadedToken.getY());
+        assertEquals(token.getImageAssetId(), loadedToken.getImageAssetId());
+        assertEquals(token.getPropertyType(), loadedToken.getPropertyType());
+        assertEquals(token.getPropertyNames(), loadedToken.getPropertyNames());
+        for (String name : token.getPropertyNames()) {
+          assertEquals(token.getProperty(name), loadedToken.getProperty(name), name);
+        }
+        assertEquals(token.getState("Dead"), loadedToken.getState("Dead"));
+        assertEquals(token.getNotes(), loadedToken.getNotes());
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Set;
+import net.rptools.maptool.model.GUID;
+import org.junit.jupiter.api.Test;
+
+class SpatialGridIndexTest {
+  @Test
+  void testQueryFindsOverlappingTokens() {
+    var index = new SpatialGridIndex<GUID>(100);
+    var near = new GUID();
+    var far = new GUID();
+    var negative = new GUID();
+    var huge = new GUID();
+    index.put(near, new Rectangle2D.Double(10, 10, 50, 50));
+    index.put(far, new Rectangle2D.Double(5_000, 5_000, 50, 50));
+    index.put(negative, new Rectangle2D.Double(-150, -150, 20, 20));
+    index.put(huge, new Rectangle2D.Double(-10_000, -10_000, 20_000, 20_000));
+
+    assertEquals(Set.of(near, huge), index.query(new Rectangle2D.Double(0, 0, 100, 100)));
+    assertEquals(Set.of(negative, huge), index.query(new Rectangle2D.Double(-140, -140, 0, 0)));
+    assertEquals(Set.of(near, huge), index.query(new Rectangle2D.Double(60, 60, 0, 0)));
+    assertEquals(
+        Set.of(near, far, negative, huge),
+        index.query(new Rectangle2D.Double(-1e6, -1e6, 2e6, 2e6)));
+    assertEquals(Set.of(), index.query(new Rectangle2D.Double(20_000, 0, 10, 10)));
+  }
+
+  @Test
+  void testPutMovesAndRemoveForgetsTokens() {
+    var index = new SpatialGridIndex<GUID>(100);
+    var token = new GUID();
+    index.put(token, new Rectangle2D.Double(10, 10, 50, 50));
+    index.put(token, new Rectangle2D.Double(1_000, 1_000, 50, 50));
+
+    assertEquals(1, index.size());
+    assertEquals(Set.of(), index.query(new Rectangle2D.Double(0, 0, 100, 100)));
+    assertEquals(Set.of(token), index.query(new Rectangle2D.Double(1_010, 1_010, 1, 1)));
+    assertEquals(new Rectangle2D.Double(1_000, 1_000, 50, 50), index.getBounds(token));
+
+    assertTrue(index.remove(token));
+    assertFalse(index.remove(token));
+    assertEquals(0, index.size());
+    assertNull(index.getBounds(token));
+    assertEquals(Set.of(), index.query(new Rectangle2D.Double(1_010, 1_010, 1, 1)));
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.SquareGrid;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.drawing.DrawableColorPaint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ZoneContentStoreTest {
+  private final MD5Key image = new MD5Key("image".getBytes(StandardCharsets.UTF_8));
+  private Zone zone;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    SquareGrid grid = new SquareGrid();
+    grid.setSize(50);
+    zone.setGrid(grid);
+    zone.setName("Map");
+    zone.setBackgroundPaint(new DrawableColorPaint(Color.GREEN));
+    zone.putTokens(List.of(new Token("One", image), new Token("Two", image)));
+  }
+
+  @Test
+  @DisplayName("A stub is only loaded when its content is used")
+  void testStubLoadsOnDemand() throws Exception {
+    ZoneContentStore store = ZoneContentStore.create();
+    store.store(zone);
+
+    Zone stub = Zone.createStub(zone.toHeaderDto(), store, zone.getAllAssetIds());
+    assertFalse(stub.isContentLoaded());
+    assertEquals("Map", stub.getName());
+    assertTrue(stub.getAllAssetIds().contains(image));
+    assertFalse(stub.isContentLoaded());
+
+    assertEquals(2, stub.getAllTokens().size());
+    assertTrue(stub.isContentLoaded());
+    assertNotNull(stub.getTokenByName("Two"));
+  }
+
+  @Test
+  @DisplayName("An unloaded zone reads back the content it was stored with")
+  void testUnloadAndReload() throws Exception {
+    ZoneContentStore store = ZoneContentStore.create();
+    store.store(zone);
+    zone.unloadContent(store);
+    assertFalse(zone.isContentLoaded());
+    assertTrue(zone.getAllAssetIds().contains(image));
+
+    assertEquals(2, zone.getTokenCount());
+    assertTrue(zone.isContentLoaded());
+    assertTrue(zone.getLoadTime() > 0);
+  }
+
+  @Test
+  @DisplayName("A zone unloaded before its content is written reads it back from memory")
+  void testStoreLater() throws Exception {
+    ZoneContentStore store = ZoneContentStore.create();
+    List<Runnable> writes = new ArrayList<>();
+    zone.unloadContent(store.storeLater(zone.getId(), zone.toDto(), writes::add));
+    assertFalse(zone.isContentLoaded());
+    assertEquals(1, writes.size());
+
+    // Nothing has been written yet
+    assertEquals(2, zone.getTokenCount());
+
+    zone.unloadContent(store.storeLater(zone.getId(), zone.toDto(), Runnable::run));
+    assertFalse(zone.isContentLoaded());
+    assertNotNull(zone.getTokenByName("One"));
+    assertEquals(2, zone.getTokenCount());
+  }
+}